@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2017 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package benchmarks;
+
+import java.lang.management.ManagementFactory;
+
+import trclib.TrcDriveBase;
+import trclib.TrcTaskMgr;
+
+/**
+ * This class implements a host side benchmark that measures the heap allocation and the time of the mecanum drive
+ * methods of TrcDriveBase. It alternates field-centric mecanumDrive_Cartesian and mecanumDrive_Polar calls with a
+ * changing angle, warms up the JIT first, and reports the bytes allocated by the calling thread per drive call.
+ * The allocation count needs a JVM that supports thread allocation measurement, such as HotSpot.
+ */
+public class AllocationBenchmark
+{
+    private static final int WARMUP_ITERATIONS = 200000;
+    private static final int ITERATIONS = 1000000;
+
+    /**
+     * This method is the entry point of the benchmark.
+     *
+     * @param args not used.
+     */
+    public static void main(String[] args)
+    {
+        new TrcTaskMgr();
+        TrcDriveBase driveBase = new TrcDriveBase(new SimMotor(), new SimMotor(), new SimMotor(), new SimMotor());
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        runDriveCalls(driveBase, WARMUP_ITERATIONS);
+        long startBytes = threadBean.getThreadAllocatedBytes(threadId);
+        long startTime = System.nanoTime();
+        runDriveCalls(driveBase, ITERATIONS);
+        long elapsedTime = System.nanoTime() - startTime;
+        long allocatedBytes = threadBean.getThreadAllocatedBytes(threadId) - startBytes;
+        int numCalls = 2*ITERATIONS;
+
+        System.out.printf("%d drive calls: %d bytes allocated (%.2f bytes/call), %.1f ns/call\n",
+                          numCalls, allocatedBytes, (double)allocatedBytes/numCalls, (double)elapsedTime/numCalls);
+    }   //main
+
+    /**
+     * This method makes the specified number of field-centric Cartesian and polar mecanum drive calls.
+     *
+     * @param driveBase specifies the drive base.
+     * @param iterations specifies the number of call pairs.
+     */
+    private static void runDriveCalls(TrcDriveBase driveBase, int iterations)
+    {
+        for (int i = 0; i < iterations; i++)
+        {
+            driveBase.mecanumDrive_Cartesian(0.3, 0.5, 0.2, false, i%360);
+            driveBase.mecanumDrive_Polar(0.8, i%360, 0.1);
+        }
+    }   //runDriveCalls
+
+}   //class AllocationBenchmark
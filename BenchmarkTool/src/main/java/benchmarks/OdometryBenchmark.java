@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2017 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package benchmarks;
+
+import java.util.Random;
+
+import trclib.TrcDriveBase;
+import trclib.TrcPose2D;
+import trclib.TrcRobot;
+import trclib.TrcTaskMgr;
+
+/**
+ * This class implements a host side benchmark of the odometry of a 6-wheel skid-steer drive base. The ground truth
+ * is deliberately not the differential drive model the odometry uses. Every wheel slips against the ground by a
+ * base ratio plus a ratio proportional to the turn rate, the corner wheels more than the mid wheels since they scrub
+ * sideways, and the left mid wheel (e.g. a worn tread) slips more than all others. The body moves with the load
+ * weighted best fit of the wheel ground speeds, and it turns about the load weighted center of the wheels, so it
+ * drifts sideways in proportion to the turn rate. The encoders count the wheel surface travel plus gaussian noise.
+ * The drive base starts with the rotation scale of the GEOMETRIC_TRACK_WIDTH. It drives a fixed course of straights,
+ * arcs and a turn in place, then reports the odometry pose against the simulated pose for every combination of gyro
+ * or encoder heading, calibrated or geometric track width, and wheel slip bursts or none. Slip bursts make the left
+ * front and right rear wheels spin ahead of the ground on a random 20% of the loops.
+ */
+public class OdometryBenchmark
+{
+    private static final double GEOMETRIC_TRACK_WIDTH = 14.0;
+    private static final double WHEEL_BASE = 12.0;
+    //
+    // Per wheel parameters of each side, in the order front, mid, rear. The drop center mid wheels carry the most
+    // load and the front wheels the least. Turn slip is the slip ratio per radian per second of turn rate.
+    //
+    private static final double[] WHEEL_OFFSETS = {WHEEL_BASE/2.0, 0.0, -WHEEL_BASE/2.0};
+    private static final double[] WHEEL_LOADS = {0.7, 1.4, 1.0};
+    private static final double[] BASE_SLIP = {0.01, 0.01, 0.01};
+    private static final double[] TURN_SLIP = {0.08, 0.02, 0.08};
+    private static final double LEFT_MID_EXTRA_SLIP = 0.05;
+    private static final double ENCODER_NOISE = 0.02;
+    private static final double MAX_WHEEL_SPEED = 40.0;
+    private static final double LOOP_PERIOD = 0.01;
+    private static final double SLIP_PROBABILITY = 0.2;
+    private static final double SLIP_RATIO = 0.6;
+    private static final int CALIBRATION_LOOPS = 400;
+
+    private final SimMotor[] leftMotors = {new SimMotor(), new SimMotor(), new SimMotor()};
+    private final SimMotor[] rightMotors = {new SimMotor(), new SimMotor(), new SimMotor()};
+    private final SimGyro gyro;
+    private final TrcDriveBase driveBase;
+    private final Random random = new Random(1);
+    private boolean slipEnabled = false;
+    private double simX = 0.0;
+    private double simY = 0.0;
+    private double simHeading = 0.0;
+    private double simTurnRate = 0.0;
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param useGyro specifies true to give the drive base a gyro, false to use the encoder heading.
+     */
+    private OdometryBenchmark(boolean useGyro)
+    {
+        new TrcTaskMgr();
+        gyro = useGyro? new SimGyro("gyro"): null;
+        driveBase = new TrcDriveBase(leftMotors[0], leftMotors[1], leftMotors[2],
+                                     rightMotors[0], rightMotors[1], rightMotors[2], gyro);
+        driveBase.setEffectiveTrackWidth(GEOMETRIC_TRACK_WIDTH);
+    }   //OdometryBenchmark
+
+    /**
+     * This method runs one robot loop with the given drive powers and advances the simulation by one loop period.
+     *
+     * @param leftPower specifies the left drive power.
+     * @param rightPower specifies the right drive power.
+     */
+    private void step(double leftPower, double rightPower)
+    {
+        TrcTaskMgr taskMgr = TrcTaskMgr.getInstance();
+
+        taskMgr.executeTaskType(TrcTaskMgr.TaskType.PRECONTINUOUS_TASK, TrcRobot.RunMode.AUTO_MODE);
+        driveBase.tankDrive(leftPower, rightPower);
+        taskMgr.executeTaskType(TrcTaskMgr.TaskType.POSTCONTINUOUS_TASK, TrcRobot.RunMode.AUTO_MODE);
+        taskMgr.executeTaskType(TrcTaskMgr.TaskType.PREPERIODIC_TASK, TrcRobot.RunMode.AUTO_MODE);
+        taskMgr.executeTaskType(TrcTaskMgr.TaskType.POSTPERIODIC_TASK, TrcRobot.RunMode.AUTO_MODE);
+
+        double leftSpeed = leftMotors[0].power*MAX_WHEEL_SPEED;
+        double rightSpeed = rightMotors[0].power*MAX_WHEEL_SPEED;
+        double halfTrack = GEOMETRIC_TRACK_WIDTH/2.0;
+        double loadSum = 0.0;
+        double forwardSum = 0.0;
+        double turnSum = 0.0;
+        double pivotSum = 0.0;
+        //
+        // Slip the wheels against the ground and fit the body motion to the ground speeds with the load as the
+        // weight. The slip depends on the turn rate of the previous loop.
+        //
+        for (int i = 0; i < WHEEL_LOADS.length; i++)
+        {
+            double turnSlip = TURN_SLIP[i]*Math.abs(simTurnRate);
+            double leftSlip = BASE_SLIP[i] + turnSlip + (i == 1? LEFT_MID_EXTRA_SLIP: 0.0);
+            double rightSlip = BASE_SLIP[i] + turnSlip;
+            double leftGround = leftSpeed*(1.0 - Math.min(leftSlip, 1.0));
+            double rightGround = rightSpeed*(1.0 - Math.min(rightSlip, 1.0));
+
+            loadSum += 2.0*WHEEL_LOADS[i];
+            forwardSum += WHEEL_LOADS[i]*(leftGround + rightGround);
+            turnSum += WHEEL_LOADS[i]*halfTrack*(leftGround - rightGround);
+            pivotSum += 2.0*WHEEL_LOADS[i]*WHEEL_OFFSETS[i];
+
+            leftMotors[i].position += leftSpeed*LOOP_PERIOD + ENCODER_NOISE*random.nextGaussian();
+            rightMotors[i].position += rightSpeed*LOOP_PERIOD + ENCODER_NOISE*random.nextGaussian();
+        }
+        double speed = forwardSum/loadSum;
+        simTurnRate = turnSum/(loadSum*halfTrack*halfTrack);
+        //
+        // The body turns clockwise about the load weighted center of the wheels, so the robot center drifts
+        // sideways in proportion to the turn rate.
+        //
+        double lateralSpeed = -simTurnRate*pivotSum/loadSum;
+
+        if (slipEnabled && random.nextDouble() < SLIP_PROBABILITY)
+        {
+            leftMotors[0].position += SLIP_RATIO*leftSpeed*LOOP_PERIOD;
+        }
+
+        if (slipEnabled && random.nextDouble() < SLIP_PROBABILITY)
+        {
+            rightMotors[2].position += SLIP_RATIO*rightSpeed*LOOP_PERIOD;
+        }
+        //
+        // Advance the simulated pose along the arc, heading clockwise positive.
+        //
+        double deltaHeading = Math.toDegrees(simTurnRate*LOOP_PERIOD);
+        double midHeading = Math.toRadians(simHeading + deltaHeading/2.0);
+
+        simX += (speed*Math.sin(midHeading) + lateralSpeed*Math.cos(midHeading))*LOOP_PERIOD;
+        simY += (speed*Math.cos(midHeading) - lateralSpeed*Math.sin(midHeading))*LOOP_PERIOD;
+        simHeading += deltaHeading;
+        if (gyro != null)
+        {
+            gyro.heading = simHeading;
+        }
+    }   //step
+
+    /**
+     * This method drives with the given powers for the given number of loops.
+     *
+     * @param leftPower specifies the left drive power.
+     * @param rightPower specifies the right drive power.
+     * @param loops specifies the number of loops.
+     */
+    private void drive(double leftPower, double rightPower, int loops)
+    {
+        for (int i = 0; i < loops; i++)
+        {
+            step(leftPower, rightPower);
+        }
+    }   //drive
+
+    /**
+     * This method runs the benchmark course and prints the result.
+     *
+     * @param calibrate specifies true to calibrate the track width before the course.
+     * @param slip specifies true to make wheels slip during the course.
+     */
+    private void run(boolean calibrate, boolean slip)
+    {
+        if (calibrate)
+        {
+            drive(0.5, -0.5, CALIBRATION_LOOPS);
+            step(0.0, 0.0);
+            driveBase.calibrateTrackWidth(simHeading);
+        }
+
+        driveBase.resetPosition();
+        simX = simY = simHeading = simTurnRate = 0.0;
+        if (gyro != null)
+        {
+            gyro.heading = 0.0;
+        }
+        step(0.0, 0.0);
+        driveBase.setFieldPose(0.0, 0.0, 0.0);
+
+        slipEnabled = slip;
+        drive(0.6, 0.6, 300);
+        drive(0.7, 0.3, 300);
+        drive(0.3, 0.7, 300);
+        drive(0.5, -0.5, 200);
+        drive(0.6, 0.6, 300);
+        drive(0.0, 0.0, 2);
+
+        TrcPose2D pose = driveBase.getFieldPose(new TrcPose2D());
+        System.out.printf("%-7s %-10s %-7s sim=(%6.1f,%6.1f,%6.1f) odometry=(%6.1f,%6.1f,%6.1f) error=%5.2f\n",
+                          gyro != null? "gyro": "encoder", calibrate? "calibrated": "geometric",
+                          slip? "slip": "no slip", simX, simY, simHeading, pose.x, pose.y, pose.heading,
+                          Math.hypot(simX - pose.x, simY - pose.y));
+    }   //run
+
+    /**
+     * This method is the entry point of the benchmark.
+     *
+     * @param args not used.
+     */
+    public static void main(String[] args)
+    {
+        for (boolean useGyro: new boolean[] {false, true})
+        {
+            for (boolean calibrate: new boolean[] {false, true})
+            {
+                for (boolean slip: new boolean[] {false, true})
+                {
+                    new OdometryBenchmark(useGyro).run(calibrate, slip);
+                }
+            }
+        }
+    }   //main
+
+}   //class OdometryBenchmark
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2017 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package benchmarks;
+
+import trclib.TrcGyro;
+import trclib.TrcUtil;
+
+/**
+ * This class implements a simulated Z axis gyro for the host side benchmarks. It reports the heading that the
+ * simulation sets, clockwise positive.
+ */
+public class SimGyro extends TrcGyro
+{
+    public double heading = 0.0;
+    public double turnRate = 0.0;
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param instanceName specifies the instance name.
+     */
+    public SimGyro(final String instanceName)
+    {
+        super(instanceName, 1, GYRO_HAS_Z_AXIS, null);
+    }   //SimGyro
+
+    //
+    // Implements TrcGyro abstract methods.
+    //
+
+    @Override
+    public SensorData<Double> getRawXData(DataType dataType)
+    {
+        return null;
+    }   //getRawXData
+
+    @Override
+    public SensorData<Double> getRawYData(DataType dataType)
+    {
+        return null;
+    }   //getRawYData
+
+    @Override
+    public SensorData<Double> getRawZData(DataType dataType)
+    {
+        return new SensorData<>(TrcUtil.getCurrentTime(), dataType == DataType.HEADING? heading: turnRate);
+    }   //getRawZData
+
+}   //class SimGyro
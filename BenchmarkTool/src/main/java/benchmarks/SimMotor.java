@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2017 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package benchmarks;
+
+import trclib.TrcMotorController;
+
+/**
+ * This class implements a simulated motor for the host side benchmarks. It keeps the last power it was given and an
+ * encoder position that the simulation advances.
+ */
+public class SimMotor implements TrcMotorController
+{
+    public double position = 0.0;
+    public double power = 0.0;
+
+    //
+    // Implements TrcMotorController interface.
+    //
+
+    @Override
+    public boolean getInverted()
+    {
+        return false;
+    }   //getInverted
+
+    @Override
+    public double getPosition()
+    {
+        return position;
+    }   //getPosition
+
+    @Override
+    public double getPower()
+    {
+        return power;
+    }   //getPower
+
+    @Override
+    public double getSpeed()
+    {
+        return 0.0;
+    }   //getSpeed
+
+    @Override
+    public boolean isLowerLimitSwitchActive()
+    {
+        return false;
+    }   //isLowerLimitSwitchActive
+
+    @Override
+    public boolean isUpperLimitSwitchActive()
+    {
+        return false;
+    }   //isUpperLimitSwitchActive
+
+    @Override
+    public void resetPosition(boolean hardware)
+    {
+        position = 0.0;
+    }   //resetPosition
+
+    @Override
+    public void setBrakeModeEnabled(boolean enabled)
+    {
+    }   //setBrakeModeEnabled
+
+    @Override
+    public void setInverted(boolean inverted)
+    {
+    }   //setInverted
+
+    @Override
+    public void setPositionSensorInverted(boolean inverted)
+    {
+    }   //setPositionSensorInverted
+
+    @Override
+    public void setPower(double power)
+    {
+        this.power = power;
+    }   //setPower
+
+    @Override
+    public void setSoftLimitEnabled(boolean lowerLimitEnabled, boolean upperLimitEnabled)
+    {
+    }   //setSoftLimitEnabled
+
+    @Override
+    public void setSoftLowerLimit(double position)
+    {
+    }   //setSoftLowerLimit
+
+    @Override
+    public void setSoftUpperLimit(double position)
+    {
+    }   //setSoftUpperLimit
+
+}   //class SimMotor
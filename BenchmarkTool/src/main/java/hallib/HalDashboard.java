@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2017 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package hallib;
+
+/**
+ * This class implements the dashboard for the host side tools. It only provides the methods that the trclib classes
+ * used by the tools call, and prints the display lines to the console since there is no Driver Station.
+ */
+public class HalDashboard
+{
+    private static final HalDashboard instance = new HalDashboard();
+
+    /**
+     * This method returns the instance of this object.
+     *
+     * @return instance of the object.
+     */
+    public static HalDashboard getInstance()
+    {
+        return instance;
+    }   //getInstance
+
+    /**
+     * This method displays a text message in the specified display line.
+     *
+     * @param lineNum specifies the line number on the display.
+     * @param text specifies the text message.
+     */
+    public void displayText(int lineNum, String text)
+    {
+        System.out.printf("%02d: %s\n", lineNum, text);
+    }   //displayText
+
+    /**
+     * This method displays a formatted message in the specified display line.
+     *
+     * @param lineNum specifies the line number on the display.
+     * @param format specifies the format string.
+     * @param args specifies variable number of substitution arguments.
+     */
+    public void displayPrintf(int lineNum, String format, Object... args)
+    {
+        displayText(lineNum, String.format(format, args));
+    }   //displayPrintf
+
+}   //class HalDashboard
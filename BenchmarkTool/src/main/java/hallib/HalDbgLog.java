@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2017 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package hallib;
+
+import trclib.TrcDbgTrace;
+
+/**
+ * This class implements the platform dependent debug logging for the host side tools. It prints to the console
+ * instead of the Android log so that trclib classes can run on a desktop JVM.
+ */
+public class HalDbgLog
+{
+    /**
+     * This method is called to print a message with the specified message level to the debug console.
+     *
+     * @param level specifies the message level.
+     * @param msg specifies the message.
+     */
+    public static void msg(TrcDbgTrace.MsgLevel level, String msg)
+    {
+        switch (level)
+        {
+            case FATAL:
+            case ERR:
+            case WARN:
+                System.err.println(level + ": " + msg);
+                break;
+
+            case INFO:
+            case VERBOSE:
+                System.out.println(level + ": " + msg);
+                break;
+        }
+    }   //msg
+
+    /**
+     * This method is called to print a message to the debug console.
+     *
+     * @param msg specifies the message.
+     */
+    public static void traceMsg(String msg)
+    {
+        System.out.print(msg);
+    }   //traceMsg
+
+}   //class HalDbgLog
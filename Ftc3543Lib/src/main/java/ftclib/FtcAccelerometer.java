@@ -102,6 +102,15 @@ public class FtcAccelerometer extends TrcAccelerometer
         calibrate(DataType.ACCELERATION);
     }   //calibrate
 
+    /**
+     * This method starts calibrating the sensor in the background. Calibration progresses during initPeriodic, so
+     * it doesn't block robot initialization. Call isCalibrating() to check if it is done.
+     */
+    public void startCalibration()
+    {
+        startCalibration(DataType.ACCELERATION);
+    }   //startCalibration
+
     //
     // Implements TrcAccelerometer abstract methods.
     //
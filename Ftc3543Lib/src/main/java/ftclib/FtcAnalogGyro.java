@@ -103,6 +103,15 @@ public class FtcAnalogGyro extends TrcGyro
         calibrate(DataType.ROTATION_RATE);
     }   //calibrate
 
+    /**
+     * This method starts calibrating the sensor in the background. Calibration progresses during initPeriodic, so
+     * it doesn't block robot initialization. Call isCalibrating() to check if it is done.
+     */
+    public void startCalibration()
+    {
+        startCalibration(DataType.ROTATION_RATE);
+    }   //startCalibration
+
     //
     // Implements TrcGyro abstract methods.
     //
@@ -164,7 +173,10 @@ public class FtcAnalogGyro extends TrcGyro
         if (dataType == DataType.ROTATION_RATE)
         {
             long currTagId = FtcOpMode.getLoopCounter();
-            if (currTagId != dataTagId)
+            //
+            // The high rate integrator samples the gyro on its own thread, so don't return the cached value.
+            //
+            if (currTagId != dataTagId || isHighRateIntegration())
             {
                 gyroData = gyro.getVoltage()/voltPerDegPerSec;
                 dataTagId = currTagId;
@@ -99,6 +99,15 @@ public class FtcAnalogInput extends TrcAnalogInput
         calibrate(DataType.INPUT_DATA);
     }   //calibrate
 
+    /**
+     * This method starts calibrating the sensor in the background. Calibration progresses during initPeriodic, so
+     * it doesn't block robot initialization. Call isCalibrating() to check if it is done.
+     */
+    public void startCalibration()
+    {
+        startCalibration(DataType.INPUT_DATA);
+    }   //startCalibration
+
     //
     // Implements TrcAnalogInput abstract methods.
     //
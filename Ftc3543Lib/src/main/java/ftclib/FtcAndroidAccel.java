@@ -28,6 +28,7 @@ import android.hardware.SensorManager;
 import trclib.TrcAccelerometer;
 import trclib.TrcDbgTrace;
 import trclib.TrcFilter;
+import trclib.TrcSensor;
 import trclib.TrcUtil;
 
 /**
@@ -36,6 +37,7 @@ import trclib.TrcUtil;
  * axes. However, it doesn't provide any velocity or distance data.
  */
 public class FtcAndroidAccel extends TrcAccelerometer
+    implements TrcSensor.BatchedDataSource<TrcAccelerometer.DataType>
 {
     private static final String moduleName = "FtcAndroidAccel";
     private static final boolean debugEnabled = false;
@@ -129,6 +131,26 @@ public class FtcAndroidAccel extends TrcAccelerometer
         }
     }   //calibrate
 
+    //
+    // Implements TrcSensor.BatchedDataSource interface.
+    //
+
+    /**
+     * This method drains all acceleration samples queued by the Android sensor since the last call. It allows the
+     * built-in integrator to integrate every sensor event instead of one per robot loop.
+     *
+     * @param dataType specifies the data type to drain.
+     * @param timestamps specifies the array to receive the sample timestamps.
+     * @param values specifies the array to receive the sample values of all axes, values[n*numAxes + axis].
+     * @param maxSamples specifies the maximum number of samples to copy.
+     * @return number of samples copied, 0 if the data type is not acceleration.
+     */
+    @Override
+    public int drainRawData(DataType dataType, double[] timestamps, double[] values, int maxSamples)
+    {
+        return dataType == DataType.ACCELERATION? sensor.drainEvents(timestamps, values, maxSamples): 0;
+    }   //drainRawData
+
     //
     // Implements TrcAccelerometer abstract methods.
     //
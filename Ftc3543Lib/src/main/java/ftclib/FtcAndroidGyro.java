@@ -26,6 +26,7 @@ import android.hardware.Sensor;
 
 import trclib.TrcDbgTrace;
 import trclib.TrcFilter;
+import trclib.TrcSensor;
 import trclib.TrcGyro;
 import trclib.TrcUtil;
 
@@ -34,7 +35,7 @@ import trclib.TrcUtil;
  * TrcGyro. It supports 3 axes: x, y and z. It provides rotation data for all 3 axes. However, it doesn't provide
  * any heading data.
  */
-public class FtcAndroidGyro extends TrcGyro
+public class FtcAndroidGyro extends TrcGyro implements TrcSensor.BatchedDataSource<TrcGyro.DataType>
 {
     private static final String moduleName = "FtcAndroidGyro";
     private static final boolean debugEnabled = false;
@@ -107,6 +108,26 @@ public class FtcAndroidGyro extends TrcGyro
         }
     }   //calibrate
 
+    //
+    // Implements TrcSensor.BatchedDataSource interface.
+    //
+
+    /**
+     * This method drains all rotation rate samples queued by the Android sensor since the last call. It allows the
+     * built-in integrator to integrate every sensor event instead of one per robot loop.
+     *
+     * @param dataType specifies the data type to drain.
+     * @param timestamps specifies the array to receive the sample timestamps.
+     * @param values specifies the array to receive the sample values of all axes, values[n*numAxes + axis].
+     * @param maxSamples specifies the maximum number of samples to copy.
+     * @return number of samples copied, 0 if the data type is not rotation rate.
+     */
+    @Override
+    public int drainRawData(DataType dataType, double[] timestamps, double[] values, int maxSamples)
+    {
+        return dataType == DataType.ROTATION_RATE? sensor.drainEvents(timestamps, values, maxSamples): 0;
+    }   //drainRawData
+
     //
     // Implements TrcAccelerometer abstract methods.
     //
@@ -27,16 +27,21 @@ import android.hardware.Sensor;
 import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
+import android.os.SystemClock;
 
 import java.util.Locale;
 
 import trclib.TrcDbgTrace;
 import trclib.TrcFilter;
 import trclib.TrcSensor;
+import trclib.TrcSnapshotBuffer;
 import trclib.TrcUtil;
 
 /**
- * This class implements an Android sensor that may have multiple axes.
+ * This class implements an Android sensor that may have multiple axes. Sensor events arrive on the Android sensor
+ * thread, so they are pushed into a lock-free single producer single consumer ring buffer. The consumer can either
+ * get the latest sample or drain all samples queued since the last drain, so that no sample is lost between robot
+ * loops. Event timestamps are converted to the TrcUtil.getCurrentTime() time base.
  */
 public class FtcAndroidSensor extends TrcSensor implements SensorEventListener
 {
@@ -50,8 +55,22 @@ public class FtcAndroidSensor extends TrcSensor implements SensorEventListener
     private SensorManager sensorManager;
     private Sensor sensor;
     private int numAxes;
-    private SensorData<Double>[] sensorData;
     private boolean enabled = false;
+    //
+    // The ring buffer is written only by the sensor thread and read only by the consumer thread. writeCount is
+    // advanced by the producer after the slot is filled and readCount is advanced by the consumer after the slot is
+    // copied, so the volatile counters are enough to hand off the slots. When the ring is full, new events are
+    // dropped and counted. The latest sample (timestamp followed by the axis values) is published separately in a
+    // lock-free snapshot, so it is always fresh even if nobody drains the ring. Neither allocates per event.
+    //
+    private static final int RING_SIZE = 64;
+    private final double[] ringTimestamps = new double[RING_SIZE];
+    private final double[] ringValues;
+    private volatile long writeCount = 0;
+    private volatile long readCount = 0;
+    private volatile long droppedCount = 0;
+    private final TrcSnapshotBuffer latestSample;
+    private double timeOffset = 0.0;
 
     /**
      * Constructor: Creates an instance of the object.
@@ -81,11 +100,11 @@ public class FtcAndroidSensor extends TrcSensor implements SensorEventListener
         }
 
         this.numAxes = numAxes;
-        sensorData = new SensorData[numAxes];
-        for (int i = 0; i < numAxes; i++)
-        {
-            sensorData[i] = new SensorData<>(TrcUtil.getCurrentTime(), 0.0);
-        }
+        ringValues = new double[RING_SIZE*numAxes];
+        latestSample = new TrcSnapshotBuffer(numAxes + 1);
+        latestSample.beginWrite();
+        latestSample.set(0, TrcUtil.getCurrentTime());
+        latestSample.endWrite();
     }   //FtcAndroidSensor
 
     /**
@@ -190,6 +209,12 @@ public class FtcAndroidSensor extends TrcSensor implements SensorEventListener
         this.enabled = enabled;
         if (enabled)
         {
+            //
+            // Sensor event timestamps are in the elapsed realtime clock. Compute the offset to our time base and
+            // discard stale events before the listener starts producing.
+            //
+            timeOffset = TrcUtil.getCurrentTime() - SystemClock.elapsedRealtimeNanos()/1000000000.0;
+            readCount = writeCount;
             sensorManager.registerListener(this, sensor, samplingInterval);
         }
         else
@@ -226,6 +251,50 @@ public class FtcAndroidSensor extends TrcSensor implements SensorEventListener
         return enabled;
     }   //isEnabled
 
+    /**
+     * This method copies all samples queued since the last call to the caller's arrays and removes them from the
+     * queue. It must be called from one consumer thread only. Samples that don't fit stay in the queue.
+     *
+     * @param timestamps specifies the array to receive the sample timestamps.
+     * @param values specifies the array to receive the sample values of all axes, values[n*numAxes + axis].
+     * @param maxSamples specifies the maximum number of samples to copy.
+     * @return number of samples copied.
+     */
+    public int drainEvents(double[] timestamps, double[] values, int maxSamples)
+    {
+        final String funcName = "drainEvents";
+        long readIndex = readCount;
+        int count = (int)Math.min(writeCount - readIndex, maxSamples);
+
+        for (int n = 0; n < count; n++)
+        {
+            int slot = (int)((readIndex + n)%RING_SIZE);
+
+            timestamps[n] = ringTimestamps[slot];
+            System.arraycopy(ringValues, slot*numAxes, values, n*numAxes, numAxes);
+        }
+        readCount = readIndex + count;
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "maxSamples=%d", maxSamples);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API, "=%d", count);
+        }
+
+        return count;
+    }   //drainEvents
+
+    /**
+     * This method returns the number of events dropped because the queue was full. Events are dropped if nobody
+     * drains the queue, which is harmless if only the latest sample is used.
+     *
+     * @return number of dropped events.
+     */
+    public long getDroppedEventCount()
+    {
+        return droppedCount;
+    }   //getDroppedEventCount
+
     //
     // Implements TrcSensor abstract methods.
     //
@@ -241,7 +310,18 @@ public class FtcAndroidSensor extends TrcSensor implements SensorEventListener
     public SensorData<Double> getRawData(int index, Object dataType)
     {
         final String funcName = "getRawData";
-        SensorData<Double> data = new SensorData<>(sensorData[index].timestamp, sensorData[index].value);
+        int seq;
+        double timestamp;
+        double value;
+
+        do
+        {
+            seq = latestSample.beginRead();
+            timestamp = latestSample.get(0);
+            value = latestSample.get(index + 1);
+        } while (!latestSample.endRead(seq));
+
+        SensorData<Double> data = new SensorData<>(timestamp, value);
 
         if (debugEnabled)
         {
@@ -277,8 +357,8 @@ public class FtcAndroidSensor extends TrcSensor implements SensorEventListener
     }   //onAccuracyChanged
 
     /**
-     * This method is called when new data is available from the sensor. It reads the data for each axis and stores
-     * them.
+     * This method is called when new data is available from the sensor. It publishes the data as the latest sample
+     * and queues it in the ring buffer.
      *
      * @param event specifies the sensor data.
      */
@@ -294,10 +374,35 @@ public class FtcAndroidSensor extends TrcSensor implements SensorEventListener
             dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.CALLBK);
         }
 
+        double timestamp = event.timestamp/1000000000.0 + timeOffset;
+
+        latestSample.beginWrite();
+        latestSample.set(0, timestamp);
         for (int i = 0; i < numAxes; i++)
         {
-            sensorData[i].timestamp = event.timestamp/1000000000.0;
-            sensorData[i].value = (double)event.values[i];
+            latestSample.set(i + 1, event.values[i]);
+        }
+        latestSample.endWrite();
+
+        long writeIndex = writeCount;
+        if (writeIndex - readCount < RING_SIZE)
+        {
+            int slot = (int)(writeIndex%RING_SIZE);
+            int base = slot*numAxes;
+
+            ringTimestamps[slot] = timestamp;
+            for (int i = 0; i < numAxes; i++)
+            {
+                ringValues[base + i] = event.values[i];
+            }
+            //
+            // Publish the slot only after it is completely filled.
+            //
+            writeCount = writeIndex + 1;
+        }
+        else
+        {
+            droppedCount++;
         }
     }   //onSensorChanged
 
@@ -33,12 +33,13 @@ import org.firstinspires.ftc.robotcore.external.navigation.AxesOrder;
 import org.firstinspires.ftc.robotcore.external.navigation.AxesReference;
 import org.firstinspires.ftc.robotcore.external.navigation.Orientation;
 import org.firstinspires.ftc.robotcore.external.navigation.Position;
-import org.firstinspires.ftc.robotcore.external.navigation.Quaternion;
 import org.firstinspires.ftc.robotcore.external.navigation.Velocity;
 
 import trclib.TrcAccelerometer;
 import trclib.TrcDbgTrace;
 import trclib.TrcGyro;
+import trclib.TrcRobot;
+import trclib.TrcTaskMgr;
 import trclib.TrcUtil;
 
 /**
@@ -56,17 +57,78 @@ public class FtcBNO055Imu
 
     private static final boolean USE_QUATERNION = true;
 
+    /**
+     * This enum specifies the operation modes of the IMU. IMU and NDOF are on-chip fusion modes, NDOF also fuses the
+     * magnetometer for an absolute heading. GYRO_ONLY turns off fusion and streams the raw gyro rates at a higher
+     * bandwidth, the angles are then integrated from the rates by this class. It trades long term drift for lower
+     * latency and is meant for short turns under closed loop control. The accelerometer has no data in GYRO_ONLY mode.
+     */
+    public enum OperationMode
+    {
+        IMU(BNO055IMU.SensorMode.IMU),
+        NDOF(BNO055IMU.SensorMode.NDOF),
+        GYRO_ONLY(BNO055IMU.SensorMode.GYRONLY);
+
+        public final BNO055IMU.SensorMode sensorMode;
+
+        OperationMode(BNO055IMU.SensorMode sensorMode)
+        {
+            this.sensorMode = sensorMode;
+        }   //OperationMode
+
+    }   //enum OperationMode
+
+    private static final BNO055IMU.GyroBandwidth STREAMING_GYRO_BANDWIDTH = BNO055IMU.GyroBandwidth.HZ116;
+
+    /**
+     * This class contains the z-axis heading and turn rate taken from the same IMU sample.
+     */
+    public static class HeadingSnapshot
+    {
+        public double timestamp;
+        public double heading;
+        public double turnRate;
+    }   //class HeadingSnapshot
+
     /**
      * This class implements the gyro part of hte BNO055 IMU. It extends TrcGyro so that it implements the standard
-     * gyro interface.
+     * gyro interface. The rotation rates and the quaternion orientation are read together in one burst per loop.
+     * Only the Euler angles that are requested are computed from the quaternion, and the roll and yaw angles are
+     * unwrapped incrementally from successive samples, so no CardinalConverter is needed.
+     * The turn rates are kept in the axes of the chip gyro registers in all modes. The z-axis turn rate and heading
+     * are returned positive clockwise to follow our convention.
      */
-    private class Gyro extends TrcGyro
+    private class Gyro extends TrcGyro implements TrcTaskMgr.Task
     {
-        private AngularVelocity turnRateData = null;
-        private long turnRateTagId = -1;
-        private double[] eulerAngles = new double[3];
-        private Orientation headingData = null;
-        private long headingTagId = -1;
+        //
+        // Burst read from the gyro data registers through the Euler and quaternion data registers. In gyro-only
+        // mode, only the gyro data registers are read.
+        //
+        private static final int BURST_LENGTH = 20;
+        private static final int GYRO_DATA_LENGTH = 6;
+        private static final int GYRO_DATA_OFFSET = 0;
+        private static final int EULER_DATA_OFFSET = 6;
+        private static final int QUAT_DATA_OFFSET = 12;
+        private static final double GYRO_LSB_PER_DPS = 16.0;
+        private static final double EULER_LSB_PER_DEGREE = 16.0;
+        private static final double QUAT_SCALE = 1.0/(1 << 14);
+
+        private static final int X_AXIS = 0;
+        private static final int Y_AXIS = 1;
+        private static final int Z_AXIS = 2;
+
+        private long sampleTagId = -1;
+        private double sampleTimestamp = 0.0;
+        private double qw, qx, qy, qz;
+        private final double[] turnRates = new double[3];
+        private final double[] prevTurnRates = new double[3];
+        private final double[] eulerAngles = new double[3];
+        private final double[] angles = new double[3];
+        private int computedAxes = 0;
+        private final double[] prevAngles = new double[3];
+        private final double[] unwrapOffsets = new double[3];
+        private final boolean[] unwrapStarted = new boolean[3];
+        private boolean xHeadingUsed = false;
 
         /**
          * Constructor: Creates an instance of the object.
@@ -76,203 +138,318 @@ public class FtcBNO055Imu
         public Gyro(String instanceName)
         {
             //
-            // BNO055 IMU has a 3-axis gyro. The angular orientation data it returns is in Ordinal system.
-            // So we need to convert it to Cartesian system.
+            // BNO055 IMU has a 3-axis gyro. The angular orientation data it returns is in Ordinal system. It is
+            // unwrapped to Cartesian by this class.
             //
-            super(instanceName, 3,
-                    GYRO_HAS_X_AXIS | GYRO_HAS_Y_AXIS | GYRO_HAS_Z_AXIS | GYRO_CONVERT_TO_CARTESIAN, null);
+            super(instanceName, 3, GYRO_HAS_X_AXIS | GYRO_HAS_Y_AXIS | GYRO_HAS_Z_AXIS, null);
         }   //Gyro
 
         /**
-         * This method returns the Euler angles of all 3 axes from quaternion orientation.
+         * This method enables/disables the gyro. When enabled, the yaw angle is tracked every loop so that it is
+         * unwrapped correctly even if the heading is not read every loop.
          *
-         * @param angles specifies the array to hold the angles of the 3 axes.
+         * @param enabled specifies true to enable, false to disable.
          */
-        private void getEulerAngles(double[] angles)
+        @Override
+        public void setEnabled(boolean enabled)
         {
-            Quaternion q = imu.getQuaternionOrientation();
-            //
-            // 0: roll (x-axis rotation)
-            // 1: pitch (y-axis rotation)
-            // 2: yaw (z-axis rotation)
-            //
-            angles[0] = Math.toDegrees(Math.atan2(2.0*(q.w*q.x + q.y*q.z), 1.0 - 2.0*(q.x*q.x + q.y*q.y)));
-            double sinp = 2.0*(q.w*q.y - q.z*q.x);
-            angles[1] = Math.toDegrees(Math.abs(sinp) >= 1.0? Math.signum(sinp)*(Math.PI/2.0): Math.asin(sinp));
-            angles[2] = Math.toDegrees(Math.atan2(2.0*(q.w*q.z + q.x*q.y), 1.0 - 2.0*(q.y*q.y + q.z*q.z)));
-        }   //getEulerAngles
+            super.setEnabled(enabled);
+            if (enabled)
+            {
+                TrcTaskMgr.getInstance().registerTask(toString(), this, TrcTaskMgr.TaskType.PRECONTINUOUS_TASK);
+            }
+            else
+            {
+                TrcTaskMgr.getInstance().unregisterTask(this, TrcTaskMgr.TaskType.PRECONTINUOUS_TASK);
+            }
+        }   //setEnabled
 
-        //
-        // Implements TrcGyro abstract methods.
-        //
+        /**
+         * This method resets the unwrapping of the x-axis so that the heading is back in the -180 to 180 range.
+         */
+        @Override
+        public void resetXCardinalConverter()
+        {
+            unwrapOffsets[X_AXIS] = 0.0;
+        }   //resetXCardinalConverter
 
         /**
-         * This method returns the raw data of the specified type for the x-axis.
-         *
-         * @param dataType specifies the data type.
-         * @return raw data of the specified type for the x-axis.
+         * This method resets the unwrapping of the z-axis so that the heading is back in the -180 to 180 range.
          */
         @Override
-        public SensorData<Double> getRawXData(DataType dataType)
+        public void resetZCardinalConverter()
         {
-            final String funcName = "getRawXData";
-            double value = 0.0;
-            long currTagId = FtcOpMode.getLoopCounter();
+            unwrapOffsets[Z_AXIS] = 0.0;
+        }   //resetZCardinalConverter
 
-            if (dataType == DataType.ROTATION_RATE)
+        /**
+         * This method resets the integrated x-axis heading in gyro-only mode.
+         */
+        @Override
+        public void resetXIntegrator()
+        {
+            if (operationMode == OperationMode.GYRO_ONLY)
             {
-                if (currTagId != turnRateTagId)
-                {
-                    turnRateData = imu.getAngularVelocity();
-                    turnRateTagId = currTagId;
-                }
-                value = turnRateData.xRotationRate;
+                angles[X_AXIS] = 0.0;
             }
-            else if (dataType == DataType.HEADING)
+        }   //resetXIntegrator
+
+        /**
+         * This method resets the integrated y-axis heading in gyro-only mode.
+         */
+        @Override
+        public void resetYIntegrator()
+        {
+            if (operationMode == OperationMode.GYRO_ONLY)
+            {
+                angles[Y_AXIS] = 0.0;
+            }
+        }   //resetYIntegrator
+
+        /**
+         * This method resets the integrated z-axis heading in gyro-only mode.
+         */
+        @Override
+        public void resetZIntegrator()
+        {
+            if (operationMode == OperationMode.GYRO_ONLY)
+            {
+                angles[Z_AXIS] = 0.0;
+            }
+        }   //resetZIntegrator
+
+        /**
+         * This method reads a new sample from the IMU if it has not been read in this loop.
+         */
+        private void updateSample()
+        {
+            long currTagId = FtcOpMode.getLoopCounter();
+
+            if (currTagId != sampleTagId)
             {
-                if (currTagId != headingTagId)
+                double currTime = TrcUtil.getCurrentTime();
+
+                if (operationMode == OperationMode.GYRO_ONLY)
                 {
-                    if (USE_QUATERNION)
-                    {
-                        getEulerAngles(eulerAngles);
-                    }
-                    else
+                    byte[] data = imu.read(BNO055IMU.Register.GYR_DATA_X_LSB, GYRO_DATA_LENGTH);
+
+                    decodeTurnRates(data);
+                    //
+                    // There is no fusion output in gyro-only mode, so integrate the angles from the turn rates.
+                    //
+                    if (sampleTimestamp > 0.0)
                     {
-                        headingData = imu.getAngularOrientation(
-                                AxesReference.INTRINSIC, AxesOrder.XYZ, AngleUnit.DEGREES);
+                        double deltaTime = currTime - sampleTimestamp;
+
+                        for (int i = 0; i < angles.length; i++)
+                        {
+                            angles[i] += (prevTurnRates[i] + turnRates[i])*deltaTime/2.0;
+                        }
                     }
-                    headingTagId = currTagId;
+                    System.arraycopy(turnRates, 0, prevTurnRates, 0, turnRates.length);
+                    computedAxes = (1 << X_AXIS) | (1 << Y_AXIS) | (1 << Z_AXIS);
                 }
-
-                if (USE_QUATERNION)
+                else if (USE_QUATERNION)
                 {
-                    value = eulerAngles[0];
+                    byte[] data = imu.read(BNO055IMU.Register.GYR_DATA_X_LSB, BURST_LENGTH);
+
+                    decodeTurnRates(data);
+                    for (int i = 0; i < eulerAngles.length; i++)
+                    {
+                        eulerAngles[i] = TrcUtil.bytesToShort(
+                                data[EULER_DATA_OFFSET + 2*i], data[EULER_DATA_OFFSET + 2*i + 1])/EULER_LSB_PER_DEGREE;
+                    }
+                    qw = TrcUtil.bytesToShort(data[QUAT_DATA_OFFSET], data[QUAT_DATA_OFFSET + 1])*QUAT_SCALE;
+                    qx = TrcUtil.bytesToShort(data[QUAT_DATA_OFFSET + 2], data[QUAT_DATA_OFFSET + 3])*QUAT_SCALE;
+                    qy = TrcUtil.bytesToShort(data[QUAT_DATA_OFFSET + 4], data[QUAT_DATA_OFFSET + 5])*QUAT_SCALE;
+                    qz = TrcUtil.bytesToShort(data[QUAT_DATA_OFFSET + 6], data[QUAT_DATA_OFFSET + 7])*QUAT_SCALE;
+                    computedAxes = 0;
                 }
                 else
                 {
-                    value = headingData.firstAngle;
+                    AngularVelocity turnRateData = imu.getAngularVelocity();
+                    Orientation headingData = imu.getAngularOrientation(
+                            AxesReference.INTRINSIC, AxesOrder.XYZ, AngleUnit.DEGREES);
+
+                    //
+                    // The SDK maps the gyro registers to z = -x, y = y and x = z. Map them back to the register axes
+                    // so that the turn rates are the same as the ones decoded from the burst read.
+                    //
+                    turnRates[X_AXIS] = -turnRateData.zRotationRate;
+                    turnRates[Y_AXIS] = turnRateData.yRotationRate;
+                    turnRates[Z_AXIS] = turnRateData.xRotationRate;
+                    angles[X_AXIS] = unwrap(X_AXIS, headingData.firstAngle);
+                    angles[Y_AXIS] = headingData.secondAngle;
+                    angles[Z_AXIS] = unwrap(Z_AXIS, headingData.thirdAngle);
+                    computedAxes = (1 << X_AXIS) | (1 << Y_AXIS) | (1 << Z_AXIS);
                 }
+                sampleTimestamp = currTime;
+                sampleTagId = currTagId;
             }
-            SensorData<Double> data = new SensorData<>(TrcUtil.getCurrentTime(), value);
+        }   //updateSample
 
-            if (debugEnabled)
+        /**
+         * This method decodes the turn rates of all 3 axes from the gyro data registers.
+         *
+         * @param data specifies the data read starting at the gyro data registers.
+         */
+        private void decodeTurnRates(byte[] data)
+        {
+            for (int i = 0; i < turnRates.length; i++)
             {
-                dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
-                dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API,
-                        "=(timestamp:%.3f,value:%f", data.timestamp, data.value);
+                turnRates[i] = TrcUtil.bytesToShort(
+                        data[GYRO_DATA_OFFSET + 2*i], data[GYRO_DATA_OFFSET + 2*i + 1])/GYRO_LSB_PER_DPS;
             }
+        }   //decodeTurnRates
 
-            return data;
-        }   //getRawXData
+        /**
+         * This method resets the sample state. It is called when the operation mode of the IMU is changed.
+         */
+        private void resetSample()
+        {
+            sampleTagId = -1;
+            sampleTimestamp = 0.0;
+            for (int i = 0; i < angles.length; i++)
+            {
+                angles[i] = 0.0;
+                unwrapOffsets[i] = 0.0;
+                unwrapStarted[i] = false;
+            }
+        }   //resetSample
 
         /**
-         * This method returns the raw data of the specified type for the y-axis.
+         * This method copies the on-chip Euler angles of the current sample.
          *
-         * @param dataType specifies the data type.
-         * @return raw data of the specified type for the y-axis.
+         * @param angles specifies the array to hold the heading, roll and pitch angles in degrees.
          */
-        @Override
-        public SensorData<Double> getRawYData(DataType dataType)
+        private void getEulerAngles(double[] angles)
         {
-            final String funcName = "getRawYData";
-            double value = 0.0;
-            long currTagId = FtcOpMode.getLoopCounter();
+            if (operationMode == OperationMode.GYRO_ONLY || !USE_QUATERNION)
+            {
+                throw new IllegalStateException("On-chip Euler angles are not read in this mode.");
+            }
 
-            if (dataType == DataType.ROTATION_RATE)
+            updateSample();
+            System.arraycopy(eulerAngles, 0, angles, 0, eulerAngles.length);
+        }   //getEulerAngles
+
+        /**
+         * This method unwraps an angle in the -180 to 180 range by accumulating the crossovers between successive
+         * samples.
+         *
+         * @param axis specifies the axis index.
+         * @param angle specifies the wrapped angle.
+         * @return unwrapped angle.
+         */
+        private double unwrap(int axis, double angle)
+        {
+            if (unwrapStarted[axis])
             {
-                if (currTagId != turnRateTagId)
+                double delta = angle - prevAngles[axis];
+
+                if (delta > 180.0)
+                {
+                    unwrapOffsets[axis] -= 360.0;
+                }
+                else if (delta < -180.0)
                 {
-                    turnRateData = imu.getAngularVelocity();
-                    turnRateTagId = currTagId;
+                    unwrapOffsets[axis] += 360.0;
                 }
-                value = turnRateData.yRotationRate;
             }
-            else if (dataType == DataType.HEADING)
+            else
             {
-                if (currTagId != headingTagId)
+                unwrapStarted[axis] = true;
+            }
+            prevAngles[axis] = angle;
+
+            return angle + unwrapOffsets[axis];
+        }   //unwrap
+
+        /**
+         * This method returns the angle of the specified axis of the current sample. Only the requested axis is
+         * computed from the quaternion.
+         *
+         * @param axis specifies the axis index (0: roll, 1: pitch, 2: yaw).
+         * @return angle in degrees, roll and yaw are unwrapped.
+         */
+        private double getAngle(int axis)
+        {
+            updateSample();
+            if ((computedAxes & (1 << axis)) == 0)
+            {
+                if (axis == X_AXIS)
                 {
-                    if (USE_QUATERNION)
-                    {
-                        getEulerAngles(eulerAngles);
-                    }
-                    else
-                    {
-                        headingData = imu.getAngularOrientation(
-                                AxesReference.INTRINSIC, AxesOrder.XYZ, AngleUnit.DEGREES);
-                    }
-                    headingTagId = currTagId;
+                    angles[X_AXIS] = unwrap(X_AXIS, Math.toDegrees(
+                            Math.atan2(2.0*(qw*qx + qy*qz), 1.0 - 2.0*(qx*qx + qy*qy))));
                 }
-
-                if (USE_QUATERNION)
+                else if (axis == Y_AXIS)
                 {
-                    value = eulerAngles[1];
+                    double sinp = 2.0*(qw*qy - qz*qx);
+                    angles[Y_AXIS] = Math.toDegrees(
+                            Math.abs(sinp) >= 1.0? Math.signum(sinp)*(Math.PI/2.0): Math.asin(sinp));
                 }
                 else
                 {
-                    value = headingData.secondAngle;
+                    angles[Z_AXIS] = unwrap(Z_AXIS, Math.toDegrees(
+                            Math.atan2(2.0*(qw*qz + qx*qy), 1.0 - 2.0*(qy*qy + qz*qz))));
                 }
+                computedAxes |= 1 << axis;
             }
-            SensorData<Double> data = new SensorData<>(TrcUtil.getCurrentTime(), value);
 
-            if (debugEnabled)
-            {
-                dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
-                dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API,
-                        "=(timestamp:%.3f,value:%f", data.timestamp, data.value);
-            }
+            return angles[axis];
+        }   //getAngle
 
-            return data;
-        }   //getRawYData
+        /**
+         * This method fills the heading snapshot with the z-axis heading and turn rate from the same IMU sample.
+         * Both follow the convention of heading increasing clockwise.
+         *
+         * @param snapshot specifies the snapshot to be filled.
+         */
+        private void getHeadingSnapshot(HeadingSnapshot snapshot)
+        {
+            snapshot.heading = -getAngle(Z_AXIS);
+            snapshot.turnRate = -turnRates[Z_AXIS];
+            snapshot.timestamp = sampleTimestamp;
+        }   //getHeadingSnapshot
 
         /**
-         * This method returns the raw data of the specified type for the z-axis.
+         * This method returns the raw data of the specified type for the specified axis.
          *
+         * @param funcName specifies the name of the calling method for tracing.
+         * @param axis specifies the axis index.
          * @param dataType specifies the data type.
-         * @return raw data of the specified type for the z-axis.
+         * @return raw data of the specified type for the axis.
          */
-        @Override
-        public SensorData<Double> getRawZData(DataType dataType)
+        private SensorData<Double> getRawData(String funcName, int axis, DataType dataType)
         {
-            final String funcName = "getRawZData";
             double value = 0.0;
-            long currTagId = FtcOpMode.getLoopCounter();
 
             if (dataType == DataType.ROTATION_RATE)
             {
-                if (currTagId != turnRateTagId)
+                updateSample();
+                value = turnRates[axis];
+                if (axis == Z_AXIS)
                 {
-                    turnRateData = imu.getAngularVelocity();
-                    turnRateTagId = currTagId;
+                    //
+                    // The Z-axis turn rate is positive in the anticlockwise direction, negate it to match the heading.
+                    //
+                    value = -value;
                 }
-                value = turnRateData.zRotationRate;
             }
             else if (dataType == DataType.HEADING)
             {
-                if (currTagId != headingTagId)
-                {
-                    if (USE_QUATERNION)
-                    {
-                        getEulerAngles(eulerAngles);
-                    }
-                    else
-                    {
-                        headingData = imu.getAngularOrientation(
-                                AxesReference.INTRINSIC, AxesOrder.XYZ, AngleUnit.DEGREES);
-                    }
-                    headingTagId = currTagId;
-                }
-
-                if (USE_QUATERNION)
+                value = getAngle(axis);
+                if (axis == X_AXIS)
                 {
-                    value = -eulerAngles[2];
+                    xHeadingUsed = true;
                 }
-                else
+                else if (axis == Z_AXIS)
                 {
                     //
                     // The Z-axis returns positive heading in the anticlockwise direction, so we must negate it for
                     // our convention.
                     //
-                    value = -headingData.thirdAngle;
+                    value = -value;
                 }
             }
             SensorData<Double> data = new SensorData<>(TrcUtil.getCurrentTime(), value);
@@ -285,8 +462,93 @@ public class FtcBNO055Imu
             }
 
             return data;
+        }   //getRawData
+
+        //
+        // Implements TrcGyro abstract methods.
+        //
+
+        /**
+         * This method returns the raw data of the specified type for the x-axis.
+         *
+         * @param dataType specifies the data type.
+         * @return raw data of the specified type for the x-axis.
+         */
+        @Override
+        public SensorData<Double> getRawXData(DataType dataType)
+        {
+            return getRawData("getRawXData", X_AXIS, dataType);
+        }   //getRawXData
+
+        /**
+         * This method returns the raw data of the specified type for the y-axis.
+         *
+         * @param dataType specifies the data type.
+         * @return raw data of the specified type for the y-axis.
+         */
+        @Override
+        public SensorData<Double> getRawYData(DataType dataType)
+        {
+            return getRawData("getRawYData", Y_AXIS, dataType);
+        }   //getRawYData
+
+        /**
+         * This method returns the raw data of the specified type for the z-axis.
+         *
+         * @param dataType specifies the data type.
+         * @return raw data of the specified type for the z-axis.
+         */
+        @Override
+        public SensorData<Double> getRawZData(DataType dataType)
+        {
+            return getRawData("getRawZData", Z_AXIS, dataType);
         }   //getRawZData
 
+        //
+        // Implements TrcTaskMgr.Task
+        //
+
+        @Override
+        public void startTask(TrcRobot.RunMode runMode)
+        {
+        }   //startTask
+
+        @Override
+        public void stopTask(TrcRobot.RunMode runMode)
+        {
+        }   //stopTask
+
+        @Override
+        public void prePeriodicTask(TrcRobot.RunMode runMode)
+        {
+        }   //prePeriodicTask
+
+        @Override
+        public void postPeriodicTask(TrcRobot.RunMode runMode)
+        {
+        }   //postPeriodicTask
+
+        /**
+         * This method is called periodically to track the yaw angle, and the roll angle if it is used, so that
+         * crossovers are not missed.
+         *
+         * @param runMode specifies the competition mode that is running.
+         */
+        @Override
+        public void preContinuousTask(TrcRobot.RunMode runMode)
+        {
+            getAngle(Z_AXIS);
+            if (xHeadingUsed)
+            {
+                getAngle(X_AXIS);
+            }
+        }   //preContinuousTask
+
+        @Override
+        public void postContinuousTask(TrcRobot.RunMode runMode)
+        {
+        }   //postContinuousTask
+
     }   //class Gyro
 
     /**
@@ -480,14 +742,17 @@ public class FtcBNO055Imu
     public BNO055IMU imu = null;
     public TrcGyro gyro = null;
     public TrcAccelerometer accel = null;
+    private Gyro imuGyro = null;
+    private OperationMode operationMode;
 
     /**
      * Constructor: Creates an instance of the object.
      *
      * @param hardwareMap specifies the global hardware map.
      * @param instanceName specifies the instance name.
+     * @param operationMode specifies the operation mode of the IMU.
      */
-    public FtcBNO055Imu(HardwareMap hardwareMap, String instanceName)
+    public FtcBNO055Imu(HardwareMap hardwareMap, String instanceName, OperationMode operationMode)
     {
         if (debugEnabled)
         {
@@ -496,30 +761,12 @@ public class FtcBNO055Imu
         //
         // Initialize the BNO055 IMU.
         //
-        BNO055IMU.Parameters imuParams = new BNO055IMU.Parameters();
-        if (USE_QUATERNION)
-        {
-            imuParams.mode = BNO055IMU.SensorMode.IMU;
-            imuParams.useExternalCrystal = true;
-            imuParams.pitchMode = BNO055IMU.PitchMode.WINDOWS;
-        }
-        else
-        {
-            imuParams.calibrationDataFile = "BNO055IMUCalibration.json";
-        }
-        imuParams.angleUnit = BNO055IMU.AngleUnit.DEGREES;
-        imuParams.accelUnit = BNO055IMU.AccelUnit.METERS_PERSEC_PERSEC;
-        imuParams.loggingEnabled = true;
-        imuParams.loggingTag = "IMU";
-        imuParams.accelerationIntegrationAlgorithm = new JustLoggingAccelerationIntegrator();
         imu = hardwareMap.get(BNO055IMU.class, instanceName);
-        imu.initialize(imuParams);
+        initializeImu(operationMode);
         //
         // Create the gyro object of the IMU.
-        // Note that the heading data on the z-axis is in Ordinal system with a range of -180 to 180 degrees.
-        // So we need to initialize the Cartesian converter with the range values.
-        //
-        gyro = new Gyro(instanceName);
+        // Note that the heading data on the z-axis is in Ordinal system with a range of -180 to 180 degrees. The
+        // gyro unwraps it to Cartesian itself.
         //
         // Note:
         // We can convert only X (roll) and Z (yaw) axes to Cartesian.
@@ -527,14 +774,36 @@ public class FtcBNO055Imu
         // yield the same decrement. So one can't tell if it is rotating forward or backward. This makes it
         // impossible to do the Cartesian conversion.
         //
-        gyro.setXValueRange(-180.0, 180.0);
-        gyro.setZValueRange(-180.0, 180.0);
+        imuGyro = new Gyro(instanceName);
+        gyro = imuGyro;
         //
         // Create the accelerometer object of the IMU.
         //
         accel = new Accelerometer(instanceName);
     }   //FtcBNO055Imu
 
+    /**
+     * Constructor: Creates an instance of the object.
+     *
+     * @param hardwareMap specifies the global hardware map.
+     * @param instanceName specifies the instance name.
+     */
+    public FtcBNO055Imu(HardwareMap hardwareMap, String instanceName)
+    {
+        this(hardwareMap, instanceName, OperationMode.IMU);
+    }   //FtcBNO055Imu
+
+    /**
+     * Constructor: Creates an instance of the object.
+     *
+     * @param instanceName specifies the instance name.
+     * @param operationMode specifies the operation mode of the IMU.
+     */
+    public FtcBNO055Imu(String instanceName, OperationMode operationMode)
+    {
+        this(FtcOpMode.getInstance().hardwareMap, instanceName, operationMode);
+    }   //FtcBNO055Imu
+
     /**
      * Constructor: Creates an instance of the object.
      *
@@ -542,7 +811,114 @@ public class FtcBNO055Imu
      */
     public FtcBNO055Imu(String instanceName)
     {
-        this(FtcOpMode.getInstance().hardwareMap, instanceName);
+        this(FtcOpMode.getInstance().hardwareMap, instanceName, OperationMode.IMU);
     }   //FtcBNO055Imu
 
+    /**
+     * This method initializes the IMU in the specified operation mode.
+     *
+     * @param operationMode specifies the operation mode of the IMU.
+     */
+    private void initializeImu(OperationMode operationMode)
+    {
+        BNO055IMU.Parameters imuParams = new BNO055IMU.Parameters();
+
+        if (USE_QUATERNION)
+        {
+            imuParams.mode = operationMode.sensorMode;
+            imuParams.useExternalCrystal = true;
+            imuParams.pitchMode = BNO055IMU.PitchMode.WINDOWS;
+            if (operationMode == OperationMode.GYRO_ONLY)
+            {
+                //
+                // Gyro bandwidth only applies in non-fusion modes. A higher bandwidth lowers the filter delay.
+                //
+                imuParams.gyroBandwidth = STREAMING_GYRO_BANDWIDTH;
+            }
+        }
+        else
+        {
+            imuParams.calibrationDataFile = "BNO055IMUCalibration.json";
+        }
+        imuParams.angleUnit = BNO055IMU.AngleUnit.DEGREES;
+        imuParams.accelUnit = BNO055IMU.AccelUnit.METERS_PERSEC_PERSEC;
+        imuParams.loggingEnabled = true;
+        imuParams.loggingTag = "IMU";
+        imuParams.accelerationIntegrationAlgorithm = new JustLoggingAccelerationIntegrator();
+        imu.initialize(imuParams);
+        this.operationMode = USE_QUATERNION? operationMode: OperationMode.IMU;
+    }   //initializeImu
+
+    /**
+     * This method changes the operation mode of the IMU. It re-initializes the IMU which blocks for a noticeable
+     * time, so it should only be called in the init period or between autonomous steps that can afford the delay.
+     * The gyro angles restart from the new mode's reference.
+     *
+     * @param operationMode specifies the new operation mode.
+     */
+    public void setOperationMode(OperationMode operationMode)
+    {
+        final String funcName = "setOperationMode";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "mode=%s", operationMode);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        if (operationMode != this.operationMode)
+        {
+            initializeImu(operationMode);
+            imuGyro.resetSample();
+        }
+    }   //setOperationMode
+
+    /**
+     * This method returns the current operation mode of the IMU.
+     *
+     * @return current operation mode.
+     */
+    public OperationMode getOperationMode()
+    {
+        final String funcName = "getOperationMode";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API, "=%s", operationMode);
+        }
+
+        return operationMode;
+    }   //getOperationMode
+
+    /**
+     * This method returns the on-chip Euler angles from the same burst read as the gyro data. It is only available
+     * in the fusion modes.
+     *
+     * @param angles specifies the array to hold the heading, roll and pitch angles in degrees.
+     * @throws IllegalStateException if the IMU is in GYRO_ONLY mode or the quaternion burst read is disabled.
+     */
+    public void getEulerAngles(double[] angles)
+    {
+        imuGyro.getEulerAngles(angles);
+    }   //getEulerAngles
+
+    /**
+     * This method returns the z-axis heading and turn rate from the same IMU sample, which is read at most once per
+     * loop. Both follow the convention of heading increasing clockwise.
+     *
+     * @param snapshot specifies the snapshot object to fill in, null to allocate a new one.
+     * @return heading snapshot.
+     */
+    public HeadingSnapshot getHeadingSnapshot(HeadingSnapshot snapshot)
+    {
+        if (snapshot == null)
+        {
+            snapshot = new HeadingSnapshot();
+        }
+        imuGyro.getHeadingSnapshot(snapshot);
+
+        return snapshot;
+    }   //getHeadingSnapshot
+
 }   //class FtcBNO055Imu
@@ -100,6 +100,15 @@ public class FtcHiTechnicGyro extends TrcGyro
         calibrate(DataType.ROTATION_RATE);
     }   //calibrate
 
+    /**
+     * This method starts calibrating the sensor in the background. Calibration progresses during initPeriodic, so
+     * it doesn't block robot initialization. Call isCalibrating() to check if it is done.
+     */
+    public void startCalibration()
+    {
+        startCalibration(DataType.ROTATION_RATE);
+    }   //startCalibration
+
     //
     // Implements TrcGyro abstract methods.
     //
@@ -161,7 +170,10 @@ public class FtcHiTechnicGyro extends TrcGyro
         if (dataType == DataType.ROTATION_RATE)
         {
             long currTagId = FtcOpMode.getLoopCounter();
-            if (currTagId != zDataTagId)
+            //
+            // The high rate integrator samples the gyro on its own thread, so don't return the cached value.
+            //
+            if (currTagId != zDataTagId || isHighRateIntegration())
             {
                 gyroZData = gyro.rawZ();
                 zDataTagId = currTagId;
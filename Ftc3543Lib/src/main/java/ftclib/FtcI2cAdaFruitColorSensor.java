@@ -26,6 +26,7 @@ package ftclib;
 import com.qualcomm.robotcore.hardware.HardwareMap;
 
 import trclib.TrcDbgTrace;
+import trclib.TrcI2cDevice;
 import trclib.TrcSensor;
 import trclib.TrcUtil;
 
@@ -135,8 +136,27 @@ public class FtcI2cAdaFruitColorSensor extends FtcI2cDevice
         }
 
         setSensorEnabled(true);
-        byte[] data = syncRead(REG_ID, 1);
-        deviceID = TrcUtil.bytesToInt(data[0]);
+        //
+        // Read the device ID asynchronously so that constructing the device doesn't block. The reader added below
+        // waits for it to complete.
+        //
+        asyncRead(REG_ID, 1, null, new TrcI2cDevice.CompletionHandler()
+        {
+            @Override
+            public boolean readCompletion(int regAddress, int length, double timestamp, byte[] data, boolean timedout)
+            {
+                if (!timedout && data != null)
+                {
+                    deviceID = TrcUtil.bytesToInt(data[0]);
+                }
+                return false;
+            }   //readCompletion
+
+            @Override
+            public void writeCompletion(int regAddress, int length, boolean timedout)
+            {
+            }   //writeCompletion
+        });
         readerId = addReader(instanceName, READ_START, READ_LENGTH);
     }   //FtcI2cAdaFruitColorSensor
 
@@ -28,15 +28,31 @@ import com.qualcomm.robotcore.hardware.I2cDevice;
 import com.qualcomm.robotcore.hardware.I2cDeviceSynchImpl;
 import com.qualcomm.robotcore.hardware.I2cWaitControl;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import trclib.TrcDbgTrace;
+import trclib.TrcEvent;
+import trclib.TrcI2cBusScheduler;
+import trclib.TrcI2cDevice;
+import trclib.TrcRegisterMap;
+import trclib.TrcRobot;
+import trclib.TrcTaskMgr;
+import trclib.TrcUtil;
 
 /**
- * This class implements a platform dependent I2C device.
+ * This class implements a platform dependent I2C device. Besides the blocking syncRead/syncWrite, it provides
+ * asynchronous operations that are executed in order by an I/O worker thread of the device and complete through
+ * the task loop, so that device configuration doesn't block the opmode thread.
  */
-public class FtcI2cDevice
+public class FtcI2cDevice implements TrcI2cBusScheduler.BusDevice, TrcTaskMgr.Task
 {
     private static final String moduleName = "FtcI2cDevice";
     private static final boolean debugEnabled = false;
@@ -50,6 +66,91 @@ public class FtcI2cDevice
     private I2cDeviceSynchImpl syncDevice;
     private ArrayList<FtcI2cDeviceReader> readers = new ArrayList<>();
     private FtcI2cDeviceState deviceState;
+    private final String instanceName;
+    private boolean deviceEnabled = true;
+    private boolean suspended = false;
+    private double idleTimeout = 0.0;
+
+    /**
+     * This class implements an asynchronous operation executed by the I/O worker of the device. It is either a read,
+     * a write or the start of a reader that has to wait for the operations queued before it.
+     */
+    private class AsyncOperation implements Runnable
+    {
+        private final I2cDeviceSynchImpl target = syncDevice;
+        private final int regAddress;
+        private final int length;
+        private final byte[] writeData;
+        private final FtcI2cDeviceReader reader;
+        private final TrcEvent event;
+        private final TrcI2cDevice.CompletionHandler handler;
+        private byte[] data = null;
+        private double timestamp = 0.0;
+        private boolean failed = false;
+
+        /**
+         * Constructor: Create an instance of the object.
+         *
+         * @param regAddress specifies the register address.
+         * @param length specifies the number of bytes to read or write.
+         * @param writeData specifies the data to write, null if read operation.
+         * @param reader specifies the reader to start, null if read or write operation.
+         * @param event specifies the event to signal when done, can be null.
+         * @param handler specifies the completion handler to call when done, can be null.
+         */
+        AsyncOperation(
+                int regAddress, int length, byte[] writeData, FtcI2cDeviceReader reader, TrcEvent event,
+                TrcI2cDevice.CompletionHandler handler)
+        {
+            this.regAddress = regAddress;
+            this.length = length;
+            this.writeData = writeData;
+            this.reader = reader;
+            this.event = event;
+            this.handler = handler;
+        }   //AsyncOperation
+
+        /**
+         * This method is called by the I/O worker thread to perform the blocking operation.
+         */
+        @Override
+        public void run()
+        {
+            try
+            {
+                if (reader != null)
+                {
+                    reader.start();
+                }
+                else if (writeData == null)
+                {
+                    data = target.read(regAddress, length);
+                }
+                else
+                {
+                    target.write(regAddress, writeData, I2cWaitControl.WRITTEN);
+                }
+            }
+            catch (RuntimeException e)
+            {
+                failed = true;
+            }
+            timestamp = TrcUtil.getCurrentTime();
+
+            if (reader == null)
+            {
+                completedOperations.add(this);
+            }
+            pendingOperations.decrementAndGet();
+        }   //run
+
+    }   //class AsyncOperation
+
+    private static final long IO_WORKER_KEEPALIVE = 1000;   //msec
+    private ThreadPoolExecutor ioWorker = null;
+    private final AtomicInteger pendingOperations = new AtomicInteger(0);
+    private final ConcurrentLinkedQueue<AsyncOperation> completedOperations = new ConcurrentLinkedQueue<>();
+    private int outstandingOperations = 0;
 
     /**
      * Constructor: Creates an instance of the object.
@@ -66,6 +167,7 @@ public class FtcI2cDevice
             dbgTrace = new TrcDbgTrace(moduleName + "." + instanceName, tracingEnabled, traceLevel, msgLevel);
         }
 
+        this.instanceName = instanceName;
         device = hardwareMap.i2cDevice.get(instanceName);
         deviceState = new FtcI2cDeviceState(instanceName, device);
         setI2cAddress(i2cAddress, addressIs7Bit);
@@ -123,8 +225,10 @@ public class FtcI2cDevice
         for (int i = 0; i < readers.size(); i++)
         {
             FtcI2cDeviceReader reader = readers.get(i);
-            readers.set(i, new FtcI2cDeviceReader(
-                    reader.toString(), device, i2cAddr, reader.getMemStart(), reader.getMemLength()));
+            reader = new FtcI2cDeviceReader(
+                    reader.toString(), device, i2cAddr, reader.getMemStart(), reader.getMemLength());
+            readers.set(i, reader);
+            reader.start();
         }
     }   //setI2cAddress
 
@@ -136,7 +240,7 @@ public class FtcI2cDevice
     public boolean isDeviceEnabled()
     {
         final String funcName = "isDeviceEnabled";
-        boolean enabled = deviceState.isEnabled();
+        boolean enabled = deviceEnabled;
 
         if (debugEnabled)
         {
@@ -149,10 +253,12 @@ public class FtcI2cDevice
 
     /**
      * This method is called to enable/disable the I2C device so that it will not unnecessarily bog down the I2C bus
-     * bandwidth if it is not needed.
+     * bandwidth if it is not needed. Instead of calling this manually, the device can be registered with a
+     * TrcI2cBusScheduler which calls it according to the requested rate and priority of each device on the bus.
      *
      * @param enabled specifies true to enable device, false otherwise.
      */
+    @Override
     public void setDeviceEnabled(boolean enabled)
     {
         final String funcName = "setDeviceEnabled";
@@ -163,9 +269,83 @@ public class FtcI2cDevice
             dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
         }
 
-        deviceState.setEnabled(enabled);
+        deviceEnabled = enabled;
+        deviceState.setEnabled(deviceEnabled && !suspended);
     }   //setDeviceEnabled
 
+    /**
+     * This method sets the idle timeout of the device. If none of the readers of the device has its data consumed
+     * for longer than the timeout, the device is suspended so that it stops polling and frees up the I2C bus. It is
+     * resumed automatically on the next data access. Note that the first access after resuming returns the data
+     * read before the device was suspended.
+     *
+     * @param idleTimeout specifies the idle timeout in seconds, 0 to disable suspending.
+     */
+    public void setIdleTimeout(double idleTimeout)
+    {
+        final String funcName = "setIdleTimeout";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "timeout=%.3f", idleTimeout);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        this.idleTimeout = idleTimeout;
+        if (idleTimeout <= 0.0)
+        {
+            setSuspended(false);
+        }
+        updateTaskRegistration();
+    }   //setIdleTimeout
+
+    /**
+     * This method checks if the device is suspended because its data has not been consumed.
+     *
+     * @return true if the device is suspended, false otherwise.
+     */
+    public boolean isSuspended()
+    {
+        return suspended;
+    }   //isSuspended
+
+    /**
+     * This method suspends/resumes the device. The device is only polling if it is enabled and not suspended.
+     *
+     * @param suspended specifies true to suspend the device, false to resume.
+     */
+    private void setSuspended(boolean suspended)
+    {
+        final String funcName = "setSuspended";
+
+        if (this.suspended != suspended)
+        {
+            if (debugEnabled)
+            {
+                dbgTrace.traceInfo(funcName, "%s: suspended=%s", instanceName, Boolean.toString(suspended));
+            }
+
+            this.suspended = suspended;
+            deviceState.setEnabled(deviceEnabled && !suspended);
+        }
+    }   //setSuspended
+
+    /**
+     * This method returns the specified reader for a data access. If the device is suspended, it is resumed.
+     *
+     * @param readerId specifies the reader ID.
+     * @return reader.
+     */
+    private FtcI2cDeviceReader getReader(int readerId)
+    {
+        if (suspended)
+        {
+            setSuspended(false);
+        }
+
+        return readers.get(readerId);
+    }   //getReader
+
     /**
      * This method adds a device reader to read the specified block of memory.
      *
@@ -186,11 +366,35 @@ public class FtcI2cDevice
             dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
         }
 
-        readers.add(readerId, new FtcI2cDeviceReader(readerName, device, i2cAddr, memStart, memLength));
+        FtcI2cDeviceReader reader = new FtcI2cDeviceReader(readerName, device, i2cAddr, memStart, memLength);
+        readers.add(readerId, reader);
+        if (pendingOperations.get() > 0)
+        {
+            //
+            // The reader takes over the port, so it must wait for the pending asynchronous operations to finish.
+            //
+            submitOperation(new AsyncOperation(0, 0, null, reader, null, null));
+        }
+        else
+        {
+            reader.start();
+        }
 
         return readerId;
     }   //addReader
 
+    /**
+     * This method adds a device reader to burst-read the register block described by the specified register map.
+     *
+     * @param readerName specifies the instance name of the reader.
+     * @param regMap specifies the register map describing the register block.
+     * @return ID of the new reader created.
+     */
+    public int addReader(String readerName, TrcRegisterMap regMap)
+    {
+        return addReader(readerName, regMap.getStartAddress(), regMap.getLength());
+    }   //addReader
+
     /**
      * This method is doing a synchronous read from the device with the specified starting address and length of the
      * register block.
@@ -255,6 +459,163 @@ public class FtcI2cDevice
         syncDevice.write(startAddress, data, I2cWaitControl.ATOMIC);
     }   //asyncWrite
 
+    /**
+     * This method is doing an asynchronous read from the device with the specified starting address and length of
+     * the register block. The read is performed by the I/O worker of the device in the order it was queued. When it
+     * is done, the completion handler is called and the event is signaled from the task loop.
+     *
+     * @param startAddress specifies the starting register to read from.
+     * @param length specifies the length of the register block to read.
+     * @param event specifies the event to signal when done, can be null if not provided.
+     * @param handler specifies the completion handler to call when done, can be null if not provided. The
+     *                timedout parameter is true if the read failed.
+     */
+    public void asyncRead(int startAddress, int length, TrcEvent event, TrcI2cDevice.CompletionHandler handler)
+    {
+        final String funcName = "asyncRead";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "start=0x%02x,len=%d", startAddress, length);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        submitOperation(new AsyncOperation(startAddress, length, null, null, event, handler));
+    }   //asyncRead
+
+    /**
+     * This method is doing an asynchronous write to the device with the specified starting address and data of the
+     * register block. Unlike asyncWrite(startAddress, data), the completion handler is called and the event is
+     * signaled from the task loop only when the data has been written to the device.
+     *
+     * @param startAddress specifies the starting register to write to.
+     * @param data specifies the data to write to the device.
+     * @param event specifies the event to signal when done, can be null if not provided.
+     * @param handler specifies the completion handler to call when done, can be null if not provided.
+     */
+    public void asyncWrite(int startAddress, byte[] data, TrcEvent event, TrcI2cDevice.CompletionHandler handler)
+    {
+        final String funcName = "asyncWrite";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API,
+                                "start=0x%02x,data=%s", startAddress, Arrays.toString(data));
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        submitOperation(new AsyncOperation(startAddress, data.length, data, null, event, handler));
+    }   //asyncWrite
+
+    /**
+     * This method sends a byte command to the device asynchronously. The completion handler is called and the event
+     * is signaled from the task loop when the command has been written to the device.
+     *
+     * @param regAddress specifies the register address to write to.
+     * @param command specifies the command byte.
+     * @param event specifies the event to signal when done, can be null if not provided.
+     * @param handler specifies the completion handler to call when done, can be null if not provided.
+     */
+    public void asyncSendByteCommand(
+            int regAddress, byte command, TrcEvent event, TrcI2cDevice.CompletionHandler handler)
+    {
+        asyncWrite(regAddress, new byte[]{command}, event, handler);
+    }   //asyncSendByteCommand
+
+    /**
+     * This method checks if there are asynchronous operations that have not completed yet.
+     *
+     * @return true if there are pending asynchronous operations, false otherwise.
+     */
+    public boolean hasPendingOperations()
+    {
+        return outstandingOperations > 0 || pendingOperations.get() > 0;
+    }   //hasPendingOperations
+
+    /**
+     * This method queues an asynchronous operation to the I/O worker of the device. The worker thread is created on
+     * demand and exits when it has been idle for a while.
+     *
+     * @param operation specifies the operation to be queued.
+     */
+    private void submitOperation(AsyncOperation operation)
+    {
+        if (ioWorker == null)
+        {
+            ioWorker = new ThreadPoolExecutor(
+                    1, 1, IO_WORKER_KEEPALIVE, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory()
+                    {
+                        @Override
+                        public Thread newThread(Runnable runnable)
+                        {
+                            Thread thread = new Thread(runnable, instanceName + ".ioWorker");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            ioWorker.allowCoreThreadTimeOut(true);
+        }
+
+        pendingOperations.incrementAndGet();
+        if (operation.reader == null)
+        {
+            outstandingOperations++;
+            updateTaskRegistration();
+        }
+        ioWorker.execute(operation);
+    }   //submitOperation
+
+    /**
+     * This method delivers the completion of an asynchronous operation. It is called from the task loop.
+     *
+     * @param operation specifies the completed operation.
+     */
+    private void completeOperation(AsyncOperation operation)
+    {
+        boolean repeat = false;
+
+        if (operation.handler != null)
+        {
+            if (operation.writeData == null)
+            {
+                repeat = operation.handler.readCompletion(
+                        operation.regAddress, operation.length, operation.timestamp, operation.data,
+                        operation.failed);
+            }
+            else
+            {
+                operation.handler.writeCompletion(operation.regAddress, operation.length, operation.failed);
+            }
+        }
+
+        if (repeat)
+        {
+            asyncRead(operation.regAddress, operation.length, operation.event, operation.handler);
+        }
+        else if (operation.event != null)
+        {
+            operation.event.set(true);
+        }
+    }   //completeOperation
+
+    /**
+     * This method registers the task of the device if it is needed for delivering asynchronous completions or for
+     * idle detection, and unregisters it otherwise. The task also runs during init so that operations started from
+     * initRobot complete before competition starts.
+     */
+    private void updateTaskRegistration()
+    {
+        if (idleTimeout > 0.0 || outstandingOperations > 0)
+        {
+            TrcTaskMgr.getInstance().registerInitTask(instanceName, this);
+        }
+        else
+        {
+            TrcTaskMgr.getInstance().unregisterTask(this, TrcTaskMgr.TaskType.PRECONTINUOUS_TASK);
+        }
+    }   //updateTaskRegistration
+
     /**
      * This method sends a byte command to the device.
      *
@@ -311,7 +672,7 @@ public class FtcI2cDevice
     public byte[] getData(int readerId)
     {
         final String funcName = "getData";
-        byte[] data = readers.get(readerId).getData();
+        byte[] data = getReader(readerId).getData();
 
         if (debugEnabled)
         {
@@ -322,6 +683,102 @@ public class FtcI2cDevice
         return data;
     }   //getData
 
+    /**
+     * This method retrieves the data buffer from the specified reader. The buffer is little-endian and must only be
+     * accessed with absolute indexes.
+     *
+     * @param readerId specifies the reader ID for the reader to get the data from.
+     * @return device data buffer.
+     */
+    public ByteBuffer getDataBuffer(int readerId)
+    {
+        return getReader(readerId).getDataBuffer();
+    }   //getDataBuffer
+
+    /**
+     * This method returns the unsigned 8-bit value of the specified register from the specified reader.
+     *
+     * @param readerId specifies the reader ID for the reader to get the data from.
+     * @param regAddress specifies the register address.
+     * @return register value.
+     */
+    public int getUnsignedByte(int readerId, int regAddress)
+    {
+        final String funcName = "getUnsignedByte";
+        int value = getReader(readerId).getUnsignedByte(regAddress);
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "reg=0x%02x", regAddress);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API, "=%d", value);
+        }
+
+        return value;
+    }   //getUnsignedByte
+
+    /**
+     * This method returns the signed 16-bit little-endian value starting at the specified register from the
+     * specified reader.
+     *
+     * @param readerId specifies the reader ID for the reader to get the data from.
+     * @param regAddress specifies the address of the low byte.
+     * @return register value.
+     */
+    public short getShort(int readerId, int regAddress)
+    {
+        final String funcName = "getShort";
+        short value = getReader(readerId).getShort(regAddress);
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "reg=0x%02x", regAddress);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API, "=%d", value);
+        }
+
+        return value;
+    }   //getShort
+
+    /**
+     * This method returns the unsigned 16-bit little-endian value starting at the specified register from the
+     * specified reader.
+     *
+     * @param readerId specifies the reader ID for the reader to get the data from.
+     * @param regAddress specifies the address of the low byte.
+     * @return register value.
+     */
+    public int getUnsignedShort(int readerId, int regAddress)
+    {
+        final String funcName = "getUnsignedShort";
+        int value = getReader(readerId).getUnsignedShort(regAddress);
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "reg=0x%02x", regAddress);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API, "=%d", value);
+        }
+
+        return value;
+    }   //getUnsignedShort
+
+    /**
+     * This method decodes the data of the specified reader into the register map snapshot. The data is only
+     * decoded once per update of the reader data, so calling it from every getter is cheap.
+     *
+     * @param readerId specifies the reader ID for the reader to get the data from.
+     * @param regMap specifies the register map to decode the data into.
+     */
+    public void updateRegisterMap(int readerId, TrcRegisterMap regMap)
+    {
+        FtcI2cDeviceReader reader = getReader(readerId);
+        byte[] data = reader.getData();
+        double timestamp = reader.getDataTimestamp();
+
+        if (timestamp != regMap.getTimestamp())
+        {
+            regMap.decode(data, timestamp);
+        }
+    }   //updateRegisterMap
+
     /**
      * This method retrieves the timestamp of the cached data from the specified reader.
      *
@@ -342,4 +799,71 @@ public class FtcI2cDevice
         return timestamp;
     }   //getDataTimestamp
 
+    //
+    // Implements TrcTaskMgr.Task
+    //
+
+    @Override
+    public void startTask(TrcRobot.RunMode runMode)
+    {
+    }   //startTask
+
+    @Override
+    public void stopTask(TrcRobot.RunMode runMode)
+    {
+    }   //stopTask
+
+    @Override
+    public void prePeriodicTask(TrcRobot.RunMode runMode)
+    {
+    }   //prePeriodicTask
+
+    @Override
+    public void postPeriodicTask(TrcRobot.RunMode runMode)
+    {
+    }   //postPeriodicTask
+
+    /**
+     * This method is called periodically to deliver the completions of asynchronous operations and to suspend the
+     * device if none of its readers has been accessed within the idle timeout. During init, only completions are
+     * delivered.
+     *
+     * @param runMode specifies the competition mode that is running.
+     */
+    @Override
+    public void preContinuousTask(TrcRobot.RunMode runMode)
+    {
+        AsyncOperation operation;
+
+        while ((operation = completedOperations.poll()) != null)
+        {
+            outstandingOperations--;
+            completeOperation(operation);
+        }
+
+        if (outstandingOperations == 0 && idleTimeout <= 0.0)
+        {
+            updateTaskRegistration();
+        }
+        else if (runMode != TrcRobot.RunMode.DISABLED_MODE && idleTimeout > 0.0 && !suspended && readers.size() > 0)
+        {
+            double lastAccessTime = 0.0;
+
+            for (int i = 0; i < readers.size(); i++)
+            {
+                lastAccessTime = Math.max(lastAccessTime, readers.get(i).getLastAccessTime());
+            }
+
+            if (TrcUtil.getCurrentTime() - lastAccessTime > idleTimeout)
+            {
+                setSuspended(true);
+            }
+        }
+    }   //preContinuousTask
+
+    @Override
+    public void postContinuousTask(TrcRobot.RunMode runMode)
+    {
+    }   //postContinuousTask
+
 }   //class FtcI2cDevice
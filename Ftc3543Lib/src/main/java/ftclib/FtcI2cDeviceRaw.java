@@ -45,6 +45,11 @@ public class FtcI2cDeviceRaw extends TrcI2cDevice
     private static final TrcDbgTrace.MsgLevel msgLevel = TrcDbgTrace.MsgLevel.INFO;
     private TrcDbgTrace dbgTrace = null;
 
+    //
+    // The I2C port of the Core Device Interface Module has a 26-byte read buffer.
+    //
+    private static final int MAX_READ_LENGTH = 26;
+
     private I2cAddr i2cAddr;
     private I2cDevice device;
 
@@ -67,6 +72,7 @@ public class FtcI2cDeviceRaw extends TrcI2cDevice
 
         updateI2cAddress(i2cAddress, addressIs7Bit);
         device = hardwareMap.i2cDevice.get(instanceName);
+        setMaxReadLength(MAX_READ_LENGTH);
     }   //FtcI2cDeviceRaw
 
     /**
@@ -23,24 +23,40 @@
 package ftclib;
 
 import com.qualcomm.robotcore.hardware.I2cAddr;
+import com.qualcomm.robotcore.hardware.I2cController;
 import com.qualcomm.robotcore.hardware.I2cDevice;
 import com.qualcomm.robotcore.hardware.I2cDeviceReader;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.locks.Lock;
+
+import trclib.TrcUtil;
+
 /**
- * This class extends I2cDeviceReader so we can add methods to retrieve different parameters of the reader.
+ * This class wraps an I2cDeviceReader so we can add methods to retrieve different parameters of the reader. The SDK
+ * reader takes over the I2C port when it is created, so it is only created when the reader is started. This allows
+ * the device to finish its pending asynchronous operations on the port first. The data is double-buffered: once
+ * per loop, the register window is copied from the port read cache into the back buffer which then becomes the
+ * front buffer. Consumers decode from the front buffer with the typed little-endian accessors without any
+ * allocation.
  */
-public class FtcI2cDeviceReader extends I2cDeviceReader
+public class FtcI2cDeviceReader
 {
     private String instanceName;
     private I2cDevice device;
     private I2cAddr i2cAddr;
     private int memStart;
     private int memLen;
-    private byte[] data = null;
+    private final ByteBuffer[] dataBuffers = new ByteBuffer[2];
+    private int frontIndex = 0;
     private double timestamp = 0.0;
+    private double lastAccessTime;
+    private I2cDeviceReader reader = null;
+    private volatile boolean started = false;
 
     /**
-     * Constructor: Creates an instance of the object.
+     * Constructor: Creates an instance of the object. The reader does not read from the device until it is started.
      *
      * @param instanceName specifies the instance name.
      * @param device specifies the I2C device this reader is created for.
@@ -50,13 +66,20 @@ public class FtcI2cDeviceReader extends I2cDeviceReader
      */
     public FtcI2cDeviceReader(String instanceName, I2cDevice device, I2cAddr i2cAddr, int memStart, int memLen)
     {
-        super(device, i2cAddr, memStart, memLen);
-
         this.instanceName = instanceName;
         this.device = device;
         this.i2cAddr = i2cAddr;
         this.memStart = memStart;
         this.memLen = memLen;
+        //
+        // Consider the reader freshly accessed when it is created so that it is not immediately seen as idle.
+        //
+        this.lastAccessTime = TrcUtil.getCurrentTime();
+
+        for (int i = 0; i < dataBuffers.length; i++)
+        {
+            dataBuffers[i] = ByteBuffer.allocate(memLen).order(ByteOrder.LITTLE_ENDIAN);
+        }
     }   //FtcI2cDeviceReader
 
     /**
@@ -69,6 +92,29 @@ public class FtcI2cDeviceReader extends I2cDeviceReader
         return instanceName;
     }   //toString
 
+    /**
+     * This method starts the reader. It creates the SDK reader which puts the port in read mode for the register
+     * window and keeps reading it continuously. It may be called from a thread other than the opmode thread.
+     */
+    public synchronized void start()
+    {
+        if (reader == null)
+        {
+            reader = new I2cDeviceReader(device, i2cAddr, memStart, memLen);
+            started = true;
+        }
+    }   //start
+
+    /**
+     * This method checks if the reader has been started.
+     *
+     * @return true if the reader is started, false otherwise.
+     */
+    public boolean isStarted()
+    {
+        return started;
+    }   //isStarted
+
     /**
      * This method returns the I2cDevice object associated with the reader.
      *
@@ -110,25 +156,119 @@ public class FtcI2cDeviceReader extends I2cDeviceReader
     }   //getMemLength
 
     /**
-     * This method checks if it is in the same time slice loop as before. If so, it will just returned the data
-     * cached from last time. Otherwise, it will retrieve a new data buffer from the device and update the cache
-     * with it.
+     * This method checks if it is in the same time slice loop as before. If not, it copies the register window from
+     * the port read cache into the back buffer and swaps it to the front.
      *
-     * @return device data.
+     * @return front data buffer.
      */
-    public byte[] getData()
+    private ByteBuffer refreshData()
     {
         double loopStartTime = FtcOpMode.getLoopStartTime();
 
-        if (loopStartTime > timestamp)
+        lastAccessTime = loopStartTime;
+        //
+        // Until the reader is started, the port read cache belongs to other operations, so keep the buffers as is.
+        //
+        if (started && loopStartTime > timestamp)
         {
-            data = getReadBuffer();
+            ByteBuffer backBuffer = dataBuffers[frontIndex ^ 1];
+            Lock readLock = device.getI2cReadCacheLock();
+
+            readLock.lock();
+            try
+            {
+                System.arraycopy(
+                        device.getI2cReadCache(), I2cController.I2C_BUFFER_START_ADDRESS, backBuffer.array(), 0,
+                        memLen);
+            }
+            finally
+            {
+                readLock.unlock();
+            }
+            frontIndex ^= 1;
             timestamp = loopStartTime;
         }
 
-        return data;
+        return dataBuffers[frontIndex];
+    }   //refreshData
+
+    /**
+     * This method checks if it is in the same time slice loop as before. If so, it will just returned the data
+     * cached from last time. Otherwise, it will refresh the cache from the device. Note that the returned array is
+     * reused, it is only valid until the data is refreshed twice.
+     *
+     * @return device data.
+     */
+    public byte[] getData()
+    {
+        return refreshData().array();
     }   //getData
 
+    /**
+     * This method returns the data as a little-endian ByteBuffer. The buffer must only be accessed with absolute
+     * indexes and is only valid until the data is refreshed twice.
+     *
+     * @return device data buffer.
+     */
+    public ByteBuffer getDataBuffer()
+    {
+        return refreshData();
+    }   //getDataBuffer
+
+    /**
+     * This method returns the unsigned 8-bit value of the specified register.
+     *
+     * @param regAddress specifies the register address, must be within the register window of the reader.
+     * @return register value.
+     */
+    public int getUnsignedByte(int regAddress)
+    {
+        return refreshData().get(regAddress - memStart) & 0xff;
+    }   //getUnsignedByte
+
+    /**
+     * This method returns the signed 16-bit little-endian value starting at the specified register.
+     *
+     * @param regAddress specifies the address of the low byte, must be within the register window of the reader.
+     * @return register value.
+     */
+    public short getShort(int regAddress)
+    {
+        return refreshData().getShort(regAddress - memStart);
+    }   //getShort
+
+    /**
+     * This method returns the unsigned 16-bit little-endian value starting at the specified register.
+     *
+     * @param regAddress specifies the address of the low byte, must be within the register window of the reader.
+     * @return register value.
+     */
+    public int getUnsignedShort(int regAddress)
+    {
+        return refreshData().getShort(regAddress - memStart) & 0xffff;
+    }   //getUnsignedShort
+
+    /**
+     * This method returns the signed 32-bit little-endian value starting at the specified register.
+     *
+     * @param regAddress specifies the address of the low byte, must be within the register window of the reader.
+     * @return register value.
+     */
+    public int getInt(int regAddress)
+    {
+        return refreshData().getInt(regAddress - memStart);
+    }   //getInt
+
+    /**
+     * This method returns the time the data of this reader was last accessed.
+     *
+     * @return last access time.
+     */
+    public double getLastAccessTime()
+    {
+        return lastAccessTime;
+    }   //getLastAccessTime
+
     /**
      * This method returns the timestamp of the data cache.
      *
@@ -25,8 +25,8 @@ package ftclib;
 import com.qualcomm.robotcore.hardware.HardwareMap;
 
 import trclib.TrcDbgTrace;
+import trclib.TrcRegisterMap;
 import trclib.TrcSensor;
-import trclib.TrcUtil;
 
 /**
  * This class implements the Modern Robotics Color Sensor extending FtcMRI2cDevice that implements the common
@@ -97,6 +97,12 @@ public class FtcMRI2cColorSensor extends FtcMRI2cDevice implements TrcSensor.Dat
     private static final byte COLORNUM_WHITE        = 16;
 
     private int readerId = -1;
+    private final TrcRegisterMap regMap = new TrcRegisterMap(moduleName, READ_START, READ_LENGTH);
+    private final int colorNumberField = regMap.addField("colorNumber", REG_COLOR_NUMBER, 1, false);
+    private final int redField = regMap.addField("red", REG_RED, 1, false);
+    private final int greenField = regMap.addField("green", REG_GREEN, 1, false);
+    private final int blueField = regMap.addField("blue", REG_BLUE, 1, false);
+    private final int whiteField = regMap.addField("white", REG_WHITE, 1, false);
 
     /**
      * Constructor: Creates an instance of the object.
@@ -115,7 +121,7 @@ public class FtcMRI2cColorSensor extends FtcMRI2cDevice implements TrcSensor.Dat
             dbgTrace = new TrcDbgTrace(moduleName + "." + instanceName, tracingEnabled, traceLevel, msgLevel);
         }
 
-        readerId = addReader(instanceName, READ_START, READ_LENGTH);
+        readerId = addReader(instanceName, regMap);
     }   //FtcMRI2cColorSensor
 
     /**
@@ -208,9 +214,9 @@ public class FtcMRI2cColorSensor extends FtcMRI2cDevice implements TrcSensor.Dat
     public TrcSensor.SensorData<Double> getColorNumber()
     {
         final String funcName = "getColorNumber";
-        byte[] regData = getData(readerId);
+        updateRegisterMap(readerId, regMap);
         TrcSensor.SensorData<Double> data = new TrcSensor.SensorData<>(
-                getDataTimestamp(readerId), (double)TrcUtil.bytesToInt(regData[REG_COLOR_NUMBER - READ_START]));
+                regMap.getTimestamp(), regMap.getValue(colorNumberField));
 
         if (debugEnabled)
         {
@@ -230,9 +236,9 @@ public class FtcMRI2cColorSensor extends FtcMRI2cDevice implements TrcSensor.Dat
     public TrcSensor.SensorData<Double> getRedValue()
     {
         final String funcName = "getRedValue";
-        byte[] regData = getData(readerId);
+        updateRegisterMap(readerId, regMap);
         TrcSensor.SensorData<Double> data = new TrcSensor.SensorData<>(
-                getDataTimestamp(readerId), (double)TrcUtil.bytesToInt(regData[REG_RED - READ_START]));
+                regMap.getTimestamp(), regMap.getValue(redField));
 
         if (debugEnabled)
         {
@@ -252,9 +258,9 @@ public class FtcMRI2cColorSensor extends FtcMRI2cDevice implements TrcSensor.Dat
     public TrcSensor.SensorData<Double> getGreenValue()
     {
         final String funcName = "getGreenValue";
-        byte[] regData = getData(readerId);
+        updateRegisterMap(readerId, regMap);
         TrcSensor.SensorData<Double> data = new TrcSensor.SensorData<>(
-                getDataTimestamp(readerId), (double)TrcUtil.bytesToInt(regData[REG_GREEN - READ_START]));
+                regMap.getTimestamp(), regMap.getValue(greenField));
 
         if (debugEnabled)
         {
@@ -274,9 +280,9 @@ public class FtcMRI2cColorSensor extends FtcMRI2cDevice implements TrcSensor.Dat
     public TrcSensor.SensorData<Double> getBlueValue()
     {
         final String funcName = "getBlueValue";
-        byte[] regData = getData(readerId);
+        updateRegisterMap(readerId, regMap);
         TrcSensor.SensorData<Double> data = new TrcSensor.SensorData<>(
-                getDataTimestamp(readerId), (double)TrcUtil.bytesToInt(regData[REG_BLUE - READ_START]));
+                regMap.getTimestamp(), regMap.getValue(blueField));
 
         if (debugEnabled)
         {
@@ -296,9 +302,9 @@ public class FtcMRI2cColorSensor extends FtcMRI2cDevice implements TrcSensor.Dat
     public TrcSensor.SensorData<Double> getWhiteValue()
     {
         final String funcName = "getWhiteValue";
-        byte[] regData = getData(readerId);
+        updateRegisterMap(readerId, regMap);
         TrcSensor.SensorData<Double> data = new TrcSensor.SensorData<>(
-                getDataTimestamp(readerId), (double)TrcUtil.bytesToInt(regData[REG_WHITE - READ_START]));
+                regMap.getTimestamp(), regMap.getValue(whiteField));
 
         if (debugEnabled)
         {
@@ -25,6 +25,7 @@ package ftclib;
 import com.qualcomm.robotcore.hardware.HardwareMap;
 
 import trclib.TrcDbgTrace;
+import trclib.TrcI2cDevice;
 import trclib.TrcUtil;
 
 /**
@@ -82,10 +83,29 @@ public class FtcMRI2cDevice extends FtcI2cDevice
             dbgTrace = new TrcDbgTrace(moduleName + "." + instanceName, tracingEnabled, traceLevel, msgLevel);
         }
 
-        byte[] data = syncRead(HEADER_START, HEADER_LENGTH);
-        firmwareRev = TrcUtil.bytesToInt(data[REG_FIRMWARE_REVISION - HEADER_START]);
-        manufacturerCode = TrcUtil.bytesToInt(data[REG_MANUFACTURER_CODE - HEADER_START]);
-        idCode = TrcUtil.bytesToInt(data[REG_ID_CODE - HEADER_START]);
+        //
+        // Read the device header asynchronously so that constructing the device doesn't block. The readers added by
+        // the subclass wait for it to complete.
+        //
+        asyncRead(HEADER_START, HEADER_LENGTH, null, new TrcI2cDevice.CompletionHandler()
+        {
+            @Override
+            public boolean readCompletion(int regAddress, int length, double timestamp, byte[] data, boolean timedout)
+            {
+                if (!timedout && data != null)
+                {
+                    firmwareRev = TrcUtil.bytesToInt(data[REG_FIRMWARE_REVISION - HEADER_START]);
+                    manufacturerCode = TrcUtil.bytesToInt(data[REG_MANUFACTURER_CODE - HEADER_START]);
+                    idCode = TrcUtil.bytesToInt(data[REG_ID_CODE - HEADER_START]);
+                }
+                return false;
+            }   //readCompletion
+
+            @Override
+            public void writeCompletion(int regAddress, int length, boolean timedout)
+            {
+            }   //writeCompletion
+        });
     }   //FtcMRI2cDevice
 
     /**
@@ -26,8 +26,8 @@ import com.qualcomm.robotcore.hardware.HardwareMap;
 
 import trclib.TrcDbgTrace;
 import trclib.TrcGyro;
+import trclib.TrcRegisterMap;
 import trclib.TrcSensor;
-import trclib.TrcUtil;
 
 /**
  * This class implements the Modern Robotics Gyro extending FtcMRI2cDevice that implements the common features of
@@ -84,6 +84,14 @@ public class FtcMRI2cGyro extends FtcMRI2cDevice
     private static final byte CMD_WRITE_EEPROM_DATA = 0x57;
 
     private int readerId = -1;
+    private final TrcRegisterMap regMap = new TrcRegisterMap(moduleName, READ_START, READ_LENGTH);
+    private final int headingField = regMap.addField("heading", REG_HEADING_LSB, 2, false);
+    private final int integratedZField = regMap.addField("integratedZ", REG_INTEGRATED_Z_LSB, 2, true);
+    private final int rawXField = regMap.addField("rawX", REG_RAW_X_LSB, 2, true);
+    private final int rawYField = regMap.addField("rawY", REG_RAW_Y_LSB, 2, true);
+    private final int rawZField = regMap.addField("rawZ", REG_RAW_Z_LSB, 2, true);
+    private final int zOffsetField = regMap.addField("zOffset", REG_Z_OFFSET_LSB, 2, true);
+    private final int zScalingField = regMap.addField("zScaling", REG_Z_SCALING_LSB, 2, false);
     private boolean calibrating = false;
     private int xSign = 1;
     private int ySign = 1;
@@ -107,7 +115,7 @@ public class FtcMRI2cGyro extends FtcMRI2cDevice
         }
 
         resetZIntegrator();
-        readerId = addReader(instanceName, READ_START, READ_LENGTH);
+        readerId = addReader(instanceName, regMap);
     }   //FtcMRI2cGyro
 
     /**
@@ -175,15 +183,14 @@ public class FtcMRI2cGyro extends FtcMRI2cDevice
     public TrcSensor.SensorData<Double> getHeading()
     {
         final String funcName = "getHeading";
-        byte[] regData = getData(readerId);
-        int value = zSign*TrcUtil.bytesToInt(
-                regData[REG_HEADING_LSB - READ_START], regData[REG_HEADING_MSB - READ_START]);
+        updateRegisterMap(readerId, regMap);
+        int value = zSign*(int)regMap.getValue(headingField);
         //
         // MR gyro heading is decreasing when turning clockwise. This is opposite to convention.
         // So we are reversing it.
         //
         TrcSensor.SensorData<Double> data = new TrcSensor.SensorData<>(
-                getDataTimestamp(readerId), (double)((360 - value)%360));
+                regMap.getTimestamp(), (double)((360 - value)%360));
 
         if (debugEnabled)
         {
@@ -209,22 +216,13 @@ public class FtcMRI2cGyro extends FtcMRI2cDevice
             dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
         }
 
-        TrcSensor.SensorData<Double> data;
-        byte[] regData = getData(readerId);
         //
         // MR gyro IntegratedZ is decreasing when turning clockwise. This is opposite to convention.
         // So we are reversing it.
         //
-        if (regData != null)
-        {
-            int value = zSign * TrcUtil.bytesToInt(
-                    regData[REG_INTEGRATED_Z_LSB - READ_START], regData[REG_INTEGRATED_Z_MSB - READ_START]);
-            data = new TrcSensor.SensorData<>(getDataTimestamp(readerId), (double)-value);
-        }
-        else
-        {
-            data = new TrcSensor.SensorData<>(0, 0.0);
-        }
+        updateRegisterMap(readerId, regMap);
+        int value = zSign*(int)regMap.getValue(integratedZField);
+        TrcSensor.SensorData<Double> data = new TrcSensor.SensorData<>(regMap.getTimestamp(), (double)-value);
 
         if (debugEnabled)
         {
@@ -243,11 +241,9 @@ public class FtcMRI2cGyro extends FtcMRI2cDevice
     public TrcSensor.SensorData<Double> getRawX()
     {
         final String funcName = "getRawX";
-        byte[] regData = getData(readerId);
+        updateRegisterMap(readerId, regMap);
         TrcSensor.SensorData<Double> data = new TrcSensor.SensorData<>(
-                getDataTimestamp(readerId),
-                -xSign*(double)TrcUtil.bytesToInt(
-                        regData[REG_RAW_X_LSB - READ_START], regData[REG_RAW_X_MSB - READ_START]));
+                regMap.getTimestamp(), -xSign*regMap.getValue(rawXField));
 
         if (debugEnabled)
         {
@@ -267,11 +263,9 @@ public class FtcMRI2cGyro extends FtcMRI2cDevice
     public TrcSensor.SensorData<Double> getRawY()
     {
         final String funcName = "getRawY";
-        byte[] regData = getData(readerId);
+        updateRegisterMap(readerId, regMap);
         TrcSensor.SensorData<Double> data = new TrcSensor.SensorData<>(
-                getDataTimestamp(readerId),
-                -ySign*(double)TrcUtil.bytesToInt(
-                        regData[REG_RAW_Y_LSB - READ_START], regData[REG_RAW_Y_MSB - READ_START]));
+                regMap.getTimestamp(), -ySign*regMap.getValue(rawYField));
 
         if (debugEnabled)
         {
@@ -291,11 +285,9 @@ public class FtcMRI2cGyro extends FtcMRI2cDevice
     public TrcSensor.SensorData<Double> getRawZ()
     {
         final String funcName = "getRawZ";
-        byte[] regData = getData(readerId);
+        updateRegisterMap(readerId, regMap);
         TrcSensor.SensorData<Double> data = new TrcSensor.SensorData<>(
-                getDataTimestamp(readerId),
-                -zSign*(double)TrcUtil.bytesToInt(
-                        regData[REG_RAW_Z_LSB - READ_START], regData[REG_RAW_Z_MSB - READ_START]));
+                regMap.getTimestamp(), -zSign*regMap.getValue(rawZField));
 
         if (debugEnabled)
         {
@@ -315,11 +307,9 @@ public class FtcMRI2cGyro extends FtcMRI2cDevice
     public TrcSensor.SensorData<Double> getZOffset()
     {
         final String funcName = "getZOffset";
-        byte[] regData = getData(readerId);
+        updateRegisterMap(readerId, regMap);
         TrcSensor.SensorData<Double> data = new TrcSensor.SensorData<>(
-                getDataTimestamp(readerId),
-                (double)TrcUtil.bytesToInt(
-                        regData[REG_Z_OFFSET_LSB - READ_START], regData[REG_Z_OFFSET_MSB - READ_START]));
+                regMap.getTimestamp(), regMap.getValue(zOffsetField));
 
         if (debugEnabled)
         {
@@ -339,11 +329,9 @@ public class FtcMRI2cGyro extends FtcMRI2cDevice
     public TrcSensor.SensorData<Double> getZScaling()
     {
         final String funcName = "getZScaling";
-        byte[] regData = getData(readerId);
+        updateRegisterMap(readerId, regMap);
         TrcSensor.SensorData<Double> data = new TrcSensor.SensorData<>(
-                getDataTimestamp(readerId),
-                (double)TrcUtil.bytesToInt(
-                        regData[REG_Z_SCALING_LSB - READ_START], regData[REG_Z_SCALING_MSB - READ_START]));
+                regMap.getTimestamp(), regMap.getValue(zScalingField));
 
         if (debugEnabled)
         {
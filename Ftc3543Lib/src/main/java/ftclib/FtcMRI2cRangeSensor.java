@@ -25,8 +25,8 @@ package ftclib;
 import com.qualcomm.robotcore.hardware.HardwareMap;
 
 import trclib.TrcDbgTrace;
+import trclib.TrcRegisterMap;
 import trclib.TrcSensor;
-import trclib.TrcUtil;
 
 /**
  * This class implements the Modern Robotics Range Sensor extending FtcMRI2cDevice that implements the common features
@@ -60,6 +60,9 @@ public class FtcMRI2cRangeSensor extends FtcMRI2cDevice implements TrcSensor.Dat
     private static final int READ_LENGTH            = (READ_END - READ_START + 1);
 
     private int readerId = -1;
+    private final TrcRegisterMap regMap = new TrcRegisterMap(moduleName, READ_START, READ_LENGTH);
+    private final int ultrasonicField = regMap.addField("ultrasonic", REG_ULTRSONIC_DISTANCE, 1, false);
+    private final int opticalField = regMap.addField("optical", REG_OPTICAL_DISTANCE, 1, false);
 
     /**
      * Constructor: Creates an instance of the object.
@@ -78,7 +81,7 @@ public class FtcMRI2cRangeSensor extends FtcMRI2cDevice implements TrcSensor.Dat
             dbgTrace = new TrcDbgTrace(moduleName + "." + instanceName, tracingEnabled, traceLevel, msgLevel);
         }
 
-        readerId = addReader(instanceName, READ_START, READ_LENGTH);
+        readerId = addReader(instanceName, regMap);
     }   //FtcMRI2cRangeSensor
 
     /**
@@ -111,9 +114,9 @@ public class FtcMRI2cRangeSensor extends FtcMRI2cDevice implements TrcSensor.Dat
     public TrcSensor.SensorData<Double> getUltrasonicDistance()
     {
         final String funcName = "getUltrasonicDistance";
-        byte[] regData = getData(readerId);
+        updateRegisterMap(readerId, regMap);
         TrcSensor.SensorData<Double> data = new TrcSensor.SensorData<>(
-                getDataTimestamp(readerId), (double)TrcUtil.bytesToInt(regData[REG_ULTRSONIC_DISTANCE - READ_START]));
+                regMap.getTimestamp(), regMap.getValue(ultrasonicField));
 
         if (debugEnabled)
         {
@@ -133,9 +136,9 @@ public class FtcMRI2cRangeSensor extends FtcMRI2cDevice implements TrcSensor.Dat
     public TrcSensor.SensorData<Double> getOpticalDistance()
     {
         final String funcName = "getOpticalDistance";
-        byte[] regData = getData(readerId);
+        updateRegisterMap(readerId, regMap);
         TrcSensor.SensorData<Double> data = new TrcSensor.SensorData<>(
-                getDataTimestamp(readerId), (double)TrcUtil.bytesToInt(regData[REG_OPTICAL_DISTANCE - READ_START]));
+                regMap.getTimestamp(), regMap.getValue(opticalField));
 
         if (debugEnabled)
         {
@@ -122,6 +122,15 @@ public class FtcMRRangeSensor extends TrcSensor<FtcMRRangeSensor.DataType>
         calibrate(DataType.DISTANCE_INCH);
     }   //calibrate
 
+    /**
+     * This method starts calibrating the sensor in the background. Calibration progresses during initPeriodic, so
+     * it doesn't block robot initialization. Call isCalibrating() to check if it is done.
+     */
+    public void startCalibration()
+    {
+        startCalibration(DataType.DISTANCE_INCH);
+    }   //startCalibration
+
     //
     // Implements TrcAnalogInput abstract methods.
     //
@@ -62,6 +62,7 @@ public abstract class FtcOpMode extends LinearOpMode implements TrcRobot.RobotMo
 
     protected final static int NUM_DASHBOARD_LINES = 16;
     private final static long LOOP_PERIOD_NANO = 20000000;
+    private final static long INIT_TASK_PERIOD_NANO = 10000000;
     private static FtcOpMode instance = null;
     private static long opModeStartNanoTime = 0;
     private static double opModeElapsedTime = 0.0;
@@ -305,12 +306,22 @@ public abstract class FtcOpMode extends LinearOpMode implements TrcRobot.RobotMo
             dbgTrace.traceInfo(funcName, "Running initPeriodic ...");
         }
         loopCounter = 0;
+        long nextInitTaskNanoTime = TrcUtil.getCurrentTimeNanos();
         dashboard.displayPrintf(0, "initPeriodic starting...");
         while (!isStarted())
         {
             loopCounter++;
             loopStartNanoTime = TrcUtil.getCurrentTimeNanos();
             initPeriodic();
+            //
+            // Run the tasks registered for init (e.g. background sensor calibration) so that they can make progress
+            // before competition starts.
+            //
+            if (loopStartNanoTime >= nextInitTaskNanoTime)
+            {
+                nextInitTaskNanoTime = loopStartNanoTime + INIT_TASK_PERIOD_NANO;
+                taskMgr.executeInitTasks();
+            }
         }
         dashboard.displayPrintf(0, "initPeriodic completed!");
         opModeStartNanoTime = TrcUtil.getCurrentTimeNanos();
@@ -427,7 +438,9 @@ public abstract class FtcOpMode extends LinearOpMode implements TrcRobot.RobotMo
      * This method is called periodically after initRobot() is called but before competition starts. Typically,
      * you override this method and put code that will check and display robot status in this method. For example,
      * one may monitor the gyro heading in this method to make sure there is no major gyro drift before competition
-     * starts. By default, this method is doing exactly what waitForStart() does.
+     * starts. By default, this method is doing exactly what waitForStart() does. Tasks registered with
+     * TrcTaskMgr.registerInitTask are run in DISABLED_MODE, at most once per INIT_TASK_PERIOD_NANO, after calls to
+     * this method.
      */
     public synchronized void initPeriodic()
     {
@@ -105,6 +105,15 @@ public class FtcOpticalDistanceSensor extends TrcSensor<FtcOpticalDistanceSensor
         calibrate(DataType.RAW_LIGHT_DETECTED);
     }   //calibrate
 
+    /**
+     * This method starts calibrating the sensor in the background. Calibration progresses during initPeriodic, so
+     * it doesn't block robot initialization. Call isCalibrating() to check if it is done.
+     */
+    public void startCalibration()
+    {
+        startCalibration(DataType.RAW_LIGHT_DETECTED);
+    }   //startCalibration
+
     //
     // Implements TrcAnalogInput abstract methods.
     //
@@ -25,6 +25,7 @@ package ftclib;
 import com.qualcomm.robotcore.hardware.HardwareMap;
 
 import trclib.TrcDbgTrace;
+import trclib.TrcI2cDevice;
 import trclib.TrcSensor;
 import trclib.TrcUtil;
 
@@ -300,13 +301,28 @@ public class FtcZXDistanceSensor extends FtcI2cDevice implements TrcSensor.DataS
             dbgTrace = new TrcDbgTrace(moduleName + "." + instanceName, tracingEnabled, traceLevel, msgLevel);
         }
 
-        byte[] data;
-
-        data = syncRead(REG_REGVER, 1);
-        regMapVersion = TrcUtil.bytesToInt(data[0]);
+        //
+        // Read the version registers asynchronously so that constructing the device doesn't block. The readers
+        // added below wait for it to complete.
+        //
+        asyncRead(REG_REGVER, 2, null, new TrcI2cDevice.CompletionHandler()
+        {
+            @Override
+            public boolean readCompletion(int regAddress, int length, double timestamp, byte[] data, boolean timedout)
+            {
+                if (!timedout && data != null)
+                {
+                    regMapVersion = TrcUtil.bytesToInt(data[REG_REGVER - regAddress]);
+                    modelVersion = TrcUtil.bytesToInt(data[REG_MODEL - regAddress]);
+                }
+                return false;
+            }   //readCompletion
 
-        data = syncRead(REG_MODEL, 1);
-        modelVersion = TrcUtil.bytesToInt(data[0]);
+            @Override
+            public void writeCompletion(int regAddress, int length, boolean timedout)
+            {
+            }   //writeCompletion
+        });
 
         statusReaderId = addReader(instanceName + "_status", REG_STATUS, 1);
         gestureReaderId = addReader(instanceName + "_gesture", REG_STATUS, 1);
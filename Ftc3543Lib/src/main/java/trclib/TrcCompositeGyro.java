@@ -0,0 +1,768 @@
+/*
+ * Copyright (c) 2017 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package trclib;
+
+/**
+ * This class implements a composite gyro that aggregates two or more gyros into one z-axis heading and turn rate.
+ * Every loop, each member gyro is read and the members vote: the median heading and turn rate of the healthy
+ * members is the reference, members that disagree with the reference by more than the tolerances are rejected, and
+ * the remaining members are averaged weighted by their health score. The health score of a member rises while it
+ * agrees with the vote and falls while it does not. A member whose health drops below the minimum no longer takes
+ * part in the vote but is still checked against it, so it can earn its way back in.
+ *
+ * Member headings are aligned to the first gyro when enabled and when the z integrator is reset. If a member keeps
+ * disagreeing on heading while agreeing on turn rate (e.g. it reset itself), its heading is re-referenced to the
+ * fused heading.
+ *
+ * All members must report heading and turn rate in degrees, positive clockwise. The turn rate of a member can be
+ * inverted with setRateInverted if its driver reports it the other way. The turn rate of each member is also checked
+ * against the rate of change of its own heading, and a member whose turn rate keeps having the opposite sign while
+ * turning is inverted automatically.
+ *
+ * While enabled, every member is sampled on its own thread into a lock-free snapshot, and the robot loop only votes
+ * on the latest snapshots. So members are read in parallel, and a member that blocks on a bus transaction (e.g. the
+ * BNO055 IMU) delays only its own samples instead of adding the transaction time to the loop. Note that the member
+ * gyros will be read from their sampling threads, so it must be safe to do so. The sampling threads are terminated
+ * when the competition mode ends. While not enabled, the members are read one after another on the calling thread.
+ */
+public class TrcCompositeGyro extends TrcGyro implements TrcTaskMgr.Task
+{
+    private static final String moduleName = "TrcCompositeGyro";
+    private static final boolean debugEnabled = false;
+    private static final boolean tracingEnabled = false;
+    private static final TrcDbgTrace.TraceLevel traceLevel = TrcDbgTrace.TraceLevel.API;
+    private static final TrcDbgTrace.MsgLevel msgLevel = TrcDbgTrace.MsgLevel.INFO;
+    private TrcDbgTrace dbgTrace = null;
+
+    private static final double DEF_HEADING_TOLERANCE = 5.0;    // degrees.
+    private static final double DEF_RATE_TOLERANCE = 30.0;      // degrees per second.
+    private static final double DEF_HEALTH_GAIN = 0.1;
+    private static final double DEF_MIN_HEALTH = 0.5;
+    private static final int DEF_MAX_REJECTS = 25;
+    private static final double SIGN_CHECK_MIN_RATE = 20.0;     // degrees per second.
+    private static final long DEF_SAMPLING_INTERVAL = 10;       // msec.
+    //
+    // Member snapshot layout.
+    //
+    private static final int SAMPLE_TIME = 0;
+    private static final int SAMPLE_HEADING = 1;
+    private static final int SAMPLE_TURN_RATE = 2;
+    private static final int SAMPLE_SIZE = 3;
+
+    /**
+     * This class keeps track of a member gyro.
+     */
+    private class Member implements TrcThread.PeriodicTask
+    {
+        private final TrcGyro gyro;
+        private final TrcSnapshotBuffer snapshot = new TrcSnapshotBuffer(SAMPLE_SIZE);
+        private TrcThread<Object> sampler = null;
+        private double headingOffset = 0.0;
+        private double heading = 0.0;
+        private double turnRate = 0.0;
+        private double rateSign = 1.0;
+        private double prevRawHeading = 0.0;
+        private double prevReadTime = 0.0;
+        private boolean prevReadValid = false;
+        private int signMismatchCount = 0;
+        private boolean valid = false;
+        private boolean inlier = false;
+        private double health = 1.0;
+        private int rejectCount = 0;
+
+        /**
+         * Constructor: Create an instance of the object.
+         *
+         * @param gyro specifies the member gyro.
+         */
+        private Member(TrcGyro gyro)
+        {
+            this.gyro = gyro;
+        }   //Member
+
+        /**
+         * This method is called on the sampling thread to read the member gyro into the snapshot.
+         */
+        @Override
+        public void runPeriodic()
+        {
+            double currTime = TrcUtil.getCurrentTime();
+            double rawHeading = gyro.getZHeading().value;
+            double rawTurnRate = gyro.getZRotationRate().value;
+
+            snapshot.beginWrite();
+            snapshot.set(SAMPLE_TIME, currTime);
+            snapshot.set(SAMPLE_HEADING, rawHeading);
+            snapshot.set(SAMPLE_TURN_RATE, rawTurnRate);
+            snapshot.endWrite();
+        }   //runPeriodic
+
+        /**
+         * This method takes the latest sample from the snapshot. If there is no new sample since the last one, the
+         * member keeps its previous heading and turn rate.
+         */
+        private void readSnapshot()
+        {
+            int seq;
+            double sampleTime;
+            double rawHeading;
+            double rawTurnRate;
+
+            do
+            {
+                seq = snapshot.beginRead();
+                sampleTime = snapshot.get(SAMPLE_TIME);
+                rawHeading = snapshot.get(SAMPLE_HEADING);
+                rawTurnRate = snapshot.get(SAMPLE_TURN_RATE);
+            } while (!snapshot.endRead(seq));
+
+            if (seq != 0 && sampleTime > prevReadTime)
+            {
+                processSample(sampleTime, rawHeading, rawTurnRate, true);
+            }
+        }   //readSnapshot
+
+        /**
+         * This method reads the member gyro directly on the calling thread.
+         *
+         * @param checkSign specifies true to check the turn rate sign against the heading.
+         */
+        private void read(boolean checkSign)
+        {
+            double currTime = TrcUtil.getCurrentTime();
+            double rawHeading = gyro.getZHeading().value;
+
+            processSample(currTime, rawHeading, gyro.getZRotationRate().value, checkSign);
+        }   //read
+
+        /**
+         * This method updates the heading and turn rate of the member from a sample. The turn rate is normalized to
+         * positive clockwise and checked against the rate of change of the heading.
+         *
+         * @param currTime specifies the time the sample was taken.
+         * @param rawHeading specifies the heading read from the member gyro.
+         * @param rawTurnRate specifies the turn rate read from the member gyro.
+         * @param checkSign specifies true to check the turn rate sign against the heading.
+         */
+        private void processSample(double currTime, double rawHeading, double rawTurnRate, boolean checkSign)
+        {
+            final String funcName = "processSample";
+
+            turnRate = rateSign*rawTurnRate;
+            heading = rawHeading - headingOffset;
+            valid = !Double.isNaN(rawHeading) && !Double.isInfinite(rawHeading) &&
+                    !Double.isNaN(turnRate) && !Double.isInfinite(turnRate);
+
+            if (checkSign && valid && prevReadValid && currTime > prevReadTime)
+            {
+                double headingRate = (rawHeading - prevRawHeading)/(currTime - prevReadTime);
+                //
+                // Only count samples where both rates clearly show a turn, noise and lag don't count.
+                //
+                if (Math.abs(headingRate) >= SIGN_CHECK_MIN_RATE && Math.abs(turnRate) >= SIGN_CHECK_MIN_RATE)
+                {
+                    if (Math.signum(headingRate) != Math.signum(turnRate))
+                    {
+                        if (++signMismatchCount >= maxRejects)
+                        {
+                            rateSign = -rateSign;
+                            turnRate = -turnRate;
+                            signMismatchCount = 0;
+                            if (tracer != null)
+                            {
+                                tracer.traceWarn(funcName, "%s: turn rate of %s is opposite to its heading, inverted.",
+                                                 instanceName, gyro);
+                            }
+                        }
+                    }
+                    else
+                    {
+                        signMismatchCount = 0;
+                    }
+                }
+            }
+            prevRawHeading = rawHeading;
+            prevReadTime = currTime;
+            prevReadValid = valid;
+        }   //processSample
+
+    }   //class Member
+
+    private final String instanceName;
+    private final TrcDbgTrace tracer;
+    private final Member[] members;
+    private final double[] sortBuffer;
+
+    private double headingTolerance = DEF_HEADING_TOLERANCE;
+    private double rateTolerance = DEF_RATE_TOLERANCE;
+    private double healthGain = DEF_HEALTH_GAIN;
+    private double minHealth = DEF_MIN_HEALTH;
+    private int maxRejects = DEF_MAX_REJECTS;
+    private long samplingInterval = DEF_SAMPLING_INTERVAL;
+
+    private boolean enabled = false;
+    private double timestamp = 0.0;
+    private double fusedHeading = 0.0;
+    private double fusedTurnRate = 0.0;
+    private int inlierCount = 0;
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param instanceName specifies the instance name.
+     * @param tracer specifies the optional tracer to log rejected and re-referenced gyros, can be null.
+     * @param gyros specifies two or more member gyros, the first one is the heading reference.
+     */
+    public TrcCompositeGyro(final String instanceName, TrcDbgTrace tracer, TrcGyro... gyros)
+    {
+        super(instanceName, 1, GYRO_HAS_Z_AXIS, null);
+
+        if (debugEnabled)
+        {
+            dbgTrace = new TrcDbgTrace(moduleName + "." + instanceName, tracingEnabled, traceLevel, msgLevel);
+        }
+
+        if (gyros.length < 2)
+        {
+            throw new IllegalArgumentException("Composite gyro must have at least two gyros.");
+        }
+
+        this.instanceName = instanceName;
+        this.tracer = tracer;
+        members = new Member[gyros.length];
+        for (int i = 0; i < gyros.length; i++)
+        {
+            members[i] = new Member(gyros[i]);
+        }
+        sortBuffer = new double[gyros.length];
+    }   //TrcCompositeGyro
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param instanceName specifies the instance name.
+     * @param gyros specifies two or more member gyros, the first one is the heading reference.
+     */
+    public TrcCompositeGyro(final String instanceName, TrcGyro... gyros)
+    {
+        this(instanceName, null, gyros);
+    }   //TrcCompositeGyro
+
+    /**
+     * This method sets the tolerances a member must be within of the vote to be accepted.
+     *
+     * @param headingTolerance specifies the heading tolerance in degrees.
+     * @param rateTolerance specifies the turn rate tolerance in degrees per second.
+     */
+    public void setTolerances(double headingTolerance, double rateTolerance)
+    {
+        this.headingTolerance = headingTolerance;
+        this.rateTolerance = rateTolerance;
+    }   //setTolerances
+
+    /**
+     * This method sets how the health scores are updated.
+     *
+     * @param healthGain specifies the fraction (0.0 to 1.0) the health moves toward 1.0 on agreement or toward 0.0
+     *                   on disagreement every loop.
+     * @param minHealth specifies the minimum health for a member to take part in the vote.
+     */
+    public void setHealthParams(double healthGain, double minHealth)
+    {
+        this.healthGain = healthGain;
+        this.minHealth = minHealth;
+    }   //setHealthParams
+
+    /**
+     * This method sets the number of consecutive heading rejections with agreeing turn rate before a member's
+     * heading is re-referenced.
+     *
+     * @param maxRejects specifies the maximum number of rejections.
+     */
+    public void setMaxRejects(int maxRejects)
+    {
+        this.maxRejects = maxRejects;
+    }   //setMaxRejects
+
+    /**
+     * This method sets the interval the member gyros are sampled at on their own threads while enabled.
+     *
+     * @param interval specifies the sampling interval in msec.
+     */
+    public void setSamplingInterval(long interval)
+    {
+        samplingInterval = interval;
+        for (Member member: members)
+        {
+            if (member.sampler != null)
+            {
+                member.sampler.setProcessingInterval(interval);
+            }
+        }
+    }   //setSamplingInterval
+
+    /**
+     * This method is called to terminate the member sampling threads. They are started again the next time the
+     * composite gyro is enabled.
+     */
+    public void terminateTask()
+    {
+        for (Member member: members)
+        {
+            if (member.sampler != null)
+            {
+                member.sampler.terminateTask();
+                member.sampler = null;
+            }
+        }
+    }   //terminateTask
+
+    /**
+     * This method inverts the turn rate of the specified member gyro. It is for member gyros that report the turn
+     * rate positive anticlockwise while the heading is positive clockwise.
+     *
+     * @param index specifies the index of the member in the order given to the constructor.
+     * @param inverted specifies true to invert the turn rate, false otherwise.
+     */
+    public void setRateInverted(int index, boolean inverted)
+    {
+        members[index].rateSign = inverted? -1.0: 1.0;
+        members[index].signMismatchCount = 0;
+    }   //setRateInverted
+
+    /**
+     * This method checks if the turn rate of the specified member gyro is inverted, either by setRateInverted or by
+     * the automatic sign check.
+     *
+     * @param index specifies the index of the member in the order given to the constructor.
+     * @return true if the turn rate is inverted, false otherwise.
+     */
+    public boolean isRateInverted(int index)
+    {
+        return members[index].rateSign < 0.0;
+    }   //isRateInverted
+
+    /**
+     * This method returns the health score of the specified member gyro.
+     *
+     * @param index specifies the index of the member in the order given to the constructor.
+     * @return health score between 0.0 and 1.0.
+     */
+    public double getHealth(int index)
+    {
+        return members[index].health;
+    }   //getHealth
+
+    /**
+     * This method checks if the specified member gyro was accepted by the last vote.
+     *
+     * @param index specifies the index of the member in the order given to the constructor.
+     * @return true if the member was accepted, false otherwise.
+     */
+    public boolean isAccepted(int index)
+    {
+        return members[index].inlier;
+    }   //isAccepted
+
+    /**
+     * This method returns the number of member gyros accepted by the last vote.
+     *
+     * @return number of accepted members.
+     */
+    public int getAcceptedCount()
+    {
+        return inlierCount;
+    }   //getAcceptedCount
+
+    /**
+     * This method aligns the headings of all members to the first gyro.
+     */
+    private void alignHeadings()
+    {
+        members[0].headingOffset = 0.0;
+        members[0].read(false);
+        for (int i = 1; i < members.length; i++)
+        {
+            Member member = members[i];
+
+            member.headingOffset = 0.0;
+            member.read(false);
+            member.headingOffset = member.heading - members[0].heading;
+            member.heading = members[0].heading;
+            member.rejectCount = 0;
+        }
+        fusedHeading = members[0].heading;
+    }   //alignHeadings
+
+    /**
+     * This method returns the median of the values in the sort buffer. With an even count, the middle value closest
+     * to the previous value is chosen so that a two-way disagreement keeps following the member that did not jump.
+     *
+     * @param count specifies the number of values in the sort buffer.
+     * @param prevValue specifies the previous fused value.
+     * @return median value.
+     */
+    private double median(int count, double prevValue)
+    {
+        //
+        // Insertion sort, there are only a few members.
+        //
+        for (int i = 1; i < count; i++)
+        {
+            double value = sortBuffer[i];
+            int j = i - 1;
+
+            while (j >= 0 && sortBuffer[j] > value)
+            {
+                sortBuffer[j + 1] = sortBuffer[j];
+                j--;
+            }
+            sortBuffer[j + 1] = value;
+        }
+
+        double median;
+        if (count%2 == 1)
+        {
+            median = sortBuffer[count/2];
+        }
+        else
+        {
+            double low = sortBuffer[count/2 - 1];
+            double high = sortBuffer[count/2];
+            median = Math.abs(low - prevValue) <= Math.abs(high - prevValue)? low: high;
+        }
+
+        return median;
+    }   //median
+
+    /**
+     * This method takes the latest sample of all member gyros, votes and updates the fused heading, turn rate and
+     * health scores. While enabled, the samples come from the member snapshots, otherwise the members are read
+     * directly.
+     */
+    private void update()
+    {
+        final String funcName = "update";
+        boolean healthyOnly = false;
+        //
+        // Only healthy members vote unless none of them is.
+        //
+        for (Member member: members)
+        {
+            if (enabled && member.sampler != null)
+            {
+                member.readSnapshot();
+            }
+            else
+            {
+                member.read(true);
+            }
+            if (member.valid && member.health >= minHealth)
+            {
+                healthyOnly = true;
+            }
+        }
+
+        int count = 0;
+        for (Member member: members)
+        {
+            if (member.valid && (!healthyOnly || member.health >= minHealth))
+            {
+                sortBuffer[count++] = member.heading;
+            }
+        }
+
+        if (count > 0)
+        {
+            double refHeading = median(count, fusedHeading);
+
+            count = 0;
+            for (Member member: members)
+            {
+                if (member.valid && (!healthyOnly || member.health >= minHealth))
+                {
+                    sortBuffer[count++] = member.turnRate;
+                }
+            }
+            double refTurnRate = median(count, fusedTurnRate);
+
+            double weightSum = 0.0;
+            double headingSum = 0.0;
+            double turnRateSum = 0.0;
+            inlierCount = 0;
+            for (Member member: members)
+            {
+                boolean headingAgreed = member.valid && Math.abs(member.heading - refHeading) <= headingTolerance;
+                boolean rateAgreed = member.valid && Math.abs(member.turnRate - refTurnRate) <= rateTolerance;
+
+                member.inlier = headingAgreed && rateAgreed;
+                if (member.inlier)
+                {
+                    member.health += healthGain*(1.0 - member.health);
+                    member.rejectCount = 0;
+                    if (member.health >= minHealth || !healthyOnly)
+                    {
+                        weightSum += member.health;
+                        headingSum += member.health*member.heading;
+                        turnRateSum += member.health*member.turnRate;
+                        inlierCount++;
+                    }
+                }
+                else
+                {
+                    boolean wasHealthy = member.health >= minHealth;
+
+                    member.health -= healthGain*member.health;
+                    if (wasHealthy && member.health < minHealth && tracer != null)
+                    {
+                        tracer.traceWarn(funcName, "%s: rejecting %s (heading=%f/%f,rate=%f/%f)",
+                                         instanceName, member.gyro, member.heading, refHeading,
+                                         member.turnRate, refTurnRate);
+                    }
+
+                    if (!headingAgreed && rateAgreed && ++member.rejectCount >= maxRejects)
+                    {
+                        //
+                        // The member is tracking the rotation but its heading is off, re-reference it.
+                        //
+                        if (tracer != null)
+                        {
+                            tracer.traceWarn(funcName, "%s: re-referencing %s after %d rejected headings",
+                                             instanceName, member.gyro, member.rejectCount);
+                        }
+                        member.headingOffset += member.heading - refHeading;
+                        member.rejectCount = 0;
+                    }
+                }
+            }
+
+            if (weightSum > 0.0)
+            {
+                fusedHeading = headingSum/weightSum;
+                fusedTurnRate = turnRateSum/weightSum;
+            }
+            else
+            {
+                fusedHeading = refHeading;
+                fusedTurnRate = refTurnRate;
+            }
+        }
+        else
+        {
+            //
+            // No member has valid data, hold the last heading.
+            //
+            inlierCount = 0;
+        }
+        timestamp = TrcUtil.getCurrentTime();
+    }   //update
+
+    //
+    // Overriding TrcGyro methods.
+    //
+
+    /**
+     * This method enables/disables the composite gyro and all its members. When enabled, the members are sampled
+     * on their own threads and voted on every PreContinuous task.
+     *
+     * @param enabled specifies true if enabling, false otherwise.
+     */
+    @Override
+    public void setEnabled(boolean enabled)
+    {
+        final String funcName = "setEnabled";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "enabled=%s", Boolean.toString(enabled));
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        for (Member member: members)
+        {
+            member.gyro.setEnabled(enabled);
+        }
+        super.setEnabled(enabled);
+
+        if (enabled)
+        {
+            alignHeadings();
+            for (int i = 0; i < members.length; i++)
+            {
+                Member member = members[i];
+
+                if (member.sampler == null)
+                {
+                    member.sampler = new TrcThread<>(instanceName + "." + i, member);
+                    member.sampler.setProcessingInterval(samplingInterval);
+                }
+                member.sampler.setTaskEnabled(true);
+            }
+            TrcTaskMgr.getInstance().registerTask(instanceName, this, TrcTaskMgr.TaskType.PRECONTINUOUS_TASK);
+            TrcTaskMgr.getInstance().registerTask(instanceName, this, TrcTaskMgr.TaskType.STOP_TASK);
+        }
+        else
+        {
+            for (Member member: members)
+            {
+                if (member.sampler != null)
+                {
+                    member.sampler.setTaskEnabled(false);
+                }
+            }
+            TrcTaskMgr.getInstance().unregisterTask(this, TrcTaskMgr.TaskType.PRECONTINUOUS_TASK);
+        }
+        this.enabled = enabled;
+    }   //setEnabled
+
+    /**
+     * This method resets the z integrator of all members and re-aligns their headings to the first gyro.
+     */
+    @Override
+    public void resetZIntegrator()
+    {
+        for (Member member: members)
+        {
+            member.gyro.resetZIntegrator();
+        }
+        alignHeadings();
+    }   //resetZIntegrator
+
+    /**
+     * This method resets the z CardinalConverter of all members and re-aligns their headings to the first gyro.
+     */
+    @Override
+    public void resetZCardinalConverter()
+    {
+        for (Member member: members)
+        {
+            member.gyro.resetZCardinalConverter();
+        }
+        alignHeadings();
+    }   //resetZCardinalConverter
+
+    //
+    // Implements TrcGyro abstract methods.
+    //
+
+    /**
+     * This method returns the raw data of the specified type for the x-axis which is not supported.
+     *
+     * @param dataType specifies the data type.
+     * @return throws UnsupportedOperation exception.
+     */
+    @Override
+    public SensorData<Double> getRawXData(DataType dataType)
+    {
+        throw new UnsupportedOperationException("Composite gyro does not support x-axis.");
+    }   //getRawXData
+
+    /**
+     * This method returns the raw data of the specified type for the y-axis which is not supported.
+     *
+     * @param dataType specifies the data type.
+     * @return throws UnsupportedOperation exception.
+     */
+    @Override
+    public SensorData<Double> getRawYData(DataType dataType)
+    {
+        throw new UnsupportedOperationException("Composite gyro does not support y-axis.");
+    }   //getRawYData
+
+    /**
+     * This method returns the fused data of the specified type for the z-axis. If the composite gyro is not
+     * enabled, the members are read and voted on every call.
+     *
+     * @param dataType specifies the data type.
+     * @return fused data of the specified type for the z-axis.
+     */
+    @Override
+    public SensorData<Double> getRawZData(DataType dataType)
+    {
+        final String funcName = "getRawZData";
+
+        if (!enabled)
+        {
+            update();
+        }
+
+        SensorData<Double> data = new SensorData<>(
+                timestamp, dataType == DataType.HEADING? fusedHeading: fusedTurnRate);
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API,
+                               "=(timestamp:%.3f,value:%f)", data.timestamp, data.value);
+        }
+
+        return data;
+    }   //getRawZData
+
+    //
+    // Implements TrcTaskMgr.Task
+    //
+
+    @Override
+    public void startTask(TrcRobot.RunMode runMode)
+    {
+    }   //startTask
+
+    /**
+     * This method is called when the competition mode is about to end. It terminates the member sampling threads.
+     *
+     * @param runMode specifies the competition mode that is about to end.
+     */
+    @Override
+    public void stopTask(TrcRobot.RunMode runMode)
+    {
+        terminateTask();
+    }   //stopTask
+
+    @Override
+    public void prePeriodicTask(TrcRobot.RunMode runMode)
+    {
+    }   //prePeriodicTask
+
+    @Override
+    public void postPeriodicTask(TrcRobot.RunMode runMode)
+    {
+    }   //postPeriodicTask
+
+    /**
+     * This method is called periodically to read and vote on the member gyros.
+     *
+     * @param runMode specifies the competition mode that is running.
+     */
+    @Override
+    public void preContinuousTask(TrcRobot.RunMode runMode)
+    {
+        update();
+    }   //preContinuousTask
+
+    @Override
+    public void postContinuousTask(TrcRobot.RunMode runMode)
+    {
+    }   //postContinuousTask
+
+}   //class TrcCompositeGyro
@@ -22,13 +22,19 @@
 
 package trclib;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * This class does data integration for sensors that have one or more axes. Some value sensors such as gyros and
  * accelerometers may need to integrate their data to provide heading from gyro rotation rate, and velocity or
  * distance from accelerometer acceleration data. This class uses a periodic task to do integration and optionally
- * double integration.
+ * double integration. By default, integration is done once per robot loop. Since the accuracy of the integration
+ * depends on the sample rate, it can optionally run on its own thread at a fixed high rate instead. In high rate
+ * mode, the integrated data of all axes is published into a preallocated lock-free snapshot guarded by a sequence
+ * counter, so the robot loop always reads a consistent set of values without ever blocking the integrator thread.
+ * If the sensor implements TrcSensor.BatchedDataSource, every queued sample is integrated instead of only the latest.
  */
-public class TrcDataIntegrator<D> implements TrcTaskMgr.Task
+public class TrcDataIntegrator<D> implements TrcTaskMgr.Task, TrcThread.PeriodicTask
 {
     private static final String moduleName = "TrcDataIntegrator";
     private static final boolean debugEnabled = false;
@@ -37,6 +43,18 @@ public class TrcDataIntegrator<D> implements TrcTaskMgr.Task
     private static final TrcDbgTrace.MsgLevel msgLevel = TrcDbgTrace.MsgLevel.INFO;
     private TrcDbgTrace dbgTrace = null;
 
+    private static final int MAX_BATCH_SAMPLES = 32;
+
+    /**
+     * This enum specifies the numerical integration method.
+     */
+    public enum IntegrationMethod
+    {
+        RECTANGULAR,
+        TRAPEZOIDAL,
+        SIMPSON
+    }   //enum IntegrationMethod
+
     private final String instanceName;
     private TrcSensor<D> sensor;
     private D dataType;
@@ -45,6 +63,33 @@ public class TrcDataIntegrator<D> implements TrcTaskMgr.Task
     private TrcSensor.SensorData<Double>[] integratedData;
     private TrcSensor.SensorData<Double>[] doubleIntegratedData;
     private double[] prevTimes;
+    private double[] deltaTimes;
+    private double[] prevInputValues;
+    private double[] prevIntegratedValues;
+    private int[] sampleCounts;
+    //
+    // Simpson's rule integrates over pairs of intervals, so we keep the integral committed at the start of the
+    // current pair along with its first sample and interval.
+    //
+    private double[] simpsonBases;
+    private double[] simpsonStartValues;
+    private double[] simpsonFirstIntervals;
+    private IntegrationMethod integrationMethod = IntegrationMethod.RECTANGULAR;
+    private TrcThread<Object> integratorThread = null;
+    private final AtomicInteger resetRequests = new AtomicInteger(0);
+    //
+    // Snapshot of the integrator state published by the high rate integrator thread. Each axis has SNAPSHOT_STRIDE
+    // consecutive values: timestamp, input, integrated and double integrated.
+    //
+    private static final int SNAPSHOT_TIMESTAMP = 0;
+    private static final int SNAPSHOT_INPUT = 1;
+    private static final int SNAPSHOT_INTEGRATED = 2;
+    private static final int SNAPSHOT_DOUBLE_INTEGRATED = 3;
+    private static final int SNAPSHOT_STRIDE = 4;
+    private TrcSnapshotBuffer snapshot;
+    private TrcSensor.BatchedDataSource<D> batchedSource = null;
+    private double[] batchTimestamps = null;
+    private double[] batchValues = null;
 
     /**
      * Constructor: Creates an instance of the object.
@@ -75,6 +120,29 @@ public class TrcDataIntegrator<D> implements TrcTaskMgr.Task
         integratedData = new TrcSensor.SensorData[numAxes];
         doubleIntegratedData = doubleIntegration? new TrcSensor.SensorData[numAxes]: null;
         prevTimes = new double[numAxes];
+        deltaTimes = new double[numAxes];
+        prevInputValues = new double[numAxes];
+        prevIntegratedValues = new double[numAxes];
+        sampleCounts = new int[numAxes];
+        simpsonBases = new double[numAxes];
+        simpsonStartValues = new double[numAxes];
+        simpsonFirstIntervals = new double[numAxes];
+        snapshot = new TrcSnapshotBuffer(numAxes*SNAPSHOT_STRIDE);
+        //
+        // If the sensor queues its samples, integrate every one of them instead of the latest one per pass.
+        //
+        if (sensor instanceof TrcSensor.BatchedDataSource)
+        {
+            //
+            // The instanceof check can't see the type argument. A sensor of data type D only queues samples keyed
+            // by D, so the cast is safe.
+            //
+            @SuppressWarnings("unchecked")
+            TrcSensor.BatchedDataSource<D> source = (TrcSensor.BatchedDataSource<D>)sensor;
+            batchedSource = source;
+            batchTimestamps = new double[MAX_BATCH_SAMPLES];
+            batchValues = new double[MAX_BATCH_SAMPLES*numAxes];
+        }
 
         for (int i = 0; i < numAxes; i++)
         {
@@ -109,6 +177,74 @@ public class TrcDataIntegrator<D> implements TrcTaskMgr.Task
         return instanceName;
     }   //toString
 
+    /**
+     * This method sets the numerical integration method. RECTANGULAR is the default. TRAPEZOIDAL and SIMPSON are
+     * more accurate when the input changes between samples. It should be called before the integrator is enabled.
+     *
+     * @param method specifies the integration method.
+     */
+    public void setIntegrationMethod(IntegrationMethod method)
+    {
+        final String funcName = "setIntegrationMethod";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "method=%s", method.toString());
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        integrationMethod = method;
+    }   //setIntegrationMethod
+
+    /**
+     * This method switches the integrator to high rate mode. In high rate mode, the integrator samples the sensor
+     * on its own thread at the given interval instead of once per robot loop, so the integration accuracy no longer
+     * depends on the loop time. It should be called before the integrator is enabled. Note that the sensor will be
+     * read from the integrator thread, so it must be safe to do so. The integrator thread is terminated when the
+     * competition mode ends.
+     *
+     * @param interval specifies the sampling interval in msec (e.g. 2 for 500 Hz).
+     */
+    public synchronized void setHighRateMode(long interval)
+    {
+        final String funcName = "setHighRateMode";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "interval=%dms", interval);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        if (integratorThread == null)
+        {
+            integratorThread = new TrcThread<>(instanceName, this);
+            TrcTaskMgr.getInstance().registerTask(instanceName, this, TrcTaskMgr.TaskType.STOP_TASK);
+        }
+        integratorThread.setProcessingInterval(interval);
+    }   //setHighRateMode
+
+    /**
+     * This method checks if the integrator is in high rate mode.
+     *
+     * @return true if in high rate mode, false otherwise.
+     */
+    public boolean isHighRateMode()
+    {
+        return integratorThread != null;
+    }   //isHighRateMode
+
+    /**
+     * This method is called to terminate the high rate integrator thread if there is one. Once this is called,
+     * the integrator should not be enabled again.
+     */
+    public void terminateTask()
+    {
+        if (integratorThread != null)
+        {
+            integratorThread.terminateTask();
+        }
+    }   //terminateTask
+
     /**
      * This method enables the data integrator. The data integrator is not automatically enabled when created. You
      * must explicitly call this method to enable the data integrator.
@@ -128,6 +264,14 @@ public class TrcDataIntegrator<D> implements TrcTaskMgr.Task
         if (enabled)
         {
             reset();
+        }
+
+        if (integratorThread != null)
+        {
+            integratorThread.setTaskEnabled(enabled);
+        }
+        else if (enabled)
+        {
             TrcTaskMgr.getInstance().registerTask(instanceName, this, TrcTaskMgr.TaskType.PRECONTINUOUS_TASK);
         }
         else
@@ -137,7 +281,8 @@ public class TrcDataIntegrator<D> implements TrcTaskMgr.Task
     }   //setEnabled
 
     /**
-     * This method resets the indexed integratedData and doubleIntegratedData.
+     * This method resets the indexed integratedData and doubleIntegratedData. In high rate mode, the reset is
+     * carried out by the integrator thread before it takes the next sample.
      *
      * @param index specifies the index.
      */
@@ -151,11 +296,18 @@ public class TrcDataIntegrator<D> implements TrcTaskMgr.Task
             dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
         }
 
-        prevTimes[index] = TrcUtil.getCurrentTime();
-        integratedData[index].value = 0.0;
-        if (doubleIntegratedData != null)
+        if (integratorThread != null)
         {
-            doubleIntegratedData[index].value = 0.0;
+            int requests;
+
+            do
+            {
+                requests = resetRequests.get();
+            } while (!resetRequests.compareAndSet(requests, requests | (1 << index)));
+        }
+        else
+        {
+            resetAxis(index);
         }
     }   //reset
 
@@ -187,8 +339,17 @@ public class TrcDataIntegrator<D> implements TrcTaskMgr.Task
     public TrcSensor.SensorData<Double> getInputData(int index)
     {
         final String funcName = "getInputData";
-        TrcSensor.SensorData<Double> data = new TrcSensor.SensorData<>(
-                inputData[index].timestamp, inputData[index].value);
+        TrcSensor.SensorData<Double> data = null;
+
+        if (integratorThread != null)
+        {
+            data = getSnapshotData(index, SNAPSHOT_INPUT);
+        }
+
+        if (data == null)
+        {
+            data = new TrcSensor.SensorData<>(inputData[index].timestamp, inputData[index].value);
+        }
 
         if (debugEnabled)
         {
@@ -210,8 +371,20 @@ public class TrcDataIntegrator<D> implements TrcTaskMgr.Task
     public TrcSensor.SensorData<Double> getIntegratedData(int index)
     {
         final String funcName = "getIntegratedData";
-        TrcSensor.SensorData<Double> data = new TrcSensor.SensorData<>(
-                integratedData[index].timestamp, integratedData[index].value);
+        TrcSensor.SensorData<Double> data;
+
+        if (integratorThread != null)
+        {
+            data = getSnapshotData(index, SNAPSHOT_INTEGRATED);
+            if (data == null)
+            {
+                data = new TrcSensor.SensorData<>(TrcUtil.getCurrentTime(), 0.0);
+            }
+        }
+        else
+        {
+            data = new TrcSensor.SensorData<>(integratedData[index].timestamp, integratedData[index].value);
+        }
 
         if (debugEnabled)
         {
@@ -233,8 +406,21 @@ public class TrcDataIntegrator<D> implements TrcTaskMgr.Task
     public TrcSensor.SensorData<Double> getDoubleIntegratedData(int index)
     {
         final String funcName = "getDoubleIntegratedData";
-        TrcSensor.SensorData<Double> data = new TrcSensor.SensorData<>(
+        TrcSensor.SensorData<Double> data;
+
+        if (integratorThread != null)
+        {
+            data = getSnapshotData(index, SNAPSHOT_DOUBLE_INTEGRATED);
+            if (data == null)
+            {
+                data = new TrcSensor.SensorData<>(TrcUtil.getCurrentTime(), 0.0);
+            }
+        }
+        else
+        {
+            data = new TrcSensor.SensorData<>(
                     doubleIntegratedData[index].timestamp, doubleIntegratedData[index].value);
+        }
 
         if (debugEnabled)
         {
@@ -247,64 +433,128 @@ public class TrcDataIntegrator<D> implements TrcTaskMgr.Task
         return data;
     }   //getDoubleIntegratedData
 
-    //
-    // Implements TrcTaskMgr.Task
-    //
-
-    @Override
-    public void startTask(TrcRobot.RunMode runMode)
+    /**
+     * This method reads a consistent pair of timestamp and value of the given axis from the snapshot published by
+     * the high rate integrator thread. It never blocks the integrator thread, it retries if a publish happened while
+     * it was reading.
+     *
+     * @param index specifies the axis index.
+     * @param field specifies the snapshot field of the value.
+     * @return snapshot data, null if the integrator thread has not published anything yet.
+     */
+    private TrcSensor.SensorData<Double> getSnapshotData(int index, int field)
     {
-    }   //startTask
+        int base = index*SNAPSHOT_STRIDE;
+        int seq;
+        double timestamp;
+        double value;
 
-    @Override
-    public void stopTask(TrcRobot.RunMode runMode)
-    {
-    }   //stopTask
+        do
+        {
+            seq = snapshot.beginRead();
+            timestamp = snapshot.get(base + SNAPSHOT_TIMESTAMP);
+            value = snapshot.get(base + field);
+        } while (!snapshot.endRead(seq));
 
-    @Override
-    public void prePeriodicTask(TrcRobot.RunMode runMode)
-    {
-    }   //prePeriodicTask
+        return seq != 0? new TrcSensor.SensorData<>(timestamp, value): null;
+    }   //getSnapshotData
 
-    @Override
-    public void postPeriodicTask(TrcRobot.RunMode runMode)
+    /**
+     * This method resets the integration state of the indexed axis.
+     *
+     * @param index specifies the index.
+     */
+    private void resetAxis(int index)
     {
-    }   //postPeriodicTask
+        prevTimes[index] = TrcUtil.getCurrentTime();
+        integratedData[index].value = 0.0;
+        if (doubleIntegratedData != null)
+        {
+            doubleIntegratedData[index].value = 0.0;
+        }
+        prevIntegratedValues[index] = 0.0;
+        sampleCounts[index] = 0;
+        simpsonBases[index] = 0.0;
+    }   //resetAxis
 
     /**
-     * This method is called periodically to do data integration.
+     * This method integrates the input value of the indexed axis over the given interval with the selected
+     * integration method.
      *
-     * @param runMode specifies the competition mode that is running.
+     * @param index specifies the index.
+     * @param value specifies the new input value.
+     * @param deltaTime specifies the time elapsed since the previous sample.
+     * @return new integrated value.
      */
-    @Override
-    public void preContinuousTask(TrcRobot.RunMode runMode)
+    private double integrate(int index, double value, double deltaTime)
     {
-        final String funcName = "preContinuousTask";
-
-        if (debugEnabled)
+        double integral = integratedData[index].value;
+        //
+        // The first sample after a reset has no previous value, so it can only be integrated as a rectangle.
+        //
+        if (integrationMethod == IntegrationMethod.RECTANGULAR || sampleCounts[index] == 0)
         {
-            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.TASK, "mode=%s", runMode.toString());
+            integral += value*deltaTime;
+            simpsonBases[index] = integral;
+            simpsonStartValues[index] = value;
         }
-
-        boolean allZeroAxis = true;
-        double[] deltaTime = new double[inputData.length];
-        for (int i = 0; i < inputData.length; i++)
+        else if (integrationMethod == IntegrationMethod.TRAPEZOIDAL || sampleCounts[index] % 2 == 1)
         {
             //
-            // Get sensor data.
+            // For Simpson, this is the first interval of a pair. Publish the trapezoidal estimate until the pair
+            // is complete.
             //
-            inputData[i] = sensor.getProcessedData(i, dataType);
-            deltaTime[i] = inputData[i].timestamp - prevTimes[i];
+            integral += (prevInputValues[index] + value)*deltaTime/2.0;
+            simpsonFirstIntervals[index] = deltaTime;
+        }
+        else
+        {
+            //
+            // Simpson's rule for two intervals of unequal width h0 and h1.
+            //
+            double h0 = simpsonFirstIntervals[index];
+            double h1 = deltaTime;
+            double f0 = simpsonStartValues[index];
+            double f1 = prevInputValues[index];
+
+            integral = simpsonBases[index] +
+                       (h0 + h1)/6.0*((2.0 - h1/h0)*f0 + (h0 + h1)*(h0 + h1)/(h0*h1)*f1 + (2.0 - h0/h1)*value);
+            simpsonBases[index] = integral;
+            simpsonStartValues[index] = value;
+        }
+        prevInputValues[index] = value;
+        sampleCounts[index]++;
+
+        return integral;
+    }   //integrate
+
+    /**
+     * This method integrates one sample of all axes in inputData and does double integration if necessary.
+     */
+    private void integrateSample()
+    {
+        boolean allZeroAxis = true;
+        for (int i = 0; i < numAxes; i++)
+        {
+            deltaTimes[i] = inputData[i].timestamp - prevTimes[i];
             if (inputData[i].value != 0.0)
             {
                 allZeroAxis = false;
             }
             //
-            // Do integration.
+            // Do integration. Skip samples that are not newer than the previous one.
             //
             integratedData[i].timestamp = inputData[i].timestamp;
-            integratedData[i].value = integratedData[i].value + inputData[i].value*deltaTime[i];
-            prevTimes[i] = inputData[i].timestamp;
+            if (deltaTimes[i] > 0.0)
+            {
+                prevIntegratedValues[i] = integratedData[i].value;
+                integratedData[i].value = integrate(i, inputData[i].value, deltaTimes[i]);
+                prevTimes[i] = inputData[i].timestamp;
+            }
+            else
+            {
+                deltaTimes[i] = 0.0;
+            }
         }
 
         //
@@ -312,20 +562,163 @@ public class TrcDataIntegrator<D> implements TrcTaskMgr.Task
         //
         if (doubleIntegratedData != null)
         {
-            for (int i = 0; i < inputData.length; i++)
+            for (int i = 0; i < numAxes; i++)
             {
                 doubleIntegratedData[i].timestamp = inputData[i].timestamp;
                 if (allZeroAxis)
                 {
+                    //
+                    // Zero input on all axes means we are at rest, so zero the integral. Simpson keeps the integral
+                    // at the start of the current pair, so restart the pair at this sample or the next pair would
+                    // bring back the old integral.
+                    //
                     integratedData[i].value = 0.0;
+                    simpsonBases[i] = 0.0;
+                    simpsonStartValues[i] = 0.0;
+                    prevInputValues[i] = 0.0;
+                    if (sampleCounts[i] > 0)
+                    {
+                        sampleCounts[i] = 1;
+                    }
+                }
+                else if (integrationMethod == IntegrationMethod.RECTANGULAR)
+                {
+                    doubleIntegratedData[i].value += integratedData[i].value*deltaTimes[i];
                 }
                 else
                 {
-                    doubleIntegratedData[i].value =
-                            doubleIntegratedData[i].value + integratedData[i].value*deltaTime[i];
+                    doubleIntegratedData[i].value +=
+                            (prevIntegratedValues[i] + integratedData[i].value)*deltaTimes[i]/2.0;
+                }
+            }
+        }
+    }   //integrateSample
+
+    /**
+     * This method samples the sensor and updates the integrated and double integrated data of all axes.
+     */
+    private void processData()
+    {
+        int requests = resetRequests.getAndSet(0);
+        for (int i = 0; requests != 0; i++, requests >>>= 1)
+        {
+            if ((requests & 1) != 0)
+            {
+                resetAxis(i);
+            }
+        }
+
+        int numSamples;
+        if (batchedSource != null)
+        {
+            //
+            // The sensor queues every sample, integrate all of them in order.
+            //
+            numSamples = 0;
+            for (;;)
+            {
+                int count = batchedSource.drainRawData(dataType, batchTimestamps, batchValues, MAX_BATCH_SAMPLES);
+
+                for (int n = 0; n < count; n++)
+                {
+                    for (int i = 0; i < numAxes; i++)
+                    {
+                        if (inputData[i] == null)
+                        {
+                            inputData[i] = new TrcSensor.SensorData<>(0.0, 0.0);
+                        }
+                        inputData[i].timestamp = batchTimestamps[n];
+                        inputData[i].value = sensor.processRawValue(i, batchValues[n*numAxes + i]);
+                    }
+                    integrateSample();
+                }
+                numSamples += count;
+
+                if (count < MAX_BATCH_SAMPLES)
+                {
+                    break;
+                }
+            }
+        }
+        else
+        {
+            for (int i = 0; i < numAxes; i++)
+            {
+                //
+                // Get sensor data.
+                //
+                inputData[i] = sensor.getProcessedData(i, dataType);
+            }
+            integrateSample();
+            numSamples = 1;
+        }
+
+        if (integratorThread != null && numSamples > 0)
+        {
+            snapshot.beginWrite();
+            for (int i = 0; i < numAxes; i++)
+            {
+                int base = i*SNAPSHOT_STRIDE;
+
+                snapshot.set(base + SNAPSHOT_TIMESTAMP, integratedData[i].timestamp);
+                snapshot.set(base + SNAPSHOT_INPUT, inputData[i].value);
+                snapshot.set(base + SNAPSHOT_INTEGRATED, integratedData[i].value);
+                if (doubleIntegratedData != null)
+                {
+                    snapshot.set(base + SNAPSHOT_DOUBLE_INTEGRATED, doubleIntegratedData[i].value);
                 }
             }
+            snapshot.endWrite();
         }
+    }   //processData
+
+    //
+    // Implements TrcTaskMgr.Task
+    //
+
+    @Override
+    public void startTask(TrcRobot.RunMode runMode)
+    {
+    }   //startTask
+
+    /**
+     * This method is called when the competition mode is about to end. In high rate mode, it terminates the
+     * integrator thread.
+     *
+     * @param runMode specifies the competition mode that is about to end.
+     */
+    @Override
+    public void stopTask(TrcRobot.RunMode runMode)
+    {
+        terminateTask();
+    }   //stopTask
+
+    @Override
+    public void prePeriodicTask(TrcRobot.RunMode runMode)
+    {
+    }   //prePeriodicTask
+
+    @Override
+    public void postPeriodicTask(TrcRobot.RunMode runMode)
+    {
+    }   //postPeriodicTask
+
+    /**
+     * This method is called periodically to do data integration.
+     *
+     * @param runMode specifies the competition mode that is running.
+     */
+    @Override
+    public void preContinuousTask(TrcRobot.RunMode runMode)
+    {
+        final String funcName = "preContinuousTask";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.TASK, "mode=%s", runMode.toString());
+        }
+
+        processData();
 
         if (debugEnabled)
         {
@@ -338,4 +731,29 @@ public class TrcDataIntegrator<D> implements TrcTaskMgr.Task
     {
     }   //postContinuousTask
 
+    //
+    // Implements TrcThread.PeriodicTask interface.
+    //
+
+    /**
+     * This method is called periodically on the integrator thread to do data integration in high rate mode.
+     */
+    @Override
+    public void runPeriodic()
+    {
+        final String funcName = "runPeriodic";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.TASK);
+        }
+
+        processData();
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.TASK);
+        }
+    }   //runPeriodic
+
 }   //class TrcDataIntegrator
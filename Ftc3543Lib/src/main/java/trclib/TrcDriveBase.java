@@ -22,6 +22,8 @@
 
 package trclib;
 
+import java.util.Arrays;
+
 /**
  * This class implements a platform independent drive base. The drive base class implements a drive train that may
  * consist of 2 to 6 motors. It supports tank drive, arcade drive and mecanum drive with motor stalled detection and
@@ -36,6 +38,8 @@ public class TrcDriveBase implements TrcTaskMgr.Task
     private static final TrcDbgTrace.MsgLevel msgLevel = TrcDbgTrace.MsgLevel.INFO;
     private TrcDbgTrace dbgTrace = null;
 
+    private static final double MIN_CALIBRATION_TURN = 90.0;
+
     public enum MotorType
     {
         LEFT_FRONT(0),
@@ -53,6 +57,26 @@ public class TrcDriveBase implements TrcTaskMgr.Task
         }
     }   //enum MotorType
 
+    /**
+     * This class provides the measured wheel speed to a wheel velocity controller.
+     */
+    private static class WheelSpeedInput implements TrcPidController.PidInput
+    {
+        private final TrcMotorController motor;
+
+        WheelSpeedInput(TrcMotorController motor)
+        {
+            this.motor = motor;
+        }   //WheelSpeedInput
+
+        @Override
+        public double getInput(TrcPidController pidCtrl)
+        {
+            return motor.getSpeed();
+        }   //getInput
+
+    }   //class WheelSpeedInput
+
     private static double DEF_SENSITIVITY = 0.5;
     private static double DEF_MAX_OUTPUT = 1.0;
 
@@ -74,10 +98,13 @@ public class TrcDriveBase implements TrcTaskMgr.Task
     private double prevRightFrontPos = 0.0;
     private double prevLeftRearPos = 0.0;
     private double prevRightRearPos = 0.0;
+    private double prevLeftMidPos = 0.0;
+    private double prevRightMidPos = 0.0;
     private double lfStallStartTime = 0.0;
     private double rfStallStartTime = 0.0;
     private double lrStallStartTime = 0.0;
     private double rrStallStartTime = 0.0;
+    private TrcStreamingStats stallStats = null;
 
     private double xPos;
     private double yPos;
@@ -89,6 +116,42 @@ public class TrcDriveBase implements TrcTaskMgr.Task
     private double xSpeed;
     private double ySpeed;
     private double turnSpeed;
+    private double gyroTurnRate = Double.NaN;
+    private double prevGyroHeading = 0.0;
+    private double prevGyroTimestamp = 0.0;
+
+    private final TrcPose2D fieldPose = new TrcPose2D();
+    private double prevOdometryXPos = 0.0;
+    private double prevOdometryYPos = 0.0;
+    private double prevOdometryHeading = 0.0;
+    private boolean odometrySynced = false;
+
+    private final TrcMotorController[] wheelMotors = new TrcMotorController[MotorType.values().length];
+    private TrcPidController[] wheelVelocityCtrls = null;
+    private final double[] wheelTargetVelocities = new double[MotorType.values().length];
+    private final boolean[] wheelVelocityActive = new boolean[MotorType.values().length];
+    private double maxWheelSpeed = 0.0;
+    private double wheelStaticPower = 0.0;
+    private TrcRobotBattery battery = null;
+    private double nominalVoltage = 0.0;
+    private final double[] pendingWheelPowers = new double[MotorType.values().length];
+    private final double[] appliedWheelPowers = new double[MotorType.values().length];
+    private String driveOwner = null;
+    private int driveOwnerPriority = 0;
+
+    private final TrcMecanumKinematics mecanumKinematics = new TrcMecanumKinematics();
+    private final double[] wheelPowers = new double[4];
+    private final double[] driveVector = new double[2];
+    private final double[] robotMotion = new double[3];
+
+    private TrcTractionMonitor tractionMonitor = null;
+    private final double[] tractionPowers = new double[TrcTractionMonitor.NUM_WHEELS];
+    private final double[] commandedSpeeds = new double[TrcTractionMonitor.NUM_WHEELS];
+    private final double[] measuredSpeeds = new double[TrcTractionMonitor.NUM_WHEELS];
+    private final double[] wheelDeltas = new double[TrcTractionMonitor.NUM_WHEELS];
+    private final double[] odometryWheelPositions = new double[TrcTractionMonitor.NUM_WHEELS];
+    private double leftOdometryPos = 0.0;
+    private double rightOdometryPos = 0.0;
 
     /**
      * This method is called by different constructors to do common initialization.
@@ -125,6 +188,14 @@ public class TrcDriveBase implements TrcTaskMgr.Task
         if (rightRearMotor != null) numMotors++;
         this.gyro = gyro;
 
+        wheelMotors[MotorType.LEFT_FRONT.value] = leftFrontMotor;
+        wheelMotors[MotorType.RIGHT_FRONT.value] = rightFrontMotor;
+        wheelMotors[MotorType.LEFT_REAR.value] = leftRearMotor;
+        wheelMotors[MotorType.RIGHT_REAR.value] = rightRearMotor;
+        wheelMotors[MotorType.LEFT_MID.value] = leftMidMotor;
+        wheelMotors[MotorType.RIGHT_MID.value] = rightMidMotor;
+        Arrays.fill(appliedWheelPowers, Double.NaN);
+
         xScale = 1.0;
         yScale = 1.0;
         rotScale = 1.0;
@@ -133,6 +204,7 @@ public class TrcDriveBase implements TrcTaskMgr.Task
         TrcTaskMgr taskMgr = TrcTaskMgr.getInstance();
         taskMgr.registerTask(moduleName, this, TrcTaskMgr.TaskType.STOP_TASK);
         taskMgr.registerTask(moduleName, this, TrcTaskMgr.TaskType.PRECONTINUOUS_TASK);
+        taskMgr.registerTask(moduleName, this, TrcTaskMgr.TaskType.POSTPERIODIC_TASK);
     }   //commonInit
 
     /**
@@ -313,6 +385,404 @@ public class TrcDriveBase implements TrcTaskMgr.Task
         this.gyroAssistEnabled = false;
     }   //disableGyroAssist
 
+    /**
+     * This method enables closed-loop velocity control of the wheels. Once enabled, the power values given to the
+     * drive methods are taken as fractions of maxWheelSpeed and each wheel runs its own velocity PID controller
+     * every loop. The controller output is the feed forward kF*targetVelocity plus the PID terms plus a static
+     * power to overcome friction, scaled by nominalVoltage/batteryVoltage so the same target gives the same speed
+     * as the battery sags. The wheel motors must support getSpeed (e.g. TrcMotor with the speed task enabled).
+     *
+     * @param maxWheelSpeed specifies the wheel speed at full power in the units returned by the motor getSpeed.
+     * @param pidCoefficients specifies the PID coefficients of the wheel velocity controllers, kF is the feed
+     *                        forward power per unit speed at the nominal voltage.
+     * @param staticPower specifies the power needed to start a wheel moving at the nominal voltage.
+     * @param battery specifies the battery for voltage compensation, null if none.
+     * @param nominalVoltage specifies the battery voltage the coefficients were tuned at.
+     */
+    public void enableVelocityControl(
+            double maxWheelSpeed, TrcPidController.PidCoefficients pidCoefficients, double staticPower,
+            TrcRobotBattery battery, double nominalVoltage)
+    {
+        final String funcName = "enableVelocityControl";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API,
+                                "maxSpeed=%f,pid=%s,staticPower=%f,nominalVoltage=%f",
+                                maxWheelSpeed, pidCoefficients, staticPower, nominalVoltage);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        if (maxWheelSpeed <= 0.0)
+        {
+            throw new IllegalArgumentException("maxWheelSpeed must be positive.");
+        }
+
+        this.maxWheelSpeed = maxWheelSpeed;
+        this.wheelStaticPower = Math.abs(staticPower);
+        this.battery = battery;
+        this.nominalVoltage = nominalVoltage;
+
+        wheelVelocityCtrls = new TrcPidController[wheelMotors.length];
+        for (int i = 0; i < wheelMotors.length; i++)
+        {
+            if (wheelMotors[i] != null)
+            {
+                wheelVelocityCtrls[i] = new TrcPidController(
+                        moduleName + "." + MotorType.values()[i] + ".velocity", pidCoefficients, 0.0,
+                        new WheelSpeedInput(wheelMotors[i]));
+                wheelVelocityCtrls[i].setAbsoluteSetPoint(true);
+            }
+            wheelTargetVelocities[i] = 0.0;
+            wheelVelocityActive[i] = false;
+        }
+    }   //enableVelocityControl
+
+    /**
+     * This method disables closed-loop velocity control. The drive methods go back to setting the motor power
+     * directly.
+     */
+    public void disableVelocityControl()
+    {
+        final String funcName = "disableVelocityControl";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        wheelVelocityCtrls = null;
+        battery = null;
+        stop();
+    }   //disableVelocityControl
+
+    /**
+     * This method checks if closed-loop velocity control is enabled.
+     *
+     * @return true if velocity control is enabled, false otherwise.
+     */
+    public boolean isVelocityControlEnabled()
+    {
+        return wheelVelocityCtrls != null;
+    }   //isVelocityControlEnabled
+
+    /**
+     * This method returns the target velocity of a wheel under velocity control.
+     *
+     * @param motorType specifies the wheel.
+     * @return wheel target velocity.
+     */
+    public double getWheelTargetVelocity(MotorType motorType)
+    {
+        return wheelTargetVelocities[motorType.value];
+    }   //getWheelTargetVelocity
+
+    /**
+     * This method sets the power of a wheel. The power is buffered and written to the motor by the next postPeriodic
+     * task. If velocity control is enabled, the power is converted to the wheel target velocity and the motor power
+     * is set by the velocity controller in the next loop.
+     *
+     * @param motorType specifies the wheel.
+     * @param power specifies the wheel power.
+     */
+    private void setWheelPower(MotorType motorType, double power)
+    {
+        if (wheelMotors[motorType.value] != null)
+        {
+            if (wheelVelocityCtrls != null)
+            {
+                wheelTargetVelocities[motorType.value] = power*maxWheelSpeed;
+            }
+            else
+            {
+                pendingWheelPowers[motorType.value] = power;
+            }
+        }
+    }   //setWheelPower
+
+    /**
+     * This method writes the buffered wheel powers to the motors. A motor is only written if its power has changed
+     * since the last write.
+     *
+     * @param force specifies true to write all motors regardless.
+     */
+    private void flushWheelPowers(boolean force)
+    {
+        for (int i = 0; i < wheelMotors.length; i++)
+        {
+            if (wheelMotors[i] != null && (force || pendingWheelPowers[i] != appliedWheelPowers[i]))
+            {
+                wheelMotors[i].setPower(pendingWheelPowers[i]);
+                appliedWheelPowers[i] = pendingWheelPowers[i];
+            }
+        }
+    }   //flushWheelPowers
+
+    /**
+     * This method acquires ownership of the drive base. While the drive base is owned, drive commands from other
+     * callers are ignored. A caller with a higher priority preempts the current owner.
+     *
+     * @param owner specifies the name of the caller acquiring ownership.
+     * @param priority specifies the priority of the caller.
+     * @return true if the caller owns the drive base, false otherwise.
+     */
+    public synchronized boolean acquireOwnership(String owner, int priority)
+    {
+        final String funcName = "acquireOwnership";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "owner=%s,priority=%d", owner, priority);
+        }
+
+        if (owner == null)
+        {
+            throw new IllegalArgumentException("owner must not be null.");
+        }
+
+        boolean acquired = driveOwner == null || driveOwner.equals(owner) || priority > driveOwnerPriority;
+
+        if (acquired)
+        {
+            if (debugEnabled && driveOwner != null && !driveOwner.equals(owner))
+            {
+                dbgTrace.traceInfo(funcName, "%s preempted %s.", owner, driveOwner);
+            }
+            driveOwner = owner;
+            driveOwnerPriority = priority;
+        }
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API, "=%s", Boolean.toString(acquired));
+        }
+
+        return acquired;
+    }   //acquireOwnership
+
+    /**
+     * This method releases ownership of the drive base. It does nothing if the caller is not the owner.
+     *
+     * @param owner specifies the name of the caller releasing ownership.
+     * @return true if ownership was released, false otherwise.
+     */
+    public synchronized boolean releaseOwnership(String owner)
+    {
+        final String funcName = "releaseOwnership";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "owner=%s", owner);
+        }
+
+        boolean released = driveOwner != null && driveOwner.equals(owner);
+
+        if (released)
+        {
+            driveOwner = null;
+            driveOwnerPriority = 0;
+        }
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API, "=%s", Boolean.toString(released));
+        }
+
+        return released;
+    }   //releaseOwnership
+
+    /**
+     * This method returns the current owner of the drive base.
+     *
+     * @return name of the owner, null if the drive base is not owned.
+     */
+    public synchronized String getOwner()
+    {
+        return driveOwner;
+    }   //getOwner
+
+    /**
+     * This method checks if the caller is allowed to drive the drive base, which is the case if the drive base is
+     * not owned or the caller is the owner.
+     *
+     * @param owner specifies the name of the caller, null if the caller does not own the drive base.
+     * @return true if the caller is allowed to drive, false otherwise.
+     */
+    private synchronized boolean validateOwnership(String owner)
+    {
+        final String funcName = "validateOwnership";
+        boolean valid = driveOwner == null || driveOwner.equals(owner);
+
+        if (!valid && debugEnabled)
+        {
+            dbgTrace.traceInfo(funcName, "Command from %s ignored, drive base is owned by %s.", owner, driveOwner);
+        }
+
+        return valid;
+    }   //validateOwnership
+
+    /**
+     * This method runs the wheel velocity controllers. A wheel with zero target velocity is turned off instead of
+     * being held at zero speed, and its controller restarts when it gets a new target.
+     */
+    private void updateVelocityControl()
+    {
+        double voltageScale = 1.0;
+
+        if (battery != null)
+        {
+            double voltage = battery.getVoltage();
+            if (voltage > 0.0)
+            {
+                voltageScale = nominalVoltage/voltage;
+            }
+        }
+
+        for (int i = 0; i < wheelMotors.length; i++)
+        {
+            TrcPidController velocityCtrl = wheelVelocityCtrls[i];
+
+            if (velocityCtrl != null)
+            {
+                double targetVelocity = wheelTargetVelocities[i];
+                double power = 0.0;
+
+                if (targetVelocity == 0.0)
+                {
+                    wheelVelocityActive[i] = false;
+                }
+                else
+                {
+                    if (wheelVelocityActive[i])
+                    {
+                        velocityCtrl.setProfiledSetPoint(targetVelocity);
+                    }
+                    else
+                    {
+                        velocityCtrl.setTarget(targetVelocity);
+                        wheelVelocityActive[i] = true;
+                    }
+                    power = (velocityCtrl.getOutput() + Math.signum(targetVelocity)*wheelStaticPower)*voltageScale;
+                }
+
+                pendingWheelPowers[i] = TrcUtil.clipRange(power, -maxOutput, maxOutput);
+            }
+        }
+    }   //updateVelocityControl
+
+    /**
+     * This method sets the traction monitor. The drive base updates the monitor every loop and the odometry
+     * down-weights the wheels the monitor reports as slipping.
+     *
+     * @param monitor specifies the traction monitor, null to remove it.
+     */
+    public void setTractionMonitor(TrcTractionMonitor monitor)
+    {
+        final String funcName = "setTractionMonitor";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "monitor=%s", monitor);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        if (tractionMonitor != null)
+        {
+            tractionMonitor.reset();
+        }
+        tractionMonitor = monitor;
+        //
+        // Re-sync the odometry wheel positions with the encoders.
+        //
+        odometrySynced = false;
+    }   //setTractionMonitor
+
+    /**
+     * This method returns the traction monitor.
+     *
+     * @return traction monitor, null if none.
+     */
+    public TrcTractionMonitor getTractionMonitor()
+    {
+        return tractionMonitor;
+    }   //getTractionMonitor
+
+    /**
+     * This method gives the traction monitor the commanded and measured wheel speeds of this loop.
+     *
+     * @param lfSpeed specifies the left front wheel speed.
+     * @param rfSpeed specifies the right front wheel speed.
+     * @param lrSpeed specifies the left rear wheel speed.
+     * @param rrSpeed specifies the right rear wheel speed.
+     * @param wheelTurnRate specifies the robot turn rate from the wheels in degrees/second, clockwise positive.
+     */
+    private void updateTractionMonitor(
+            double lfSpeed, double rfSpeed, double lrSpeed, double rrSpeed, double wheelTurnRate)
+    {
+        double maxWheelSpeed = tractionMonitor.getMaxWheelSpeed();
+
+        for (int i = 0; i < TrcTractionMonitor.NUM_WHEELS; i++)
+        {
+            tractionPowers[i] = wheelMotors[i] != null? wheelMotors[i].getPower(): 0.0;
+            commandedSpeeds[i] = wheelVelocityCtrls != null? wheelTargetVelocities[i]: tractionPowers[i]*maxWheelSpeed;
+        }
+        measuredSpeeds[MotorType.LEFT_FRONT.value] = lfSpeed;
+        measuredSpeeds[MotorType.RIGHT_FRONT.value] = rfSpeed;
+        measuredSpeeds[MotorType.LEFT_REAR.value] = lrSpeed;
+        measuredSpeeds[MotorType.RIGHT_REAR.value] = rrSpeed;
+
+        tractionMonitor.update(TrcUtil.getCurrentTime(), tractionPowers, commandedSpeeds, measuredSpeeds,
+                               wheelTurnRate, gyroTurnRate, Math.hypot(xSpeed, ySpeed));
+    }   //updateTractionMonitor
+
+    /**
+     * This method blends the delta of a slipping mecanum wheel with the delta implied by the other wheels. The front
+     * wheels and the rear wheels move the same total (LF + RF = LR + RR), so any one wheel follows from the other
+     * three. Nothing is corrected if more than one wheel slips.
+     */
+    private void correctSlippingWheels()
+    {
+        final int lf = MotorType.LEFT_FRONT.value, rf = MotorType.RIGHT_FRONT.value;
+        final int lr = MotorType.LEFT_REAR.value, rr = MotorType.RIGHT_REAR.value;
+        int slipIndex = -1;
+
+        for (int i = 0; i < wheelDeltas.length; i++)
+        {
+            if (tractionMonitor.getTractionWeight(i) < 1.0)
+            {
+                slipIndex = slipIndex == -1? i: -2;
+            }
+        }
+
+        if (slipIndex >= 0)
+        {
+            double implied;
+            if (slipIndex == lf) implied = wheelDeltas[lr] + wheelDeltas[rr] - wheelDeltas[rf];
+            else if (slipIndex == rf) implied = wheelDeltas[lr] + wheelDeltas[rr] - wheelDeltas[lf];
+            else if (slipIndex == lr) implied = wheelDeltas[lf] + wheelDeltas[rf] - wheelDeltas[rr];
+            else implied = wheelDeltas[lf] + wheelDeltas[rf] - wheelDeltas[lr];
+
+            double weight = tractionMonitor.getTractionWeight(slipIndex);
+            wheelDeltas[slipIndex] = weight*wheelDeltas[slipIndex] + (1.0 - weight)*implied;
+        }
+    }   //correctSlippingWheels
+
+    /**
+     * This method combines the values (positions, deltas or speeds) of the wheels on one side of a differential
+     * drive base. A 6-wheel drive base takes the median of the three wheels, rejecting one outlier. A 2-wheel drive
+     * base only has the rear wheel.
+     *
+     * @param front specifies the front wheel value.
+     * @param mid specifies the mid wheel value.
+     * @param rear specifies the rear wheel value.
+     * @return combined value of the side.
+     */
+    private double getSideValue(double front, double mid, double rear)
+    {
+        return numMotors == 6? Math.max(Math.min(front, mid), Math.min(Math.max(front, mid), rear)): rear;
+    }   //getSideValue
+
     /**
      * This method returns the number of motors in the drive train.
      *
@@ -428,6 +898,32 @@ public class TrcDriveBase implements TrcTaskMgr.Task
         xSpeed = 0.0;
         ySpeed = 0.0;
         turnSpeed = 0.0;
+        //
+        // The field pose is not reset. Re-reference the odometry so that only new motion is integrated. A hardware
+        // reset may not show up until a later loop, so in that case the next loop just re-syncs.
+        //
+        prevOdometryXPos = 0.0;
+        prevOdometryYPos = 0.0;
+        prevOdometryHeading = gyro != null? gyro.getZHeading().value: 0.0;
+        gyroTurnRate = Double.NaN;
+        prevGyroTimestamp = 0.0;
+        odometrySynced = !hardware;
+        prevLeftFrontPos = 0.0;
+        prevRightFrontPos = 0.0;
+        prevLeftRearPos = 0.0;
+        prevRightRearPos = 0.0;
+        prevLeftMidPos = 0.0;
+        prevRightMidPos = 0.0;
+        leftOdometryPos = 0.0;
+        rightOdometryPos = 0.0;
+        for (int i = 0; i < odometryWheelPositions.length; i++)
+        {
+            odometryWheelPositions[i] = 0.0;
+        }
+        if (tractionMonitor != null)
+        {
+            tractionMonitor.reset();
+        }
 
         if (debugEnabled)
         {
@@ -502,6 +998,72 @@ public class TrcDriveBase implements TrcTaskMgr.Task
         this.rotScale = scale;
     }   //setRotationScale
 
+    /**
+     * This method sets the rotation scale of a differential drive base from its effective track width. The wheels
+     * of a skid-steer drive base scrub sideways in a turn, so the robot turns less than the wheel travel suggests,
+     * as if the track were wider than it is. The effective track width is best measured with
+     * calibrateTrackWidth. The Y position scale must be set before calling this.
+     *
+     * @param trackWidth specifies the effective track width in Y position units.
+     */
+    public void setEffectiveTrackWidth(double trackWidth)
+    {
+        final String funcName = "setEffectiveTrackWidth";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "trackWidth=%f", trackWidth);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        if (!(trackWidth > 0.0) || Double.isInfinite(trackWidth))
+        {
+            throw new IllegalArgumentException("trackWidth must be positive and finite.");
+        }
+        //
+        // Turn in radians = (left - right)*yScale/trackWidth and rotPos = (left - right)*rotScale/2.
+        //
+        this.rotScale = Math.toDegrees(2.0*yScale/trackWidth);
+    }   //setEffectiveTrackWidth
+
+    /**
+     * This method calculates and sets the effective track width of a differential drive base from a turn made since
+     * the last position reset. Turn the robot in place several full turns, then call this with the heading change
+     * measured by the gyro (or by lining the robot up).
+     *
+     * @param headingChange specifies the heading change since the last reset in degrees.
+     * @return effective track width in Y position units.
+     * @throws IllegalArgumentException if the heading change is less than 90 degrees either way, or the wheels did
+     *         not turn the same way as the heading change.
+     */
+    public double calibrateTrackWidth(double headingChange)
+    {
+        final String funcName = "calibrateTrackWidth";
+
+        if (numMotors == 4)
+        {
+            throw new UnsupportedOperationException("Track width calibration is for differential drive bases.");
+        }
+
+        if (Math.abs(headingChange) < MIN_CALIBRATION_TURN)
+        {
+            throw new IllegalArgumentException(
+                    String.format("headingChange must be at least %.0f degrees.", MIN_CALIBRATION_TURN));
+        }
+
+        double trackWidth = (leftOdometryPos - rightOdometryPos)*yScale/Math.toRadians(headingChange);
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "headingChange=%f", headingChange);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API, "=%f", trackWidth);
+        }
+
+        setEffectiveTrackWidth(trackWidth);
+
+        return trackWidth;
+    }   //calibrateTrackWidth
+
     /**
      * This method returns the X position in scaled unit.
      *
@@ -628,6 +1190,62 @@ public class TrcDriveBase implements TrcTaskMgr.Task
         return turnSpeed;
     }   //getTurnSpeed
 
+    /**
+     * This method sets the field pose of the drive base, typically the starting position of autonomous. The field
+     * pose is integrated every loop from the odometry deltas rotated by the heading. It is not affected by
+     * resetPosition, so absolute field targets remain valid across autonomous states.
+     *
+     * @param x specifies the field X position in scaled unit.
+     * @param y specifies the field Y position in scaled unit.
+     * @param heading specifies the field heading in degrees.
+     */
+    public void setFieldPose(double x, double y, double heading)
+    {
+        final String funcName = "setFieldPose";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "x=%f,y=%f,heading=%f", x, y, heading);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        fieldPose.setPose(x, y, heading);
+    }   //setFieldPose
+
+    /**
+     * This method returns the field pose of the drive base including the field-frame velocities. It copies into
+     * the given pose object so that it can be called every loop without allocation.
+     *
+     * @param pose specifies the pose object to copy the field pose into.
+     * @return the given pose object.
+     */
+    public TrcPose2D getFieldPose(TrcPose2D pose)
+    {
+        final String funcName = "getFieldPose";
+
+        pose.setAs(fieldPose);
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API, "=%s", pose);
+        }
+
+        return pose;
+    }   //getFieldPose
+
+    /**
+     * This method attaches a streaming statistics object to the stall detector. Every loop, it records the longest
+     * time any driven wheel has been stalled, so the statistics describe how often and how long the drive base
+     * stalls without keeping the history.
+     *
+     * @param stats specifies the statistics object, null to detach.
+     */
+    public void setStallStatistics(TrcStreamingStats stats)
+    {
+        stallStats = stats;
+    }   //setStallStatistics
+
     public boolean isStalled(MotorType motorType, double stallTime)
     {
         final String funcName = "isStalled";
@@ -714,7 +1332,7 @@ public class TrcDriveBase implements TrcTaskMgr.Task
     }   //setBrakeMode
 
     /**
-     * This methods stops the drive base.
+     * This methods stops the drive base. The motors are written immediately regardless of ownership.
      */
     public void stop()
     {
@@ -725,12 +1343,14 @@ public class TrcDriveBase implements TrcTaskMgr.Task
             dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
         }
 
-        if (leftFrontMotor != null) leftFrontMotor.setPower(0.0);
-        if (rightFrontMotor != null) rightFrontMotor.setPower(0.0);
-        if (leftRearMotor != null) leftRearMotor.setPower(0.0);
-        if (rightRearMotor != null) rightRearMotor.setPower(0.0);
-        if (leftMidMotor != null) leftMidMotor.setPower(0.0);
-        if (rightMidMotor != null) rightMidMotor.setPower(0.0);
+        for (int i = 0; i < wheelTargetVelocities.length; i++)
+        {
+            wheelTargetVelocities[i] = 0.0;
+            wheelVelocityActive[i] = false;
+        }
+
+        Arrays.fill(pendingWheelPowers, 0.0);
+        flushWheelPowers(true);
 
         if (debugEnabled)
         {
@@ -738,19 +1358,35 @@ public class TrcDriveBase implements TrcTaskMgr.Task
         }
     }   //stop
 
+    /**
+     * This methods stops the drive base if the caller is allowed to drive it.
+     *
+     * @param owner specifies the name of the caller for checking ownership, null if the caller does not own the
+     *              drive base.
+     */
+    public void stop(String owner)
+    {
+        if (validateOwnership(owner))
+        {
+            stop();
+        }
+    }   //stop
+
     /**
      * This method drives the motors at "magnitude" and "curve". Both magnitude and curve are -1.0 to +1.0 values,
      * where 0.0 represents stopped and not turning. curve < 0 will turn left and curve > 0 will turn right. The
      * algorithm for steering provides a constant turn radius for any normal speed range, both forward and backward.
      * Increasing sensitivity causes sharper turns for fixed values of curve.
      *
+     * @param owner specifies the name of the caller for checking ownership, null if the caller does not own the
+     *              drive base.
      * @param magnitude specifies the speed setting for the outside wheel in a turn, forward or backwards, +1 to -1.
      * @param curve specifies the rate of turn, constant for different forward speeds. Set curve < 0 for left turn or
      *              curve > 0 for right turn. Set curve = e^(-r/w) to get a turn radius r for wheelbase w of your
      *              robot. Conversely, turn radius r = -ln(curve)*w for a given value of curve and wheelbase w.
      * @param inverted specifies true to invert control (i.e. robot front becomes robot back).
      */
-    public void drive(double magnitude, double curve, boolean inverted)
+    public void drive(String owner, double magnitude, double curve, boolean inverted)
     {
         final String funcName = "drive";
         double leftOutput;
@@ -790,7 +1426,7 @@ public class TrcDriveBase implements TrcTaskMgr.Task
             rightOutput = magnitude;
         }
 
-        tankDrive(leftOutput, rightOutput, inverted);
+        tankDrive(owner, leftOutput, rightOutput, inverted);
 
         if (debugEnabled)
         {
@@ -798,6 +1434,23 @@ public class TrcDriveBase implements TrcTaskMgr.Task
         }
     }   //drive
 
+    /**
+     * This method drives the motors at "magnitude" and "curve". Both magnitude and curve are -1.0 to +1.0 values,
+     * where 0.0 represents stopped and not turning. curve < 0 will turn left and curve > 0 will turn right. The
+     * algorithm for steering provides a constant turn radius for any normal speed range, both forward and backward.
+     * Increasing sensitivity causes sharper turns for fixed values of curve.
+     *
+     * @param magnitude specifies the speed setting for the outside wheel in a turn, forward or backwards, +1 to -1.
+     * @param curve specifies the rate of turn, constant for different forward speeds. Set curve < 0 for left turn or
+     *              curve > 0 for right turn. Set curve = e^(-r/w) to get a turn radius r for wheelbase w of your
+     *              robot. Conversely, turn radius r = -ln(curve)*w for a given value of curve and wheelbase w.
+     * @param inverted specifies true to invert control (i.e. robot front becomes robot back).
+     */
+    public void drive(double magnitude, double curve, boolean inverted)
+    {
+        drive(null, magnitude, curve, inverted);
+    }   //drive
+
     /**
      * This method drives the motors with the given magnitude and curve values.
      *
@@ -813,11 +1466,13 @@ public class TrcDriveBase implements TrcTaskMgr.Task
      * This method implements tank drive where leftPower controls the left motors and right power controls the right
      * motors.
      *
+     * @param owner specifies the name of the caller for checking ownership, null if the caller does not own the
+     *              drive base.
      * @param leftPower specifies left power value.
      * @param rightPower specifies right power value.
      * @param inverted specifies true to invert control (i.e. robot front becomes robot back).
      */
-    public void tankDrive(double leftPower, double rightPower, boolean inverted)
+    public void tankDrive(String owner, double leftPower, double rightPower, boolean inverted)
     {
         final String funcName = "tankDrive";
 
@@ -856,12 +1511,15 @@ public class TrcDriveBase implements TrcTaskMgr.Task
         leftPower = TrcUtil.clipRange(leftPower, -maxOutput, maxOutput);
         rightPower = TrcUtil.clipRange(rightPower, -maxOutput, maxOutput);
 
-        if (leftFrontMotor != null) leftFrontMotor.setPower(leftPower);
-        if (rightFrontMotor != null) rightFrontMotor.setPower(rightPower);
-        if (leftRearMotor != null) leftRearMotor.setPower(leftPower);
-        if (rightRearMotor != null) rightRearMotor.setPower(rightPower);
-        if (leftMidMotor != null) leftMidMotor.setPower(leftPower);
-        if (rightMidMotor != null) rightMidMotor.setPower(rightPower);
+        if (validateOwnership(owner))
+        {
+            setWheelPower(MotorType.LEFT_FRONT, leftPower);
+            setWheelPower(MotorType.RIGHT_FRONT, rightPower);
+            setWheelPower(MotorType.LEFT_REAR, leftPower);
+            setWheelPower(MotorType.RIGHT_REAR, rightPower);
+            setWheelPower(MotorType.LEFT_MID, leftPower);
+            setWheelPower(MotorType.RIGHT_MID, rightPower);
+        }
 
         if (debugEnabled)
         {
@@ -869,6 +1527,19 @@ public class TrcDriveBase implements TrcTaskMgr.Task
         }
     }   //tankDrive
 
+    /**
+     * This method implements tank drive where leftPower controls the left motors and right power controls the right
+     * motors.
+     *
+     * @param leftPower specifies left power value.
+     * @param rightPower specifies right power value.
+     * @param inverted specifies true to invert control (i.e. robot front becomes robot back).
+     */
+    public void tankDrive(double leftPower, double rightPower, boolean inverted)
+    {
+        tankDrive(null, leftPower, rightPower, inverted);
+    }   //tankDrive
+
     /**
      * This method implements tank drive where leftPower controls the left motors and right power controls the right
      * motors.
@@ -885,11 +1556,13 @@ public class TrcDriveBase implements TrcTaskMgr.Task
      * This method implements arcade drive where drivePower controls how fast the robot goes in the y-axis and
      * turnPower controls how fast it will turn.
      *
+     * @param owner specifies the name of the caller for checking ownership, null if the caller does not own the
+     *              drive base.
      * @param drivePower specifies the drive power value.
      * @param turnPower specifies the turn power value.
      * @param inverted specifies true to invert control (i.e. robot front becomes robot back).
      */
-    public void arcadeDrive(double drivePower, double turnPower, boolean inverted)
+    public void arcadeDrive(String owner, double drivePower, double turnPower, boolean inverted)
     {
         final String funcName = "arcadeDrive";
         double leftPower;
@@ -914,7 +1587,7 @@ public class TrcDriveBase implements TrcTaskMgr.Task
             rightPower /= maxMag;
         }
 
-        tankDrive(leftPower, rightPower, inverted);
+        tankDrive(owner, leftPower, rightPower, inverted);
 
         if (debugEnabled)
         {
@@ -922,6 +1595,19 @@ public class TrcDriveBase implements TrcTaskMgr.Task
         }
     }   //arcadeDrive
 
+    /**
+     * This method implements arcade drive where drivePower controls how fast the robot goes in the y-axis and
+     * turnPower controls how fast it will turn.
+     *
+     * @param drivePower specifies the drive power value.
+     * @param turnPower specifies the turn power value.
+     * @param inverted specifies true to invert control (i.e. robot front becomes robot back).
+     */
+    public void arcadeDrive(double drivePower, double turnPower, boolean inverted)
+    {
+        arcadeDrive(null, drivePower, turnPower, inverted);
+    }   //arcadeDrive
+
     /**
      * This method implements arcade drive where drivePower controls how fast the robot goes in the y-axis and
      * turnPower controls how fast it will turn.
@@ -939,13 +1625,16 @@ public class TrcDriveBase implements TrcTaskMgr.Task
      * controls how fast the robot will go in the y direction. Rotation controls how fast the robot rotates and
      * gyroAngle specifies the heading the robot should maintain.
      *
+     * @param owner specifies the name of the caller for checking ownership, null if the caller does not own the
+     *              drive base.
      * @param x specifies the x power.
      * @param y specifies the y power.
      * @param rotation specifies the rotating power.
      * @param inverted specifies true to invert control (i.e. robot front becomes robot back).
      * @param gyroAngle specifies the gyro angle to maintain.
      */
-    public void mecanumDrive_Cartesian(double x, double y, double rotation, boolean inverted, double gyroAngle)
+    public void mecanumDrive_Cartesian(
+            String owner, double x, double y, double rotation, boolean inverted, double gyroAngle)
     {
         final String funcName = "mecanumDrive_Cartesian";
 
@@ -970,33 +1659,19 @@ public class TrcDriveBase implements TrcTaskMgr.Task
             y = -y;
         }
 
-        double cosA = Math.cos(Math.toRadians(gyroAngle));
-        double sinA = Math.sin(Math.toRadians(gyroAngle));
-        x = x*cosA - y*sinA;
-        y = x*sinA + y*cosA;
-
-        if (gyroAssistEnabled)
+        if (gyroAngle != 0.0)
         {
-            rotation += TrcUtil.clipRange(gyroAssistKp*(rotation - gyroRateScale*gyro.getZRotationRate().value));
+            mecanumKinematics.fieldToRobot(x, y, gyroAngle, driveVector);
+            x = driveVector[TrcMecanumKinematics.X];
+            y = driveVector[TrcMecanumKinematics.Y];
         }
 
-        double wheelSpeeds[] = new double[4];
-        wheelSpeeds[MotorType.LEFT_FRONT.value] = x + y + rotation;
-        wheelSpeeds[MotorType.RIGHT_FRONT.value] = -x + y - rotation;
-        wheelSpeeds[MotorType.LEFT_REAR.value] = -x + y + rotation;
-        wheelSpeeds[MotorType.RIGHT_REAR.value] = x + y - rotation;
-        normalize(wheelSpeeds);
-
-        for (int i = 0; i < wheelSpeeds.length; i++)
+        if (gyroAssistEnabled)
         {
-            wheelSpeeds[i] = TrcUtil.clipRange(wheelSpeeds[i], -maxOutput, maxOutput);
+            rotation += TrcUtil.clipRange(gyroAssistKp*(rotation - gyroRateScale*gyro.getZRotationRate().value));
         }
 
-
-        if (leftFrontMotor != null) leftFrontMotor.setPower(wheelSpeeds[MotorType.LEFT_FRONT.value]);
-        if (rightFrontMotor != null) rightFrontMotor.setPower(wheelSpeeds[MotorType.RIGHT_FRONT.value]);
-        if (leftRearMotor != null) leftRearMotor.setPower(wheelSpeeds[MotorType.LEFT_REAR.value]);
-        if (rightRearMotor != null) rightRearMotor.setPower(wheelSpeeds[MotorType.RIGHT_REAR.value]);
+        setMecanumWheelPowers(owner, x, y, rotation);
 
         if (debugEnabled)
         {
@@ -1004,6 +1679,22 @@ public class TrcDriveBase implements TrcTaskMgr.Task
         }
     }   //mecanumDrive_Cartesian
 
+    /**
+     * This method implements mecanum drive where x controls how fast the robot will go in the x direction, and y
+     * controls how fast the robot will go in the y direction. Rotation controls how fast the robot rotates and
+     * gyroAngle specifies the heading the robot should maintain.
+     *
+     * @param x specifies the x power.
+     * @param y specifies the y power.
+     * @param rotation specifies the rotating power.
+     * @param inverted specifies true to invert control (i.e. robot front becomes robot back).
+     * @param gyroAngle specifies the gyro angle to maintain.
+     */
+    public void mecanumDrive_Cartesian(double x, double y, double rotation, boolean inverted, double gyroAngle)
+    {
+        mecanumDrive_Cartesian(null, x, y, rotation, inverted, gyroAngle);
+    }   //mecanumDrive_Cartesian
+
     /**
      * This method implements mecanum drive where x controls how fast the robot will go in the x direction, and y
      * controls how fast the robot will go in the y direction. Rotation controls how fast the robot rotates and
@@ -1036,12 +1727,15 @@ public class TrcDriveBase implements TrcTaskMgr.Task
      * This method implements mecanum drive where magnitude controls how fast the robot will go in the given direction
      * and how fast it will rotate.
      *
+     * @param owner specifies the name of the caller for checking ownership, null if the caller does not own the
+     *              drive base.
      * @param magnitude specifies the magnitude combining x and y axes.
      * @param direction specifies the direction in degrees.
      * @param rotation specifies the rotation power.
      * @param inverted specifies true to invert control (i.e. robot front becomes robot back).
      */
-    public void mecanumDrive_Polar(double magnitude, double direction, double rotation, boolean inverted)
+    public void mecanumDrive_Polar(
+            String owner, double magnitude, double direction, double rotation, boolean inverted)
     {
         final String funcName = "mecanumDrive_Polar";
 
@@ -1056,38 +1750,22 @@ public class TrcDriveBase implements TrcTaskMgr.Task
             throw new IllegalArgumentException("Mecanum drive requires 4 motors");
         }
 
-        magnitude = TrcUtil.clipRange(magnitude) * Math.sqrt(2.0);
+        magnitude = TrcUtil.clipRange(magnitude);
         if (inverted)
         {
             direction += 180.0;
             direction %= 360.0;
         }
 
-        double dirInRad = Math.toRadians(direction + 45.0);
-        double cosD = Math.cos(dirInRad);
-        double sinD = Math.sin(dirInRad);
+        mecanumKinematics.polarToCartesian(magnitude, direction, driveVector);
 
         if (gyroAssistEnabled)
         {
             rotation += TrcUtil.clipRange(gyroAssistKp*(rotation - gyroRateScale*gyro.getZRotationRate().value));
         }
 
-        double wheelSpeeds[] = new double[4];
-        wheelSpeeds[MotorType.LEFT_FRONT.value] = (sinD*magnitude + rotation);
-        wheelSpeeds[MotorType.RIGHT_FRONT.value] = (cosD*magnitude - rotation);
-        wheelSpeeds[MotorType.LEFT_REAR.value] = (cosD*magnitude + rotation);
-        wheelSpeeds[MotorType.RIGHT_REAR.value] = (sinD*magnitude - rotation);
-        normalize(wheelSpeeds);
-
-        for (int i = 0; i < wheelSpeeds.length; i++)
-        {
-            wheelSpeeds[i] = TrcUtil.clipRange(wheelSpeeds[i], -maxOutput, maxOutput);
-        }
-
-        if (leftFrontMotor != null) leftFrontMotor.setPower(wheelSpeeds[MotorType.LEFT_FRONT.value]);
-        if (rightFrontMotor != null) rightFrontMotor.setPower(wheelSpeeds[MotorType.RIGHT_FRONT.value]);
-        if (leftRearMotor != null) leftRearMotor.setPower(wheelSpeeds[MotorType.LEFT_REAR.value]);
-        if (rightRearMotor != null) rightRearMotor.setPower(wheelSpeeds[MotorType.RIGHT_REAR.value]);
+        setMecanumWheelPowers(
+                owner, driveVector[TrcMecanumKinematics.X], driveVector[TrcMecanumKinematics.Y], rotation);
 
         if (debugEnabled)
         {
@@ -1095,6 +1773,20 @@ public class TrcDriveBase implements TrcTaskMgr.Task
         }
     }   //mecanumDrive_Polar
 
+    /**
+     * This method implements mecanum drive where magnitude controls how fast the robot will go in the given direction
+     * and how fast it will rotate.
+     *
+     * @param magnitude specifies the magnitude combining x and y axes.
+     * @param direction specifies the direction in degrees.
+     * @param rotation specifies the rotation power.
+     * @param inverted specifies true to invert control (i.e. robot front becomes robot back).
+     */
+    public void mecanumDrive_Polar(double magnitude, double direction, double rotation, boolean inverted)
+    {
+        mecanumDrive_Polar(null, magnitude, direction, rotation, inverted);
+    }   //mecanumDrive_Polar
+
     /**
      * This method implements mecanum drive where magnitude controls how fast the robot will go in the given direction
      * and how fast it will rotate.
@@ -1109,30 +1801,33 @@ public class TrcDriveBase implements TrcTaskMgr.Task
     }   //mecanumDrive_Polar
 
     /**
-     * This method normalizes the power to the four wheels for mecanum drive.
+     * This method calculates the four mecanum wheel powers with rotation priority desaturation and sets them.
      *
-     * @param wheelSpeeds specifies the wheel speed of all four wheels.
+     * @param owner specifies the name of the caller for checking ownership, null if the caller does not own the
+     *              drive base.
+     * @param x specifies the robot relative x power.
+     * @param y specifies the robot relative y power.
+     * @param rotation specifies the rotating power.
      */
-    private void normalize(double[] wheelSpeeds)
+    private void setMecanumWheelPowers(String owner, double x, double y, double rotation)
     {
-        double maxMagnitude = Math.abs(wheelSpeeds[0]);
-        for (int i = 1; i < wheelSpeeds.length; i++)
+        if (!validateOwnership(owner))
         {
-            double magnitude = Math.abs(wheelSpeeds[i]);
-            if (magnitude > maxMagnitude)
-            {
-                maxMagnitude = magnitude;
-            }
+            return;
         }
 
-        if (maxMagnitude > 1.0)
+        mecanumKinematics.getWheelPowers(x, y, rotation, wheelPowers);
+
+        for (int i = 0; i < wheelPowers.length; i++)
         {
-            for (int i = 0; i < wheelSpeeds.length; i++)
-            {
-                wheelSpeeds[i] /= maxMagnitude;
-            }
+            wheelPowers[i] = TrcUtil.clipRange(wheelPowers[i], -maxOutput, maxOutput);
         }
-    }   //normalize
+
+        setWheelPower(MotorType.LEFT_FRONT, wheelPowers[MotorType.LEFT_FRONT.value]);
+        setWheelPower(MotorType.RIGHT_FRONT, wheelPowers[MotorType.RIGHT_FRONT.value]);
+        setWheelPower(MotorType.LEFT_REAR, wheelPowers[MotorType.LEFT_REAR.value]);
+        setWheelPower(MotorType.RIGHT_REAR, wheelPowers[MotorType.RIGHT_REAR.value]);
+    }   //setMecanumWheelPowers
 
     //
     // Implements TrcTaskMgr.Task
@@ -1163,6 +1858,12 @@ public class TrcDriveBase implements TrcTaskMgr.Task
             stop();
         }
 
+        synchronized (this)
+        {
+            driveOwner = null;
+            driveOwnerPriority = 0;
+        }
+
         if (debugEnabled)
         {
             dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.TASK);
@@ -1174,9 +1875,20 @@ public class TrcDriveBase implements TrcTaskMgr.Task
     {
     }   //prePeriodicTask
 
+    /**
+     * This method is called periodically to write the buffered wheel powers to the motors. It is the only place
+     * they are written, other than stop(), so each motor is written at most once per periodic loop, after all the
+     * postContinuous tasks and runPeriodic of the loop have issued their drive commands. Commands issued in loops
+     * that do not run the periodic tasks, such as those of a TrcPidDrive or TrcPurePursuitDrive postContinuous task
+     * or of runContinuous, wait for the next periodic loop, which adds up to one loop period (about 20 msec) of
+     * latency. Only the last command before the flush takes effect.
+     *
+     * @param runMode specifies the competition mode that is running. (e.g. Autonomous, TeleOp, Test).
+     */
     @Override
     public void postPeriodicTask(TrcRobot.RunMode runMode)
     {
+        flushWheelPowers(false);
     }   //postPeriodicTask
 
     /**
@@ -1195,21 +1907,7 @@ public class TrcDriveBase implements TrcTaskMgr.Task
         }
 
         //
-        // According to RobotDrive.mecanumDrive_Cartesian in WPILib:
-        //
-        // LF =  x + y + rot    RF = -x + y - rot
-        // LR = -x + y + rot    RR =  x + y - rot
-        //
-        // (LF + RR) - (RF + LR) = (2x + 2y) - (-2x + 2y)
-        // => (LF + RR) - (RF + LR) = 4x
-        // => x = ((LF + RR) - (RF + LR))/4
-        //
-        // LF + RF + LR + RR = 4y
-        // => y = (LF + RF + LR + RR)/4
-        //
-        // (LF + LR) - (RF + RR) = (2y + 2rot) - (2y - 2rot)
-        // => (LF + LR) - (RF + RR) = 4rot
-        // => rot = ((LF + LR) - (RF + RR))/4
+        // The mecanum forward kinematics is in TrcMecanumKinematics.
         //
         double lfEnc = 0.0, lrEnc = 0.0, rfEnc = 0.0, rrEnc = 0.0;
         double lfSpeed = 0.0, lrSpeed = 0.0, rfSpeed = 0.0, rrSpeed = 0.0;
@@ -1286,31 +1984,208 @@ public class TrcDriveBase implements TrcTaskMgr.Task
             }
         }
 
-        if (numMotors == 4)
+        double lmEnc = 0.0, rmEnc = 0.0;
+        double lmSpeed = 0.0, rmSpeed = 0.0;
+        if (leftMidMotor != null)
         {
-            xPos = ((lfEnc + rrEnc) - (rfEnc + lrEnc))*xScale/4.0;
-            yPos = (lfEnc + lrEnc + rfEnc + rrEnc)*yScale/4.0;
-            rotPos = ((lfEnc + lrEnc) - (rfEnc + rrEnc))*rotScale/4.0;
-            xSpeed = ((lfSpeed + rrSpeed) - (rfSpeed + lrSpeed))*xScale/4.0;
-            ySpeed = (lfSpeed + lrSpeed + rfSpeed + rrSpeed)*yScale/4.0;
+            try
+            {
+                lmEnc = leftMidMotor.getPosition();
+            }
+            catch (UnsupportedOperationException e)
+            {
+            }
+
+            try
+            {
+                lmSpeed = leftMidMotor.getSpeed();
+            }
+            catch (UnsupportedOperationException e)
+            {
+            }
         }
-        else
+        if (rightMidMotor != null)
         {
-            yPos = (lrEnc + rrEnc)*yScale/2.0;
-            rotPos = (lrEnc - rrEnc)*rotScale/2.0;
-            ySpeed = (lrSpeed + rrSpeed)*yScale/2.0;
+            try
+            {
+                rmEnc = rightMidMotor.getPosition();
+            }
+            catch (UnsupportedOperationException e)
+            {
+            }
+
+            try
+            {
+                rmSpeed = rightMidMotor.getSpeed();
+            }
+            catch (UnsupportedOperationException e)
+            {
+            }
         }
 
         if (gyro != null)
         {
-            heading = gyro.getZHeading().value;
+            TrcSensor.SensorData<Double> headingData = gyro.getZHeading();
+            heading = headingData.value;
             turnSpeed = gyro.getZRotationRate().value;
+            //
+            // The traction monitor compares the gyro turn rate with the clockwise positive wheel turn rate. It is
+            // taken from the heading change between gyro samples, which is clockwise positive for every gyro, instead
+            // of the rate the gyro reports, whose sign depends on the gyro.
+            //
+            if (prevGyroTimestamp > 0.0 && headingData.timestamp > prevGyroTimestamp)
+            {
+                gyroTurnRate = (heading - prevGyroHeading)/(headingData.timestamp - prevGyroTimestamp);
+            }
+            if (headingData.timestamp != prevGyroTimestamp)
+            {
+                prevGyroHeading = heading;
+                prevGyroTimestamp = headingData.timestamp;
+            }
+        }
+
+        double leftSpeed = 0.0, rightSpeed = 0.0;
+        if (numMotors == 4)
+        {
+            mecanumKinematics.getRobotMotion(lfSpeed, rfSpeed, lrSpeed, rrSpeed, robotMotion);
+            xSpeed = robotMotion[TrcMecanumKinematics.X]*xScale;
+            ySpeed = robotMotion[TrcMecanumKinematics.Y]*yScale;
+        }
+        else
+        {
+            leftSpeed = getSideValue(lfSpeed, lmSpeed, lrSpeed);
+            rightSpeed = getSideValue(rfSpeed, rmSpeed, rrSpeed);
+            ySpeed = (leftSpeed + rightSpeed)*yScale/2.0;
+        }
+
+        if (tractionMonitor != null)
+        {
+            double wheelTurnRate = numMotors == 4?
+                    robotMotion[TrcMecanumKinematics.ROTATION]*rotScale: (leftSpeed - rightSpeed)*rotScale/2.0;
+            updateTractionMonitor(lfSpeed, rfSpeed, lrSpeed, rrSpeed, wheelTurnRate);
+        }
+        //
+        // The odometry advances by the encoder deltas of each loop so that slipping and outlier wheels can be left
+        // out. It re-syncs with the encoders after a reset. A differential drive combines the wheels of each side
+        // with a median, so one slipping or scrubbing wheel of a 6-wheel drive does not count, and the side
+        // positions are turned into rotation with the effective track width (see setEffectiveTrackWidth).
+        //
+        if (numMotors == 4)
+        {
+            if (odometrySynced)
+            {
+                wheelDeltas[MotorType.LEFT_FRONT.value] = lfEnc - prevLeftFrontPos;
+                wheelDeltas[MotorType.RIGHT_FRONT.value] = rfEnc - prevRightFrontPos;
+                wheelDeltas[MotorType.LEFT_REAR.value] = lrEnc - prevLeftRearPos;
+                wheelDeltas[MotorType.RIGHT_REAR.value] = rrEnc - prevRightRearPos;
+                if (tractionMonitor != null)
+                {
+                    correctSlippingWheels();
+                }
+                for (int i = 0; i < odometryWheelPositions.length; i++)
+                {
+                    odometryWheelPositions[i] += wheelDeltas[i];
+                }
+            }
+            else
+            {
+                odometryWheelPositions[MotorType.LEFT_FRONT.value] = lfEnc;
+                odometryWheelPositions[MotorType.RIGHT_FRONT.value] = rfEnc;
+                odometryWheelPositions[MotorType.LEFT_REAR.value] = lrEnc;
+                odometryWheelPositions[MotorType.RIGHT_REAR.value] = rrEnc;
+            }
+
+            mecanumKinematics.getRobotMotion(
+                    odometryWheelPositions[MotorType.LEFT_FRONT.value],
+                    odometryWheelPositions[MotorType.RIGHT_FRONT.value],
+                    odometryWheelPositions[MotorType.LEFT_REAR.value],
+                    odometryWheelPositions[MotorType.RIGHT_REAR.value], robotMotion);
+            xPos = robotMotion[TrcMecanumKinematics.X]*xScale;
+            yPos = robotMotion[TrcMecanumKinematics.Y]*yScale;
+            rotPos = robotMotion[TrcMecanumKinematics.ROTATION]*rotScale;
         }
         else
+        {
+            if (odometrySynced)
+            {
+                double leftDelta = getSideValue(
+                        lfEnc - prevLeftFrontPos, lmEnc - prevLeftMidPos, lrEnc - prevLeftRearPos);
+                double rightDelta = getSideValue(
+                        rfEnc - prevRightFrontPos, rmEnc - prevRightMidPos, rrEnc - prevRightRearPos);
+                //
+                // With a gyro, a slipping side follows from the other side and the gyro heading change:
+                // left - right = 2*deltaHeading/rotScale.
+                //
+                if (tractionMonitor != null && gyro != null && rotScale != 0.0)
+                {
+                    double leftWeight = Math.min(tractionMonitor.getTractionWeight(MotorType.LEFT_FRONT.value),
+                                                 tractionMonitor.getTractionWeight(MotorType.LEFT_REAR.value));
+                    double rightWeight = Math.min(tractionMonitor.getTractionWeight(MotorType.RIGHT_FRONT.value),
+                                                  tractionMonitor.getTractionWeight(MotorType.RIGHT_REAR.value));
+                    double sideDiff = 2.0*(heading - prevOdometryHeading)/rotScale;
+
+                    if (leftWeight < 1.0 && rightWeight == 1.0)
+                    {
+                        leftDelta = leftWeight*leftDelta + (1.0 - leftWeight)*(rightDelta + sideDiff);
+                    }
+                    else if (rightWeight < 1.0 && leftWeight == 1.0)
+                    {
+                        rightDelta = rightWeight*rightDelta + (1.0 - rightWeight)*(leftDelta - sideDiff);
+                    }
+                }
+                leftOdometryPos += leftDelta;
+                rightOdometryPos += rightDelta;
+            }
+            else
+            {
+                leftOdometryPos = getSideValue(lfEnc, lmEnc, lrEnc);
+                rightOdometryPos = getSideValue(rfEnc, rmEnc, rrEnc);
+            }
+
+            yPos = (leftOdometryPos + rightOdometryPos)*yScale/2.0;
+            rotPos = (leftOdometryPos - rightOdometryPos)*rotScale/2.0;
+        }
+
+        if (gyro == null)
         {
             heading = rotPos;
         }
 
+        //
+        // Integrate the field pose. The robot-relative deltas are rotated into the field frame by the heading at the
+        // middle of the interval. With heading clockwise positive:
+        //
+        // fieldX =  x*cos(heading) + y*sin(heading)
+        // fieldY = -x*sin(heading) + y*cos(heading)
+        //
+        if (odometrySynced)
+        {
+            double deltaX = xPos - prevOdometryXPos;
+            double deltaY = yPos - prevOdometryYPos;
+            double deltaHeading = heading - prevOdometryHeading;
+            double midHeading = Math.toRadians(fieldPose.heading + deltaHeading/2.0);
+            double cosH = Math.cos(midHeading);
+            double sinH = Math.sin(midHeading);
+
+            fieldPose.x += deltaX*cosH + deltaY*sinH;
+            fieldPose.y += -deltaX*sinH + deltaY*cosH;
+            fieldPose.heading += deltaHeading;
+        }
+        else
+        {
+            odometrySynced = true;
+        }
+        prevOdometryXPos = xPos;
+        prevOdometryYPos = yPos;
+        prevOdometryHeading = heading;
+
+        double headingRad = Math.toRadians(fieldPose.heading);
+        double cosH = Math.cos(headingRad);
+        double sinH = Math.sin(headingRad);
+        fieldPose.xVel = xSpeed*cosH + ySpeed*sinH;
+        fieldPose.yVel = -xSpeed*sinH + ySpeed*cosH;
+        fieldPose.turnRate = turnSpeed;
+
         double currTime = TrcUtil.getCurrentTime();
         double lfPower = leftFrontMotor != null? leftFrontMotor.getPower(): 0.0;
         double rfPower = rightFrontMotor != null? rightFrontMotor.getPower(): 0.0;
@@ -1322,10 +2197,30 @@ public class TrcDriveBase implements TrcTaskMgr.Task
         if (lrEnc != prevLeftRearPos || lrPower == 0.0) lrStallStartTime = currTime;
         if (rrEnc != prevRightRearPos || rrPower == 0.0) rrStallStartTime = currTime;
 
+        if (stallStats != null)
+        {
+            double stallStartTime = Math.min(Math.min(lfStallStartTime, rfStallStartTime),
+                                             Math.min(lrStallStartTime, rrStallStartTime));
+            //
+            // Stall start times are zero until the first loop has seen the encoders.
+            //
+            if (stallStartTime > 0.0)
+            {
+                stallStats.addSample(currTime - stallStartTime);
+            }
+        }
+
         prevLeftFrontPos = lfEnc;
         prevRightFrontPos = rfEnc;
         prevLeftRearPos = lrEnc;
         prevRightRearPos = rrEnc;
+        prevLeftMidPos = lmEnc;
+        prevRightMidPos = rmEnc;
+
+        if (wheelVelocityCtrls != null)
+        {
+            updateVelocityControl();
+        }
 
         if (debugEnabled)
         {
@@ -324,6 +324,63 @@ public abstract class TrcGyro extends TrcSensor<TrcGyro.DataType>
         }
     }   //setEnabled
 
+    /**
+     * This method switches the built-in integrator to high rate mode where it samples the rotation rate on its own
+     * thread at a fixed rate instead of once per robot loop. It must be called before the gyro is enabled. It has
+     * no effect if the gyro was not created with the GYRO_INTEGRATE option.
+     *
+     * @param interval specifies the sampling interval in msec (e.g. 2 for 500 Hz).
+     * @param method specifies the integration method.
+     */
+    public void setHighRateIntegration(long interval, TrcDataIntegrator.IntegrationMethod method)
+    {
+        final String funcName = "setHighRateIntegration";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API,
+                                "interval=%dms,method=%s", interval, method.toString());
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        if (integrator != null)
+        {
+            integrator.setIntegrationMethod(method);
+            integrator.setHighRateMode(interval);
+        }
+    }   //setHighRateIntegration
+
+    /**
+     * This method checks if the built-in integrator is sampling the gyro on its own thread. Platform dependent
+     * gyros that cache their readings once per robot loop should bypass the cache in this case.
+     *
+     * @return true if high rate integration is enabled, false otherwise.
+     */
+    public boolean isHighRateIntegration()
+    {
+        return integrator != null && integrator.isHighRateMode();
+    }   //isHighRateIntegration
+
+    /**
+     * This method is called to terminate the high rate integrator thread if there is one. Once this is called, the
+     * gyro should not be enabled again. The integrator also terminates its thread when the competition mode ends.
+     */
+    public void terminateTask()
+    {
+        final String funcName = "terminateTask";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        if (integrator != null)
+        {
+            integrator.terminateTask();
+        }
+    }   //terminateTask
+
     /**
      * This method inverts the x-axis. This is useful if the orientation of the gyro x-axis is such that the data
      * goes the wrong direction.
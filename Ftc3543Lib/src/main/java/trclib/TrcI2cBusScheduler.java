@@ -0,0 +1,428 @@
+/*
+ * Copyright (c) 2017 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package trclib;
+
+import java.util.ArrayList;
+
+/**
+ * This class implements a scheduler for I2C devices sharing the same controller. Every active I2C device adds to
+ * the time the controller takes to service all its ports, so too many active devices starve each other. Instead of
+ * manually disabling devices that are not needed, the devices are registered with this scheduler together with the
+ * rate they need to be read at and a priority. The scheduler then enables at most maxActiveDevices devices at any
+ * time, each for a read window, picking the most overdue device of the highest priority whenever a slot frees up.
+ * It also keeps track of the bus utilization and the rate each device is actually serviced at.
+ */
+public class TrcI2cBusScheduler implements TrcTaskMgr.Task
+{
+    private static final String moduleName = "TrcI2cBusScheduler";
+    private static final boolean debugEnabled = false;
+    private static final boolean tracingEnabled = false;
+    private static final TrcDbgTrace.TraceLevel traceLevel = TrcDbgTrace.TraceLevel.API;
+    private static final TrcDbgTrace.MsgLevel msgLevel = TrcDbgTrace.MsgLevel.INFO;
+    private TrcDbgTrace dbgTrace = null;
+
+    /**
+     * This interface is implemented by I2C devices that can be scheduled. A disabled device must stop using the
+     * bus until it is enabled again.
+     */
+    public interface BusDevice
+    {
+        /**
+         * This method is called by the scheduler to enable/disable the device.
+         *
+         * @param enabled specifies true to enable the device, false to disable it.
+         */
+        void setDeviceEnabled(boolean enabled);
+
+    }   //interface BusDevice
+
+    /**
+     * This class keeps the scheduling parameters and states of a registered device.
+     */
+    private static class DeviceSlot
+    {
+        private final String name;
+        private final BusDevice device;
+        private final double period;
+        private final int priority;
+        private final double windowTime;
+        private boolean active = false;
+        private boolean deviceEnabled = false;
+        private double windowStartTime = 0.0;
+        private double lastServiceTime = 0.0;
+        private long serviceCount = 0;
+        private double activeTime = 0.0;
+
+        /**
+         * Constructor: Create an instance of the object.
+         *
+         * @param name specifies the device name.
+         * @param device specifies the device.
+         * @param rate specifies the requested read rate in Hz, 0 to run as often as possible.
+         * @param priority specifies the priority, higher value is scheduled first.
+         * @param windowTime specifies how long the device stays enabled each time it is scheduled, in seconds.
+         */
+        DeviceSlot(String name, BusDevice device, double rate, int priority, double windowTime)
+        {
+            this.name = name;
+            this.device = device;
+            this.period = rate > 0.0? 1.0/rate: 0.0;
+            this.priority = priority;
+            this.windowTime = windowTime;
+        }   //DeviceSlot
+
+    }   //class DeviceSlot
+
+    private final String instanceName;
+    private final int maxActiveDevices;
+    private final ArrayList<DeviceSlot> devices = new ArrayList<>();
+    private boolean enabled = false;
+    private double startTime = 0.0;
+    private double prevTime = 0.0;
+    private double busyTime = 0.0;
+    private double capacityTime = 0.0;
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param instanceName specifies the instance name.
+     * @param maxActiveDevices specifies the maximum number of devices enabled at the same time.
+     */
+    public TrcI2cBusScheduler(final String instanceName, int maxActiveDevices)
+    {
+        if (debugEnabled)
+        {
+            dbgTrace = new TrcDbgTrace(moduleName + "." + instanceName, tracingEnabled, traceLevel, msgLevel);
+        }
+
+        if (maxActiveDevices < 1)
+        {
+            throw new IllegalArgumentException("maxActiveDevices must be at least 1.");
+        }
+
+        this.instanceName = instanceName;
+        this.maxActiveDevices = maxActiveDevices;
+    }   //TrcI2cBusScheduler
+
+    /**
+     * This method returns the instance name.
+     *
+     * @return instance name.
+     */
+    public String toString()
+    {
+        return instanceName;
+    }   //toString
+
+    /**
+     * This method registers a device with the scheduler. If the scheduler is enabled, the device is disabled until
+     * it is scheduled. Otherwise, the device is left enabled as if there is no scheduler.
+     *
+     * @param name specifies the device name used in the report.
+     * @param device specifies the device.
+     * @param rate specifies the requested read rate in Hz, 0 to run as often as possible.
+     * @param priority specifies the priority, higher value is scheduled first.
+     * @param windowTime specifies how long the device stays enabled each time it is scheduled, in seconds. It
+     *                   should be long enough for the device to complete at least one read.
+     */
+    public void addDevice(String name, BusDevice device, double rate, int priority, double windowTime)
+    {
+        final String funcName = "addDevice";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API,
+                                "name=%s,rate=%.1f,priority=%d,window=%.3f", name, rate, priority, windowTime);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        DeviceSlot slot = new DeviceSlot(name, device, rate, priority, windowTime);
+        devices.add(slot);
+        slot.deviceEnabled = !enabled;
+        if (enabled)
+        {
+            device.setDeviceEnabled(false);
+        }
+    }   //addDevice
+
+    /**
+     * This method enables/disables the scheduler. When disabled, all devices are enabled so that they behave as
+     * if there is no scheduler.
+     *
+     * @param enabled specifies true to enable the scheduler, false to disable.
+     */
+    public void setEnabled(boolean enabled)
+    {
+        final String funcName = "setEnabled";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "enabled=%s", Boolean.toString(enabled));
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        double currTime = TrcUtil.getCurrentTime();
+        for (int i = 0; i < devices.size(); i++)
+        {
+            DeviceSlot slot = devices.get(i);
+            slot.active = false;
+            slot.serviceCount = 0;
+            slot.activeTime = 0.0;
+            slot.lastServiceTime = 0.0;
+            slot.deviceEnabled = !enabled;
+            slot.device.setDeviceEnabled(slot.deviceEnabled);
+        }
+        this.enabled = enabled;
+
+        if (enabled)
+        {
+            startTime = prevTime = currTime;
+            busyTime = capacityTime = 0.0;
+            TrcTaskMgr.getInstance().registerTask(instanceName, this, TrcTaskMgr.TaskType.PRECONTINUOUS_TASK);
+        }
+        else
+        {
+            TrcTaskMgr.getInstance().unregisterTask(this, TrcTaskMgr.TaskType.PRECONTINUOUS_TASK);
+        }
+    }   //setEnabled
+
+    /**
+     * This method returns the bus utilization, which is the fraction of the available device slots that were in use
+     * since the scheduler was enabled.
+     *
+     * @return bus utilization from 0.0 to 1.0.
+     */
+    public double getUtilization()
+    {
+        return capacityTime > 0.0? busyTime/capacityTime: 0.0;
+    }   //getUtilization
+
+    /**
+     * This method returns the requested load, which is the fraction of the device slots needed to satisfy the
+     * requested rates of all devices. A value above 1.0 means the bus is over-subscribed and the devices with lower
+     * priority will be read at lower rates than requested.
+     *
+     * @return requested load.
+     */
+    public double getRequestedLoad()
+    {
+        double load = 0.0;
+
+        for (int i = 0; i < devices.size(); i++)
+        {
+            DeviceSlot slot = devices.get(i);
+            load += slot.period > 0.0? Math.min(slot.windowTime/slot.period, 1.0): 1.0;
+        }
+
+        return load/maxActiveDevices;
+    }   //getRequestedLoad
+
+    /**
+     * This method returns the rate a device has actually been scheduled at since the scheduler was enabled.
+     *
+     * @param name specifies the device name.
+     * @return achieved rate in Hz, 0.0 if the device is not found.
+     */
+    public double getServiceRate(String name)
+    {
+        double rate = 0.0;
+        double elapsedTime = prevTime - startTime;
+
+        for (int i = 0; i < devices.size(); i++)
+        {
+            DeviceSlot slot = devices.get(i);
+            if (slot.name.equals(name))
+            {
+                rate = elapsedTime > 0.0? slot.serviceCount/elapsedTime: 0.0;
+                break;
+            }
+        }
+
+        return rate;
+    }   //getServiceRate
+
+    /**
+     * This method prints the bus utilization and the requested and achieved rate of each device.
+     *
+     * @param tracer specifies the tracer to be used for printing the report.
+     */
+    public void printReport(TrcDbgTrace tracer)
+    {
+        double elapsedTime = prevTime - startTime;
+
+        tracer.traceInfo(
+                "BusReport", "%s: utilization=%.1f%%, requestedLoad=%.1f%%",
+                instanceName, getUtilization()*100.0, getRequestedLoad()*100.0);
+        for (int i = 0; i < devices.size(); i++)
+        {
+            DeviceSlot slot = devices.get(i);
+            tracer.traceInfo(
+                    "BusReport", "%16s: priority=%d, requested=%.1f Hz, achieved=%.1f Hz, active=%.1f%%",
+                    slot.name, slot.priority, slot.period > 0.0? 1.0/slot.period: 0.0,
+                    elapsedTime > 0.0? slot.serviceCount/elapsedTime: 0.0,
+                    elapsedTime > 0.0? slot.activeTime/elapsedTime*100.0: 0.0);
+        }
+    }   //printReport
+
+    /**
+     * This method picks the next device to schedule among the inactive devices that are due. It prefers higher
+     * priority and, within the same priority, the device that is the most overdue relative to its period.
+     *
+     * @param currTime specifies the current time.
+     * @return device slot to schedule, null if no device is due.
+     */
+    private DeviceSlot pickNextDevice(double currTime)
+    {
+        DeviceSlot best = null;
+        double bestLateness = 0.0;
+
+        for (int i = 0; i < devices.size(); i++)
+        {
+            DeviceSlot slot = devices.get(i);
+            double elapsedTime = currTime - slot.lastServiceTime;
+
+            if (!slot.active && elapsedTime >= slot.period)
+            {
+                double lateness = slot.period > 0.0? elapsedTime/slot.period: elapsedTime;
+                if (best == null || slot.priority > best.priority ||
+                    slot.priority == best.priority && lateness > bestLateness)
+                {
+                    best = slot;
+                    bestLateness = lateness;
+                }
+            }
+        }
+
+        return best;
+    }   //pickNextDevice
+
+    //
+    // Implements TrcTaskMgr.Task
+    //
+
+    @Override
+    public void startTask(TrcRobot.RunMode runMode)
+    {
+    }   //startTask
+
+    @Override
+    public void stopTask(TrcRobot.RunMode runMode)
+    {
+    }   //stopTask
+
+    @Override
+    public void prePeriodicTask(TrcRobot.RunMode runMode)
+    {
+    }   //prePeriodicTask
+
+    @Override
+    public void postPeriodicTask(TrcRobot.RunMode runMode)
+    {
+    }   //postPeriodicTask
+
+    /**
+     * This method is called periodically to close expired read windows and open new ones.
+     *
+     * @param runMode specifies the competition mode that is running.
+     */
+    @Override
+    public void preContinuousTask(TrcRobot.RunMode runMode)
+    {
+        final String funcName = "preContinuousTask";
+        double currTime = TrcUtil.getCurrentTime();
+        double deltaTime = currTime - prevTime;
+        int activeCount = 0;
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.TASK, "runMode=%s", runMode.toString());
+        }
+
+        //
+        // Account for the time since the last pass and close the expired windows.
+        //
+        for (int i = 0; i < devices.size(); i++)
+        {
+            DeviceSlot slot = devices.get(i);
+            if (slot.active)
+            {
+                slot.activeTime += deltaTime;
+                if (currTime - slot.windowStartTime >= slot.windowTime)
+                {
+                    slot.active = false;
+                }
+                else
+                {
+                    activeCount++;
+                }
+            }
+        }
+
+        busyTime += activeCount*deltaTime;
+        capacityTime += maxActiveDevices*deltaTime;
+
+        //
+        // Fill the free slots with due devices.
+        //
+        while (activeCount < maxActiveDevices)
+        {
+            DeviceSlot slot = pickNextDevice(currTime);
+            if (slot == null)
+            {
+                break;
+            }
+            slot.active = true;
+            slot.windowStartTime = currTime;
+            slot.lastServiceTime = currTime;
+            slot.serviceCount++;
+            activeCount++;
+        }
+
+        //
+        // Only touch the devices whose state changed. A device whose window just expired but was rescheduled right
+        // away stays enabled.
+        //
+        for (int i = 0; i < devices.size(); i++)
+        {
+            DeviceSlot slot = devices.get(i);
+            if (slot.active != slot.deviceEnabled)
+            {
+                slot.deviceEnabled = slot.active;
+                slot.device.setDeviceEnabled(slot.active);
+            }
+        }
+        prevTime = currTime;
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.TASK, "active=%d", activeCount);
+        }
+    }   //preContinuousTask
+
+    @Override
+    public void postContinuousTask(TrcRobot.RunMode runMode)
+    {
+    }   //postContinuousTask
+
+}   //class TrcI2cBusScheduler
@@ -22,16 +22,23 @@
 
 package trclib;
 
+import hallib.HalDashboard;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.Iterator;
 
 /**
  * This class implements a platform independent I2C device. Typically, this class is extended by a platform dependent
  * I2C device class. The platform dependent I2C device class must implement the abstract methods required by this
  * class. The abstract methods allow this class to perform platform independent operations on the I2C device.
+ * Requests are queued and processed by a port command state machine that advances as many states as the port
+ * allows in each pass, so a read normally completes in one robot loop instead of one state per loop. Request
+ * objects are recycled through a pool, and read requests queued by different callers for adjacent or overlapping
+ * registers are coalesced into a single bus transaction if the platform sets a maximum read length.
  */
-public abstract class TrcI2cDevice implements TrcTaskMgr.Task
+public abstract class TrcI2cDevice implements TrcTaskMgr.Task, TrcI2cBusScheduler.BusDevice
 {
     private static final String moduleName = "TrcI2cDevice";
     private static final boolean debugEnabled = false;
@@ -90,7 +97,8 @@ public abstract class TrcI2cDevice implements TrcTaskMgr.Task
          * @param regAddress specifies the starting register address.
          * @param length specifies the number of bytes read.
          * @param timestamp specified the timestamp of the data retrieved.
-         * @param data specifies the data byte array.
+         * @param data specifies the data byte array. It may be reused for the next completion of the request, so
+         *             copy anything that must be kept beyond this call.
          * @param timedout specifies true if the operation was timed out, false otherwise.
          * @return true if the request should be repeated, false otherwise.
          */
@@ -137,7 +145,7 @@ public abstract class TrcI2cDevice implements TrcTaskMgr.Task
     /**
      * This class implements an I2C device request. It can be a read or write request. This is implicitly indicated
      * by the writeBuffer field. The presence of a writeBuffer indicates it is a write request. It is a read request
-     * otherwise.
+     * otherwise. Request objects are recycled, so they are initialized by init() instead of the constructor.
      */
     private class Request
     {
@@ -147,9 +155,19 @@ public abstract class TrcI2cDevice implements TrcTaskMgr.Task
         private CompletionHandler handler;
         private double timeout;
         private boolean expired;
+        private double queueTime;
+        //
+        // Scratch buffers owned by the request so that byte and word commands don't allocate a new array each time.
+        //
+        private final byte[] byteCommand = new byte[1];
+        private final byte[] wordCommand = new byte[2];
+        //
+        // Buffer for this request's share of a coalesced read, reused as long as the request length is unchanged.
+        //
+        private byte[] readBuffer = null;
 
         /**
-         * Constructor: Create an instance of the object.
+         * This method initializes the request.
          *
          * @param regAddress specifies the register address.
          * @param length specifies the number of bytes to read or write.
@@ -157,7 +175,7 @@ public abstract class TrcI2cDevice implements TrcTaskMgr.Task
          * @param handler specifies the completion handler to call when done. Can be null if none needed.
          * @param timeout specifies the timeout time. It can be set to 0 if there is no timeout.
          */
-        public Request(int regAddress, int length, byte[] writeBuffer, CompletionHandler handler, double timeout)
+        public void init(int regAddress, int length, byte[] writeBuffer, CompletionHandler handler, double timeout)
         {
             this.regAddress = regAddress;
             this.length = length;
@@ -165,14 +183,36 @@ public abstract class TrcI2cDevice implements TrcTaskMgr.Task
             this.handler = handler;
             this.timeout = timeout;
             this.expired = false;
-        }   //Request
+        }   //init
 
     }   //class Request
 
+    //
+    // Maximum number of state transitions per pass. It only guards against spinning, the state machine normally
+    // stops advancing when it waits for the port.
+    //
+    private static final int MAX_STATE_STEPS = 8;
+
     private String instanceName;
     private TrcStateMachine<PortCommandState> portCommandSM;
-    private Queue<Request> requestQueue = new LinkedList<>();
+    private ArrayDeque<Request> requestQueue = new ArrayDeque<>();
+    private ArrayList<Request> requestPool = new ArrayList<>();
+    private ArrayList<Request> coalescedRequests = new ArrayList<>();
     private Request currRequest = null;
+    private int txnAddress = 0;
+    private int txnLength = 0;
+    private int maxReadLength = 0;
+    private volatile boolean deviceEnabled = true;
+    //
+    // Bus metrics.
+    //
+    private long requestCount = 0;
+    private long transactionCount = 0;
+    private long bytesRead = 0;
+    private long bytesWritten = 0;
+    private long timeoutCount = 0;
+    private long retryCount = 0;
+    private TrcStreamingStats latencyStats = null;
     private double expiredTime = 0.0;
     private byte[] dataRead = null;
 
@@ -202,6 +242,248 @@ public abstract class TrcI2cDevice implements TrcTaskMgr.Task
         return instanceName;
     }   //toString
 
+    /**
+     * This method sets the maximum number of bytes the port can read in one transaction. Read requests queued for
+     * adjacent or overlapping registers are coalesced into one transaction as long as the combined length does
+     * not exceed this limit. Coalescing is disabled if it is set to 0.
+     *
+     * @param maxReadLength specifies the maximum read length in bytes.
+     */
+    protected void setMaxReadLength(int maxReadLength)
+    {
+        this.maxReadLength = maxReadLength;
+    }   //setMaxReadLength
+
+    /**
+     * This method checks if the device is enabled.
+     *
+     * @return true if the device is enabled, false otherwise.
+     */
+    public boolean isDeviceEnabled()
+    {
+        final String funcName = "isDeviceEnabled";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API, "=%s", Boolean.toString(deviceEnabled));
+        }
+
+        return deviceEnabled;
+    }   //isDeviceEnabled
+
+    /**
+     * This method enables/disables the device. While disabled, requests are still queued but no new transaction is
+     * started on the port until the device is enabled again. A transaction already in progress is allowed to
+     * complete. This is typically called by TrcI2cBusScheduler.
+     *
+     * @param enabled specifies true to enable the device, false to disable.
+     */
+    @Override
+    public void setDeviceEnabled(boolean enabled)
+    {
+        final String funcName = "setDeviceEnabled";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "enabled=%s", Boolean.toString(enabled));
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        deviceEnabled = enabled;
+    }   //setDeviceEnabled
+
+    /**
+     * This method attaches a streaming statistics object that records the latency of each request from the time it
+     * is queued to the time it is completed, in msec. A statistics object with histogram bins provides latency
+     * percentiles.
+     *
+     * @param stats specifies the statistics object, null to detach.
+     */
+    public synchronized void setLatencyStatistics(TrcStreamingStats stats)
+    {
+        latencyStats = stats;
+    }   //setLatencyStatistics
+
+    /**
+     * This method returns the latency statistics object.
+     *
+     * @return latency statistics, null if none attached.
+     */
+    public synchronized TrcStreamingStats getLatencyStatistics()
+    {
+        return latencyStats;
+    }   //getLatencyStatistics
+
+    /**
+     * This method resets the bus metrics counters and the latency statistics if any.
+     */
+    public synchronized void resetMetrics()
+    {
+        requestCount = 0;
+        transactionCount = 0;
+        bytesRead = 0;
+        bytesWritten = 0;
+        timeoutCount = 0;
+        retryCount = 0;
+        if (latencyStats != null)
+        {
+            latencyStats.reset();
+        }
+    }   //resetMetrics
+
+    /**
+     * This method returns the number of completed requests. Coalesced requests are counted individually.
+     *
+     * @return number of completed requests.
+     */
+    public synchronized long getRequestCount()
+    {
+        return requestCount;
+    }   //getRequestCount
+
+    /**
+     * This method returns the number of bus transactions sent to the port.
+     *
+     * @return number of bus transactions.
+     */
+    public synchronized long getTransactionCount()
+    {
+        return transactionCount;
+    }   //getTransactionCount
+
+    /**
+     * This method returns the number of bytes read by completed read requests.
+     *
+     * @return number of bytes read.
+     */
+    public synchronized long getBytesRead()
+    {
+        return bytesRead;
+    }   //getBytesRead
+
+    /**
+     * This method returns the number of bytes written by completed write requests.
+     *
+     * @return number of bytes written.
+     */
+    public synchronized long getBytesWritten()
+    {
+        return bytesWritten;
+    }   //getBytesWritten
+
+    /**
+     * This method returns the number of requests that timed out.
+     *
+     * @return number of timeouts.
+     */
+    public synchronized long getTimeoutCount()
+    {
+        return timeoutCount;
+    }   //getTimeoutCount
+
+    /**
+     * This method returns the number of timed out requests that were repeated by their completion handler.
+     *
+     * @return number of retries.
+     */
+    public synchronized long getRetryCount()
+    {
+        return retryCount;
+    }   //getRetryCount
+
+    /**
+     * This method displays the bus metrics on the dashboard. Note that the metrics occupy two dashboard lines.
+     *
+     * @param lineNum specifies the starting line number of the dashboard to display the metrics.
+     */
+    public synchronized void displayMetrics(int lineNum)
+    {
+        HalDashboard dashboard = HalDashboard.getInstance();
+
+        dashboard.displayPrintf(
+                lineNum, "%s:Req=%d,Txn=%d,Rd=%d,Wr=%d,TO=%d,Retry=%d",
+                instanceName, requestCount, transactionCount, bytesRead, bytesWritten, timeoutCount, retryCount);
+        if (latencyStats != null)
+        {
+            dashboard.displayPrintf(
+                    lineNum + 1, "Latency(ms):mean=%.1f,max=%.1f", latencyStats.getWindowMean(), latencyStats.getMax());
+        }
+    }   //displayMetrics
+
+    /**
+     * This method prints the bus metrics to the given tracer.
+     *
+     * @param tracer specifies the tracer to be used for printing the metrics.
+     */
+    public synchronized void printMetrics(TrcDbgTrace tracer)
+    {
+        final String funcName = "printMetrics";
+
+        tracer.traceInfo(
+                funcName, "%s: requests=%d, transactions=%d, bytesRead=%d, bytesWritten=%d, timeouts=%d, retries=%d",
+                instanceName, requestCount, transactionCount, bytesRead, bytesWritten, timeoutCount, retryCount);
+        if (latencyStats != null && latencyStats.getCount() > 0)
+        {
+            tracer.traceInfo(
+                    funcName, "%s: latency(ms) mean=%.1f, stdDev=%.1f, min=%.1f, max=%.1f",
+                    instanceName, latencyStats.getWindowMean(), latencyStats.getWindowStdDev(),
+                    latencyStats.getMin(), latencyStats.getMax());
+        }
+    }   //printMetrics
+
+    /**
+     * This method gets a request object from the pool, or creates one if the pool is empty, and initializes it.
+     *
+     * @param regAddress specifies the register address.
+     * @param length specifies the number of bytes to read or write.
+     * @param writeBuffer specifies the write buffer, null if read operation.
+     * @param handler specifies the completion handler to call when done. Can be null if none needed.
+     * @param timeout specifies the timeout time. It can be set to 0 if there is no timeout.
+     * @return initialized request.
+     */
+    private Request obtainRequest(
+            int regAddress, int length, byte[] writeBuffer, CompletionHandler handler, double timeout)
+    {
+        int poolSize = requestPool.size();
+        Request request = poolSize > 0? requestPool.remove(poolSize - 1): new Request();
+
+        request.init(regAddress, length, writeBuffer, handler, timeout);
+
+        return request;
+    }   //obtainRequest
+
+    /**
+     * This method returns a completed request to the pool.
+     *
+     * @param request specifies the request to be recycled.
+     */
+    private void releaseRequest(Request request)
+    {
+        request.writeBuffer = null;
+        request.handler = null;
+        requestPool.add(request);
+    }   //releaseRequest
+
+    /**
+     * This method adds a request to the end of the queue and starts the port command state machine if it is not
+     * already active.
+     *
+     * @param request specifies the request to be queued.
+     */
+    private void queueRequest(Request request)
+    {
+        request.queueTime = TrcUtil.getCurrentTime();
+        requestQueue.add(request);
+        //
+        // If the PortCommand state machine is not already active, start it.
+        //
+        if (!portCommandSM.isEnabled())
+        {
+            setTaskEnabled(true);
+        }
+    }   //queueRequest
+
     /**
      * This method enables/disables the internal port command state machine and its task.
      *
@@ -247,14 +529,7 @@ public abstract class TrcI2cDevice implements TrcTaskMgr.Task
             dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
         }
 
-        requestQueue.add(new Request(regAddress, length, null, handler, timeout));
-        //
-        // If the PortCommand state machine is not already active, start it.
-        //
-        if (!portCommandSM.isEnabled())
-        {
-            setTaskEnabled(true);
-        }
+        queueRequest(obtainRequest(regAddress, length, null, handler, timeout));
     }   //read
 
     /**
@@ -299,14 +574,7 @@ public abstract class TrcI2cDevice implements TrcTaskMgr.Task
             dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
         }
 
-        requestQueue.add(new Request(regAddress, length, writeBuffer, handler, timeout));
-        //
-        // If the PortCommand state machine is not already active, start it.
-        //
-        if (!portCommandSM.isEnabled())
-        {
-            setTaskEnabled(true);
-        }
+        queueRequest(obtainRequest(regAddress, length, writeBuffer, handler, timeout));
     }   //write
 
     /**
@@ -344,10 +612,11 @@ public abstract class TrcI2cDevice implements TrcTaskMgr.Task
     public void sendByteCommand(int regAddress, byte command)
     {
         final String funcName = "sendByteCommand";
-        byte[] data = new byte[1];
+        Request request = obtainRequest(regAddress, 1, null, null, 0.0);
 
-        data[0] = command;
-        write(regAddress, 1, data);
+        request.byteCommand[0] = command;
+        request.writeBuffer = request.byteCommand;
+        queueRequest(request);
 
         if (debugEnabled)
         {
@@ -365,11 +634,12 @@ public abstract class TrcI2cDevice implements TrcTaskMgr.Task
     public void sendWordCommand(int regAddress, short command)
     {
         final String funcName = "sendWordCommand";
-        byte[] data = new byte[2];
+        Request request = obtainRequest(regAddress, 2, null, null, 0.0);
 
-        data[0] = (byte)(command & 0xff);
-        data[1] = (byte)(command >> 8);
-        write(regAddress, 2, data);
+        request.wordCommand[0] = (byte)(command & 0xff);
+        request.wordCommand[1] = (byte)(command >> 8);
+        request.writeBuffer = request.wordCommand;
+        queueRequest(request);
 
         if (debugEnabled)
         {
@@ -378,226 +648,383 @@ public abstract class TrcI2cDevice implements TrcTaskMgr.Task
         }
     }   //sendWordCommand
 
-    //
-    // Implements TrcTaskMgr.Task
-    //
-
-    @Override
-    public void startTask(TrcRobot.RunMode runMode)
+    /**
+     * This method dequeues the next request. If it is a read request, it also removes other queued read requests
+     * that can be served by the same transaction (adjacent or overlapping register ranges within the maximum read
+     * length). The search stops at the first write request so that reads are never reordered across writes.
+     *
+     * @return next request, null if the queue is empty.
+     */
+    private Request dequeueRequest()
     {
-    }   //startTask
+        Request request = requestQueue.poll();
 
-    @Override
-    public void stopTask(TrcRobot.RunMode runMode)
-    {
-    }   //stopTask
+        coalescedRequests.clear();
+        if (request != null)
+        {
+            txnAddress = request.regAddress;
+            txnLength = request.length;
 
-    @Override
-    public void prePeriodicTask(TrcRobot.RunMode runMode)
-    {
-    }   //prePeriodicTask
+            if (request.writeBuffer == null && maxReadLength > 0)
+            {
+                boolean merged;
+                //
+                // Merging may extend the range to reach requests skipped earlier, so repeat until nothing merges.
+                //
+                do
+                {
+                    merged = false;
+                    for (Iterator<Request> iter = requestQueue.iterator(); iter.hasNext();)
+                    {
+                        Request next = iter.next();
+                        if (next.writeBuffer != null)
+                        {
+                            break;
+                        }
 
-    @Override
-    public void postPeriodicTask(TrcRobot.RunMode runMode)
-    {
-    }   //postPeriodicTask
+                        int start = Math.min(txnAddress, next.regAddress);
+                        int end = Math.max(txnAddress + txnLength, next.regAddress + next.length);
+                        if (next.regAddress <= txnAddress + txnLength && next.regAddress + next.length >= txnAddress &&
+                            end - start <= maxReadLength)
+                        {
+                            iter.remove();
+                            coalescedRequests.add(next);
+                            txnAddress = start;
+                            txnLength = end - start;
+                            merged = true;
+                        }
+                    }
+                } while (merged);
+            }
+        }
+
+        return request;
+    }   //dequeueRequest
 
     /**
-     * This method is called periodically to run the PortCommand state machines.
+     * This method calls the completion handler of a request and either re-queues or recycles it.
      *
-     * @param runMode specifies the competition mode that is running.
+     * @param request specifies the completed request.
+     * @param timestamp specifies the completion timestamp.
+     * @param expired specifies true if the request has timed out.
      */
-    @Override
-    public void preContinuousTask(TrcRobot.RunMode runMode)
+    private void completeRequest(Request request, double timestamp, boolean expired)
     {
-        final String funcName = "preContinuousTask";
+        boolean repeat = false;
 
-        if (debugEnabled)
+        synchronized (this)
         {
-            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.TASK, "runMode=%s", runMode.toString());
+            requestCount++;
+            if (expired)
+            {
+                timeoutCount++;
+            }
+            else if (request.writeBuffer == null)
+            {
+                bytesRead += request.length;
+            }
+            else
+            {
+                bytesWritten += request.length;
+            }
+
+            if (latencyStats != null)
+            {
+                latencyStats.addSample((timestamp - request.queueTime)*1000.0);
+            }
         }
 
-        if (portCommandSM.isReady())
+        if (request.handler != null)
         {
-            PortCommandState state = portCommandSM.getState();
-            switch (state)
+            if (request.writeBuffer == null)
             {
-                case START:
+                byte[] data = dataRead;
+                //
+                // If the request was coalesced with others, hand it only its own registers. Partial data of a timed
+                // out transaction is passed as is.
+                //
+                if (data != null && data.length == txnLength &&
+                    (request.regAddress != txnAddress || request.length != txnLength))
+                {
+                    if (request.readBuffer == null || request.readBuffer.length != request.length)
+                    {
+                        request.readBuffer = new byte[request.length];
+                    }
+                    System.arraycopy(dataRead, request.regAddress - txnAddress, request.readBuffer, 0, request.length);
+                    data = request.readBuffer;
+                }
+                repeat = request.handler.readCompletion(
+                        request.regAddress, request.length, timestamp, data, expired);
+            }
+            else
+            {
+                request.handler.writeCompletion(request.regAddress, request.length, expired);
+            }
+        }
+
+        if (repeat)
+        {
+            //
+            // Repeat this read request.
+            //
+            if (expired)
+            {
+                synchronized (this)
+                {
+                    retryCount++;
+                }
+            }
+            request.expired = false;
+            request.queueTime = timestamp;
+            requestQueue.add(request);
+        }
+        else
+        {
+            releaseRequest(request);
+        }
+    }   //completeRequest
+
+    /**
+     * This method runs one step of the PortCommand state machine.
+     *
+     * @param state specifies the current state.
+     */
+    private void runPortCommand(PortCommandState state)
+    {
+        final String funcName = "runPortCommand";
+
+        switch (state)
+        {
+            case START:
+                if (!deviceEnabled)
+                {
                     //
-                    // Dequeue a request from the beginning of the queue.
+                    // The device is not scheduled on the bus, hold the queued requests until it is.
                     //
-                    currRequest = requestQueue.poll();
-                    if (currRequest == null)
+                    break;
+                }
+                //
+                // Dequeue a request from the beginning of the queue.
+                //
+                currRequest = dequeueRequest();
+                if (currRequest == null)
+                {
+                    //
+                    // There is no request in the queue, we are done.
+                    //
+                    portCommandSM.setState(PortCommandState.DONE);
+                }
+                else
+                {
+                    if (debugEnabled)
+                    {
+                        dbgTrace.traceInfo(funcName, "%s: coalesced=%d", state.toString(), coalescedRequests.size());
+                    }
+                    expiredTime = currRequest.timeout;
+                    if (expiredTime != 0.0)
+                    {
+                        expiredTime += TrcUtil.getCurrentTime();
+                    }
+                    currRequest.expired = false;
+                    portCommandSM.setState(PortCommandState.SEND_PORT_COMMAND);
+                }
+                break;
+
+            case SEND_PORT_COMMAND:
+                //
+                // Wait for the port to become ready before sending the command.
+                //
+                if (isPortReady())
+                {
+                    if (debugEnabled)
+                    {
+                        dbgTrace.traceInfo(funcName, "%s: Request(addr=%x,len=%d,%s)",
+                                           state.toString(), txnAddress, txnLength,
+                                           currRequest.writeBuffer == null? "read": "write");
+                    }
+
+                    dataRead = null;
+                    synchronized (this)
+                    {
+                        transactionCount++;
+                    }
+                    if (currRequest.writeBuffer == null)
                     {
                         //
-                        // There is no request in the queue, we are done.
+                        // It's a read request, setup a read command.
                         //
-                        portCommandSM.setState(PortCommandState.DONE);
-                        break;
+                        sendReadCommand(txnAddress, txnLength);
                     }
                     else
                     {
-                        if (debugEnabled)
-                        {
-                            dbgTrace.traceInfo(funcName, "%s", state.toString());
-                        }
-                        expiredTime = currRequest.timeout;
-                        if (expiredTime != 0.0)
-                        {
-                            expiredTime += TrcUtil.getCurrentTime();
-                        }
-                        currRequest.expired = false;
-                        portCommandSM.setState(PortCommandState.SEND_PORT_COMMAND);
-                        state = portCommandSM.getState();
+                        //
+                        // It's a write request, setup a write command.
+                        //
+                        sendWriteCommand(currRequest.regAddress, currRequest.length, currRequest.writeBuffer);
                     }
-                    //
-                    // Intentionally falling through to next case.
-                    //
-                case SEND_PORT_COMMAND:
-                    //
-                    // Wait for the port to become ready before sending the command.
-                    //
-                    if (isPortReady())
+                    portCommandSM.setState(PortCommandState.WAIT_PORT_COMMAND_COMPLETE);
+                }
+                else if (expiredTime != 0.0 && TrcUtil.getCurrentTime() > expiredTime)
+                {
+                    currRequest.expired = true;
+                    portCommandSM.setState(PortCommandState.PORT_COMMAND_COMPLETED);
+                    if (debugEnabled)
                     {
-                        if (debugEnabled)
-                        {
-                            dbgTrace.traceInfo(funcName, "%s: Request(addr=%x,len=%d,%s)",
-                                               state.toString(), currRequest.regAddress,
-                                               currRequest.length, currRequest.writeBuffer == null? "read": "write");
-                        }
-
-                        dataRead = null;
-                        if (currRequest.writeBuffer == null)
-                        {
-                            //
-                            // It's a read request, setup a read command.
-                            //
-                            sendReadCommand(currRequest.regAddress, currRequest.length);
-                        }
-                        else
-                        {
-                            //
-                            // It's a write request, setup a write command.
-                            //
-                            sendWriteCommand(currRequest.regAddress, currRequest.length, currRequest.writeBuffer);
-                        }
-                        portCommandSM.setState(PortCommandState.WAIT_PORT_COMMAND_COMPLETE);
+                        dbgTrace.traceInfo(funcName, "%s: Port timed out, busy with another request.",
+                                           state.toString());
                     }
-                    else if (expiredTime != 0.0 && TrcUtil.getCurrentTime() > expiredTime)
+                }
+                break;
+
+            case WAIT_PORT_COMMAND_COMPLETE:
+                //
+                // Wait for the port command to complete or timed out.
+                //
+                if (isPortReady())
+                {
+                    if (currRequest.writeBuffer != null)
                     {
-                        currRequest.expired = true;
+                        //
+                        // It is a write request, the request is completed.
+                        //
                         portCommandSM.setState(PortCommandState.PORT_COMMAND_COMPLETED);
                         if (debugEnabled)
                         {
-                            dbgTrace.traceInfo(funcName, "%s: Port timed out, busy with another request.",
-                                               state.toString());
+                            dbgTrace.traceInfo(funcName, "%s: write command completed.", state.toString());
                         }
                     }
-                    break;
-
-                case WAIT_PORT_COMMAND_COMPLETE:
-                    //
-                    // Wait for the port command to complete or timed out.
-                    //
-                    if (isPortReady())
+                    else
                     {
-                        if (currRequest.writeBuffer != null)
+                        dataRead = getData();
+                        //
+                        // It is a read request. For some reason, even when isPortReady() returns true, the data
+                        // may not be ready. So we need to check the buffer length against the requested length.
+                        // If it's not ready, remain in this state until we have valid data or timed out.
+                        //
+                        if (dataRead.length == txnLength)
                         {
                             //
-                            // It is a write request, the request is completed.
+                            // We have valid data, the request is completed.
                             //
                             portCommandSM.setState(PortCommandState.PORT_COMMAND_COMPLETED);
                             if (debugEnabled)
                             {
-                                dbgTrace.traceInfo(funcName, "%s: write command completed.", state.toString());
+                                dbgTrace.traceInfo(funcName, "%s: read command completed. %s",
+                                                   state.toString(), Arrays.toString(dataRead));
                             }
                         }
-                        else
+                        else if (expiredTime != 0.0 && TrcUtil.getCurrentTime() > expiredTime)
                         {
-                            dataRead = getData();
-                            //
-                            // It is a read request. For some reason, even when isPortReady() returns true, the data
-                            // may not be ready. So we need to check the buffer length against the requested length.
-                            // If it's not ready, remain in this state until we have valid data or timed out.
-                            //
-                            if (dataRead.length == currRequest.length)
-                            {
-                                //
-                                // We have valid data, the request is completed.
-                                //
-                                portCommandSM.setState(PortCommandState.PORT_COMMAND_COMPLETED);
-                                if (debugEnabled)
-                                {
-                                    dbgTrace.traceInfo(funcName, "%s: read command completed. %s",
-                                                       state.toString(), Arrays.toString(dataRead));
-                                }
-                            }
-                            else if (expiredTime != 0.0 && TrcUtil.getCurrentTime() > expiredTime)
+                            currRequest.expired = true;
+                            portCommandSM.setState(PortCommandState.PORT_COMMAND_COMPLETED);
+                            if (debugEnabled)
                             {
-                                currRequest.expired = true;
-                                portCommandSM.setState(PortCommandState.PORT_COMMAND_COMPLETED);
-                                if (debugEnabled)
-                                {
-                                    dbgTrace.traceInfo(funcName, "%s: Port command timed out.", state.toString());
-                                }
+                                dbgTrace.traceInfo(funcName, "%s: Port command timed out.", state.toString());
                             }
                         }
                     }
-                    else if (expiredTime != 0.0 && TrcUtil.getCurrentTime() > expiredTime)
-                    {
-                        currRequest.expired = true;
-                        portCommandSM.setState(PortCommandState.PORT_COMMAND_COMPLETED);
-                        if (debugEnabled)
-                        {
-                            dbgTrace.traceInfo(funcName, "%s: Port command timed out.", state.toString());
-                        }
-                    }
-                    break;
-
-                case PORT_COMMAND_COMPLETED:
-                    //
-                    // The port command is complete, call completion handler if any.
-                    //
+                }
+                else if (expiredTime != 0.0 && TrcUtil.getCurrentTime() > expiredTime)
+                {
+                    currRequest.expired = true;
+                    portCommandSM.setState(PortCommandState.PORT_COMMAND_COMPLETED);
                     if (debugEnabled)
                     {
-                        dbgTrace.traceInfo(funcName, "%s: Command completed (timeout=%s).",
-                                           state.toString(), Boolean.toString(currRequest.expired));
+                        dbgTrace.traceInfo(funcName, "%s: Port command timed out.", state.toString());
                     }
+                }
+                break;
 
-                    if (currRequest.handler != null)
-                    {
-                        if (currRequest.writeBuffer == null)
-                        {
-                            if (currRequest.handler.readCompletion(currRequest.regAddress, currRequest.length,
-                                                                   TrcUtil.getCurrentTime(), dataRead,
-                                                                   currRequest.expired))
-                            {
-                                //
-                                // Repeat this read request.
-                                //
-                                requestQueue.add(currRequest);
-                            }
-                        }
-                        else
-                        {
-                            currRequest.handler.writeCompletion(currRequest.regAddress, currRequest.length,
-                                                                currRequest.expired);
-                        }
-                    }
-                    portCommandSM.setState(PortCommandState.START);
-                    break;
+            case PORT_COMMAND_COMPLETED:
+                //
+                // The port command is complete, call completion handlers if any.
+                //
+                if (debugEnabled)
+                {
+                    dbgTrace.traceInfo(funcName, "%s: Command completed (timeout=%s).",
+                                       state.toString(), Boolean.toString(currRequest.expired));
+                }
 
-                case DONE:
-                default:
-                    //
-                    // There is no more request in the queue, stop the state machine.
-                    //
-                    if (debugEnabled)
-                    {
-                        dbgTrace.traceInfo(funcName, "%s", state.toString());
-                    }
-                    setTaskEnabled(false);
-                    break;
+                double timestamp = TrcUtil.getCurrentTime();
+                boolean expired = currRequest.expired;
+                completeRequest(currRequest, timestamp, expired);
+                for (int i = 0; i < coalescedRequests.size(); i++)
+                {
+                    completeRequest(coalescedRequests.get(i), timestamp, expired);
+                }
+                coalescedRequests.clear();
+                currRequest = null;
+                portCommandSM.setState(PortCommandState.START);
+                break;
+
+            case DONE:
+            default:
+                //
+                // There is no more request in the queue, stop the state machine.
+                //
+                if (debugEnabled)
+                {
+                    dbgTrace.traceInfo(funcName, "%s", state.toString());
+                }
+                setTaskEnabled(false);
+                break;
+        }
+    }   //runPortCommand
+
+    //
+    // Implements TrcTaskMgr.Task
+    //
+
+    @Override
+    public void startTask(TrcRobot.RunMode runMode)
+    {
+    }   //startTask
+
+    @Override
+    public void stopTask(TrcRobot.RunMode runMode)
+    {
+    }   //stopTask
+
+    @Override
+    public void prePeriodicTask(TrcRobot.RunMode runMode)
+    {
+    }   //prePeriodicTask
+
+    @Override
+    public void postPeriodicTask(TrcRobot.RunMode runMode)
+    {
+    }   //postPeriodicTask
+
+    /**
+     * This method is called periodically to run the PortCommand state machines. It keeps advancing the state
+     * machine until it has to wait for the port, so that a request can be completed and the next one started in the
+     * same pass. It stops after sending a port command because the port status and data read back in the same pass
+     * are still the ones cached before the command was sent.
+     *
+     * @param runMode specifies the competition mode that is running.
+     */
+    @Override
+    public void preContinuousTask(TrcRobot.RunMode runMode)
+    {
+        final String funcName = "preContinuousTask";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.TASK, "runMode=%s", runMode.toString());
+        }
+
+        for (int steps = 0; steps < MAX_STATE_STEPS && portCommandSM.isReady(); steps++)
+        {
+            PortCommandState prevState = portCommandSM.getState();
+
+            runPortCommand(prevState);
+            if (portCommandSM.getState() == prevState ||
+                portCommandSM.getState() == PortCommandState.WAIT_PORT_COMMAND_COMPLETE)
+            {
+                //
+                // The state machine is waiting for the port or has just sent a command, try again in the next pass.
+                //
+                break;
             }
         }
 
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2017 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package trclib;
+
+/**
+ * This class implements the kinematics of a mecanum drive base. The inverse kinematics converts the robot X, Y and
+ * rotation powers to the four wheel powers and the forward kinematics converts the four wheel values (positions or
+ * speeds) back to robot X, Y and rotation, so the drive and the odometry use the same equations. Following
+ * RobotDrive.mecanumDrive_Cartesian in WPILib:
+ *
+ * LF =  x + y + rot    RF = -x + y - rot
+ * LR = -x + y + rot    RR =  x + y - rot
+ *
+ * x = ((LF + RR) - (RF + LR))/4, y = (LF + RF + LR + RR)/4, rot = ((LF + LR) - (RF + RR))/4
+ *
+ * The results are written into arrays provided by the caller and the sine and cosine of the last rotation angle
+ * are cached, so the methods do not allocate and are cheap to call every loop. The wheel arrays are indexed by
+ * TrcDriveBase.MotorType values.
+ */
+public class TrcMecanumKinematics
+{
+    public static final int X = 0;
+    public static final int Y = 1;
+    public static final int ROTATION = 2;
+
+    private double cachedAngle = 0.0;
+    private double cachedCos = 1.0;
+    private double cachedSin = 0.0;
+
+    /**
+     * This method rotates a field relative X and Y into the robot frame given the robot heading. The heading is
+     * clockwise positive.
+     *
+     * robotX = x*cos(heading) - y*sin(heading)
+     * robotY = x*sin(heading) + y*cos(heading)
+     *
+     * @param x specifies the field relative X.
+     * @param y specifies the field relative Y.
+     * @param heading specifies the robot heading in degrees.
+     * @param result specifies the array to receive the robot relative X and Y at the X and Y indices.
+     */
+    public void fieldToRobot(double x, double y, double heading, double[] result)
+    {
+        updateAngle(heading);
+        result[X] = x*cachedCos - y*cachedSin;
+        result[Y] = x*cachedSin + y*cachedCos;
+    }   //fieldToRobot
+
+    /**
+     * This method converts a polar drive vector to X and Y. The direction is in degrees clockwise from the Y axis.
+     *
+     * @param magnitude specifies the magnitude.
+     * @param direction specifies the direction in degrees.
+     * @param result specifies the array to receive X and Y at the X and Y indices.
+     */
+    public void polarToCartesian(double magnitude, double direction, double[] result)
+    {
+        updateAngle(direction);
+        result[X] = magnitude*cachedSin;
+        result[Y] = magnitude*cachedCos;
+    }   //polarToCartesian
+
+    /**
+     * This method calculates the wheel powers for the given robot X, Y and rotation powers (inverse kinematics). If
+     * a wheel power exceeds 1.0, the translation is scaled down first so the robot keeps the requested rotation. The
+     * rotation itself is only reduced if it is larger than 1.0 by itself.
+     *
+     * @param x specifies the X power.
+     * @param y specifies the Y power.
+     * @param rotation specifies the rotation power.
+     * @param wheelPowers specifies the array to receive the four wheel powers.
+     */
+    public void getWheelPowers(double x, double y, double rotation, double[] wheelPowers)
+    {
+        rotation = TrcUtil.clipRange(rotation);
+
+        double maxTranslation = Math.max(Math.abs(x + y), Math.abs(x - y));
+        double available = 1.0 - Math.abs(rotation);
+
+        if (maxTranslation > available)
+        {
+            double scale = available/maxTranslation;
+            x *= scale;
+            y *= scale;
+        }
+
+        wheelPowers[TrcDriveBase.MotorType.LEFT_FRONT.value] = x + y + rotation;
+        wheelPowers[TrcDriveBase.MotorType.RIGHT_FRONT.value] = -x + y - rotation;
+        wheelPowers[TrcDriveBase.MotorType.LEFT_REAR.value] = -x + y + rotation;
+        wheelPowers[TrcDriveBase.MotorType.RIGHT_REAR.value] = x + y - rotation;
+    }   //getWheelPowers
+
+    /**
+     * This method calculates the robot X, Y and rotation from the four wheel values (forward kinematics). The wheel
+     * values can be positions or speeds, the results are in the same units.
+     *
+     * @param lf specifies the left front wheel value.
+     * @param rf specifies the right front wheel value.
+     * @param lr specifies the left rear wheel value.
+     * @param rr specifies the right rear wheel value.
+     * @param result specifies the array to receive X, Y and rotation at the X, Y and ROTATION indices.
+     */
+    public void getRobotMotion(double lf, double rf, double lr, double rr, double[] result)
+    {
+        result[X] = ((lf + rr) - (rf + lr))/4.0;
+        result[Y] = (lf + rf + lr + rr)/4.0;
+        result[ROTATION] = ((lf + lr) - (rf + rr))/4.0;
+    }   //getRobotMotion
+
+    /**
+     * This method updates the cached sine and cosine if the angle has changed.
+     *
+     * @param angle specifies the angle in degrees.
+     */
+    private void updateAngle(double angle)
+    {
+        if (angle != cachedAngle)
+        {
+            double angleInRad = Math.toRadians(angle);
+            cachedAngle = angle;
+            cachedCos = Math.cos(angleInRad);
+            cachedSin = Math.sin(angleInRad);
+        }
+    }   //updateAngle
+
+}   //class TrcMecanumKinematics
@@ -0,0 +1,374 @@
+/*
+ * Copyright (c) 2017 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package trclib;
+
+/**
+ * This class implements a one dimensional motion profile that moves from rest to rest over a given distance. It
+ * generates either a trapezoidal profile limited by velocity and acceleration, or a jerk limited S-curve profile if
+ * a maximum jerk is specified. The profile is sampled by time to get the position, velocity and acceleration set
+ * points, and it also computes the feed-forward output (kV*velocity + kA*acceleration + kStatic) for the sample.
+ * Generating and sampling do not allocate, so a profile object can be reused for every move.
+ */
+public class TrcMotionProfile
+{
+    private static final String moduleName = "TrcMotionProfile";
+    private static final boolean debugEnabled = false;
+    private static final boolean tracingEnabled = false;
+    private static final TrcDbgTrace.TraceLevel traceLevel = TrcDbgTrace.TraceLevel.API;
+    private static final TrcDbgTrace.MsgLevel msgLevel = TrcDbgTrace.MsgLevel.INFO;
+    private TrcDbgTrace dbgTrace = null;
+
+    //
+    // An S-curve profile has 7 segments: jerk up, constant accel, jerk down, cruise, jerk down, constant decel and
+    // jerk up. A trapezoidal profile uses the same segments with zero length jerk segments.
+    //
+    private static final int NUM_SEGMENTS = 7;
+
+    private final String instanceName;
+    private final double maxVelocity;
+    private final double maxAcceleration;
+    private final double maxJerk;
+    private double kV = 0.0;
+    private double kA = 0.0;
+    private double kStatic = 0.0;
+
+    private final double[] segmentStartTimes = new double[NUM_SEGMENTS + 1];
+    private final double[] segmentPositions = new double[NUM_SEGMENTS];
+    private final double[] segmentVelocities = new double[NUM_SEGMENTS];
+    private final double[] segmentAccelerations = new double[NUM_SEGMENTS];
+    private final double[] segmentJerks = new double[NUM_SEGMENTS];
+    private double direction = 1.0;
+    private double distance = 0.0;
+
+    private double position = 0.0;
+    private double velocity = 0.0;
+    private double acceleration = 0.0;
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param instanceName specifies the instance name.
+     * @param maxVelocity specifies the maximum velocity in position unit per second.
+     * @param maxAcceleration specifies the maximum acceleration in position unit per second squared.
+     * @param maxJerk specifies the maximum jerk in position unit per second cubed, zero for trapezoidal profile.
+     */
+    public TrcMotionProfile(final String instanceName, double maxVelocity, double maxAcceleration, double maxJerk)
+    {
+        if (debugEnabled)
+        {
+            dbgTrace = new TrcDbgTrace(moduleName + "." + instanceName, tracingEnabled, traceLevel, msgLevel);
+        }
+
+        if (maxVelocity <= 0.0 || maxAcceleration <= 0.0 || maxJerk < 0.0)
+        {
+            throw new IllegalArgumentException("Velocity and acceleration limits must be positive.");
+        }
+
+        this.instanceName = instanceName;
+        this.maxVelocity = maxVelocity;
+        this.maxAcceleration = maxAcceleration;
+        this.maxJerk = maxJerk;
+        generate(0.0);
+    }   //TrcMotionProfile
+
+    /**
+     * Constructor: Create an instance of a trapezoidal profile.
+     *
+     * @param instanceName specifies the instance name.
+     * @param maxVelocity specifies the maximum velocity in position unit per second.
+     * @param maxAcceleration specifies the maximum acceleration in position unit per second squared.
+     */
+    public TrcMotionProfile(final String instanceName, double maxVelocity, double maxAcceleration)
+    {
+        this(instanceName, maxVelocity, maxAcceleration, 0.0);
+    }   //TrcMotionProfile
+
+    /**
+     * This method returns the instance name.
+     *
+     * @return instance name.
+     */
+    public String toString()
+    {
+        return instanceName;
+    }   //toString
+
+    /**
+     * This method sets the feed-forward constants.
+     *
+     * @param kV specifies the output per unit of velocity.
+     * @param kA specifies the output per unit of acceleration.
+     * @param kStatic specifies the output to overcome static friction, applied in the direction of motion.
+     */
+    public void setFeedForward(double kV, double kA, double kStatic)
+    {
+        this.kV = kV;
+        this.kA = kA;
+        this.kStatic = kStatic;
+    }   //setFeedForward
+
+    /**
+     * This method generates the profile for the given distance. The distance can be negative.
+     *
+     * @param distance specifies the distance to move.
+     */
+    public void generate(double distance)
+    {
+        final String funcName = "generate";
+        double absDistance = Math.abs(distance);
+        double peakVelocity = maxVelocity;
+        double jerkTime;
+        double accelTime;
+        double cruiseTime;
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "distance=%f", distance);
+        }
+
+        this.distance = distance;
+        direction = distance < 0.0? -1.0: 1.0;
+
+        if (maxJerk == 0.0)
+        {
+            //
+            // Trapezoid: if the distance is too short to reach max velocity, it becomes a triangle.
+            //
+            if (peakVelocity*peakVelocity/maxAcceleration > absDistance)
+            {
+                peakVelocity = Math.sqrt(absDistance*maxAcceleration);
+            }
+            jerkTime = 0.0;
+            accelTime = peakVelocity/maxAcceleration;
+        }
+        else
+        {
+            //
+            // S-curve: the accel phase takes v/a + a/j if max accel is reached, 2*sqrt(v/j) otherwise. It covers
+            // v*accelTime/2, so the accel and decel phases together cover v*accelTime.
+            //
+            if (peakVelocity*getSCurveAccelTime(peakVelocity) > absDistance)
+            {
+                double ratio = maxAcceleration/maxJerk;
+
+                peakVelocity = maxAcceleration/2.0*(-ratio + Math.sqrt(ratio*ratio + 4.0*absDistance/maxAcceleration));
+                if (peakVelocity < maxAcceleration*ratio)
+                {
+                    peakVelocity = Math.pow(absDistance*Math.sqrt(maxJerk)/2.0, 2.0/3.0);
+                }
+            }
+            jerkTime = Math.min(maxAcceleration/maxJerk, Math.sqrt(peakVelocity/maxJerk));
+            accelTime = getSCurveAccelTime(peakVelocity);
+        }
+        cruiseTime = peakVelocity > 0.0? Math.max(absDistance - peakVelocity*accelTime, 0.0)/peakVelocity: 0.0;
+
+        double peakAccel = jerkTime > 0.0? maxJerk*jerkTime: maxAcceleration;
+        double jerk = jerkTime > 0.0? maxJerk: 0.0;
+        double constAccelTime = accelTime - 2.0*jerkTime;
+        //
+        // Segment durations and jerks. For a trapezoid, the constant accel segments start at peak acceleration.
+        //
+        setSegment(0, jerkTime, jerk, 0.0);
+        setSegment(1, constAccelTime, 0.0, peakAccel);
+        setSegment(2, jerkTime, -jerk, peakAccel);
+        setSegment(3, cruiseTime, 0.0, 0.0);
+        setSegment(4, jerkTime, -jerk, 0.0);
+        setSegment(5, constAccelTime, 0.0, -peakAccel);
+        setSegment(6, jerkTime, jerk, -peakAccel);
+        //
+        // Integrate the segment start states.
+        //
+        segmentStartTimes[0] = 0.0;
+        segmentPositions[0] = 0.0;
+        segmentVelocities[0] = 0.0;
+        for (int i = 1; i < NUM_SEGMENTS; i++)
+        {
+            double dt = segmentStartTimes[i];
+            segmentStartTimes[i] = segmentStartTimes[i - 1] + dt;
+            segmentPositions[i] = getPosition(i - 1, segmentStartTimes[i - 1] + dt);
+            segmentVelocities[i] = getVelocity(i - 1, segmentStartTimes[i - 1] + dt);
+        }
+        segmentStartTimes[NUM_SEGMENTS] = segmentStartTimes[NUM_SEGMENTS - 1] + segmentStartTimes[NUM_SEGMENTS];
+        sample(0.0);
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API, "totalTime=%.3f,peakVel=%f",
+                               getTotalTime(), peakVelocity);
+        }
+    }   //generate
+
+    /**
+     * This method returns the duration of the S-curve accel phase to reach the given velocity.
+     *
+     * @param peakVelocity specifies the velocity to reach.
+     * @return accel phase duration.
+     */
+    private double getSCurveAccelTime(double peakVelocity)
+    {
+        return peakVelocity >= maxAcceleration*maxAcceleration/maxJerk?
+                peakVelocity/maxAcceleration + maxAcceleration/maxJerk: 2.0*Math.sqrt(peakVelocity/maxJerk);
+    }   //getSCurveAccelTime
+
+    /**
+     * This method sets up a segment. The duration is temporarily held in the start time of the next segment until
+     * the start times are integrated.
+     *
+     * @param index specifies the segment index.
+     * @param duration specifies the segment duration.
+     * @param jerk specifies the jerk during the segment.
+     * @param startAccel specifies the acceleration at the start of the segment.
+     */
+    private void setSegment(int index, double duration, double jerk, double startAccel)
+    {
+        segmentStartTimes[index + 1] = duration;
+        segmentJerks[index] = jerk;
+        segmentAccelerations[index] = startAccel;
+    }   //setSegment
+
+    /**
+     * This method returns the unsigned position within a segment at the given time.
+     *
+     * @param index specifies the segment index.
+     * @param time specifies the profile time.
+     * @return unsigned position.
+     */
+    private double getPosition(int index, double time)
+    {
+        double dt = time - segmentStartTimes[index];
+
+        return segmentPositions[index] + segmentVelocities[index]*dt + segmentAccelerations[index]*dt*dt/2.0 +
+               segmentJerks[index]*dt*dt*dt/6.0;
+    }   //getPosition
+
+    /**
+     * This method returns the unsigned velocity within a segment at the given time.
+     *
+     * @param index specifies the segment index.
+     * @param time specifies the profile time.
+     * @return unsigned velocity.
+     */
+    private double getVelocity(int index, double time)
+    {
+        double dt = time - segmentStartTimes[index];
+
+        return segmentVelocities[index] + segmentAccelerations[index]*dt + segmentJerks[index]*dt*dt/2.0;
+    }   //getVelocity
+
+    /**
+     * This method returns the total time of the profile.
+     *
+     * @return total time in seconds.
+     */
+    public double getTotalTime()
+    {
+        return segmentStartTimes[NUM_SEGMENTS];
+    }   //getTotalTime
+
+    /**
+     * This method checks if the given time is at or past the end of the profile.
+     *
+     * @param time specifies the time since the start of the profile.
+     * @return true if the profile is done, false otherwise.
+     */
+    public boolean isDone(double time)
+    {
+        return time >= getTotalTime();
+    }   //isDone
+
+    /**
+     * This method samples the profile at the given time. The results are retrieved with getPosition, getVelocity,
+     * getAcceleration and getFeedForward.
+     *
+     * @param time specifies the time since the start of the profile.
+     */
+    public void sample(double time)
+    {
+        if (time >= getTotalTime())
+        {
+            position = distance;
+            velocity = 0.0;
+            acceleration = 0.0;
+        }
+        else
+        {
+            int index = NUM_SEGMENTS - 1;
+
+            if (time < 0.0)
+            {
+                time = 0.0;
+            }
+
+            while (index > 0 && time < segmentStartTimes[index])
+            {
+                index--;
+            }
+
+            double dt = time - segmentStartTimes[index];
+            position = direction*getPosition(index, time);
+            velocity = direction*getVelocity(index, time);
+            acceleration = direction*(segmentAccelerations[index] + segmentJerks[index]*dt);
+        }
+    }   //sample
+
+    /**
+     * This method returns the position of the last sample relative to the start of the profile.
+     *
+     * @return sampled position.
+     */
+    public double getPosition()
+    {
+        return position;
+    }   //getPosition
+
+    /**
+     * This method returns the velocity of the last sample.
+     *
+     * @return sampled velocity.
+     */
+    public double getVelocity()
+    {
+        return velocity;
+    }   //getVelocity
+
+    /**
+     * This method returns the acceleration of the last sample.
+     *
+     * @return sampled acceleration.
+     */
+    public double getAcceleration()
+    {
+        return acceleration;
+    }   //getAcceleration
+
+    /**
+     * This method returns the feed-forward output of the last sample.
+     *
+     * @return feed-forward output.
+     */
+    public double getFeedForward()
+    {
+        return kV*velocity + kA*acceleration + (velocity != 0.0? kStatic*Math.signum(velocity): 0.0);
+    }   //getFeedForward
+
+}   //class TrcMotionProfile
@@ -141,6 +141,7 @@ public class TrcPidController
     private double setPointSign = 1.0;
     private double input = 0.0;
     private double output = 0.0;
+    private boolean integratorFrozen = false;
 
     private TrcDbgTrace debugTracer = null;
     private double pTerm;
@@ -407,6 +408,26 @@ public class TrcPidController
         this.noOscillation = noOscillation;
     }   //setNoOscillation
 
+    /**
+     * This method freezes or unfreezes the integrator. While frozen, the integrated error is kept but not added to.
+     * It is used by a caller that saturates the output after the PID controller (e.g. when several axes share the
+     * wheel power), so the integrator does not wind up while its output cannot be applied.
+     *
+     * @param frozen specifies true to freeze the integrator, false to resume integrating.
+     */
+    public void setIntegratorFrozen(boolean frozen)
+    {
+        final String funcName = "setIntegratorFrozen";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "frozen=%s", Boolean.toString(frozen));
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        this.integratorFrozen = frozen;
+    }   //setIntegratorFrozen
+
     /**
      * This method returns the current PID coefficients.
      *
@@ -501,6 +522,42 @@ public class TrcPidController
         this.maxOutput = maxOutput;
     }   //setOutputRange
 
+    /**
+     * This method returns the PID output lower range limit.
+     *
+     * @return PID output lower range limit.
+     */
+    public double getMinOutput()
+    {
+        final String funcName = "getMinOutput";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API, "=%f", minOutput);
+        }
+
+        return minOutput;
+    }   //getMinOutput
+
+    /**
+     * This method returns the PID output higher range limit.
+     *
+     * @return PID output higher range limit.
+     */
+    public double getMaxOutput()
+    {
+        final String funcName = "getMaxOutput";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API, "=%f", maxOutput);
+        }
+
+        return maxOutput;
+    }   //getMaxOutput
+
     /**
      * This method returns the current set point value.
      *
@@ -582,6 +639,59 @@ public class TrcPidController
         }
     }   //setTarget
 
+    /**
+     * This method moves the set point without restarting the controller. Unlike setTarget, the set point is always
+     * absolute, and the integrated error and settling time are kept. It is used to track a time varying set point
+     * such as a motion profile.
+     *
+     * @param setPoint specifies the absolute set point.
+     */
+    public void setProfiledSetPoint(double setPoint)
+    {
+        final String funcName = "setProfiledSetPoint";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "setPoint=%f", setPoint);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        if (maxTarget > minTarget)
+        {
+            setPoint = TrcUtil.clipRange(setPoint, minTarget, maxTarget);
+        }
+        this.setPoint = setPoint;
+    }   //setProfiledSetPoint
+
+    /**
+     * This method reads the current input from the feedback device.
+     *
+     * @return current input value.
+     */
+    public double getCurrentInput()
+    {
+        final String funcName = "getCurrentInput";
+        double currInput = pidInput.getInput(this);
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API, "=%f", currInput);
+        }
+
+        return currInput;
+    }   //getCurrentInput
+
+    /**
+     * This method checks if the PID controller is inverted, i.e. positive output decreases the input.
+     *
+     * @return true if inverted, false otherwise.
+     */
+    public boolean isInverted()
+    {
+        return inverted;
+    }   //isInverted
+
     /**
      * This method returns the error of a previous output calculation.
      *
@@ -619,6 +729,7 @@ public class TrcPidController
         setPoint = 0.0;
         setPointSign = 1.0;
         output = 0.0;
+        integratorFrozen = false;
     }   //reset
 
     /**
@@ -692,7 +803,7 @@ public class TrcPidController
             currError = -currError;
         }
 
-        if (pidCoefficients.kI != 0.0)
+        if (pidCoefficients.kI != 0.0 && !integratorFrozen)
         {
             //
             // Make sure the total error doesn't get wound up too much exceeding maxOutput.
@@ -29,7 +29,8 @@ package trclib;
  * detection support which will detect motor stall condition. The motors on a drive base could stall if the robot
  * runs into an obstacle in low power or the robot is very close to target and doesn't have enough power to overcome
  * steady state error. When stall condition is detected, PID drive will be aborted so that the robot won't get stuck
- * waiting forever trying to reach target.
+ * waiting forever trying to reach target. On a holonomic drive base, the X, Y and turn outputs are combined with
+ * turn taking priority when the wheels saturate, and the X and Y can optionally be field relative.
  */
 public class TrcPidDrive implements TrcTaskMgr.Task
 {
@@ -86,12 +87,26 @@ public class TrcPidDrive implements TrcTaskMgr.Task
     private double expiredTime = 0.0;
     private double manualX = 0.0;
     private double manualY = 0.0;
+    private int drivePriority = 0;
     private boolean active = false;
     private boolean holdTarget = false;
     private boolean turnOnly = false;
     private boolean maintainHeading = false;
     private boolean canceled = false;
     private boolean pidDriveStarted = false;
+    private TrcMotionProfile xProfile = null;
+    private TrcMotionProfile yProfile = null;
+    private TrcMotionProfile turnProfile = null;
+    private double xProfileStart = 0.0;
+    private double yProfileStart = 0.0;
+    private double turnProfileStart = 0.0;
+    private double xFinalTarget = 0.0;
+    private double yFinalTarget = 0.0;
+    private double profileStartTime = 0.0;
+    private boolean fieldRelative = false;
+    private final TrcPose2D fieldPose = new TrcPose2D();
+    private final TrcMecanumKinematics mecanumKinematics = new TrcMecanumKinematics();
+    private final double[] driveVector = new double[2];
 
     /**
      * Constructor: Create an instance of the object.
@@ -296,6 +311,75 @@ public class TrcPidDrive implements TrcTaskMgr.Task
         this.stallTimeout = stallTimeout;
     }   //setStallTimeout
 
+    /**
+     * This method sets the priority used to acquire ownership of the drive base when a PID drive operation starts.
+     * An operation with a higher priority preempts the current owner of the drive base. An operation with the same
+     * or lower priority than another owner does not start: it is canceled right away, so isActive returns false,
+     * isCanceled returns true and the notify event, if any, is canceled.
+     *
+     * @param drivePriority specifies the drive base ownership priority.
+     */
+    public void setDrivePriority(int drivePriority)
+    {
+        final String funcName = "setDrivePriority";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "priority=%d", drivePriority);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        this.drivePriority = drivePriority;
+    }   //setDrivePriority
+
+    /**
+     * This method sets the motion profiles for the PID controlled drive. When an axis has a motion profile, setTarget
+     * no longer hands the entire distance to the PID controller. Instead, the PID controller tracks the position set
+     * point of the profile over time, and the profile feed-forward is added to its output. The axis is on target
+     * only after the profile has finished. An axis without a profile works as before.
+     *
+     * @param xProfile specifies the motion profile for the X direction, null if none.
+     * @param yProfile specifies the motion profile for the Y direction, null if none.
+     * @param turnProfile specifies the motion profile for turn, null if none.
+     */
+    public void setMotionProfiles(TrcMotionProfile xProfile, TrcMotionProfile yProfile, TrcMotionProfile turnProfile)
+    {
+        final String funcName = "setMotionProfiles";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "x=%s,y=%s,turn=%s",
+                                xProfile, yProfile, turnProfile);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        this.xProfile = xProfile;
+        this.yProfile = yProfile;
+        this.turnProfile = turnProfile;
+    }   //setMotionProfiles
+
+    /**
+     * This method sets whether the X and Y PID controllers work in the field frame. In field relative mode, the X and
+     * Y PID inputs must be field positions (e.g. from TrcDriveBase.getFieldPose) so the targets are field
+     * displacements, and the X and Y outputs are rotated into the robot frame by the robot heading before they are
+     * sent to the drive base. The robot can then turn while it translates without bending the path.
+     *
+     * @param fieldRelative specifies true for field relative X and Y, false for robot relative.
+     */
+    public void setFieldRelative(boolean fieldRelative)
+    {
+        final String funcName = "setFieldRelative";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(
+                    funcName, TrcDbgTrace.TraceLevel.API, "fieldRelative=%s", Boolean.toString(fieldRelative));
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        this.fieldRelative = fieldRelative;
+    }   //setFieldRelative
+
     /**
      * This method allows PID controlled drive using the joysticks. PID controlled drive will distribute power to
      * the wheels to compensate for drive train friction difference so that the robot will drive straight and
@@ -350,17 +434,23 @@ public class TrcPidDrive implements TrcTaskMgr.Task
         if (xPidCtrl != null)
         {
             xPidCtrl.setTarget(xTarget);
+            xFinalTarget = xPidCtrl.getTarget();
+            xProfileStart = startProfile(xPidCtrl, xProfile);
         }
 
         if (yPidCtrl != null)
         {
             yPidCtrl.setTarget(yTarget);
+            yFinalTarget = yPidCtrl.getTarget();
+            yProfileStart = startProfile(yPidCtrl, yProfile);
         }
 
         if (turnPidCtrl != null)
         {
             turnPidCtrl.setTarget(turnTarget);
+            turnProfileStart = startProfile(turnPidCtrl, turnProfile);
         }
+        profileStartTime = TrcUtil.getCurrentTime();
 
         if (event != null)
         {
@@ -541,8 +631,8 @@ public class TrcPidDrive implements TrcTaskMgr.Task
             dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.FUNC);
         }
 
+        driveBase.stop(instanceName);
         setTaskEnabled(false);
-        driveBase.stop();
 
         if (xPidCtrl != null)
         {
@@ -570,6 +660,169 @@ public class TrcPidDrive implements TrcTaskMgr.Task
         }
     }   //stop
 
+    /**
+     * This method generates the motion profile of an axis from the current input to the PID target.
+     *
+     * @param pidCtrl specifies the PID controller of the axis.
+     * @param profile specifies the motion profile of the axis, null if none.
+     * @return start position of the profile.
+     */
+    private double startProfile(TrcPidController pidCtrl, TrcMotionProfile profile)
+    {
+        double start = 0.0;
+
+        if (profile != null)
+        {
+            start = pidCtrl.getCurrentInput();
+            profile.generate(pidCtrl.getTarget() - start);
+        }
+
+        return start;
+    }   //startProfile
+
+    /**
+     * This method calculates the output of an axis. If the axis has a motion profile, the PID set point is moved
+     * along the profile and the profile feed-forward is added to the PID output, keeping the sum within the output
+     * range of the PID controller.
+     *
+     * @param pidCtrl specifies the PID controller of the axis.
+     * @param profile specifies the motion profile of the axis, null if none.
+     * @param start specifies the start position of the profile.
+     * @param elapsedTime specifies the time since the profile started.
+     * @return axis output.
+     */
+    private double getAxisOutput(TrcPidController pidCtrl, TrcMotionProfile profile, double start, double elapsedTime)
+    {
+        double output;
+
+        if (profile == null || maintainHeading)
+        {
+            output = pidCtrl.getOutput();
+        }
+        else
+        {
+            profile.sample(elapsedTime);
+            pidCtrl.setProfiledSetPoint(start + profile.getPosition());
+            double feedForward = profile.getFeedForward();
+            output = TrcUtil.clipRange(pidCtrl.getOutput() + (pidCtrl.isInverted()? -feedForward: feedForward),
+                                       pidCtrl.getMinOutput(), pidCtrl.getMaxOutput());
+        }
+
+        return output;
+    }   //getAxisOutput
+
+    /**
+     * This method checks if an axis is on target. An axis with a motion profile is not on target until the profile
+     * has finished.
+     *
+     * @param pidCtrl specifies the PID controller of the axis, null if none.
+     * @param profile specifies the motion profile of the axis, null if none.
+     * @param elapsedTime specifies the time since the profile started.
+     * @return true if on target, false otherwise.
+     */
+    private boolean isAxisOnTarget(TrcPidController pidCtrl, TrcMotionProfile profile, double elapsedTime)
+    {
+        return pidCtrl == null || (profile == null || profile.isDone(elapsedTime)) && pidCtrl.isOnTarget();
+    }   //isAxisOnTarget
+
+    /**
+     * This method checks if an axis output is at the output range limit of its PID controller.
+     *
+     * @param pidCtrl specifies the PID controller of the axis, null if none.
+     * @param output specifies the axis output.
+     * @return true if saturated, false otherwise.
+     */
+    private boolean isAxisSaturated(TrcPidController pidCtrl, double output)
+    {
+        return pidCtrl != null && (output >= pidCtrl.getMaxOutput() || output <= pidCtrl.getMinOutput());
+    }   //isAxisSaturated
+
+    /**
+     * This method returns the remaining distance of an axis to its final target, signed in the direction of its
+     * output. The PID error of an axis with a motion profile is only the distance to the profile set point, so the
+     * final target is used instead.
+     *
+     * @param pidCtrl specifies the PID controller of the axis.
+     * @param profile specifies the motion profile of the axis, null if none.
+     * @param finalTarget specifies the final target of the axis.
+     * @return remaining distance to the final target.
+     */
+    private double getRemainingDistance(TrcPidController pidCtrl, TrcMotionProfile profile, double finalTarget)
+    {
+        double distance;
+
+        if (profile == null || maintainHeading)
+        {
+            distance = pidCtrl.getError();
+        }
+        else
+        {
+            distance = finalTarget - pidCtrl.getCurrentInput();
+            if (pidCtrl.isInverted())
+            {
+                distance = -distance;
+            }
+        }
+
+        return distance;
+    }   //getRemainingDistance
+
+    /**
+     * This method drives a holonomic drive base with the X, Y and turn PID outputs, handling saturation across the
+     * axes. An axis is saturated when its output reaches the output range of its PID controller. If the X or Y
+     * output is saturated, the translation is pointed along the remaining X/Y distance to the final target, with the
+     * larger axis at the saturated output, instead of clipping each axis on its own, so a diagonal move is one
+     * straight motion. The drive base then gives turn priority over translation when the wheels saturate. The
+     * integrators of the axes that are cut back this way are frozen so they do not wind up.
+     *
+     * @param xPower specifies the X PID output.
+     * @param yPower specifies the Y PID output.
+     * @param turnPower specifies the turn PID output.
+     */
+    private void driveHolonomic(double xPower, double yPower, double turnPower)
+    {
+        boolean translationSaturated = isAxisSaturated(xPidCtrl, xPower) || isAxisSaturated(yPidCtrl, yPower);
+
+        if (translationSaturated && yPidCtrl != null)
+        {
+            double xDistance = getRemainingDistance(xPidCtrl, xProfile, xFinalTarget);
+            double yDistance = getRemainingDistance(yPidCtrl, yProfile, yFinalTarget);
+            double maxDistance = Math.max(Math.abs(xDistance), Math.abs(yDistance));
+            double magnitude = Math.max(Math.abs(xPower), Math.abs(yPower));
+
+            if (maxDistance > 0.0)
+            {
+                xPower = magnitude*xDistance/maxDistance;
+                yPower = magnitude*yDistance/maxDistance;
+            }
+        }
+
+        if (fieldRelative)
+        {
+            driveBase.getFieldPose(fieldPose);
+            mecanumKinematics.fieldToRobot(xPower, yPower, fieldPose.heading, driveVector);
+            xPower = driveVector[TrcMecanumKinematics.X];
+            yPower = driveVector[TrcMecanumKinematics.Y];
+        }
+        //
+        // The drive base scales the translation down to Math.abs(x) + Math.abs(y) <= 1 - Math.abs(turn).
+        //
+        boolean turnSaturated = isAxisSaturated(turnPidCtrl, turnPower);
+        boolean wheelsSaturated = Math.abs(xPower) + Math.abs(yPower) > 1.0 - Math.min(Math.abs(turnPower), 1.0);
+
+        xPidCtrl.setIntegratorFrozen(translationSaturated || wheelsSaturated);
+        if (yPidCtrl != null)
+        {
+            yPidCtrl.setIntegratorFrozen(translationSaturated || wheelsSaturated);
+        }
+        if (turnPidCtrl != null)
+        {
+            turnPidCtrl.setIntegratorFrozen(turnSaturated);
+        }
+
+        driveBase.mecanumDrive_Cartesian(instanceName, xPower, yPower, turnPower, false, 0.0);
+    }   //driveHolonomic
+
     /**
      * This method enables/disables the PID drive task.
      *
@@ -587,15 +840,40 @@ public class TrcPidDrive implements TrcTaskMgr.Task
         TrcTaskMgr taskMgr = TrcTaskMgr.getInstance();
         if (enabled)
         {
-            taskMgr.registerTask(instanceName, this, TrcTaskMgr.TaskType.STOP_TASK);
-            taskMgr.registerTask(instanceName, this, TrcTaskMgr.TaskType.POSTCONTINUOUS_TASK);
+            if (driveBase.acquireOwnership(instanceName, drivePriority))
+            {
+                taskMgr.registerTask(instanceName, this, TrcTaskMgr.TaskType.STOP_TASK);
+                taskMgr.registerTask(instanceName, this, TrcTaskMgr.TaskType.POSTCONTINUOUS_TASK);
+                active = true;
+                canceled = false;
+            }
+            else
+            {
+                //
+                // Another operation with the same or higher priority owns the drive base. Don't start, cancel the
+                // operation so that the caller finds out.
+                //
+                if (debugEnabled)
+                {
+                    dbgTrace.traceWarn(funcName, "%s: drive base is owned by another operation, canceled.",
+                                       instanceName);
+                }
+                stop();
+                canceled = true;
+                if (notifyEvent != null)
+                {
+                    notifyEvent.cancel();
+                    notifyEvent = null;
+                }
+            }
         }
         else
         {
             taskMgr.unregisterTask(this, TrcTaskMgr.TaskType.STOP_TASK);
             taskMgr.unregisterTask(this, TrcTaskMgr.TaskType.POSTCONTINUOUS_TASK);
+            driveBase.releaseOwnership(instanceName);
+            active = false;
         }
-        active = enabled;
 
         if (debugEnabled)
         {
@@ -671,15 +949,20 @@ public class TrcPidDrive implements TrcTaskMgr.Task
             pidDriveStarted = true;
         }
 
-        double xPower = turnOnly || xPidCtrl == null? 0.0: xPidCtrl.getOutput();
-        double yPower = turnOnly || yPidCtrl == null? 0.0: yPidCtrl.getOutput();
-        double turnPower = turnPidCtrl == null? 0.0: turnPidCtrl.getOutput();
+        double currTime = TrcUtil.getCurrentTime();
+        double elapsedTime = currTime - profileStartTime;
+        double xPower = turnOnly || xPidCtrl == null? 0.0:
+                getAxisOutput(xPidCtrl, xProfile, xProfileStart, elapsedTime);
+        double yPower = turnOnly || yPidCtrl == null? 0.0:
+                getAxisOutput(yPidCtrl, yProfile, yProfileStart, elapsedTime);
+        double turnPower = turnPidCtrl == null? 0.0:
+                getAxisOutput(turnPidCtrl, turnProfile, turnProfileStart, elapsedTime);
 
-        boolean expired = expiredTime != 0.0 && TrcUtil.getCurrentTime() >= expiredTime;
+        boolean expired = expiredTime != 0.0 && currTime >= expiredTime;
         boolean stalled = pidDriveStarted && stallTimeout != 0.0 && driveBase.isStalled(stallTimeout);
-        boolean xOnTarget = xPidCtrl == null || xPidCtrl.isOnTarget();
-        boolean yOnTarget = yPidCtrl == null || yPidCtrl.isOnTarget();
-        boolean turnOnTarget = turnPidCtrl == null || turnPidCtrl.isOnTarget();
+        boolean xOnTarget = isAxisOnTarget(xPidCtrl, xProfile, elapsedTime);
+        boolean yOnTarget = isAxisOnTarget(yPidCtrl, yProfile, elapsedTime);
+        boolean turnOnTarget = isAxisOnTarget(turnPidCtrl, turnProfile, elapsedTime);
 
         if (stuckWheelHandler != null)
         {
@@ -714,7 +997,7 @@ public class TrcPidDrive implements TrcTaskMgr.Task
 
         if (maintainHeading)
         {
-            driveBase.mecanumDrive_Cartesian(manualX, manualY, turnPower, false, 0.0);
+            driveBase.mecanumDrive_Cartesian(instanceName, manualX, manualY, turnPower, false, 0.0);
         }
         else if (expired || stalled || turnOnTarget && (turnOnly || xOnTarget && yOnTarget))
         {
@@ -729,11 +1012,11 @@ public class TrcPidDrive implements TrcTaskMgr.Task
             }
             else if (xPidCtrl != null)
             {
-                driveBase.mecanumDrive_Cartesian(0.0, 0.0, 0.0, false, 0.0);
+                driveBase.mecanumDrive_Cartesian(instanceName, 0.0, 0.0, 0.0, false, 0.0);
             }
             else
             {
-                driveBase.drive(0.0, 0.0);
+                driveBase.drive(instanceName, 0.0, 0.0, false);
             }
         }
         else if (turnOnly)
@@ -741,33 +1024,33 @@ public class TrcPidDrive implements TrcTaskMgr.Task
             switch (turnMode)
             {
                 case IN_PLACE:
-                    driveBase.arcadeDrive(0.0, turnPower);
+                    driveBase.arcadeDrive(instanceName, 0.0, turnPower, false);
                     break;
 
                 case PIVOT:
                 case CURVE:
                     if (turnPower < 0.0)
                     {
-                        driveBase.tankDrive(0.0, -turnPower);
+                        driveBase.tankDrive(instanceName, 0.0, -turnPower, false);
                     }
                     else
                     {
-                        driveBase.tankDrive(turnPower, 0.0);
+                        driveBase.tankDrive(instanceName, turnPower, 0.0, false);
                     }
                     break;
             }
         }
         else if (xPidCtrl != null)
         {
-            driveBase.mecanumDrive_Cartesian(xPower, yPower, turnPower, false, 0.0);
+            driveHolonomic(xPower, yPower, turnPower);
         }
         else if (turnMode == TurnMode.IN_PLACE)
         {
-            driveBase.arcadeDrive(yPower, turnPower);
+            driveBase.arcadeDrive(instanceName, yPower, turnPower, false);
         }
         else
         {
-           driveBase.drive(yPower, turnPower);
+           driveBase.drive(instanceName, yPower, turnPower, false);
         }
 
         if (debugEnabled)
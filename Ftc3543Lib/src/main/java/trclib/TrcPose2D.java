@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2017 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package trclib;
+
+/**
+ * This class implements a 2D pose: the X and Y position, the heading and their rates of change. The heading is in
+ * degrees and increases clockwise, Y is forward and X is to the right when the heading is zero. The fields are
+ * public and mutable so that a pose object can be reused every loop without allocation.
+ */
+public class TrcPose2D
+{
+    public double x;
+    public double y;
+    public double heading;
+    public double xVel;
+    public double yVel;
+    public double turnRate;
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param x specifies the X position.
+     * @param y specifies the Y position.
+     * @param heading specifies the heading in degrees.
+     */
+    public TrcPose2D(double x, double y, double heading)
+    {
+        this.x = x;
+        this.y = y;
+        this.heading = heading;
+    }   //TrcPose2D
+
+    /**
+     * Constructor: Create an instance of the object at the origin.
+     */
+    public TrcPose2D()
+    {
+        this(0.0, 0.0, 0.0);
+    }   //TrcPose2D
+
+    /**
+     * This method returns the pose in string form.
+     *
+     * @return pose in string form.
+     */
+    @Override
+    public String toString()
+    {
+        return String.format("(x=%.1f,y=%.1f,heading=%.1f,xVel=%.1f,yVel=%.1f,turnRate=%.1f)",
+                             x, y, heading, xVel, yVel, turnRate);
+    }   //toString
+
+    /**
+     * This method sets the position and heading of the pose and zeros its rates.
+     *
+     * @param x specifies the X position.
+     * @param y specifies the Y position.
+     * @param heading specifies the heading in degrees.
+     */
+    public void setPose(double x, double y, double heading)
+    {
+        this.x = x;
+        this.y = y;
+        this.heading = heading;
+        this.xVel = 0.0;
+        this.yVel = 0.0;
+        this.turnRate = 0.0;
+    }   //setPose
+
+    /**
+     * This method copies another pose into this pose.
+     *
+     * @param pose specifies the pose to copy from.
+     */
+    public void setAs(TrcPose2D pose)
+    {
+        this.x = pose.x;
+        this.y = pose.y;
+        this.heading = pose.heading;
+        this.xVel = pose.xVel;
+        this.yVel = pose.yVel;
+        this.turnRate = pose.turnRate;
+    }   //setAs
+
+}   //class TrcPose2D
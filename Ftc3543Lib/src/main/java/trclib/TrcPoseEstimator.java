@@ -0,0 +1,512 @@
+/*
+ * Copyright (c) 2017 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package trclib;
+
+import java.util.ArrayList;
+
+/**
+ * This class implements a pose estimator that fuses the drive base encoder odometry, the gyro heading and any
+ * number of distance sensors (e.g. range sensors looking at a wall) into a single X, Y and heading estimate using
+ * a multi-state Kalman filter. The X and Y positions are in the same frame and unit as TrcDriveBase.getXPosition()
+ * and getYPosition(), so the estimate can be used as a drop-in PID input.
+ *
+ * The encoder deltas and the measured heading change drive the prediction step. Encoder deltas larger than the
+ * glitch threshold are discarded so a bogus encoder reading will not corrupt the estimate. Gyro heading and distance
+ * sensor readings are measurement updates. Distance sensor readings are gated by their innovation so spurious
+ * readings are rejected. A distance sensor measures its axis relative to the first valid reading after a reset. If
+ * it keeps getting rejected (e.g. it is now looking at a different object), it will be re-referenced.
+ */
+public class TrcPoseEstimator implements TrcTaskMgr.Task
+{
+    private static final String moduleName = "TrcPoseEstimator";
+    private static final boolean debugEnabled = false;
+    private static final boolean tracingEnabled = false;
+    private static final TrcDbgTrace.TraceLevel traceLevel = TrcDbgTrace.TraceLevel.API;
+    private static final TrcDbgTrace.MsgLevel msgLevel = TrcDbgTrace.MsgLevel.INFO;
+    private TrcDbgTrace dbgTrace = null;
+
+    /**
+     * This specifies the axis a distance sensor measures.
+     */
+    public enum Axis
+    {
+        X,
+        Y
+    }   //enum Axis
+
+    private static final int STATE_X = 0;
+    private static final int STATE_Y = 1;
+    private static final int STATE_HEADING = 2;
+    private static final int NUM_STATES = 3;
+
+    private static final double DEF_INITIAL_VARIANCE = 1.0e-4;
+    private static final double DEF_ENCODER_VARIANCE = 0.01;        // variance per unit distance travelled.
+    private static final double DEF_HEADING_PROCESS_VARIANCE = 1.0; // variance per second.
+    private static final double DEF_HEADING_VARIANCE = 0.25;        // gyro measurement variance.
+    private static final double DEF_GATE_SIGMAS = 3.0;
+    private static final int DEF_MAX_REJECTS = 10;
+
+    /**
+     * This class keeps track of a distance sensor that measures one axis of the pose.
+     *
+     * @param <D> specifies the data type enum of the sensor.
+     */
+    private class DistanceSensor<D>
+    {
+        private final String name;
+        private final TrcSensor<D> sensor;
+        private final int index;
+        private final D dataType;
+        private final int stateIndex;
+        private final double sign;
+        private final double variance;
+        private final double minValid;
+        private final double maxValid;
+        private boolean referenced = false;
+        private double offset = 0.0;
+        private int rejectCount = 0;
+
+        /**
+         * Constructor: Create an instance of the object.
+         *
+         * @param name specifies the name of the sensor for tracing.
+         * @param sensor specifies the sensor.
+         * @param index specifies the sensor axis index.
+         * @param dataType specifies the sensor data type.
+         * @param axis specifies the pose axis the sensor measures.
+         * @param inverted specifies true if the sensor reading decreases as the pose axis increases.
+         * @param variance specifies the measurement noise variance.
+         * @param minValid specifies the minimum valid sensor reading.
+         * @param maxValid specifies the maximum valid sensor reading.
+         */
+        private DistanceSensor(
+                String name, TrcSensor<D> sensor, int index, D dataType, Axis axis, boolean inverted,
+                double variance, double minValid, double maxValid)
+        {
+            this.name = name;
+            this.sensor = sensor;
+            this.index = index;
+            this.dataType = dataType;
+            this.stateIndex = axis == Axis.X? STATE_X: STATE_Y;
+            this.sign = inverted? -1.0: 1.0;
+            this.variance = variance;
+            this.minValid = minValid;
+            this.maxValid = maxValid;
+        }   //DistanceSensor
+
+        /**
+         * This method reads the sensor and applies the reading to the filter.
+         */
+        private void update()
+        {
+            final String funcName = "update";
+            double reading = sensor.getProcessedData(index, dataType).value;
+
+            if (reading >= minValid && reading <= maxValid)
+            {
+                //
+                // The sensor measures z = sign*pos + offset, so pos = sign*(z - offset).
+                //
+                if (!referenced)
+                {
+                    offset = reading - sign*filter.getState(stateIndex);
+                    referenced = true;
+                }
+                else if (filter.update(stateIndex, sign*(reading - offset), variance, gateSigmas))
+                {
+                    rejectCount = 0;
+                }
+                else if (++rejectCount >= maxRejects)
+                {
+                    if (tracer != null)
+                    {
+                        tracer.traceWarn(funcName, "%s: re-referencing %s after %d rejected readings (reading=%f)",
+                                         instanceName, name, rejectCount, reading);
+                    }
+                    referenced = false;
+                    rejectCount = 0;
+                }
+            }
+        }   //update
+
+    }   //class DistanceSensor
+
+    private final String instanceName;
+    private final TrcDriveBase driveBase;
+    private final TrcGyro gyro;
+    private final TrcDbgTrace tracer;
+    private final TrcVectorKalmanFilter filter;
+    private final ArrayList<DistanceSensor<?>> distanceSensors = new ArrayList<>();
+
+    private double encoderVariance = DEF_ENCODER_VARIANCE;
+    private double headingProcessVariance = DEF_HEADING_PROCESS_VARIANCE;
+    private double headingVariance = DEF_HEADING_VARIANCE;
+    private double glitchThreshold = 0.0;
+    private double gateSigmas = DEF_GATE_SIGMAS;
+    private int maxRejects = DEF_MAX_REJECTS;
+
+    private double prevXPos = 0.0;
+    private double prevYPos = 0.0;
+    private double prevHeading = 0.0;
+    private double prevTime = 0.0;
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param instanceName specifies the instance name.
+     * @param driveBase specifies the drive base that provides the encoder odometry.
+     * @param gyro specifies the gyro for heading measurements. If null, the drive base heading is used.
+     * @param tracer specifies the optional tracer to log glitches and re-references, can be null.
+     */
+    public TrcPoseEstimator(final String instanceName, TrcDriveBase driveBase, TrcGyro gyro, TrcDbgTrace tracer)
+    {
+        if (debugEnabled)
+        {
+            dbgTrace = new TrcDbgTrace(moduleName + "." + instanceName, tracingEnabled, traceLevel, msgLevel);
+        }
+
+        if (driveBase == null)
+        {
+            throw new NullPointerException("driveBase cannot be null.");
+        }
+
+        this.instanceName = instanceName;
+        this.driveBase = driveBase;
+        this.gyro = gyro;
+        this.tracer = tracer;
+        filter = new TrcVectorKalmanFilter(instanceName, NUM_STATES);
+        resetPosition();
+    }   //TrcPoseEstimator
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param instanceName specifies the instance name.
+     * @param driveBase specifies the drive base that provides the encoder odometry.
+     * @param gyro specifies the gyro for heading measurements. If null, the drive base heading is used.
+     */
+    public TrcPoseEstimator(final String instanceName, TrcDriveBase driveBase, TrcGyro gyro)
+    {
+        this(instanceName, driveBase, gyro, null);
+    }   //TrcPoseEstimator
+
+    /**
+     * This method returns the instance name.
+     *
+     * @return instance name.
+     */
+    public String toString()
+    {
+        return instanceName;
+    }   //toString
+
+    /**
+     * This method enables/disables the pose estimator task. When enabled, the estimate is updated on every
+     * PreContinuous task. The estimator must be created after the drive base so that the drive base odometry is
+     * updated first.
+     *
+     * @param enabled specifies true to enable, false to disable.
+     */
+    public void setEnabled(boolean enabled)
+    {
+        final String funcName = "setEnabled";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "enabled=%s", Boolean.toString(enabled));
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        if (enabled)
+        {
+            resetPosition();
+            TrcTaskMgr.getInstance().registerTask(instanceName, this, TrcTaskMgr.TaskType.PRECONTINUOUS_TASK);
+        }
+        else
+        {
+            TrcTaskMgr.getInstance().unregisterTask(this, TrcTaskMgr.TaskType.PRECONTINUOUS_TASK);
+        }
+    }   //setEnabled
+
+    /**
+     * This method sets the encoder noise. The position process noise grows with the distance travelled.
+     *
+     * @param variancePerUnit specifies the position variance added per unit of distance travelled.
+     */
+    public void setEncoderNoise(double variancePerUnit)
+    {
+        this.encoderVariance = variancePerUnit;
+    }   //setEncoderNoise
+
+    /**
+     * This method sets the heading noise.
+     *
+     * @param processVariance specifies the heading process variance per second in degrees squared.
+     * @param measurementVariance specifies the gyro heading measurement variance in degrees squared.
+     */
+    public void setHeadingNoise(double processVariance, double measurementVariance)
+    {
+        this.headingProcessVariance = processVariance;
+        this.headingVariance = measurementVariance;
+    }   //setHeadingNoise
+
+    /**
+     * This method sets the encoder glitch threshold. An encoder position change larger than this in a single loop
+     * is considered bogus and is discarded.
+     *
+     * @param threshold specifies the glitch threshold in scaled units, zero to disable.
+     */
+    public void setEncoderGlitchThreshold(double threshold)
+    {
+        this.glitchThreshold = Math.abs(threshold);
+    }   //setEncoderGlitchThreshold
+
+    /**
+     * This method sets the distance sensor outlier rejection parameters.
+     *
+     * @param gateSigmas specifies the innovation gate in standard deviations, zero to disable gating.
+     * @param maxRejects specifies the number of consecutive rejected readings before the sensor is re-referenced.
+     */
+    public void setOutlierRejection(double gateSigmas, int maxRejects)
+    {
+        this.gateSigmas = gateSigmas;
+        this.maxRejects = maxRejects;
+    }   //setOutlierRejection
+
+    /**
+     * This method adds a distance sensor that measures the X or Y axis of the pose.
+     *
+     * @param name specifies the name of the sensor for tracing.
+     * @param sensor specifies the sensor.
+     * @param index specifies the sensor axis index.
+     * @param dataType specifies the sensor data type.
+     * @param axis specifies the pose axis the sensor measures.
+     * @param inverted specifies true if the sensor reading decreases as the pose axis increases.
+     * @param variance specifies the measurement noise variance.
+     * @param minValid specifies the minimum valid sensor reading.
+     * @param maxValid specifies the maximum valid sensor reading.
+     */
+    public <D> void addDistanceSensor(
+            String name, TrcSensor<D> sensor, int index, D dataType, Axis axis, boolean inverted,
+            double variance, double minValid, double maxValid)
+    {
+        final String funcName = "addDistanceSensor";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API,
+                                "name=%s,axis=%s,inverted=%s,variance=%f,min=%f,max=%f",
+                                name, axis, Boolean.toString(inverted), variance, minValid, maxValid);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        distanceSensors.add(new DistanceSensor<>(
+                name, sensor, index, dataType, axis, inverted, variance, minValid, maxValid));
+    }   //addDistanceSensor
+
+    /**
+     * This method resets the estimate to zero at the current drive base position. All distance sensors will be
+     * re-referenced on their next valid reading.
+     */
+    public void resetPosition()
+    {
+        final String funcName = "resetPosition";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        filter.reset(DEF_INITIAL_VARIANCE);
+        filter.setState(STATE_X, driveBase.getXPosition());
+        filter.setState(STATE_Y, driveBase.getYPosition());
+        filter.setState(STATE_HEADING, getMeasuredHeading());
+        prevXPos = driveBase.getXPosition();
+        prevYPos = driveBase.getYPosition();
+        prevHeading = getMeasuredHeading();
+        prevTime = TrcUtil.getCurrentTime();
+
+        for (int i = 0; i < distanceSensors.size(); i++)
+        {
+            DistanceSensor<?> sensor = distanceSensors.get(i);
+            sensor.referenced = false;
+            sensor.rejectCount = 0;
+        }
+    }   //resetPosition
+
+    /**
+     * This method returns the estimated X position.
+     *
+     * @return estimated X position.
+     */
+    public double getXPosition()
+    {
+        return filter.getState(STATE_X);
+    }   //getXPosition
+
+    /**
+     * This method returns the estimated Y position.
+     *
+     * @return estimated Y position.
+     */
+    public double getYPosition()
+    {
+        return filter.getState(STATE_Y);
+    }   //getYPosition
+
+    /**
+     * This method returns the estimated heading.
+     *
+     * @return estimated heading in degrees.
+     */
+    public double getHeading()
+    {
+        return filter.getState(STATE_HEADING);
+    }   //getHeading
+
+    /**
+     * This method returns the variance of the estimated X position.
+     *
+     * @return X position variance.
+     */
+    public double getXVariance()
+    {
+        return filter.getVariance(STATE_X);
+    }   //getXVariance
+
+    /**
+     * This method returns the variance of the estimated Y position.
+     *
+     * @return Y position variance.
+     */
+    public double getYVariance()
+    {
+        return filter.getVariance(STATE_Y);
+    }   //getYVariance
+
+    /**
+     * This method returns the heading from the gyro if there is one, from the drive base otherwise.
+     *
+     * @return measured heading in degrees.
+     */
+    private double getMeasuredHeading()
+    {
+        return gyro != null? gyro.getZHeading().value: driveBase.getHeading();
+    }   //getMeasuredHeading
+
+    //
+    // Implements TrcTaskMgr.Task
+    //
+
+    @Override
+    public void startTask(TrcRobot.RunMode runMode)
+    {
+    }   //startTask
+
+    @Override
+    public void stopTask(TrcRobot.RunMode runMode)
+    {
+    }   //stopTask
+
+    @Override
+    public void prePeriodicTask(TrcRobot.RunMode runMode)
+    {
+    }   //prePeriodicTask
+
+    @Override
+    public void postPeriodicTask(TrcRobot.RunMode runMode)
+    {
+    }   //postPeriodicTask
+
+    /**
+     * This method is called periodically to predict with the encoder odometry and update with the sensors.
+     *
+     * @param runMode specifies the competition mode that is running.
+     */
+    @Override
+    public void preContinuousTask(TrcRobot.RunMode runMode)
+    {
+        final String funcName = "preContinuousTask";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.TASK, "mode=%s", runMode.toString());
+        }
+
+        double currTime = TrcUtil.getCurrentTime();
+        double deltaTime = currTime - prevTime;
+        double xPos = driveBase.getXPosition();
+        double yPos = driveBase.getYPosition();
+        double heading = getMeasuredHeading();
+        double deltaX = xPos - prevXPos;
+        double deltaY = yPos - prevYPos;
+        double deltaHeading = heading - prevHeading;
+        prevTime = currTime;
+        prevXPos = xPos;
+        prevYPos = yPos;
+        prevHeading = heading;
+
+        if (glitchThreshold > 0.0 && (Math.abs(deltaX) >= glitchThreshold || Math.abs(deltaY) >= glitchThreshold))
+        {
+            if (tracer != null)
+            {
+                tracer.traceWarn(funcName, "%s: discarded encoder glitch (deltaX=%f,deltaY=%f)",
+                                 instanceName, deltaX, deltaY);
+            }
+            deltaX = deltaY = 0.0;
+        }
+        //
+        // Predict: the encoder and heading deltas are the control input, the state transition is identity. Driving
+        // the heading with the measured turn keeps the estimate from lagging behind a turn, so the heading process
+        // noise only has to cover drift.
+        //
+        filter.setState(STATE_X, filter.getState(STATE_X) + deltaX);
+        filter.setState(STATE_Y, filter.getState(STATE_Y) + deltaY);
+        filter.setState(STATE_HEADING, filter.getState(STATE_HEADING) + deltaHeading);
+        filter.setProcessNoise(STATE_X, encoderVariance*Math.abs(deltaX));
+        filter.setProcessNoise(STATE_Y, encoderVariance*Math.abs(deltaY));
+        filter.setProcessNoise(STATE_HEADING, headingProcessVariance*deltaTime);
+        filter.predictCovariance();
+        //
+        // Update: gyro heading is never gated because the gyro is the heading reference.
+        //
+        filter.update(STATE_HEADING, heading, headingVariance, 0.0);
+        for (int i = 0; i < distanceSensors.size(); i++)
+        {
+            distanceSensors.get(i).update();
+        }
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.TASK, "x=%f,y=%f,heading=%f",
+                               getXPosition(), getYPosition(), getHeading());
+        }
+    }   //preContinuousTask
+
+    @Override
+    public void postContinuousTask(TrcRobot.RunMode runMode)
+    {
+    }   //postContinuousTask
+
+}   //class TrcPoseEstimator
@@ -0,0 +1,573 @@
+/*
+ * Copyright (c) 2017 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package trclib;
+
+/**
+ * This class implements a pure pursuit path follower. It drives the robot continuously through a list of field
+ * waypoints using the field pose of the drive base. Every loop, it finds the point on the path that is the following
+ * distance away from the robot and drives toward it, so the robot cuts smoothly through intermediate waypoints
+ * instead of stopping and settling at each one. Only the last waypoint has to be settled on.
+ *
+ * On a mecanum drive base, the heading is controlled independently: the heading target is interpolated between
+ * the waypoint headings along each segment. On a tank drive base, the robot steers toward the following point and
+ * the waypoint headings are ignored.
+ */
+public class TrcPurePursuitDrive implements TrcTaskMgr.Task, TrcPidController.PidInput
+{
+    private static final String moduleName = "TrcPurePursuitDrive";
+    private static final boolean debugEnabled = false;
+    private static final boolean tracingEnabled = false;
+    private static final TrcDbgTrace.TraceLevel traceLevel = TrcDbgTrace.TraceLevel.API;
+    private static final TrcDbgTrace.MsgLevel msgLevel = TrcDbgTrace.MsgLevel.INFO;
+    private TrcDbgTrace dbgTrace = null;
+
+    /**
+     * This specifies the type of drive base.
+     */
+    public enum DriveType
+    {
+        MECANUM,
+        TANK
+    }   //enum DriveType
+
+    private final String instanceName;
+    private final TrcDriveBase driveBase;
+    private final DriveType driveType;
+    private final TrcPidController posPidCtrl;
+    private final TrcPidController turnPidCtrl;
+    private double followingDistance;
+
+    private final TrcPose2D robotPose = new TrcPose2D();
+    private final TrcPose2D startPose = new TrcPose2D();
+    private TrcPose2D[] waypoints = null;
+    private int segmentIndex = 0;
+    private double remainingDistance = 0.0;
+    private double targetHeading = 0.0;
+    private TrcEvent notifyEvent = null;
+    private double expiredTime = 0.0;
+    private int drivePriority = 0;
+    private boolean active = false;
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param instanceName specifies the instance name.
+     * @param driveBase specifies the drive base, its field pose is used as the robot position.
+     * @param driveType specifies the type of the drive base.
+     * @param followingDistance specifies the distance ahead on the path the robot drives toward.
+     * @param posTolerance specifies the position tolerance at the last waypoint.
+     * @param turnTolerance specifies the heading tolerance in degrees.
+     * @param posPidCoeff specifies the PID coefficients for the remaining distance along the path.
+     * @param turnPidCoeff specifies the PID coefficients for the heading.
+     */
+    public TrcPurePursuitDrive(
+            final String instanceName, TrcDriveBase driveBase, DriveType driveType, double followingDistance,
+            double posTolerance, double turnTolerance,
+            TrcPidController.PidCoefficients posPidCoeff, TrcPidController.PidCoefficients turnPidCoeff)
+    {
+        if (debugEnabled)
+        {
+            dbgTrace = new TrcDbgTrace(moduleName + "." + instanceName, tracingEnabled, traceLevel, msgLevel);
+        }
+
+        if (followingDistance <= 0.0)
+        {
+            throw new IllegalArgumentException("Following distance must be positive.");
+        }
+
+        this.instanceName = instanceName;
+        this.driveBase = driveBase;
+        this.driveType = driveType;
+        this.followingDistance = followingDistance;
+        posPidCtrl = new TrcPidController(instanceName + ".pos", posPidCoeff, posTolerance, this);
+        posPidCtrl.setAbsoluteSetPoint(true);
+        turnPidCtrl = new TrcPidController(instanceName + ".turn", turnPidCoeff, turnTolerance, this);
+        turnPidCtrl.setAbsoluteSetPoint(true);
+    }   //TrcPurePursuitDrive
+
+    /**
+     * This method returns the instance name.
+     *
+     * @return instance name.
+     */
+    public String toString()
+    {
+        return instanceName;
+    }   //toString
+
+    /**
+     * This method sets the following distance.
+     *
+     * @param followingDistance specifies the distance ahead on the path the robot drives toward.
+     */
+    public void setFollowingDistance(double followingDistance)
+    {
+        this.followingDistance = followingDistance;
+    }   //setFollowingDistance
+
+    /**
+     * This method sets the priority used to acquire ownership of the drive base when path following starts. A path
+     * with a higher priority preempts the current owner of the drive base. A path with the same or lower priority
+     * than another owner does not start: it is canceled right away, so isActive returns false and the notify event,
+     * if any, is canceled.
+     *
+     * @param drivePriority specifies the drive base ownership priority.
+     */
+    public void setDrivePriority(int drivePriority)
+    {
+        this.drivePriority = drivePriority;
+    }   //setDrivePriority
+
+    /**
+     * This method sets the maximum drive and turn power.
+     *
+     * @param movePower specifies the maximum drive power.
+     * @param turnPower specifies the maximum turn power.
+     */
+    public void setOutputLimits(double movePower, double turnPower)
+    {
+        posPidCtrl.setOutputRange(-movePower, movePower);
+        turnPidCtrl.setOutputRange(-turnPower, turnPower);
+    }   //setOutputLimits
+
+    /**
+     * This method starts following the path from the current field pose through the given waypoints. The waypoint
+     * array is referenced, not copied, so it should not be modified while the path is being followed.
+     *
+     * @param waypoints specifies the field waypoints, the heading of each is its target heading on a mecanum drive.
+     * @param event specifies an event object to signal when the last waypoint is reached, can be null.
+     * @param timeout specifies a timeout value in seconds, zero for no timeout.
+     */
+    public void start(TrcPose2D[] waypoints, TrcEvent event, double timeout)
+    {
+        final String funcName = "start";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "numPoints=%d,event=%s,timeout=%.3f",
+                                waypoints.length, event, timeout);
+        }
+
+        if (waypoints.length == 0)
+        {
+            throw new IllegalArgumentException("Path must have at least one waypoint.");
+        }
+
+        driveBase.getFieldPose(startPose);
+        this.waypoints = waypoints;
+        segmentIndex = 0;
+        remainingDistance = 0.0;
+        for (int i = 0; i < waypoints.length; i++)
+        {
+            remainingDistance += getDistance(getPoint(i - 1), waypoints[i]);
+        }
+        targetHeading = startPose.heading;
+        posPidCtrl.setTarget(0.0);
+        turnPidCtrl.setTarget(targetHeading);
+
+        if (event != null)
+        {
+            event.clear();
+        }
+        notifyEvent = event;
+        expiredTime = timeout != 0.0? TrcUtil.getCurrentTime() + timeout: 0.0;
+        setTaskEnabled(true);
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+    }   //start
+
+    /**
+     * This method starts following the path from the current field pose through the given waypoints.
+     *
+     * @param waypoints specifies the field waypoints, the heading of each is its target heading on a mecanum drive.
+     * @param event specifies an event object to signal when the last waypoint is reached, can be null.
+     */
+    public void start(TrcPose2D[] waypoints, TrcEvent event)
+    {
+        start(waypoints, event, 0.0);
+    }   //start
+
+    /**
+     * This method checks if a path is being followed.
+     *
+     * @return true if active, false otherwise.
+     */
+    public boolean isActive()
+    {
+        return active;
+    }   //isActive
+
+    /**
+     * This method cancels the path following.
+     */
+    public void cancel()
+    {
+        final String funcName = "cancel";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        if (active)
+        {
+            stop();
+            if (notifyEvent != null)
+            {
+                notifyEvent.cancel();
+                notifyEvent = null;
+            }
+        }
+    }   //cancel
+
+    /**
+     * This method stops the drive base and the follower task.
+     */
+    private void stop()
+    {
+        driveBase.stop(instanceName);
+        setTaskEnabled(false);
+        posPidCtrl.reset();
+        turnPidCtrl.reset();
+    }   //stop
+
+    /**
+     * This method enables/disables the follower task.
+     *
+     * @param enabled specifies true to enable, false to disable.
+     */
+    private void setTaskEnabled(boolean enabled)
+    {
+        final String funcName = "setTaskEnabled";
+        TrcTaskMgr taskMgr = TrcTaskMgr.getInstance();
+
+        if (enabled)
+        {
+            if (driveBase.acquireOwnership(instanceName, drivePriority))
+            {
+                taskMgr.registerTask(instanceName, this, TrcTaskMgr.TaskType.STOP_TASK);
+                taskMgr.registerTask(instanceName, this, TrcTaskMgr.TaskType.POSTCONTINUOUS_TASK);
+                active = true;
+            }
+            else
+            {
+                //
+                // Another operation with the same or higher priority owns the drive base. Don't start, cancel the
+                // path so that the caller finds out.
+                //
+                if (debugEnabled)
+                {
+                    dbgTrace.traceWarn(funcName, "%s: drive base is owned by another operation, canceled.",
+                                       instanceName);
+                }
+                stop();
+                if (notifyEvent != null)
+                {
+                    notifyEvent.cancel();
+                    notifyEvent = null;
+                }
+            }
+        }
+        else
+        {
+            taskMgr.unregisterTask(this, TrcTaskMgr.TaskType.STOP_TASK);
+            taskMgr.unregisterTask(this, TrcTaskMgr.TaskType.POSTCONTINUOUS_TASK);
+            driveBase.releaseOwnership(instanceName);
+            active = false;
+        }
+    }   //setTaskEnabled
+
+    /**
+     * This method returns the path point of the given index where -1 is the start pose.
+     *
+     * @param index specifies the point index.
+     * @return path point.
+     */
+    private TrcPose2D getPoint(int index)
+    {
+        return index < 0? startPose: waypoints[index];
+    }   //getPoint
+
+    /**
+     * This method returns the distance between two points.
+     *
+     * @param from specifies the first point.
+     * @param to specifies the second point.
+     * @return distance between the points.
+     */
+    private double getDistance(TrcPose2D from, TrcPose2D to)
+    {
+        return Math.hypot(to.x - from.x, to.y - from.y);
+    }   //getDistance
+
+    /**
+     * This method returns the fraction along the current segment of the robot's projection onto the segment.
+     *
+     * @param from specifies the start of the segment.
+     * @param to specifies the end of the segment.
+     * @return projected fraction, not clipped.
+     */
+    private double getProjection(TrcPose2D from, TrcPose2D to)
+    {
+        double segX = to.x - from.x;
+        double segY = to.y - from.y;
+        double lengthSquared = segX*segX + segY*segY;
+
+        return lengthSquared > 0.0? ((robotPose.x - from.x)*segX + (robotPose.y - from.y)*segY)/lengthSquared: 1.0;
+    }   //getProjection
+
+    /**
+     * This method returns the fraction along the segment of the farthest intersection of the following circle
+     * around the robot with the segment line.
+     *
+     * @param from specifies the start of the segment.
+     * @param to specifies the end of the segment.
+     * @return fraction of the intersection, or NaN if the circle does not reach the line.
+     */
+    private double getFollowingFraction(TrcPose2D from, TrcPose2D to)
+    {
+        double segX = to.x - from.x;
+        double segY = to.y - from.y;
+        double relX = from.x - robotPose.x;
+        double relY = from.y - robotPose.y;
+        //
+        // Solve |from + t*seg - robot| = followingDistance for the larger t.
+        //
+        double a = segX*segX + segY*segY;
+        double b = 2.0*(relX*segX + relY*segY);
+        double c = relX*relX + relY*relY - followingDistance*followingDistance;
+        double discriminant = b*b - 4.0*a*c;
+
+        return a > 0.0 && discriminant >= 0.0? (-b + Math.sqrt(discriminant))/(2.0*a): Double.NaN;
+    }   //getFollowingFraction
+
+    /**
+     * This method normalizes an angle to the range of -180 to 180 degrees.
+     *
+     * @param angle specifies the angle in degrees.
+     * @return normalized angle.
+     */
+    private double normalizeAngle(double angle)
+    {
+        angle %= 360.0;
+        if (angle > 180.0)
+        {
+            angle -= 360.0;
+        }
+        else if (angle < -180.0)
+        {
+            angle += 360.0;
+        }
+
+        return angle;
+    }   //normalizeAngle
+
+    //
+    // Implements TrcPidController.PidInput.
+    //
+
+    /**
+     * This method returns the negative remaining distance to the position PID controller so that its set point is
+     * zero, and the field heading to the turn PID controller.
+     *
+     * @param pidCtrl specifies the PID controller asking for input.
+     * @return input value.
+     */
+    @Override
+    public double getInput(TrcPidController pidCtrl)
+    {
+        return pidCtrl == posPidCtrl? -remainingDistance: robotPose.heading;
+    }   //getInput
+
+    //
+    // Implements TrcTaskMgr.Task
+    //
+
+    @Override
+    public void startTask(TrcRobot.RunMode runMode)
+    {
+    }   //startTask
+
+    /**
+     * This method is called when the competition mode is about to end to stop following the path.
+     *
+     * @param runMode specifies the competition mode that is about to end (e.g. Autonomous, TeleOp, Test).
+     */
+    @Override
+    public void stopTask(TrcRobot.RunMode runMode)
+    {
+        stop();
+    }   //stopTask
+
+    @Override
+    public void prePeriodicTask(TrcRobot.RunMode runMode)
+    {
+    }   //prePeriodicTask
+
+    @Override
+    public void postPeriodicTask(TrcRobot.RunMode runMode)
+    {
+    }   //postPeriodicTask
+
+    @Override
+    public void preContinuousTask(TrcRobot.RunMode runMode)
+    {
+    }   //preContinuousTask
+
+    /**
+     * This method is called periodically to follow the path.
+     *
+     * @param runMode specifies the competition mode that is running.
+     */
+    @Override
+    public void postContinuousTask(TrcRobot.RunMode runMode)
+    {
+        final String funcName = "postContinuousTask";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.TASK, "mode=%s", runMode.toString());
+        }
+
+        driveBase.getFieldPose(robotPose);
+        int lastIndex = waypoints.length - 1;
+        //
+        // Advance to the next segment once the robot has passed the end of the current one or the end is within
+        // the following distance.
+        //
+        while (segmentIndex < lastIndex &&
+               (getProjection(getPoint(segmentIndex - 1), waypoints[segmentIndex]) >= 1.0 ||
+                getDistance(robotPose, waypoints[segmentIndex]) <= followingDistance))
+        {
+            segmentIndex++;
+        }
+
+        TrcPose2D from = getPoint(segmentIndex - 1);
+        TrcPose2D to = waypoints[segmentIndex];
+        double projection = TrcUtil.clipRange(getProjection(from, to), 0.0, 1.0);
+        double following = getFollowingFraction(from, to);
+        //
+        // Drive toward the farthest point of the following circle on the segment. If the robot is too far from the
+        // path, drive toward its projection on the path first.
+        //
+        following = Double.isNaN(following)? projection: TrcUtil.clipRange(following, projection, 1.0);
+        double followX = from.x + following*(to.x - from.x);
+        double followY = from.y + following*(to.y - from.y);
+        double deltaX = followX - robotPose.x;
+        double deltaY = followY - robotPose.y;
+        double deltaDistance = Math.hypot(deltaX, deltaY);
+
+        if (segmentIndex == lastIndex)
+        {
+            //
+            // The remaining distance is negative once the robot has passed the end of the path, so an overshoot
+            // drives it back instead of further away.
+            //
+            remainingDistance = getDistance(robotPose, to);
+            if (getProjection(from, to) > 1.0)
+            {
+                remainingDistance = -remainingDistance;
+            }
+        }
+        else
+        {
+            remainingDistance = (1.0 - projection)*getDistance(from, to);
+            for (int i = segmentIndex + 1; i <= lastIndex; i++)
+            {
+                remainingDistance += getDistance(waypoints[i - 1], waypoints[i]);
+            }
+        }
+
+        if (driveType == DriveType.MECANUM)
+        {
+            targetHeading = from.heading + projection*(to.heading - from.heading);
+        }
+        else if (remainingDistance > followingDistance/2.0 && deltaDistance > 0.0)
+        {
+            //
+            // Steer toward the following point. Close to the end, the bearing is held so the robot won't spin.
+            //
+            double bearing = Math.toDegrees(Math.atan2(deltaX, deltaY));
+            targetHeading = robotPose.heading + normalizeAngle(bearing - robotPose.heading);
+        }
+        turnPidCtrl.setProfiledSetPoint(targetHeading);
+
+        double movePower = posPidCtrl.getOutput();
+        double turnPower = turnPidCtrl.getOutput();
+        boolean expired = expiredTime != 0.0 && TrcUtil.getCurrentTime() >= expiredTime;
+        boolean onTarget = segmentIndex == lastIndex && posPidCtrl.isOnTarget() &&
+                           (driveType == DriveType.TANK || turnPidCtrl.isOnTarget());
+
+        if (expired || onTarget)
+        {
+            stop();
+            if (notifyEvent != null)
+            {
+                notifyEvent.set(true);
+                notifyEvent = null;
+            }
+        }
+        else if (driveType == DriveType.MECANUM)
+        {
+            //
+            // Rotate the field direction into the robot frame, heading is clockwise positive.
+            //
+            double dirX = deltaDistance > 0.0? deltaX/deltaDistance: 0.0;
+            double dirY = deltaDistance > 0.0? deltaY/deltaDistance: 0.0;
+            //
+            // Past the end of the path, the following point is behind the robot and the move power is negative.
+            //
+            if (remainingDistance < 0.0)
+            {
+                dirX = -dirX;
+                dirY = -dirY;
+            }
+            double headingRad = Math.toRadians(robotPose.heading);
+            double cosH = Math.cos(headingRad);
+            double sinH = Math.sin(headingRad);
+
+            driveBase.mecanumDrive_Cartesian(
+                    instanceName, movePower*(dirX*cosH - dirY*sinH), movePower*(dirX*sinH + dirY*cosH), turnPower,
+                    false, 0.0);
+        }
+        else
+        {
+            //
+            // Slow down while the robot is not facing the following point.
+            //
+            double headingError = Math.toRadians(targetHeading - robotPose.heading);
+            driveBase.arcadeDrive(instanceName, movePower*Math.max(Math.cos(headingError), 0.0), turnPower, false);
+        }
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.TASK, "segment=%d,remaining=%f,heading=%f",
+                               segmentIndex, remainingDistance, targetHeading);
+        }
+    }   //postContinuousTask
+
+}   //class TrcPurePursuitDrive
@@ -0,0 +1,254 @@
+/*
+ * Copyright (c) 2017 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package trclib;
+
+import java.util.ArrayList;
+
+/**
+ * This class implements a declarative register map for devices that are read in bursts, such as I2C sensors. Each
+ * field of the register block is described by its register address, width, signedness and scale. The whole block
+ * is decoded in one pass into a primitive snapshot so that the getters of the device only look up the decoded
+ * values instead of decoding bytes each time.
+ */
+public class TrcRegisterMap
+{
+    /**
+     * This class describes a field of the register block.
+     */
+    private static class Field
+    {
+        private final String name;
+        private final int offset;
+        private final int width;
+        private final boolean signed;
+        private final double scale;
+
+        /**
+         * Constructor: Create an instance of the object.
+         *
+         * @param name specifies the field name.
+         * @param offset specifies the byte offset of the field in the register block.
+         * @param width specifies the width of the field in bytes (1, 2 or 4).
+         * @param signed specifies true if the field is a signed value.
+         * @param scale specifies the scale to apply to the raw value.
+         */
+        Field(String name, int offset, int width, boolean signed, double scale)
+        {
+            this.name = name;
+            this.offset = offset;
+            this.width = width;
+            this.signed = signed;
+            this.scale = scale;
+        }   //Field
+
+    }   //class Field
+
+    private final String instanceName;
+    private final int startAddress;
+    private final int length;
+    private final boolean bigEndian;
+    private final ArrayList<Field> fields = new ArrayList<>();
+    private double[] values = new double[0];
+    private double timestamp = 0.0;
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param instanceName specifies the instance name.
+     * @param startAddress specifies the start address of the register block.
+     * @param length specifies the length of the register block in bytes.
+     * @param bigEndian specifies true if multi-byte fields are big-endian, false if little-endian.
+     */
+    public TrcRegisterMap(final String instanceName, int startAddress, int length, boolean bigEndian)
+    {
+        this.instanceName = instanceName;
+        this.startAddress = startAddress;
+        this.length = length;
+        this.bigEndian = bigEndian;
+    }   //TrcRegisterMap
+
+    /**
+     * Constructor: Create an instance of the object with little-endian fields.
+     *
+     * @param instanceName specifies the instance name.
+     * @param startAddress specifies the start address of the register block.
+     * @param length specifies the length of the register block in bytes.
+     */
+    public TrcRegisterMap(final String instanceName, int startAddress, int length)
+    {
+        this(instanceName, startAddress, length, false);
+    }   //TrcRegisterMap
+
+    /**
+     * This method returns the instance name.
+     *
+     * @return instance name.
+     */
+    public String toString()
+    {
+        return instanceName;
+    }   //toString
+
+    /**
+     * This method returns the start address of the register block.
+     *
+     * @return start address.
+     */
+    public int getStartAddress()
+    {
+        return startAddress;
+    }   //getStartAddress
+
+    /**
+     * This method returns the length of the register block.
+     *
+     * @return length in bytes.
+     */
+    public int getLength()
+    {
+        return length;
+    }   //getLength
+
+    /**
+     * This method adds a field to the register map.
+     *
+     * @param name specifies the field name.
+     * @param regAddress specifies the register address of the field (the low byte if little-endian).
+     * @param width specifies the width of the field in bytes (1, 2 or 4).
+     * @param signed specifies true if the field is a signed value.
+     * @param scale specifies the scale to apply to the raw value.
+     * @return field index to be used for retrieving the decoded value.
+     */
+    public int addField(String name, int regAddress, int width, boolean signed, double scale)
+    {
+        int offset = regAddress - startAddress;
+
+        if (width != 1 && width != 2 && width != 4)
+        {
+            throw new IllegalArgumentException("Field width must be 1, 2 or 4 bytes.");
+        }
+        else if (offset < 0 || offset + width > length)
+        {
+            throw new IllegalArgumentException(
+                    String.format("Field %s is outside of the register block.", name));
+        }
+
+        fields.add(new Field(name, offset, width, signed, scale));
+        values = new double[fields.size()];
+
+        return fields.size() - 1;
+    }   //addField
+
+    /**
+     * This method adds an unscaled field to the register map.
+     *
+     * @param name specifies the field name.
+     * @param regAddress specifies the register address of the field (the low byte if little-endian).
+     * @param width specifies the width of the field in bytes (1, 2 or 4).
+     * @param signed specifies true if the field is a signed value.
+     * @return field index to be used for retrieving the decoded value.
+     */
+    public int addField(String name, int regAddress, int width, boolean signed)
+    {
+        return addField(name, regAddress, width, signed, 1.0);
+    }   //addField
+
+    /**
+     * This method decodes all fields from the register block data into the snapshot. The data must start at the
+     * start address of the register block.
+     *
+     * @param data specifies the register block data.
+     * @param timestamp specifies the timestamp of the data.
+     */
+    public void decode(byte[] data, double timestamp)
+    {
+        for (int i = 0; i < fields.size(); i++)
+        {
+            Field field = fields.get(i);
+            int raw = 0;
+
+            for (int j = 0; j < field.width; j++)
+            {
+                int index = bigEndian? field.offset + j: field.offset + field.width - 1 - j;
+                raw = (raw << 8) | (data[index] & 0xff);
+            }
+
+            if (field.signed && field.width < 4)
+            {
+                //
+                // Sign extend the value.
+                //
+                int shift = 32 - field.width*8;
+                raw = (raw << shift) >> shift;
+            }
+
+            values[i] = field.signed || field.width < 4? raw*field.scale: (raw & 0xffffffffL)*field.scale;
+        }
+        this.timestamp = timestamp;
+    }   //decode
+
+    /**
+     * This method returns the timestamp of the decoded snapshot.
+     *
+     * @return snapshot timestamp, 0.0 if nothing has been decoded yet.
+     */
+    public double getTimestamp()
+    {
+        return timestamp;
+    }   //getTimestamp
+
+    /**
+     * This method returns the decoded value of the specified field.
+     *
+     * @param fieldIndex specifies the field index returned by addField.
+     * @return decoded value.
+     */
+    public double getValue(int fieldIndex)
+    {
+        return values[fieldIndex];
+    }   //getValue
+
+    /**
+     * This method returns the decoded values of all fields. The array is owned by the register map and is
+     * overwritten by the next decode.
+     *
+     * @return decoded values indexed by field index.
+     */
+    public double[] getValues()
+    {
+        return values;
+    }   //getValues
+
+    /**
+     * This method returns the name of the specified field.
+     *
+     * @param fieldIndex specifies the field index returned by addField.
+     * @return field name.
+     */
+    public String getFieldName(int fieldIndex)
+    {
+        return fields.get(fieldIndex).name;
+    }   //getFieldName
+
+}   //class TrcRegisterMap
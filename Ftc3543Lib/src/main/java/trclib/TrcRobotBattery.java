@@ -24,7 +24,9 @@ package trclib;
 
 /**
  * This class monitors the robot battery level and provides methods to get the current battery voltage as well as
- * the lowest voltage it has ever seen during the monitoring session.
+ * the lowest voltage it has ever seen during the monitoring session. Optionally, streaming statistics objects can
+ * be attached to keep windowed statistics of the voltage, current and power, which are used to estimate voltage
+ * sag under load and to predict brown-out.
  */
 public abstract class TrcRobotBattery implements TrcTaskMgr.Task
 {
@@ -65,6 +67,9 @@ public abstract class TrcRobotBattery implements TrcTaskMgr.Task
     private double lowestPower = 0.0;
     private double highestPower = 0.0;
     private boolean powerSupported = true;
+    private TrcStreamingStats voltageStats = null;
+    private TrcStreamingStats currentStats = null;
+    private TrcStreamingStats powerStats = null;
 
     /**
      * Constructor: create an instance of the object.
@@ -95,6 +100,21 @@ public abstract class TrcRobotBattery implements TrcTaskMgr.Task
 
         if (enabled)
         {
+            if (voltageStats != null)
+            {
+                voltageStats.reset();
+            }
+
+            if (currentStats != null)
+            {
+                currentStats.reset();
+            }
+
+            if (powerStats != null)
+            {
+                powerStats.reset();
+            }
+
             if (voltageSupported)
             {
                 try
@@ -139,6 +159,102 @@ public abstract class TrcRobotBattery implements TrcTaskMgr.Task
         }
     }   //setEnabled
 
+    /**
+     * This method attaches streaming statistics objects to the battery monitor. The statistics are reset when the
+     * monitoring task is enabled.
+     *
+     * @param voltageStats specifies the statistics object for voltage, null if not needed.
+     * @param currentStats specifies the statistics object for current, null if not needed.
+     * @param powerStats specifies the statistics object for power, null if not needed.
+     */
+    public void setStatistics(
+            TrcStreamingStats voltageStats, TrcStreamingStats currentStats, TrcStreamingStats powerStats)
+    {
+        this.voltageStats = voltageStats;
+        this.currentStats = currentStats;
+        this.powerStats = powerStats;
+    }   //setStatistics
+
+    /**
+     * This method returns the voltage statistics object.
+     *
+     * @return voltage statistics, null if none is attached.
+     */
+    public TrcStreamingStats getVoltageStatistics()
+    {
+        return voltageStats;
+    }   //getVoltageStatistics
+
+    /**
+     * This method returns the current statistics object.
+     *
+     * @return current statistics, null if none is attached.
+     */
+    public TrcStreamingStats getCurrentStatistics()
+    {
+        return currentStats;
+    }   //getCurrentStatistics
+
+    /**
+     * This method returns the power statistics object.
+     *
+     * @return power statistics, null if none is attached.
+     */
+    public TrcStreamingStats getPowerStatistics()
+    {
+        return powerStats;
+    }   //getPowerStatistics
+
+    /**
+     * This method returns the recent voltage sag, which is how far the voltage dips below its unloaded level in the
+     * sliding window. It is estimated as the spread between the 95th and the 5th percentile of the voltage, so it
+     * requires voltage statistics with percentiles.
+     *
+     * @return voltage sag in volts.
+     * @throws UnsupportedOperationException if no voltage statistics is attached.
+     */
+    public double getVoltageSag()
+    {
+        if (voltageStats == null)
+        {
+            throw new UnsupportedOperationException("Voltage statistics is not enabled.");
+        }
+
+        return voltageStats.getPercentile(0.95) - voltageStats.getPercentile(0.05);
+    }   //getVoltageSag
+
+    /**
+     * This method predicts if the battery is about to brown out. It is predicted when the smoothed voltage minus
+     * the given number of standard deviations of the recent voltage falls below the brown-out voltage, meaning a
+     * normal dip under load is likely to cross it.
+     *
+     * @param brownOutVoltage specifies the voltage at which the robot browns out.
+     * @param numStdDevs specifies the number of standard deviations as safety margin.
+     * @return true if brown-out is likely, false otherwise.
+     * @throws UnsupportedOperationException if no voltage statistics is attached.
+     */
+    public boolean isBrownOutPredicted(double brownOutVoltage, double numStdDevs)
+    {
+        final String funcName = "isBrownOutPredicted";
+
+        if (voltageStats == null)
+        {
+            throw new UnsupportedOperationException("Voltage statistics is not enabled.");
+        }
+
+        boolean predicted = voltageStats.getCount() > 0 &&
+                            voltageStats.getEwma() - numStdDevs*voltageStats.getWindowStdDev() <= brownOutVoltage;
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API,
+                                "brownOutVoltage=%.2f,numStdDevs=%.1f", brownOutVoltage, numStdDevs);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API, "=%s", Boolean.toString(predicted));
+        }
+
+        return predicted;
+    }   //isBrownOutPredicted
+
     /**
      * This method returns the lowest voltage it has ever seen during the monitoring session.
      *
@@ -279,6 +395,11 @@ public abstract class TrcRobotBattery implements TrcTaskMgr.Task
         if (voltageSupported)
         {
             double voltage = getVoltage();
+            if (voltageStats != null)
+            {
+                voltageStats.addSample(voltage);
+            }
+
             if (voltage < lowestVoltage)
             {
                 lowestVoltage = voltage;
@@ -292,6 +413,11 @@ public abstract class TrcRobotBattery implements TrcTaskMgr.Task
         if (currentSupported)
         {
             double current = getCurrent();
+            if (currentStats != null)
+            {
+                currentStats.addSample(current);
+            }
+
             if (current < lowestCurrent)
             {
                 lowestCurrent = current;
@@ -305,6 +431,11 @@ public abstract class TrcRobotBattery implements TrcTaskMgr.Task
         if (powerSupported)
         {
             double power = getPower();
+            if (powerStats != null)
+            {
+                powerStats.addSample(power);
+            }
+
             if (power < lowestPower)
             {
                 lowestPower = power;
@@ -88,6 +88,29 @@ public abstract class TrcSensor<D>
 
     }   //interface DataSource
 
+    /**
+     * This interface will be implemented by sensor classes that queue every sample they receive (e.g. Android
+     * sensors that are event driven) instead of keeping only the latest one. It allows consumers such as
+     * TrcDataIntegrator to process every sample instead of one per robot loop.
+     *
+     * @param <D> specifies the data type enum.
+     */
+    public interface BatchedDataSource<D>
+    {
+        /**
+         * This method removes all raw samples of the given data type queued since the last call and copies them
+         * to the caller's arrays. Samples that don't fit are left in the queue for the next call.
+         *
+         * @param dataType specifies the data type to drain.
+         * @param timestamps specifies the array to receive the sample timestamps.
+         * @param values specifies the array to receive the sample values of all axes, values[n*numAxes + axis].
+         * @param maxSamples specifies the maximum number of samples to copy.
+         * @return number of samples copied, 0 if none is queued or the data type is not queued.
+         */
+        int drainRawData(D dataType, double[] timestamps, double[] values, int maxSamples);
+
+    }   //interface BatchedDataSource
+
     /**
      * This method returns the selected raw sensor data.
      *
@@ -272,23 +295,61 @@ public abstract class TrcSensor<D>
     }   //calibrate
 
     /**
-     * This method always returns false because the built-in calibrator is synchronous.
+     * This method starts a background calibration of the sensor by creating a calibrator if none exist yet. The
+     * calibration is done by a PreContinuous task one sample at a time, so it doesn't block the caller.
+     *
+     * @param numCalSamples specifies the number of calibration sample to take.
+     * @param calInterval specifies the minimum interval between each calibration sample in msec.
+     * @param dataType specifies the data type needed calibration.
+     */
+    protected void startCalibration(int numCalSamples, long calInterval, D dataType)
+    {
+        if (calibrator == null)
+        {
+            calibrator = new TrcSensorCalibrator<>(instanceName, this, numAxes, dataType);
+        }
+
+        calibrator.startCalibration(numCalSamples, calInterval);
+    }   //startCalibration
+
+    /**
+     * This method starts a background calibration of the sensor by creating a calibrator if none exist yet.
+     *
+     * @param dataType specifies the data type needed calibration.
+     */
+    protected void startCalibration(D dataType)
+    {
+        startCalibration(NUM_CAL_SAMPLES, CAL_INTERVAL, dataType);
+    }   //startCalibration
+
+    /**
+     * This method returns the built-in calibrator of the sensor so the caller can query the calibration
+     * statistics.
+     *
+     * @return calibrator, null if the sensor has never been calibrated.
+     */
+    public TrcSensorCalibrator<D> getCalibrator()
+    {
+        return calibrator;
+    }   //getCalibrator
+
+    /**
+     * This method checks if a background calibration of the built-in calibrator is in progress.
      *
-     * @return false.
+     * @return true if calibration is in progress, false otherwise.
      */
     public boolean isCalibrating()
     {
         final String funcName = "isCalibrating";
+        boolean calibrating = calibrator != null && calibrator.isCalibrating();
 
         if (debugEnabled)
         {
             dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
-            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API, "=false");
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API, "=%s", Boolean.toString(calibrating));
         }
-        //
-        // The built-in calibrator is synchronous, so we always return false.
-        //
-        return false;
+
+        return calibrating;
     }   //isCalibrating
 
     /**
@@ -304,8 +365,29 @@ public abstract class TrcSensor<D>
     {
         final String funcName = "getProcessedData";
         SensorData<Double> data = (SensorData<Double>)getRawData(index, dataType);
-        double value = (double)data.value;
+        double value = processRawValue(index, (double)data.value);
+        data.value = value;
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "index=%d", index);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API,
+                               "=(timestamp=%0.3f,value=%f", data.timestamp, value);
+        }
+
+        return data;
+    }   //getProcessedData
 
+    /**
+     * This method applies the filter, the calibration and the scaling of the specified axis to a raw value. It is
+     * used by getProcessedData and by consumers of BatchedDataSource to process queued samples in order.
+     *
+     * @param index specifies the axis index.
+     * @param value specifies the raw value.
+     * @return processed value.
+     */
+    protected double processRawValue(int index, double value)
+    {
         if (filters[index] != null)
         {
             value = filters[index].filterData(value);
@@ -317,16 +399,8 @@ public abstract class TrcSensor<D>
         }
 
         value *= signs[index]*scales[index] + offsets[index];
-        data.value = value;
 
-        if (debugEnabled)
-        {
-            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "index=%d", index);
-            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API,
-                               "=(timestamp=%0.3f,value=%f", data.timestamp, value);
-        }
-
-        return data;
-    }   //getProcessedData
+        return value;
+    }   //processRawValue
 
 }   //class TrcSensor
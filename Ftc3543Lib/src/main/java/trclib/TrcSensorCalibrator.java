@@ -23,11 +23,17 @@
 package trclib;
 
 /**
- * This class implements a generic sensor calibrator on a given sensor with the specified data type.
+ * This class implements a generic sensor calibrator on a given sensor with the specified data type. The calibrator
+ * computes the zero offset and the noise of each axis with Welford's online mean and variance algorithm, so it
+ * doesn't need to keep the samples around. It can calibrate synchronously by blocking the caller, or in the
+ * background as a PreContinuous task one sample at a time. The task is registered as an init task, which FtcOpMode
+ * runs between initPeriodic calls, so a background calibration started in initRobot will be done before competition
+ * starts without stalling init.
+ * Optionally, it can also estimate a linear drift of the zero offset over time and compensate for it.
  *
  * @param <D> specifies the sensor data type to be calibrated.
  */
-public class TrcSensorCalibrator<D>
+public class TrcSensorCalibrator<D> implements TrcTaskMgr.Task
 {
     private static final String moduleName = "TrcSensorCalibrator";
     private static final boolean debugEnabled = false;
@@ -42,6 +48,25 @@ public class TrcSensorCalibrator<D>
     private D dataType;
     private double[] zeroOffsets;
     private double[] deadbands;
+    private double[] variances;
+    private double[] driftRates;
+    private double driftRefTime = 0.0;
+    private boolean driftCompensationEnabled = false;
+    //
+    // Running statistics of the calibration in progress.
+    //
+    private double[] means;
+    private double[] m2s;
+    private double[] timeComoments;
+    private double[] minValues;
+    private double[] maxValues;
+    private double timeMean = 0.0;
+    private double timeM2 = 0.0;
+    private int sampleCount = 0;
+    private int numCalSamples = 0;
+    private double calInterval = 0.0;
+    private double nextSampleTime = 0.0;
+    private volatile boolean calibrating = false;
 
     /**
      * Constructor: Creates an instance of the object.
@@ -64,6 +89,13 @@ public class TrcSensorCalibrator<D>
         this.dataType = dataType;
         zeroOffsets = new double[numAxes];
         deadbands = new double[numAxes];
+        variances = new double[numAxes];
+        driftRates = new double[numAxes];
+        means = new double[numAxes];
+        m2s = new double[numAxes];
+        timeComoments = new double[numAxes];
+        minValues = new double[numAxes];
+        maxValues = new double[numAxes];
     }   //TrcSensorCalibrator
 
     /**
@@ -76,9 +108,31 @@ public class TrcSensorCalibrator<D>
         return instanceName;
     }   //toString
 
+    /**
+     * This method enables/disables drift compensation. When enabled, the calibrator fits a straight line through
+     * the calibration samples over time and keeps extrapolating the zero offset along that line. This is useful
+     * for sensors such as analog gyros whose zero offset drifts as they warm up. It takes effect on the next
+     * calibration.
+     *
+     * @param enabled specifies true to enable drift compensation, false to disable.
+     */
+    public void setDriftCompensationEnabled(boolean enabled)
+    {
+        final String funcName = "setDriftCompensationEnabled";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "enabled=%s", Boolean.toString(enabled));
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        driftCompensationEnabled = enabled;
+    }   //setDriftCompensationEnabled
+
     /**
      * This method calibrates the sensor by reading a number of sensor data samples, averaging the data to determine
-     * the zero offset. It also determines the min and max values of the data samples to form the deadband.
+     * the zero offset. It also determines the min and max values of the data samples to form the deadband. This
+     * method blocks the caller until calibration is done. Use startCalibration() to calibrate in the background.
      *
      * @param numCalSamples specifies the number of calibration sample to take.
      * @param calInterval specifies the interval between each calibration sample in msec.
@@ -86,9 +140,6 @@ public class TrcSensorCalibrator<D>
     public void calibrate(int numCalSamples, long calInterval)
     {
         final String funcName = "calibrate";
-        double[] minValues = new double[numAxes];
-        double[] maxValues = new double[numAxes];
-        double[] sums = new double[numAxes];
 
         if (debugEnabled)
         {
@@ -96,42 +147,194 @@ public class TrcSensorCalibrator<D>
                                 "numSamples=%d,calInterval=%d", numCalSamples, calInterval);
         }
 
-        for (int i = 0; i < numAxes; i++)
+        resetStatistics(numCalSamples, calInterval);
+        for (int n = 0; n < numCalSamples; n++)
         {
-            minValues[i] = maxValues[i] = ((TrcSensor.SensorData<Double>)sensor.getRawData(i, dataType)).value;
-            sums[i] = 0.0;
+            takeSample();
+            TrcUtil.sleep(calInterval);
         }
+        finishCalibration();
 
-        for (int n = 0; n < numCalSamples; n++)
+        if (debugEnabled)
         {
-            for (int i = 0; i < numAxes; i++)
-            {
-                double value = ((TrcSensor.SensorData<Double>)sensor.getRawData(i, dataType)).value;
-                sums[i] += value;
-
-                if (value < minValues[i])
-                {
-                    minValues[i] = value;
-                }
-                else if (value > maxValues[i])
-                {
-                    maxValues[i] = value;
-                }
-            }
-            TrcUtil.sleep(calInterval);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
         }
+    }   //calibrate
 
-        for (int i = 0; i < numAxes; i++)
+    /**
+     * This method starts a background calibration. One sample is taken per PreContinuous task as long as at least
+     * calInterval has elapsed since the previous sample. The task is registered to also run during init, so the
+     * calibration can complete before competition starts. The previous calibration result, if any, stays in effect
+     * until the new calibration is done.
+     *
+     * @param numCalSamples specifies the number of calibration sample to take.
+     * @param calInterval specifies the minimum interval between each calibration sample in msec.
+     */
+    public void startCalibration(int numCalSamples, long calInterval)
+    {
+        final String funcName = "startCalibration";
+
+        if (debugEnabled)
         {
-            zeroOffsets[i] = sums[i]/numCalSamples;
-            deadbands[i] = maxValues[i] - minValues[i];
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API,
+                                "numSamples=%d,calInterval=%d", numCalSamples, calInterval);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
         }
 
+        resetStatistics(numCalSamples, calInterval);
+        calibrating = true;
+        TrcTaskMgr.getInstance().registerInitTask(instanceName, this);
+    }   //startCalibration
+
+    /**
+     * This method cancels a background calibration in progress. The previous calibration result stays in effect.
+     */
+    public void cancelCalibration()
+    {
+        final String funcName = "cancelCalibration";
+
         if (debugEnabled)
         {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
             dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
         }
-    }   //calibrate
+
+        if (calibrating)
+        {
+            calibrating = false;
+            TrcTaskMgr.getInstance().unregisterTask(this, TrcTaskMgr.TaskType.PRECONTINUOUS_TASK);
+        }
+    }   //cancelCalibration
+
+    /**
+     * This method checks if a background calibration is in progress.
+     *
+     * @return true if calibration is in progress, false otherwise.
+     */
+    public boolean isCalibrating()
+    {
+        return calibrating;
+    }   //isCalibrating
+
+    /**
+     * This method returns the progress of the calibration in progress.
+     *
+     * @return calibration progress from 0.0 to 1.0.
+     */
+    public double getProgress()
+    {
+        return numCalSamples > 0? (double)sampleCount/numCalSamples: 1.0;
+    }   //getProgress
+
+    /**
+     * This method returns the calibrated zero offset of the specified axis.
+     *
+     * @param index specifies the axis index.
+     * @return zero offset.
+     */
+    public double getZeroOffset(int index)
+    {
+        return zeroOffsets[index];
+    }   //getZeroOffset
+
+    /**
+     * This method returns the variance of the calibration samples of the specified axis. It is a measure of the
+     * sensor noise.
+     *
+     * @param index specifies the axis index.
+     * @return sample variance.
+     */
+    public double getVariance(int index)
+    {
+        return variances[index];
+    }   //getVariance
+
+    /**
+     * This method returns the estimated drift rate of the zero offset of the specified axis. It is always zero if
+     * drift compensation is not enabled.
+     *
+     * @param index specifies the axis index.
+     * @return drift rate in sensor unit per second.
+     */
+    public double getDriftRate(int index)
+    {
+        return driftRates[index];
+    }   //getDriftRate
+
+    /**
+     * This method clears the running statistics for a new calibration.
+     *
+     * @param numCalSamples specifies the number of calibration sample to take.
+     * @param calInterval specifies the interval between each calibration sample in msec.
+     */
+    private void resetStatistics(int numCalSamples, long calInterval)
+    {
+        for (int i = 0; i < numAxes; i++)
+        {
+            means[i] = 0.0;
+            m2s[i] = 0.0;
+            timeComoments[i] = 0.0;
+            minValues[i] = Double.POSITIVE_INFINITY;
+            maxValues[i] = Double.NEGATIVE_INFINITY;
+        }
+        timeMean = 0.0;
+        timeM2 = 0.0;
+        sampleCount = 0;
+        this.numCalSamples = numCalSamples;
+        this.calInterval = calInterval/1000.0;
+        nextSampleTime = 0.0;
+    }   //resetStatistics
+
+    /**
+     * This method reads one sample of all axes and updates the running statistics using Welford's algorithm.
+     */
+    private void takeSample()
+    {
+        double time = TrcUtil.getCurrentTime();
+
+        sampleCount++;
+        double deltaTime = time - timeMean;
+        timeMean += deltaTime/sampleCount;
+        timeM2 += deltaTime*(time - timeMean);
+
+        for (int i = 0; i < numAxes; i++)
+        {
+            double value = ((TrcSensor.SensorData<Double>)sensor.getRawData(i, dataType)).value;
+            double delta = value - means[i];
+
+            means[i] += delta/sampleCount;
+            m2s[i] += delta*(value - means[i]);
+            timeComoments[i] += deltaTime*(value - means[i]);
+
+            if (value < minValues[i])
+            {
+                minValues[i] = value;
+            }
+
+            if (value > maxValues[i])
+            {
+                maxValues[i] = value;
+            }
+        }
+    }   //takeSample
+
+    /**
+     * This method commits the running statistics as the new calibration result.
+     */
+    private void finishCalibration()
+    {
+        for (int i = 0; i < numAxes; i++)
+        {
+            if (sampleCount > 0)
+            {
+                zeroOffsets[i] = means[i];
+                deadbands[i] = maxValues[i] - minValues[i];
+                variances[i] = sampleCount > 1? m2s[i]/(sampleCount - 1): 0.0;
+                driftRates[i] = driftCompensationEnabled && timeM2 > 0.0? timeComoments[i]/timeM2: 0.0;
+            }
+        }
+        driftRefTime = timeMean;
+    }   //finishCalibration
 
     /**
      * This method applies the calibrated result to the raw sensor data and returned the calibrated data.
@@ -143,7 +346,14 @@ public class TrcSensorCalibrator<D>
     public double getCalibratedData(int index, double data)
     {
         final String funcName = "getCalibratedData";
-        double calibratedData = TrcUtil.applyDeadband(data - zeroOffsets[index], deadbands[index]);
+        double zeroOffset = zeroOffsets[index];
+
+        if (driftRates[index] != 0.0)
+        {
+            zeroOffset += driftRates[index]*(TrcUtil.getCurrentTime() - driftRefTime);
+        }
+
+        double calibratedData = TrcUtil.applyDeadband(data - zeroOffset, deadbands[index]);
 
         if (debugEnabled)
         {
@@ -154,4 +364,67 @@ public class TrcSensorCalibrator<D>
         return calibratedData;
     }   //getCalibratedData
 
+    //
+    // Implements TrcTaskMgr.Task
+    //
+
+    @Override
+    public void startTask(TrcRobot.RunMode runMode)
+    {
+    }   //startTask
+
+    @Override
+    public void stopTask(TrcRobot.RunMode runMode)
+    {
+    }   //stopTask
+
+    @Override
+    public void prePeriodicTask(TrcRobot.RunMode runMode)
+    {
+    }   //prePeriodicTask
+
+    @Override
+    public void postPeriodicTask(TrcRobot.RunMode runMode)
+    {
+    }   //postPeriodicTask
+
+    /**
+     * This method is called periodically to take a calibration sample when it is time.
+     *
+     * @param runMode specifies the competition mode that is running.
+     */
+    @Override
+    public void preContinuousTask(TrcRobot.RunMode runMode)
+    {
+        final String funcName = "preContinuousTask";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.TASK, "mode=%s", runMode.toString());
+        }
+
+        double currTime = TrcUtil.getCurrentTime();
+        if (calibrating && currTime >= nextSampleTime)
+        {
+            takeSample();
+            nextSampleTime = currTime + calInterval;
+
+            if (sampleCount >= numCalSamples)
+            {
+                finishCalibration();
+                cancelCalibration();
+            }
+        }
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.TASK, "progress=%.2f", getProgress());
+        }
+    }   //preContinuousTask
+
+    @Override
+    public void postContinuousTask(TrcRobot.RunMode runMode)
+    {
+    }   //postContinuousTask
+
 }   //class TrcSensorCalibrator
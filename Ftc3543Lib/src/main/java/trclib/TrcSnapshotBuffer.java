@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2017 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package trclib;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class implements a lock-free snapshot of a fixed number of double values that is published by a single
+ * writer thread and read by any number of reader threads. It uses a sequence counter (seqlock): the writer makes the
+ * sequence odd before updating the values and even again after, and a reader retries if the sequence was odd or
+ * changed while it was reading. Neither side ever blocks or allocates. The values are stored as raw long bits in an
+ * AtomicLongArray so every access is volatile and can't be reordered around the sequence counter.
+ */
+public class TrcSnapshotBuffer
+{
+    private final AtomicLongArray values;
+    private final AtomicInteger sequence = new AtomicInteger(0);
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param size specifies the number of values in the snapshot.
+     */
+    public TrcSnapshotBuffer(int size)
+    {
+        values = new AtomicLongArray(size);
+    }   //TrcSnapshotBuffer
+
+    /**
+     * This method is called by the writer thread before it updates the snapshot values.
+     */
+    public void beginWrite()
+    {
+        sequence.incrementAndGet();
+    }   //beginWrite
+
+    /**
+     * This method is called by the writer thread between beginWrite and endWrite to update a snapshot value.
+     *
+     * @param index specifies the value index.
+     * @param value specifies the value.
+     */
+    public void set(int index, double value)
+    {
+        values.set(index, Double.doubleToRawLongBits(value));
+    }   //set
+
+    /**
+     * This method is called by the writer thread after it updates the snapshot values to publish them.
+     */
+    public void endWrite()
+    {
+        sequence.incrementAndGet();
+    }   //endWrite
+
+    /**
+     * This method is called by a reader thread before it reads the snapshot values. It spins while a write is in
+     * progress, which is never longer than the writer takes to copy the values.
+     *
+     * @return the sequence number to pass to endRead, 0 if nothing has been published yet.
+     */
+    public int beginRead()
+    {
+        int seq;
+
+        while (((seq = sequence.get()) & 1) != 0)
+        {
+            Thread.yield();
+        }
+
+        return seq;
+    }   //beginRead
+
+    /**
+     * This method is called by a reader thread between beginRead and endRead to read a snapshot value.
+     *
+     * @param index specifies the value index.
+     * @return the value.
+     */
+    public double get(int index)
+    {
+        return Double.longBitsToDouble(values.get(index));
+    }   //get
+
+    /**
+     * This method is called by a reader thread after it reads the snapshot values. If it returns false, the values
+     * read may be torn and the reader must start over with beginRead.
+     *
+     * @param seq specifies the sequence number returned by beginRead.
+     * @return true if the values read are consistent, false otherwise.
+     */
+    public boolean endRead(int seq)
+    {
+        return sequence.get() == seq;
+    }   //endRead
+
+}   //class TrcSnapshotBuffer
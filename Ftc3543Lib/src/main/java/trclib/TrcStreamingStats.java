@@ -0,0 +1,422 @@
+/*
+ * Copyright (c) 2017 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package trclib;
+
+/**
+ * This class keeps streaming statistics of a sequence of samples such as battery voltage or task execution time.
+ * It provides an exponentially weighted moving average (EWMA), lifetime min/max, and the mean, variance and
+ * percentiles over a sliding window. To avoid storing raw samples, the window is divided into a fixed number of
+ * blocks. Each block keeps its sample count, mean, sum of squared deviations and a fixed-size histogram, so memory
+ * is constant regardless of the window length and adding a sample never allocates. The window slides one block at
+ * a time, so windowed statistics cover between (numBlocks - 1) and numBlocks blocks worth of samples. Percentiles
+ * are interpolated within histogram bins, so their resolution is (maxValue - minValue)/numBins.
+ */
+public class TrcStreamingStats
+{
+    private static final String moduleName = "TrcStreamingStats";
+    private static final boolean debugEnabled = false;
+    private static final boolean tracingEnabled = false;
+    private static final TrcDbgTrace.TraceLevel traceLevel = TrcDbgTrace.TraceLevel.API;
+    private static final TrcDbgTrace.MsgLevel msgLevel = TrcDbgTrace.MsgLevel.INFO;
+    private TrcDbgTrace dbgTrace = null;
+
+    private final String instanceName;
+    private final double ewmaAlpha;
+    private final int numBlocks;
+    private final int blockSize;
+    private final double minValue;
+    private final double maxValue;
+    private final int numBins;
+    private final double binWidth;
+    //
+    // Per block statistics. blockHistograms is a numBlocks x numBins row-major array.
+    //
+    private final int[] blockCounts;
+    private final double[] blockMeans;
+    private final double[] blockM2s;
+    private final int[] blockHistograms;
+    private final int[] windowHistogram;
+    private int currBlock = 0;
+    private long totalCount = 0;
+    private double lastValue = 0.0;
+    private double ewma = 0.0;
+    private double lifetimeMin = 0.0;
+    private double lifetimeMax = 0.0;
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param instanceName specifies the instance name.
+     * @param ewmaAlpha specifies the EWMA smoothing factor between 0.0 and 1.0, larger values weigh recent samples
+     *                  more.
+     * @param numBlocks specifies the number of blocks in the sliding window, must be at least 2.
+     * @param blockSize specifies the number of samples per block.
+     * @param minValue specifies the low end of the histogram range, samples below are counted in the first bin.
+     * @param maxValue specifies the high end of the histogram range, samples above are counted in the last bin.
+     * @param numBins specifies the number of histogram bins, 0 to disable percentiles.
+     */
+    public TrcStreamingStats(
+            final String instanceName, double ewmaAlpha, int numBlocks, int blockSize, double minValue,
+            double maxValue, int numBins)
+    {
+        if (debugEnabled)
+        {
+            dbgTrace = new TrcDbgTrace(moduleName + "." + instanceName, tracingEnabled, traceLevel, msgLevel);
+        }
+
+        if (ewmaAlpha <= 0.0 || ewmaAlpha > 1.0)
+        {
+            throw new IllegalArgumentException("ewmaAlpha must be within (0.0, 1.0].");
+        }
+
+        if (numBlocks < 2 || blockSize < 1)
+        {
+            throw new IllegalArgumentException("Window must have at least 2 blocks of at least 1 sample.");
+        }
+
+        if (numBins < 0 || numBins > 0 && maxValue <= minValue)
+        {
+            throw new IllegalArgumentException("Invalid histogram range.");
+        }
+
+        this.instanceName = instanceName;
+        this.ewmaAlpha = ewmaAlpha;
+        this.numBlocks = numBlocks;
+        this.blockSize = blockSize;
+        this.minValue = minValue;
+        this.maxValue = maxValue;
+        this.numBins = numBins;
+        binWidth = numBins > 0? (maxValue - minValue)/numBins: 0.0;
+        blockCounts = new int[numBlocks];
+        blockMeans = new double[numBlocks];
+        blockM2s = new double[numBlocks];
+        blockHistograms = new int[numBlocks*numBins];
+        windowHistogram = new int[numBins];
+    }   //TrcStreamingStats
+
+    /**
+     * Constructor: Create an instance of the object without percentile support.
+     *
+     * @param instanceName specifies the instance name.
+     * @param ewmaAlpha specifies the EWMA smoothing factor between 0.0 and 1.0.
+     * @param numBlocks specifies the number of blocks in the sliding window, must be at least 2.
+     * @param blockSize specifies the number of samples per block.
+     */
+    public TrcStreamingStats(final String instanceName, double ewmaAlpha, int numBlocks, int blockSize)
+    {
+        this(instanceName, ewmaAlpha, numBlocks, blockSize, 0.0, 0.0, 0);
+    }   //TrcStreamingStats
+
+    /**
+     * This method returns the instance name.
+     *
+     * @return instance name.
+     */
+    public String toString()
+    {
+        return instanceName;
+    }   //toString
+
+    /**
+     * This method clears all statistics.
+     */
+    public synchronized void reset()
+    {
+        final String funcName = "reset";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        for (int i = 0; i < numBlocks; i++)
+        {
+            clearBlock(i);
+        }
+        currBlock = 0;
+        totalCount = 0;
+        lastValue = ewma = lifetimeMin = lifetimeMax = 0.0;
+    }   //reset
+
+    /**
+     * This method adds a sample to the statistics.
+     *
+     * @param value specifies the sample value.
+     */
+    public synchronized void addSample(double value)
+    {
+        final String funcName = "addSample";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.FUNC, "value=%f", value);
+        }
+
+        if (totalCount == 0)
+        {
+            ewma = lifetimeMin = lifetimeMax = value;
+        }
+        else
+        {
+            ewma += ewmaAlpha*(value - ewma);
+            if (value < lifetimeMin)
+            {
+                lifetimeMin = value;
+            }
+            else if (value > lifetimeMax)
+            {
+                lifetimeMax = value;
+            }
+        }
+        totalCount++;
+        lastValue = value;
+
+        if (blockCounts[currBlock] == blockSize)
+        {
+            //
+            // Current block is full, slide the window by recycling the oldest block.
+            //
+            currBlock = (currBlock + 1)%numBlocks;
+            clearBlock(currBlock);
+        }
+        //
+        // Welford's update of the block mean and sum of squared deviations.
+        //
+        int count = ++blockCounts[currBlock];
+        double delta = value - blockMeans[currBlock];
+        blockMeans[currBlock] += delta/count;
+        blockM2s[currBlock] += delta*(value - blockMeans[currBlock]);
+
+        if (numBins > 0)
+        {
+            int bin = (int)((value - minValue)/binWidth);
+            blockHistograms[currBlock*numBins + TrcUtil.clipRange(bin, 0, numBins - 1)]++;
+        }
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.FUNC);
+        }
+    }   //addSample
+
+    /**
+     * This method returns the total number of samples added since the last reset.
+     *
+     * @return total sample count.
+     */
+    public synchronized long getCount()
+    {
+        return totalCount;
+    }   //getCount
+
+    /**
+     * This method returns the most recent sample.
+     *
+     * @return last sample value.
+     */
+    public synchronized double getLastValue()
+    {
+        return lastValue;
+    }   //getLastValue
+
+    /**
+     * This method returns the exponentially weighted moving average.
+     *
+     * @return EWMA of the samples.
+     */
+    public synchronized double getEwma()
+    {
+        return ewma;
+    }   //getEwma
+
+    /**
+     * This method returns the smallest sample seen since the last reset.
+     *
+     * @return lifetime minimum.
+     */
+    public synchronized double getMin()
+    {
+        return lifetimeMin;
+    }   //getMin
+
+    /**
+     * This method returns the largest sample seen since the last reset.
+     *
+     * @return lifetime maximum.
+     */
+    public synchronized double getMax()
+    {
+        return lifetimeMax;
+    }   //getMax
+
+    /**
+     * This method returns the number of samples in the sliding window.
+     *
+     * @return window sample count.
+     */
+    public synchronized int getWindowCount()
+    {
+        int count = 0;
+
+        for (int i = 0; i < numBlocks; i++)
+        {
+            count += blockCounts[i];
+        }
+
+        return count;
+    }   //getWindowCount
+
+    /**
+     * This method returns the mean of the samples in the sliding window.
+     *
+     * @return window mean, 0.0 if there is no sample.
+     */
+    public synchronized double getWindowMean()
+    {
+        int count = 0;
+        double sum = 0.0;
+
+        for (int i = 0; i < numBlocks; i++)
+        {
+            count += blockCounts[i];
+            sum += blockCounts[i]*blockMeans[i];
+        }
+
+        return count > 0? sum/count: 0.0;
+    }   //getWindowMean
+
+    /**
+     * This method returns the sample variance of the samples in the sliding window. The blocks are merged with
+     * Chan's parallel algorithm so the result is as accurate as computing it over the raw samples.
+     *
+     * @return window variance, 0.0 if there are fewer than 2 samples.
+     */
+    public synchronized double getWindowVariance()
+    {
+        int count = 0;
+        double mean = 0.0;
+        double m2 = 0.0;
+
+        for (int i = 0; i < numBlocks; i++)
+        {
+            int n = blockCounts[i];
+            if (n > 0)
+            {
+                int total = count + n;
+                double delta = blockMeans[i] - mean;
+
+                mean += delta*n/total;
+                m2 += blockM2s[i] + delta*delta*count*n/total;
+                count = total;
+            }
+        }
+
+        return count > 1? m2/(count - 1): 0.0;
+    }   //getWindowVariance
+
+    /**
+     * This method returns the standard deviation of the samples in the sliding window.
+     *
+     * @return window standard deviation.
+     */
+    public double getWindowStdDev()
+    {
+        return Math.sqrt(getWindowVariance());
+    }   //getWindowStdDev
+
+    /**
+     * This method returns the approximate percentile of the samples in the sliding window.
+     *
+     * @param fraction specifies the percentile as a fraction between 0.0 and 1.0 (e.g. 0.95 for the 95th).
+     * @return approximate percentile value, 0.0 if there is no sample.
+     * @throws UnsupportedOperationException if the object was created without histogram bins.
+     */
+    public synchronized double getPercentile(double fraction)
+    {
+        final String funcName = "getPercentile";
+        double value = 0.0;
+
+        if (numBins == 0)
+        {
+            throw new UnsupportedOperationException("Percentile is not enabled.");
+        }
+
+        int count = 0;
+        for (int bin = 0; bin < numBins; bin++)
+        {
+            windowHistogram[bin] = 0;
+            for (int i = 0; i < numBlocks; i++)
+            {
+                windowHistogram[bin] += blockHistograms[i*numBins + bin];
+            }
+            count += windowHistogram[bin];
+        }
+
+        if (count > 0)
+        {
+            double rank = TrcUtil.clipRange(fraction, 0.0, 1.0)*count;
+            int cumulative = 0;
+
+            for (int bin = 0; bin < numBins; bin++)
+            {
+                int binCount = windowHistogram[bin];
+                if (binCount > 0 && cumulative + binCount >= rank)
+                {
+                    //
+                    // Interpolate linearly within the bin assuming the samples are evenly spread across it.
+                    //
+                    value = minValue + (bin + (rank - cumulative)/binCount)*binWidth;
+                    break;
+                }
+                cumulative += binCount;
+            }
+        }
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "fraction=%.3f", fraction);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API, "=%f", value);
+        }
+
+        return value;
+    }   //getPercentile
+
+    /**
+     * This method clears the statistics of the specified block.
+     *
+     * @param block specifies the block index.
+     */
+    private void clearBlock(int block)
+    {
+        blockCounts[block] = 0;
+        blockMeans[block] = 0.0;
+        blockM2s[block] = 0.0;
+        for (int bin = 0; bin < numBins; bin++)
+        {
+            blockHistograms[block*numBins + bin] = 0;
+        }
+    }   //clearBlock
+
+}   //class TrcStreamingStats
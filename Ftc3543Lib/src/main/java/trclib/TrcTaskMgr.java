@@ -156,6 +156,8 @@ public class TrcTaskMgr
         private int preContinuousTaskTimeSlotCount;
         private long postContinuousTaskTotalNanoTime;
         private int postContinuousTaskTimeSlotCount;
+        private TrcStreamingStats[] timingStats;
+        private boolean initTask;
 
         /**
          * Constructor: Creates an instgance of the task object with the given name
@@ -177,6 +179,8 @@ public class TrcTaskMgr
             preContinuousTaskTimeSlotCount = 0;
             postContinuousTaskTotalNanoTime = 0;
             postContinuousTaskTimeSlotCount = 0;
+            timingStats = new TrcStreamingStats[TaskType.values().length];
+            initTask = false;
         }   //TaskObject
 
         /**
@@ -253,6 +257,22 @@ public class TrcTaskMgr
             return task;
         }   //getTask
 
+        /**
+         * This method records the execution time of the given task type to its attached statistics if any.
+         *
+         * @param type specifies the task type.
+         * @param elapsedNanoTime specifies the execution time in nanoseconds.
+         */
+        public void recordTiming(TaskType type, long elapsedNanoTime)
+        {
+            TrcStreamingStats stats = timingStats[type.ordinal()];
+
+            if (stats != null)
+            {
+                stats.addSample(elapsedNanoTime/1000000000.0);
+            }
+        }   //recordTiming
+
     }   //class TaskObject
 
     private static TrcTaskMgr instance = null;
@@ -315,6 +335,21 @@ public class TrcTaskMgr
         taskObj.addTaskType(type);
     }   //registerTask
 
+    /**
+     * This method registers a class object as a PreContinuous task that also runs while the robot is waiting for
+     * competition to start. Before start, only these tasks are run, in DISABLED_MODE, so that background work such
+     * as sensor calibration can make progress during init without running the rest of the robot. Unregistering the
+     * PreContinuous task type also removes it from init.
+     *
+     * @param taskName specifies the instance name of the task.
+     * @param task specifies the class object associated with the task.
+     */
+    public void registerInitTask(final String taskName, Task task)
+    {
+        registerTask(taskName, task, TaskType.PRECONTINUOUS_TASK);
+        findTask(task).initTask = true;
+    }   //registerInitTask
+
     /**
      * This method unregisters a task type from a task object associated with the given task class.
      *
@@ -339,6 +374,11 @@ public class TrcTaskMgr
         if (taskObj != null)
         {
             taskObj.removeTaskType(type);
+            if (type == TaskType.PRECONTINUOUS_TASK)
+            {
+                taskObj.initTask = false;
+            }
+
             if (taskObj.hasNoType())
             {
                 taskList.remove(taskObj);
@@ -351,6 +391,36 @@ public class TrcTaskMgr
         }
     }   //unregisterTask
 
+    /**
+     * This method attaches a streaming statistics object to a registered task to record the execution time of the
+     * given task type in seconds. This provides windowed mean, variance and percentiles of the task timing in
+     * addition to the averages printed by printTaskPerformanceMetrics.
+     *
+     * @param task specifies the class object associated with the task.
+     * @param type specifies the task type.
+     * @param stats specifies the statistics object, null to detach.
+     * @return true if the task is found, false otherwise.
+     */
+    public boolean setTaskTimingStatistics(Task task, TaskType type, TrcStreamingStats stats)
+    {
+        final String funcName = "setTaskTimingStatistics";
+        TaskObject taskObj = findTask(task);
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API,
+                                "task=%s,type=%s", taskObj != null ? taskObj.toString() : "unknown", type.toString());
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API, "=%s", Boolean.toString(taskObj != null));
+        }
+
+        if (taskObj != null)
+        {
+            taskObj.timingStats[type.ordinal()] = stats;
+        }
+
+        return taskObj != null;
+    }   //setTaskTimingStatistics
+
     /**
      * This method enumerates the task list and calls all the tasks that matches the given task type.
      *
@@ -361,6 +431,7 @@ public class TrcTaskMgr
     {
         final String funcName = "executeTaskType";
         long startNanoTime;
+        long elapsedNanoTime;
 
         for (int i = 0; i < taskList.size(); i++)
 //        for (TaskObject taskObj: taskList)
@@ -394,7 +465,9 @@ public class TrcTaskMgr
                         }
                         startNanoTime = TrcUtil.getCurrentTimeNanos();
                         task.prePeriodicTask(mode);
-                        taskObj.prePeriodicTaskTotalNanoTime += TrcUtil.getCurrentTimeNanos() - startNanoTime;
+                        elapsedNanoTime = TrcUtil.getCurrentTimeNanos() - startNanoTime;
+                        taskObj.prePeriodicTaskTotalNanoTime += elapsedNanoTime;
+                        taskObj.recordTiming(type, elapsedNanoTime);
                         taskObj.prePeriodicTaskTimeSlotCount++;
                         break;
 
@@ -405,7 +478,9 @@ public class TrcTaskMgr
                         }
                         startNanoTime = TrcUtil.getCurrentTimeNanos();
                         task.postPeriodicTask(mode);
-                        taskObj.postPeriodicTaskTotalNanoTime += TrcUtil.getCurrentTimeNanos() - startNanoTime;
+                        elapsedNanoTime = TrcUtil.getCurrentTimeNanos() - startNanoTime;
+                        taskObj.postPeriodicTaskTotalNanoTime += elapsedNanoTime;
+                        taskObj.recordTiming(type, elapsedNanoTime);
                         taskObj.postPeriodicTaskTimeSlotCount++;
                         break;
 
@@ -416,7 +491,9 @@ public class TrcTaskMgr
                         }
                         startNanoTime = TrcUtil.getCurrentTimeNanos();
                         task.preContinuousTask(mode);
-                        taskObj.preContinuousTaskTotalNanoTime += TrcUtil.getCurrentTimeNanos() - startNanoTime;
+                        elapsedNanoTime = TrcUtil.getCurrentTimeNanos() - startNanoTime;
+                        taskObj.preContinuousTaskTotalNanoTime += elapsedNanoTime;
+                        taskObj.recordTiming(type, elapsedNanoTime);
                         taskObj.preContinuousTaskTimeSlotCount++;
                         break;
 
@@ -427,7 +504,9 @@ public class TrcTaskMgr
                         }
                         startNanoTime = TrcUtil.getCurrentTimeNanos();
                         task.postContinuousTask(mode);
-                        taskObj.postContinuousTaskTotalNanoTime += TrcUtil.getCurrentTimeNanos() - startNanoTime;
+                        elapsedNanoTime = TrcUtil.getCurrentTimeNanos() - startNanoTime;
+                        taskObj.postContinuousTaskTotalNanoTime += elapsedNanoTime;
+                        taskObj.recordTiming(type, elapsedNanoTime);
                         taskObj.postContinuousTaskTimeSlotCount++;
                         break;
                 }
@@ -435,6 +514,35 @@ public class TrcTaskMgr
         }
     }   //executeTaskType
 
+    /**
+     * This method enumerates the task list and calls the PreContinuous task of all tasks registered with
+     * registerInitTask in DISABLED_MODE. It is called while the robot is waiting for competition to start.
+     */
+    public void executeInitTasks()
+    {
+        final String funcName = "executeInitTasks";
+        long startNanoTime;
+        long elapsedNanoTime;
+
+        for (int i = 0; i < taskList.size(); i++)
+        {
+            TaskObject taskObj = taskList.get(i);
+            if (taskObj.initTask && taskObj.hasType(TaskType.PRECONTINUOUS_TASK))
+            {
+                if (debugEnabled)
+                {
+                    dbgTrace.traceInfo(funcName, "Executing InitTask %s", taskObj.toString());
+                }
+                startNanoTime = TrcUtil.getCurrentTimeNanos();
+                taskObj.getTask().preContinuousTask(TrcRobot.RunMode.DISABLED_MODE);
+                elapsedNanoTime = TrcUtil.getCurrentTimeNanos() - startNanoTime;
+                taskObj.preContinuousTaskTotalNanoTime += elapsedNanoTime;
+                taskObj.recordTiming(TaskType.PRECONTINUOUS_TASK, elapsedNanoTime);
+                taskObj.preContinuousTaskTimeSlotCount++;
+            }
+        }
+    }   //executeInitTasks
+
     /**
      * This method prints the performance metrics of all tasks with the given tracer.
      *
@@ -50,6 +50,7 @@ public class TrcThread<T> implements Runnable
      */
     private class TaskState
     {
+        private volatile boolean taskTerminated;
         private volatile boolean taskEnabled;
         private volatile boolean oneShotEnabled;
         private T data;
@@ -59,6 +60,7 @@ public class TrcThread<T> implements Runnable
          */
         public TaskState()
         {
+            taskTerminated = false;
             taskEnabled = false;
             oneShotEnabled = false;
             data = null;
@@ -75,10 +77,22 @@ public class TrcThread<T> implements Runnable
         }   //isTaskTerminated
 
         /**
-         * This method is called to terminate the periodic task.
+         * This method checks if the periodic task has been asked to terminate.
+         *
+         * @return true if task termination is requested, false otherwise.
+         */
+        public boolean isTerminateRequested()
+        {
+            return taskTerminated;
+        }   //isTerminateRequested
+
+        /**
+         * This method is called to terminate the periodic task. The interrupt alone is not enough because
+         * TrcUtil.sleep swallows it if the thread is sleeping between runs, so the request is also flagged.
          */
         public synchronized void terminateTask()
         {
+            taskTerminated = true;
             periodicThread.interrupt();
         }   //terminateTask
 
@@ -324,7 +338,7 @@ public class TrcThread<T> implements Runnable
             dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.CALLBK);
         }
 
-        while (!Thread.interrupted() && !taskState.isTaskTerminated())
+        while (!Thread.interrupted() && !taskState.isTerminateRequested())
         {
             long startTime = TrcUtil.getCurrentTimeMillis();
 
@@ -0,0 +1,397 @@
+/*
+ * Copyright (c) 2017 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package trclib;
+
+/**
+ * This class implements a traction monitor for a drive base. Every loop, the drive base gives it the commanded and
+ * measured wheel speeds, the turn rate seen by the wheels and by the gyro, and the robot speed. It detects these
+ * conditions:
+ * - SLIP: a wheel turns much faster relative to its command than the other wheels (i.e. it spins on the tiles).
+ * - STALL: a wheel is powered but is not turning for longer than the stall time.
+ * - TURN_SLIP: the turn rate from the wheels disagrees with the gyro (i.e. the robot is skidding or being pushed).
+ * - COLLISION: the robot decelerates sharply while the command is not reduced.
+ * The handler is called once when a condition starts and once when it ends instead of being polled. The drive base
+ * odometry uses the traction weight of each wheel to down-weight slipping wheels.
+ */
+public class TrcTractionMonitor
+{
+    private static final String moduleName = "TrcTractionMonitor";
+    private static final boolean debugEnabled = false;
+    private static final boolean tracingEnabled = false;
+    private static final TrcDbgTrace.TraceLevel traceLevel = TrcDbgTrace.TraceLevel.API;
+    private static final TrcDbgTrace.MsgLevel msgLevel = TrcDbgTrace.MsgLevel.INFO;
+    private TrcDbgTrace dbgTrace = null;
+
+    public enum Condition
+    {
+        SLIP,
+        STALL,
+        TURN_SLIP,
+        COLLISION
+    }   //enum Condition
+
+    /**
+     * This interface contains the method for the traction event handler.
+     */
+    public interface TractionHandler
+    {
+        /**
+         * This method is called when a traction condition starts or ends.
+         *
+         * @param monitor specifies this TrcTractionMonitor instance as the source of the event.
+         * @param wheel specifies the wheel for SLIP and STALL, null for the robot conditions.
+         * @param condition specifies the condition.
+         * @param active specifies true if the condition started, false if it ended.
+         */
+        void tractionEvent(
+                TrcTractionMonitor monitor, TrcDriveBase.MotorType wheel, Condition condition, boolean active);
+
+    }   //interface TractionHandler
+
+    static final int NUM_WHEELS = 4;
+    private static final TrcDriveBase.MotorType[] wheelTypes = TrcDriveBase.MotorType.values();
+
+    private static final double DEF_MIN_COMMANDED_SPEED_FRACTION = 0.1;
+    private static final double DEF_SLIP_RATIO = 1.5;
+    private static final double DEF_STALL_POWER = 0.2;
+    private static final double DEF_STALL_SPEED_FRACTION = 0.02;
+    private static final double DEF_STALL_TIME = 0.5;
+    private static final double DEF_TURN_SLIP_TOLERANCE = 30.0;
+    private static final double DEF_COLLISION_HOLD_TIME = 0.25;
+
+    private final String instanceName;
+    private final double maxWheelSpeed;
+    private final TractionHandler eventHandler;
+    private double minCommandedSpeed;
+    private double slipRatio = DEF_SLIP_RATIO;
+    private double slipWeight = 0.0;
+    private double stallPower = DEF_STALL_POWER;
+    private double stallSpeed;
+    private double stallTime = DEF_STALL_TIME;
+    private double turnSlipTolerance = DEF_TURN_SLIP_TOLERANCE;
+    private double collisionDecel = 0.0;
+    private double collisionHoldTime = DEF_COLLISION_HOLD_TIME;
+
+    private final double[] speedRatios = new double[NUM_WHEELS];
+    private final boolean[] ratioValid = new boolean[NUM_WHEELS];
+    private final boolean[] slipping = new boolean[NUM_WHEELS];
+    private final boolean[] stalled = new boolean[NUM_WHEELS];
+    private final double[] stallStartTimes = new double[NUM_WHEELS];
+    private boolean turnSlipping = false;
+    private boolean colliding = false;
+    private double collisionTime = 0.0;
+    private double prevTime = 0.0;
+    private double prevRobotSpeed = 0.0;
+    private double prevCommandedSpeed = 0.0;
+    private boolean prevAnySlip = false;
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param instanceName specifies the instance name.
+     * @param maxWheelSpeed specifies the wheel speed at full power in the units of the motor getSpeed.
+     * @param eventHandler specifies the object to be called when a condition starts or ends, can be null.
+     */
+    public TrcTractionMonitor(final String instanceName, double maxWheelSpeed, TractionHandler eventHandler)
+    {
+        if (debugEnabled)
+        {
+            dbgTrace = new TrcDbgTrace(moduleName + "." + instanceName, tracingEnabled, traceLevel, msgLevel);
+        }
+
+        if (maxWheelSpeed <= 0.0)
+        {
+            throw new IllegalArgumentException("maxWheelSpeed must be positive.");
+        }
+
+        this.instanceName = instanceName;
+        this.maxWheelSpeed = maxWheelSpeed;
+        this.eventHandler = eventHandler;
+        this.minCommandedSpeed = DEF_MIN_COMMANDED_SPEED_FRACTION*maxWheelSpeed;
+        this.stallSpeed = DEF_STALL_SPEED_FRACTION*maxWheelSpeed;
+    }   //TrcTractionMonitor
+
+    /**
+     * This method returns the instance name.
+     *
+     * @return instance name.
+     */
+    public String toString()
+    {
+        return instanceName;
+    }   //toString
+
+    /**
+     * This method returns the wheel speed at full power.
+     *
+     * @return maximum wheel speed.
+     */
+    public double getMaxWheelSpeed()
+    {
+        return maxWheelSpeed;
+    }   //getMaxWheelSpeed
+
+    /**
+     * This method sets the slip detection parameters. A wheel is slipping if its measured/commanded speed ratio is
+     * more than slipRatio times the ratio of the other wheels.
+     *
+     * @param slipRatio specifies the speed ratio threshold, greater than 1.0.
+     * @param minCommandedSpeed specifies the minimum commanded wheel speed for the ratio to be meaningful.
+     * @param slipWeight specifies the odometry weight of a slipping wheel, 0.0 to ignore it entirely.
+     */
+    public void setSlipParams(double slipRatio, double minCommandedSpeed, double slipWeight)
+    {
+        this.slipRatio = slipRatio;
+        this.minCommandedSpeed = Math.abs(minCommandedSpeed);
+        this.slipWeight = TrcUtil.clipRange(slipWeight, 0.0, 1.0);
+    }   //setSlipParams
+
+    /**
+     * This method sets the stall detection parameters.
+     *
+     * @param stallPower specifies the minimum wheel power magnitude for a stall.
+     * @param stallSpeed specifies the wheel speed below which the wheel is considered not turning.
+     * @param stallTime specifies how long the wheel must not turn to be considered stalled.
+     */
+    public void setStallParams(double stallPower, double stallSpeed, double stallTime)
+    {
+        this.stallPower = Math.abs(stallPower);
+        this.stallSpeed = Math.abs(stallSpeed);
+        this.stallTime = Math.abs(stallTime);
+    }   //setStallParams
+
+    /**
+     * This method sets the turn slip tolerance.
+     *
+     * @param tolerance specifies the maximum difference between the wheel and gyro turn rates in degrees/second.
+     */
+    public void setTurnSlipTolerance(double tolerance)
+    {
+        this.turnSlipTolerance = Math.abs(tolerance);
+    }   //setTurnSlipTolerance
+
+    /**
+     * This method sets the collision detection parameters. Collision detection is disabled until this is called.
+     *
+     * @param decel specifies the robot deceleration in position units/second^2 that indicates a collision.
+     * @param holdTime specifies how long the collision condition stays active after it is detected.
+     */
+    public void setCollisionParams(double decel, double holdTime)
+    {
+        this.collisionDecel = Math.abs(decel);
+        this.collisionHoldTime = Math.abs(holdTime);
+    }   //setCollisionParams
+
+    /**
+     * This method checks if a wheel is slipping.
+     *
+     * @param wheel specifies the wheel.
+     * @return true if the wheel is slipping, false otherwise.
+     */
+    public boolean isSlipping(TrcDriveBase.MotorType wheel)
+    {
+        return wheel.value < NUM_WHEELS && slipping[wheel.value];
+    }   //isSlipping
+
+    /**
+     * This method checks if a wheel is stalled.
+     *
+     * @param wheel specifies the wheel.
+     * @return true if the wheel is stalled, false otherwise.
+     */
+    public boolean isStalled(TrcDriveBase.MotorType wheel)
+    {
+        return wheel.value < NUM_WHEELS && stalled[wheel.value];
+    }   //isStalled
+
+    /**
+     * This method checks if the robot turn rate from the wheels disagrees with the gyro.
+     *
+     * @return true if the robot is skidding, false otherwise.
+     */
+    public boolean isTurnSlipping()
+    {
+        return turnSlipping;
+    }   //isTurnSlipping
+
+    /**
+     * This method checks if a collision was detected within the collision hold time.
+     *
+     * @return true if colliding, false otherwise.
+     */
+    public boolean isColliding()
+    {
+        return colliding;
+    }   //isColliding
+
+    /**
+     * This method returns the odometry weight of a wheel: 1.0 normally and the slip weight while it is slipping.
+     *
+     * @param index specifies the wheel index (i.e. TrcDriveBase.MotorType value).
+     * @return odometry weight of the wheel.
+     */
+    double getTractionWeight(int index)
+    {
+        return slipping[index]? slipWeight: 1.0;
+    }   //getTractionWeight
+
+    /**
+     * This method clears all conditions, ending the active ones.
+     */
+    public void reset()
+    {
+        for (int i = 0; i < NUM_WHEELS; i++)
+        {
+            slipping[i] = setCondition(i, Condition.SLIP, slipping[i], false);
+            stalled[i] = setCondition(i, Condition.STALL, stalled[i], false);
+            stallStartTimes[i] = 0.0;
+        }
+        turnSlipping = setCondition(-1, Condition.TURN_SLIP, turnSlipping, false);
+        colliding = setCondition(-1, Condition.COLLISION, colliding, false);
+        prevTime = 0.0;
+    }   //reset
+
+    /**
+     * This method is called by the drive base every loop to update the conditions.
+     *
+     * @param currTime specifies the current time.
+     * @param powers specifies the wheel powers, indexed by TrcDriveBase.MotorType value, 0.0 for absent wheels.
+     * @param commandedSpeeds specifies the commanded wheel speeds.
+     * @param measuredSpeeds specifies the measured wheel speeds.
+     * @param wheelTurnRate specifies the robot turn rate from the wheels in degrees/second, clockwise positive.
+     * @param gyroTurnRate specifies the robot turn rate from the gyro in degrees/second, clockwise positive, NaN if
+     *                     there is no gyro rate.
+     * @param robotSpeed specifies the robot speed from the wheels.
+     */
+    void update(double currTime, double[] powers, double[] commandedSpeeds, double[] measuredSpeeds,
+                double wheelTurnRate, double gyroTurnRate, double robotSpeed)
+    {
+        //
+        // Slip: compare each wheel's measured/commanded ratio with the lowest ratio of the other wheels. A spinning
+        // wheel has a much higher ratio than the wheels that have traction.
+        //
+        for (int i = 0; i < NUM_WHEELS; i++)
+        {
+            ratioValid[i] = Math.abs(commandedSpeeds[i]) >= minCommandedSpeed;
+            speedRatios[i] = ratioValid[i]? measuredSpeeds[i]/commandedSpeeds[i]: 0.0;
+        }
+
+        for (int i = 0; i < NUM_WHEELS; i++)
+        {
+            boolean slip = false;
+
+            if (ratioValid[i])
+            {
+                double refRatio = Double.POSITIVE_INFINITY;
+                for (int j = 0; j < NUM_WHEELS; j++)
+                {
+                    if (j != i && ratioValid[j] && speedRatios[j] < refRatio)
+                    {
+                        refRatio = speedRatios[j];
+                    }
+                }
+                slip = refRatio > 0.0 && refRatio != Double.POSITIVE_INFINITY && speedRatios[i] > slipRatio*refRatio;
+            }
+            slipping[i] = setCondition(i, Condition.SLIP, slipping[i], slip);
+            //
+            // Stall: the wheel is powered but not turning for longer than the stall time. The stall timer starts
+            // with the first update after construction or reset, so a move that just started is not a stall.
+            //
+            if (prevTime == 0.0 || Math.abs(powers[i]) < stallPower || Math.abs(measuredSpeeds[i]) > stallSpeed)
+            {
+                stallStartTimes[i] = currTime;
+            }
+            stalled[i] = setCondition(i, Condition.STALL, stalled[i], currTime - stallStartTimes[i] > stallTime);
+        }
+        //
+        // Turn slip: the wheels and the gyro disagree on the turn rate.
+        //
+        if (!Double.isNaN(gyroTurnRate))
+        {
+            turnSlipping = setCondition(
+                    -1, Condition.TURN_SLIP, turnSlipping, Math.abs(wheelTurnRate - gyroTurnRate) > turnSlipTolerance);
+        }
+        //
+        // Collision: the robot slows down sharply although the command did not go down. The robot speed from the
+        // wheels is not trusted while a wheel slips or has just stopped slipping.
+        //
+        double commandedSpeed = 0.0;
+        boolean anySlip = false;
+        for (int i = 0; i < NUM_WHEELS; i++)
+        {
+            commandedSpeed += Math.abs(commandedSpeeds[i]);
+            anySlip |= slipping[i];
+        }
+
+        if (collisionDecel > 0.0 && prevTime > 0.0 && currTime > prevTime)
+        {
+            double decel = (Math.abs(prevRobotSpeed) - Math.abs(robotSpeed))/(currTime - prevTime);
+
+            if (!anySlip && !prevAnySlip &&
+                decel > collisionDecel && commandedSpeed >= prevCommandedSpeed && commandedSpeed > 0.0)
+            {
+                collisionTime = currTime;
+            }
+            colliding = setCondition(
+                    -1, Condition.COLLISION, colliding,
+                    collisionTime > 0.0 && currTime - collisionTime <= collisionHoldTime);
+        }
+        prevTime = currTime;
+        prevRobotSpeed = robotSpeed;
+        prevCommandedSpeed = commandedSpeed;
+        prevAnySlip = anySlip;
+    }   //update
+
+    /**
+     * This method updates a condition and calls the event handler if it changed.
+     *
+     * @param index specifies the wheel index, -1 for the robot conditions.
+     * @param condition specifies the condition.
+     * @param prevState specifies the previous state of the condition.
+     * @param state specifies the new state of the condition.
+     * @return new state of the condition.
+     */
+    private boolean setCondition(int index, Condition condition, boolean prevState, boolean state)
+    {
+        final String funcName = "setCondition";
+
+        if (state != prevState)
+        {
+            TrcDriveBase.MotorType wheel = index >= 0? wheelTypes[index]: null;
+
+            if (debugEnabled)
+            {
+                dbgTrace.traceInfo(funcName, "%s %s %s %s",
+                                   instanceName, wheel, condition, state? "started": "ended");
+            }
+
+            if (eventHandler != null)
+            {
+                eventHandler.tractionEvent(this, wheel, condition, state);
+            }
+        }
+
+        return state;
+    }   //setCondition
+
+}   //class TrcTractionMonitor
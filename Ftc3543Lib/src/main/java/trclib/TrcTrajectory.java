@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2017 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package trclib;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * This class implements a precomputed trajectory. The trajectory is a list of field poses sampled at a fixed time
+ * period and stored in primitive arrays, so sampling it at any time is a constant time index plus an interpolation
+ * between two samples. Trajectories are generated ahead of time by TrcTrajectoryGenerator and loaded from a file,
+ * typically from the robot controller assets, so no trajectory math is done on the robot.
+ *
+ * The file is a big-endian binary stream: magic, version, source hash, sample period, sample count followed by the
+ * X, Y, heading, X velocity, Y velocity and turn rate arrays as floats.
+ */
+public class TrcTrajectory
+{
+    private static final int MAGIC = 0x54524a31;        // "TRJ1"
+    static final int VERSION = 1;
+
+    private final double samplePeriod;
+    private final long sourceHash;
+    final float[] xPositions;
+    final float[] yPositions;
+    final float[] headings;
+    final float[] xVelocities;
+    final float[] yVelocities;
+    final float[] turnRates;
+
+    /**
+     * Constructor: Create an instance of the object with empty samples. It is used by the generator and the loader.
+     *
+     * @param samplePeriod specifies the time between samples in seconds.
+     * @param numSamples specifies the number of samples.
+     * @param sourceHash specifies the hash of the waypoints and limits the trajectory was generated from.
+     */
+    TrcTrajectory(double samplePeriod, int numSamples, long sourceHash)
+    {
+        if (samplePeriod <= 0.0 || numSamples < 1)
+        {
+            throw new IllegalArgumentException("Trajectory must have a positive sample period and samples.");
+        }
+
+        this.samplePeriod = samplePeriod;
+        this.sourceHash = sourceHash;
+        xPositions = new float[numSamples];
+        yPositions = new float[numSamples];
+        headings = new float[numSamples];
+        xVelocities = new float[numSamples];
+        yVelocities = new float[numSamples];
+        turnRates = new float[numSamples];
+    }   //TrcTrajectory
+
+    /**
+     * This method loads a trajectory from a stream.
+     *
+     * @param inputStream specifies the stream to read the trajectory from.
+     * @return loaded trajectory.
+     * @throws IOException if the stream cannot be read or is not a trajectory of this version.
+     */
+    public static TrcTrajectory load(InputStream inputStream) throws IOException
+    {
+        DataInputStream in = new DataInputStream(inputStream);
+        long sourceHash = readHeader(in);
+        TrcTrajectory trajectory = new TrcTrajectory(in.readDouble(), in.readInt(), sourceHash);
+
+        readArray(in, trajectory.xPositions);
+        readArray(in, trajectory.yPositions);
+        readArray(in, trajectory.headings);
+        readArray(in, trajectory.xVelocities);
+        readArray(in, trajectory.yVelocities);
+        readArray(in, trajectory.turnRates);
+
+        return trajectory;
+    }   //load
+
+    /**
+     * This method reads the header of a trajectory stream and returns the source hash. It is used to check if a
+     * trajectory file is up-to-date without loading it.
+     *
+     * @param in specifies the stream positioned at the start of the trajectory.
+     * @return source hash of the trajectory.
+     * @throws IOException if the stream cannot be read or is not a trajectory of this version.
+     */
+    static long readHeader(DataInputStream in) throws IOException
+    {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION)
+        {
+            throw new IOException("Not a trajectory file of version " + VERSION + ".");
+        }
+
+        return in.readLong();
+    }   //readHeader
+
+    /**
+     * This method reads an array of floats.
+     *
+     * @param in specifies the stream to read from.
+     * @param array specifies the array to fill.
+     * @throws IOException if the stream cannot be read.
+     */
+    private static void readArray(DataInputStream in, float[] array) throws IOException
+    {
+        for (int i = 0; i < array.length; i++)
+        {
+            array[i] = in.readFloat();
+        }
+    }   //readArray
+
+    /**
+     * This method saves the trajectory to a stream.
+     *
+     * @param outputStream specifies the stream to write the trajectory to.
+     * @throws IOException if the stream cannot be written.
+     */
+    public void save(OutputStream outputStream) throws IOException
+    {
+        DataOutputStream out = new DataOutputStream(outputStream);
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(sourceHash);
+        out.writeDouble(samplePeriod);
+        out.writeInt(xPositions.length);
+        writeArray(out, xPositions);
+        writeArray(out, yPositions);
+        writeArray(out, headings);
+        writeArray(out, xVelocities);
+        writeArray(out, yVelocities);
+        writeArray(out, turnRates);
+        out.flush();
+    }   //save
+
+    /**
+     * This method writes an array of floats.
+     *
+     * @param out specifies the stream to write to.
+     * @param array specifies the array to write.
+     * @throws IOException if the stream cannot be written.
+     */
+    private static void writeArray(DataOutputStream out, float[] array) throws IOException
+    {
+        for (float value: array)
+        {
+            out.writeFloat(value);
+        }
+    }   //writeArray
+
+    /**
+     * This method returns the hash of the waypoints and limits the trajectory was generated from.
+     *
+     * @return source hash.
+     */
+    public long getSourceHash()
+    {
+        return sourceHash;
+    }   //getSourceHash
+
+    /**
+     * This method returns the number of samples.
+     *
+     * @return number of samples.
+     */
+    public int getNumSamples()
+    {
+        return xPositions.length;
+    }   //getNumSamples
+
+    /**
+     * This method returns the total time of the trajectory.
+     *
+     * @return total time in seconds.
+     */
+    public double getTotalTime()
+    {
+        return (xPositions.length - 1)*samplePeriod;
+    }   //getTotalTime
+
+    /**
+     * This method samples the trajectory at the given time. Times before the start or after the end of the
+     * trajectory are clipped to the first or last sample.
+     *
+     * @param time specifies the time since the start of the trajectory.
+     * @param pose specifies the pose object to fill in.
+     * @return the given pose object.
+     */
+    public TrcPose2D sample(double time, TrcPose2D pose)
+    {
+        int lastIndex = xPositions.length - 1;
+        double position = TrcUtil.clipRange(time/samplePeriod, 0.0, lastIndex);
+        int index = Math.min((int)position, Math.max(lastIndex - 1, 0));
+        int next = Math.min(index + 1, lastIndex);
+        double fraction = position - index;
+
+        pose.x = interpolate(xPositions, index, next, fraction);
+        pose.y = interpolate(yPositions, index, next, fraction);
+        pose.heading = interpolate(headings, index, next, fraction);
+        pose.xVel = interpolate(xVelocities, index, next, fraction);
+        pose.yVel = interpolate(yVelocities, index, next, fraction);
+        pose.turnRate = interpolate(turnRates, index, next, fraction);
+
+        return pose;
+    }   //sample
+
+    /**
+     * This method interpolates between two samples of an array.
+     *
+     * @param array specifies the array.
+     * @param index specifies the index of the first sample.
+     * @param next specifies the index of the second sample.
+     * @param fraction specifies the fraction between the samples.
+     * @return interpolated value.
+     */
+    private static double interpolate(float[] array, int index, int next, double fraction)
+    {
+        return array[index] + (array[next] - array[index])*fraction;
+    }   //interpolate
+
+}   //class TrcTrajectory
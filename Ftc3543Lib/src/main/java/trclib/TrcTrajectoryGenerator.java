@@ -0,0 +1,490 @@
+/*
+ * Copyright (c) 2017 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package trclib;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.zip.CRC32;
+
+/**
+ * This class implements a trajectory generator. It fits quintic Hermite splines through a list of waypoints and
+ * time-parameterizes the path under velocity, acceleration and centripetal acceleration limits. The result is a
+ * TrcTrajectory sampled at a fixed period. The robot heading is controlled independently of the path direction: it
+ * is interpolated between the waypoint headings by distance travelled.
+ *
+ * This class is pure Java so it can run at build time. Its main method converts every waypoint file in a directory
+ * to a trajectory file, skipping the ones whose source hash has not changed. A waypoint file is a text file with
+ * '#' comments, a limits line and one waypoint per line:
+ *
+ *     limits,maxVelocity,maxAcceleration,maxCentripetalAcceleration,samplePeriod
+ *     x,y,heading[,tangent]
+ *
+ * The optional tangent is the path direction in degrees at the waypoint (clockwise from the Y axis). If it is not
+ * given, it is estimated from the neighboring waypoints.
+ */
+public class TrcTrajectoryGenerator
+{
+    private static final String WAYPOINT_FILE_SUFFIX = ".csv";
+    private static final String TRAJECTORY_FILE_SUFFIX = ".traj";
+    private static final int SAMPLES_PER_SEGMENT = 200;
+
+    private final double maxVelocity;
+    private final double maxAcceleration;
+    private final double maxCentripetalAccel;
+    private final double samplePeriod;
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param maxVelocity specifies the maximum velocity.
+     * @param maxAcceleration specifies the maximum acceleration and deceleration along the path.
+     * @param maxCentripetalAccel specifies the maximum centripetal acceleration in turns.
+     * @param samplePeriod specifies the sample period of the generated trajectory in seconds.
+     */
+    public TrcTrajectoryGenerator(
+            double maxVelocity, double maxAcceleration, double maxCentripetalAccel, double samplePeriod)
+    {
+        if (maxVelocity <= 0.0 || maxAcceleration <= 0.0 || maxCentripetalAccel <= 0.0 || samplePeriod <= 0.0)
+        {
+            throw new IllegalArgumentException("Limits and sample period must be positive.");
+        }
+
+        this.maxVelocity = maxVelocity;
+        this.maxAcceleration = maxAcceleration;
+        this.maxCentripetalAccel = maxCentripetalAccel;
+        this.samplePeriod = samplePeriod;
+    }   //TrcTrajectoryGenerator
+
+    /**
+     * This method generates a trajectory through the given waypoints starting and ending at rest.
+     *
+     * @param waypoints specifies at least two waypoints, the heading of each is the robot heading at the waypoint.
+     * @param tangents specifies the path direction in degrees at each waypoint, NaN or null to estimate it.
+     * @param sourceHash specifies the hash to store with the trajectory for cache checking.
+     * @return generated trajectory.
+     */
+    public TrcTrajectory generate(TrcPose2D[] waypoints, double[] tangents, long sourceHash)
+    {
+        int numSegments = waypoints.length - 1;
+
+        if (numSegments < 1)
+        {
+            throw new IllegalArgumentException("Trajectory must have at least two waypoints.");
+        }
+        //
+        // Sample the splines densely.
+        //
+        int numPoints = numSegments*SAMPLES_PER_SEGMENT + 1;
+        double[] xs = new double[numPoints];
+        double[] ys = new double[numPoints];
+        double[] distances = new double[numPoints];
+        double[] headings = new double[numPoints];
+        double[] velocities = new double[numPoints];
+        double[] times = new double[numPoints];
+
+        for (int seg = 0; seg < numSegments; seg++)
+        {
+            TrcPose2D p0 = waypoints[seg];
+            TrcPose2D p1 = waypoints[seg + 1];
+            double length = Math.hypot(p1.x - p0.x, p1.y - p0.y);
+            double angle0 = Math.toRadians(getTangent(waypoints, tangents, seg));
+            double angle1 = Math.toRadians(getTangent(waypoints, tangents, seg + 1));
+            //
+            // First derivatives are scaled by the chord length, second derivatives are zero.
+            //
+            double vx0 = length*Math.sin(angle0), vy0 = length*Math.cos(angle0);
+            double vx1 = length*Math.sin(angle1), vy1 = length*Math.cos(angle1);
+            int first = seg == 0? 0: 1;
+
+            for (int i = first; i <= SAMPLES_PER_SEGMENT; i++)
+            {
+                double t = (double)i/SAMPLES_PER_SEGMENT;
+                double t3 = t*t*t, t4 = t3*t, t5 = t4*t;
+                double h0 = 1.0 - 10.0*t3 + 15.0*t4 - 6.0*t5;
+                double h1 = t - 6.0*t3 + 8.0*t4 - 3.0*t5;
+                double h4 = -4.0*t3 + 7.0*t4 - 3.0*t5;
+                double h5 = 10.0*t3 - 15.0*t4 + 6.0*t5;
+                int index = seg*SAMPLES_PER_SEGMENT + i;
+
+                xs[index] = h0*p0.x + h1*vx0 + h4*vx1 + h5*p1.x;
+                ys[index] = h0*p0.y + h1*vy0 + h4*vy1 + h5*p1.y;
+                distances[index] = index == 0? 0.0:
+                        distances[index - 1] + Math.hypot(xs[index] - xs[index - 1], ys[index] - ys[index - 1]);
+            }
+            //
+            // The robot heading goes from one waypoint heading to the next in proportion to the distance.
+            //
+            int start = seg*SAMPLES_PER_SEGMENT;
+            int end = start + SAMPLES_PER_SEGMENT;
+            double segLength = distances[end] - distances[start];
+            for (int i = start + first; i <= end; i++)
+            {
+                double fraction = segLength > 0.0? (distances[i] - distances[start])/segLength: 1.0;
+                headings[i] = p0.heading + fraction*(p1.heading - p0.heading);
+            }
+        }
+        //
+        // Velocity limits: max velocity and the centripetal limit from the curvature of three neighboring points.
+        //
+        for (int i = 0; i < numPoints; i++)
+        {
+            double limit = maxVelocity;
+
+            if (i > 0 && i < numPoints - 1)
+            {
+                double curvature = getCurvature(xs[i - 1], ys[i - 1], xs[i], ys[i], xs[i + 1], ys[i + 1]);
+
+                if (curvature > 0.0)
+                {
+                    limit = Math.min(limit, Math.sqrt(maxCentripetalAccel/curvature));
+                }
+            }
+            velocities[i] = limit;
+        }
+        //
+        // Forward pass limits acceleration from rest, backward pass limits deceleration to rest.
+        //
+        velocities[0] = 0.0;
+        for (int i = 1; i < numPoints; i++)
+        {
+            double ds = distances[i] - distances[i - 1];
+            velocities[i] = Math.min(
+                    velocities[i], Math.sqrt(velocities[i - 1]*velocities[i - 1] + 2.0*maxAcceleration*ds));
+        }
+        velocities[numPoints - 1] = 0.0;
+        for (int i = numPoints - 2; i >= 0; i--)
+        {
+            double ds = distances[i + 1] - distances[i];
+            velocities[i] = Math.min(
+                    velocities[i], Math.sqrt(velocities[i + 1]*velocities[i + 1] + 2.0*maxAcceleration*ds));
+        }
+        //
+        // Integrate the time with the average velocity of each interval.
+        //
+        times[0] = 0.0;
+        for (int i = 1; i < numPoints; i++)
+        {
+            double ds = distances[i] - distances[i - 1];
+            double avgVelocity = (velocities[i - 1] + velocities[i])/2.0;
+            times[i] = times[i - 1] + (avgVelocity > 0.0? ds/avgVelocity: 0.0);
+        }
+        //
+        // Resample at the fixed period.
+        //
+        double totalTime = times[numPoints - 1];
+        int numSamples = (int)Math.ceil(totalTime/samplePeriod) + 1;
+        TrcTrajectory trajectory = new TrcTrajectory(samplePeriod, numSamples, sourceHash);
+        int index = 0;
+
+        for (int k = 0; k < numSamples; k++)
+        {
+            double time = Math.min(k*samplePeriod, totalTime);
+
+            while (index < numPoints - 2 && times[index + 1] <= time)
+            {
+                index++;
+            }
+
+            double interval = times[index + 1] - times[index];
+            double fraction = interval > 0.0? (time - times[index])/interval: 0.0;
+            double dx = xs[index + 1] - xs[index];
+            double dy = ys[index + 1] - ys[index];
+            double ds = Math.hypot(dx, dy);
+            double velocity = velocities[index] + fraction*(velocities[index + 1] - velocities[index]);
+
+            trajectory.xPositions[k] = (float)(xs[index] + fraction*dx);
+            trajectory.yPositions[k] = (float)(ys[index] + fraction*dy);
+            trajectory.headings[k] = (float)(headings[index] + fraction*(headings[index + 1] - headings[index]));
+            trajectory.xVelocities[k] = (float)(ds > 0.0? velocity*dx/ds: 0.0);
+            trajectory.yVelocities[k] = (float)(ds > 0.0? velocity*dy/ds: 0.0);
+        }
+
+        for (int k = 0; k < numSamples; k++)
+        {
+            int prev = Math.max(k - 1, 0);
+            int next = Math.min(k + 1, numSamples - 1);
+            trajectory.turnRates[k] = next > prev?
+                    (float)((trajectory.headings[next] - trajectory.headings[prev])/((next - prev)*samplePeriod)): 0.0f;
+        }
+
+        return trajectory;
+    }   //generate
+
+    /**
+     * This method returns the path direction at a waypoint. If it is not given, it is estimated from the direction
+     * between the neighboring waypoints.
+     *
+     * @param waypoints specifies the waypoints.
+     * @param tangents specifies the given path directions, can be null.
+     * @param index specifies the waypoint index.
+     * @return path direction in degrees, clockwise from the Y axis.
+     */
+    private static double getTangent(TrcPose2D[] waypoints, double[] tangents, int index)
+    {
+        double tangent;
+
+        if (tangents != null && !Double.isNaN(tangents[index]))
+        {
+            tangent = tangents[index];
+        }
+        else
+        {
+            TrcPose2D prev = waypoints[Math.max(index - 1, 0)];
+            TrcPose2D next = waypoints[Math.min(index + 1, waypoints.length - 1)];
+            tangent = Math.toDegrees(Math.atan2(next.x - prev.x, next.y - prev.y));
+        }
+
+        return tangent;
+    }   //getTangent
+
+    /**
+     * This method returns the curvature of the circle through three points.
+     *
+     * @return curvature, zero if the points are collinear or coincide.
+     */
+    private static double getCurvature(double x0, double y0, double x1, double y1, double x2, double y2)
+    {
+        double a = Math.hypot(x1 - x0, y1 - y0);
+        double b = Math.hypot(x2 - x1, y2 - y1);
+        double c = Math.hypot(x2 - x0, y2 - y0);
+        double cross = Math.abs((x1 - x0)*(y2 - y0) - (y1 - y0)*(x2 - x0));
+
+        return a > 0.0 && b > 0.0 && c > 0.0? 2.0*cross/(a*b*c): 0.0;
+    }   //getCurvature
+
+    /**
+     * This method generates the trajectory file for a waypoint file unless the trajectory file was generated from
+     * the same waypoint file content by the same trajectory version.
+     *
+     * @param waypointFile specifies the waypoint file.
+     * @param trajectoryFile specifies the trajectory file.
+     * @return true if the trajectory was generated, false if it was up-to-date.
+     * @throws IOException if a file cannot be read or written, or the waypoint file has an error.
+     */
+    public static boolean generateFile(File waypointFile, File trajectoryFile) throws IOException
+    {
+        byte[] content = readFile(waypointFile);
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        crc.update(TrcTrajectory.VERSION);
+        long sourceHash = crc.getValue();
+
+        if (trajectoryFile.exists())
+        {
+            DataInputStream in = new DataInputStream(new FileInputStream(trajectoryFile));
+            try
+            {
+                if (TrcTrajectory.readHeader(in) == sourceHash)
+                {
+                    return false;
+                }
+            }
+            catch (IOException e)
+            {
+                //
+                // Not a valid trajectory of this version, regenerate it.
+                //
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+
+        double[] limits = null;
+        ArrayList<TrcPose2D> waypoints = new ArrayList<>();
+        ArrayList<Double> tangents = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new ByteArrayInputStream(content), "UTF-8"));
+        String line;
+        int lineNum = 0;
+
+        while ((line = reader.readLine()) != null)
+        {
+            lineNum++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#"))
+            {
+                continue;
+            }
+
+            String[] fields = line.split(",");
+            try
+            {
+                if (fields[0].trim().equals("limits"))
+                {
+                    limits = new double[4];
+                    for (int i = 0; i < limits.length; i++)
+                    {
+                        limits[i] = Double.parseDouble(fields[i + 1].trim());
+                    }
+                }
+                else
+                {
+                    waypoints.add(new TrcPose2D(Double.parseDouble(fields[0].trim()),
+                                                Double.parseDouble(fields[1].trim()),
+                                                Double.parseDouble(fields[2].trim())));
+                    tangents.add(fields.length > 3? Double.parseDouble(fields[3].trim()): Double.NaN);
+                }
+            }
+            catch (NumberFormatException | ArrayIndexOutOfBoundsException e)
+            {
+                throw new IOException(waypointFile + ":" + lineNum + ": invalid line \"" + line + "\"");
+            }
+        }
+
+        if (limits == null)
+        {
+            throw new IOException(waypointFile + ": missing limits line.");
+        }
+
+        double[] tangentArray = new double[tangents.size()];
+        for (int i = 0; i < tangentArray.length; i++)
+        {
+            tangentArray[i] = tangents.get(i);
+        }
+
+        TrcTrajectoryGenerator generator = new TrcTrajectoryGenerator(limits[0], limits[1], limits[2], limits[3]);
+        TrcTrajectory trajectory = generator.generate(
+                waypoints.toArray(new TrcPose2D[waypoints.size()]), tangentArray, sourceHash);
+        OutputStream out = new FileOutputStream(trajectoryFile);
+        try
+        {
+            trajectory.save(out);
+        }
+        finally
+        {
+            out.close();
+        }
+
+        return true;
+    }   //generateFile
+
+    /**
+     * This method reads the whole content of a file.
+     *
+     * @param file specifies the file to read.
+     * @return file content.
+     * @throws IOException if the file cannot be read.
+     */
+    private static byte[] readFile(File file) throws IOException
+    {
+        byte[] content = new byte[(int)file.length()];
+        InputStream in = new FileInputStream(file);
+        try
+        {
+            int offset = 0;
+            while (offset < content.length)
+            {
+                int count = in.read(content, offset, content.length - offset);
+                if (count < 0)
+                {
+                    throw new IOException(file + ": unexpected end of file.");
+                }
+                offset += count;
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+
+        return content;
+    }   //readFile
+
+    /**
+     * This method is the entry point of the build time tool. It generates a trajectory file in the output directory
+     * for every waypoint file in the waypoint directory, and deletes the trajectory files in the output directory
+     * that no longer have a waypoint file. The output directory is only created if there is a waypoint file.
+     *
+     * @param args specifies the waypoint directory and the output directory.
+     * @throws IOException if a file cannot be read or written, or a waypoint file has an error.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length != 2)
+        {
+            System.err.println("Usage: TrcTrajectoryGenerator <waypointDir> <outputDir>");
+            System.exit(1);
+        }
+
+        File[] waypointFiles = new File(args[0]).listFiles();
+        File outputDir = new File(args[1]);
+        HashSet<String> trajectoryNames = new HashSet<>();
+
+        if (waypointFiles != null)
+        {
+            for (File waypointFile: waypointFiles)
+            {
+                String name = waypointFile.getName();
+
+                if (name.endsWith(WAYPOINT_FILE_SUFFIX))
+                {
+                    String trajectoryName =
+                            name.substring(0, name.length() - WAYPOINT_FILE_SUFFIX.length()) + TRAJECTORY_FILE_SUFFIX;
+
+                    if (!outputDir.isDirectory() && !outputDir.mkdirs())
+                    {
+                        throw new IOException("Failed to create " + outputDir);
+                    }
+
+                    File trajectoryFile = new File(outputDir, trajectoryName);
+                    boolean generated = generateFile(waypointFile, trajectoryFile);
+                    System.out.println((generated? "Generated ": "Up-to-date ") + trajectoryFile);
+                    trajectoryNames.add(trajectoryName);
+                }
+            }
+        }
+        //
+        // Delete the trajectory files whose waypoint file is gone so that they don't ship with the robot code.
+        //
+        File[] outputFiles = outputDir.listFiles();
+        if (outputFiles != null)
+        {
+            for (File outputFile: outputFiles)
+            {
+                String name = outputFile.getName();
+
+                if (name.endsWith(TRAJECTORY_FILE_SUFFIX) && !trajectoryNames.contains(name))
+                {
+                    if (!outputFile.delete())
+                    {
+                        throw new IOException("Failed to delete " + outputFile);
+                    }
+                    System.out.println("Deleted " + outputFile);
+                }
+            }
+        }
+    }   //main
+
+}   //class TrcTrajectoryGenerator
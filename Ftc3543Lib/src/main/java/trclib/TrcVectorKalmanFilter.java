@@ -0,0 +1,398 @@
+/*
+ * Copyright (c) 2017 Titan Robotics Club (http://www.titanrobotics.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package trclib;
+
+/**
+ * This class implements a multi-state Kalman filter for small state vectors. Unlike TrcKalmanFilter which filters
+ * a single value, this class keeps a state vector and its covariance matrix so that measurements from different
+ * sensors can be fused into a single estimate. All matrices are stored as row-major double arrays that are
+ * allocated once in the constructor, so predict and update never allocate memory.
+ *
+ * Measurements are applied one scalar at a time (sequential update). This avoids matrix inversion and is exactly
+ * equivalent to a vector update when the measurement noises are independent. The filter can also be used as an
+ * Extended Kalman Filter: the caller propagates the state with its own non-linear model, fills the transition
+ * matrix with the Jacobian and calls predictCovariance().
+ */
+public class TrcVectorKalmanFilter
+{
+    private static final String moduleName = "TrcVectorKalmanFilter";
+    private static final boolean debugEnabled = false;
+    private static final boolean tracingEnabled = false;
+    private static final TrcDbgTrace.TraceLevel traceLevel = TrcDbgTrace.TraceLevel.API;
+    private static final TrcDbgTrace.MsgLevel msgLevel = TrcDbgTrace.MsgLevel.INFO;
+    private TrcDbgTrace dbgTrace = null;
+
+    private final String instanceName;
+    private final int numStates;
+    private final double[] x;           // state vector (n)
+    private final double[] p;           // state covariance (n x n)
+    private final double[] f;           // state transition matrix (n x n)
+    private final double[] q;           // process noise covariance (n x n)
+    private final double[] tempMatrix;  // scratch (n x n)
+    private final double[] tempVector;  // scratch (n)
+    private final double[] tempState;   // scratch (n)
+
+    /**
+     * Constructor: Create an instance of the object.
+     *
+     * @param instanceName specifies the instance name.
+     * @param numStates specifies the number of states in the state vector.
+     */
+    public TrcVectorKalmanFilter(final String instanceName, int numStates)
+    {
+        if (debugEnabled)
+        {
+            dbgTrace = new TrcDbgTrace(moduleName + "." + instanceName, tracingEnabled, traceLevel, msgLevel);
+        }
+
+        if (numStates <= 0)
+        {
+            throw new IllegalArgumentException("Filter must have at least one state.");
+        }
+
+        this.instanceName = instanceName;
+        this.numStates = numStates;
+        x = new double[numStates];
+        p = new double[numStates*numStates];
+        f = new double[numStates*numStates];
+        q = new double[numStates*numStates];
+        tempMatrix = new double[numStates*numStates];
+        tempVector = new double[numStates];
+        tempState = new double[numStates];
+
+        for (int i = 0; i < numStates; i++)
+        {
+            f[i*numStates + i] = 1.0;
+        }
+    }   //TrcVectorKalmanFilter
+
+    /**
+     * This method returns the instance name.
+     *
+     * @return instance name.
+     */
+    public String toString()
+    {
+        return instanceName;
+    }   //toString
+
+    /**
+     * This method returns the number of states of the filter.
+     *
+     * @return number of states.
+     */
+    public int getNumStates()
+    {
+        return numStates;
+    }   //getNumStates
+
+    /**
+     * This method resets the state vector to zero and the covariance matrix to a diagonal matrix with the given
+     * initial variance.
+     *
+     * @param initialVariance specifies the initial variance of every state.
+     */
+    public void reset(double initialVariance)
+    {
+        final String funcName = "reset";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "variance=%f", initialVariance);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        for (int i = 0; i < numStates; i++)
+        {
+            x[i] = 0.0;
+            for (int j = 0; j < numStates; j++)
+            {
+                p[i*numStates + j] = i == j? initialVariance: 0.0;
+            }
+        }
+    }   //reset
+
+    /**
+     * This method returns the estimated value of the specified state.
+     *
+     * @param index specifies the state index.
+     * @return estimated state value.
+     */
+    public double getState(int index)
+    {
+        return x[index];
+    }   //getState
+
+    /**
+     * This method sets the value of the specified state. This is typically used by an EKF caller that propagates
+     * the state with its own model before calling predictCovariance().
+     *
+     * @param index specifies the state index.
+     * @param value specifies the new state value.
+     */
+    public void setState(int index, double value)
+    {
+        x[index] = value;
+    }   //setState
+
+    /**
+     * This method returns the variance of the specified state.
+     *
+     * @param index specifies the state index.
+     * @return state variance.
+     */
+    public double getVariance(int index)
+    {
+        return p[index*numStates + index];
+    }   //getVariance
+
+    /**
+     * This method sets an element of the state covariance matrix.
+     *
+     * @param row specifies the row index.
+     * @param col specifies the column index.
+     * @param value specifies the covariance value.
+     */
+    public void setCovariance(int row, int col, double value)
+    {
+        p[row*numStates + col] = value;
+    }   //setCovariance
+
+    /**
+     * This method sets an element of the state transition matrix. The transition matrix is initialized to identity.
+     *
+     * @param row specifies the row index.
+     * @param col specifies the column index.
+     * @param value specifies the matrix element value.
+     */
+    public void setTransition(int row, int col, double value)
+    {
+        f[row*numStates + col] = value;
+    }   //setTransition
+
+    /**
+     * This method sets an element of the process noise covariance matrix that will be added on every predict.
+     *
+     * @param row specifies the row index.
+     * @param col specifies the column index.
+     * @param value specifies the covariance value.
+     */
+    public void setProcessNoise(int row, int col, double value)
+    {
+        q[row*numStates + col] = value;
+    }   //setProcessNoise
+
+    /**
+     * This method sets the process noise variance of the specified state.
+     *
+     * @param index specifies the state index.
+     * @param variance specifies the process noise variance.
+     */
+    public void setProcessNoise(int index, double variance)
+    {
+        q[index*numStates + index] = variance;
+    }   //setProcessNoise
+
+    /**
+     * This method does the prediction step of a linear Kalman filter: x = F*x, P = F*P*F' + Q.
+     */
+    public void predict()
+    {
+        for (int i = 0; i < numStates; i++)
+        {
+            double sum = 0.0;
+            for (int k = 0; k < numStates; k++)
+            {
+                sum += f[i*numStates + k]*x[k];
+            }
+            tempState[i] = sum;
+        }
+        System.arraycopy(tempState, 0, x, 0, numStates);
+
+        predictCovariance();
+    }   //predict
+
+    /**
+     * This method propagates only the covariance: P = F*P*F' + Q. It is used by an Extended Kalman Filter caller
+     * that has already propagated the state vector with a non-linear model and has set the transition matrix to
+     * the Jacobian of that model.
+     */
+    public void predictCovariance()
+    {
+        //
+        // tempMatrix = F*P
+        //
+        for (int i = 0; i < numStates; i++)
+        {
+            for (int j = 0; j < numStates; j++)
+            {
+                double sum = 0.0;
+                for (int k = 0; k < numStates; k++)
+                {
+                    sum += f[i*numStates + k]*p[k*numStates + j];
+                }
+                tempMatrix[i*numStates + j] = sum;
+            }
+        }
+        //
+        // P = tempMatrix*F' + Q
+        //
+        for (int i = 0; i < numStates; i++)
+        {
+            for (int j = 0; j < numStates; j++)
+            {
+                double sum = 0.0;
+                for (int k = 0; k < numStates; k++)
+                {
+                    sum += tempMatrix[i*numStates + k]*f[j*numStates + k];
+                }
+                p[i*numStates + j] = sum + q[i*numStates + j];
+            }
+        }
+    }   //predictCovariance
+
+    /**
+     * This method applies a scalar measurement z = h*x + v where v has variance r.
+     *
+     * @param h specifies the measurement row vector (numStates elements).
+     * @param z specifies the measured value.
+     * @param r specifies the measurement noise variance.
+     * @param gateSigmas specifies the innovation gate in standard deviations. If the innovation is larger than
+     *                   gateSigmas times its standard deviation, the measurement is rejected. Set to zero to
+     *                   disable gating.
+     * @return true if the measurement was applied, false if it was rejected by the gate.
+     */
+    public boolean update(double[] h, double z, double r, double gateSigmas)
+    {
+        double predicted = 0.0;
+        for (int i = 0; i < numStates; i++)
+        {
+            predicted += h[i]*x[i];
+        }
+
+        return updateInnovation(h, z - predicted, r, gateSigmas);
+    }   //update
+
+    /**
+     * This method applies a scalar measurement of a single state (i.e. h is a unit vector). This is the most common
+     * kind of measurement and doesn't need a measurement vector.
+     *
+     * @param index specifies the index of the measured state.
+     * @param z specifies the measured value.
+     * @param r specifies the measurement noise variance.
+     * @param gateSigmas specifies the innovation gate in standard deviations, zero to disable gating.
+     * @return true if the measurement was applied, false if it was rejected by the gate.
+     */
+    public boolean update(int index, double z, double r, double gateSigmas)
+    {
+        final String funcName = "update";
+        double innovation = z - x[index];
+        double s = p[index*numStates + index] + r;
+        boolean accepted = s > 0.0 && (gateSigmas <= 0.0 || innovation*innovation <= gateSigmas*gateSigmas*s);
+
+        if (accepted)
+        {
+            for (int i = 0; i < numStates; i++)
+            {
+                tempVector[i] = p[i*numStates + index];
+            }
+            correct(innovation, s);
+        }
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "index=%d,z=%f,r=%f", index, z, r);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API, "=%s", Boolean.toString(accepted));
+        }
+
+        return accepted;
+    }   //update
+
+    /**
+     * This method applies a scalar measurement given its innovation (measured value minus predicted value). This
+     * is useful when the innovation needs special handling such as angle wrapping, or for an EKF where the
+     * predicted measurement comes from a non-linear model and h is its Jacobian.
+     *
+     * @param h specifies the measurement row vector (numStates elements).
+     * @param innovation specifies the innovation.
+     * @param r specifies the measurement noise variance.
+     * @param gateSigmas specifies the innovation gate in standard deviations, zero to disable gating.
+     * @return true if the measurement was applied, false if it was rejected by the gate.
+     */
+    public boolean updateInnovation(double[] h, double innovation, double r, double gateSigmas)
+    {
+        final String funcName = "updateInnovation";
+        //
+        // tempVector = P*h', s = h*P*h' + r
+        //
+        double s = r;
+        for (int i = 0; i < numStates; i++)
+        {
+            double sum = 0.0;
+            for (int k = 0; k < numStates; k++)
+            {
+                sum += p[i*numStates + k]*h[k];
+            }
+            tempVector[i] = sum;
+            s += h[i]*sum;
+        }
+
+        boolean accepted = s > 0.0 && (gateSigmas <= 0.0 || innovation*innovation <= gateSigmas*gateSigmas*s);
+        if (accepted)
+        {
+            correct(innovation, s);
+        }
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "innovation=%f,r=%f", innovation, r);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API, "=%s", Boolean.toString(accepted));
+        }
+
+        return accepted;
+    }   //updateInnovation
+
+    /**
+     * This method applies the correction step given tempVector = P*h' and the innovation variance s. Since P is
+     * symmetric, h*P = (P*h')', so P = P - K*h*P = P - (P*h')*(P*h')'/s.
+     *
+     * @param innovation specifies the innovation.
+     * @param s specifies the innovation variance.
+     */
+    private void correct(double innovation, double s)
+    {
+        for (int i = 0; i < numStates; i++)
+        {
+            x[i] += tempVector[i]*innovation/s;
+        }
+
+        for (int i = 0; i < numStates; i++)
+        {
+            for (int j = 0; j < numStates; j++)
+            {
+                p[i*numStates + j] -= tempVector[i]*tempVector[j]/s;
+            }
+        }
+    }   //correct
+
+}   //class TrcVectorKalmanFilter
@@ -47,6 +47,7 @@ import trclib.TrcGyro;
 import trclib.TrcMaxbotixSonarArray;
 import trclib.TrcPidController;
 import trclib.TrcPidDrive;
+import trclib.TrcPoseEstimator;
 import trclib.TrcRobot;
 import trclib.TrcSpuriousFilter;
 
@@ -64,6 +65,7 @@ public class Robot implements
     static final boolean USE_RANGE_DRIVE = true;
     static final boolean USE_MAXBOTIX_SONAR_SENSOR = false;
     static final boolean USE_SONAR_DRIVE = false;
+    static final boolean USE_POSE_ESTIMATOR = true;
 
     static final int LEFT_SONAR_INDEX = 0;
     static final int FRONT_SONAR_INDEX = 1;
@@ -132,6 +134,7 @@ public class Robot implements
     FtcDcMotor leftRearWheel = null;
     FtcDcMotor rightRearWheel = null;
     TrcDriveBase driveBase = null;
+    TrcPoseEstimator poseEstimator = null;
 
     TrcPidController encoderXPidCtrl = null;
     TrcPidController encoderYPidCtrl = null;
@@ -288,6 +291,29 @@ public class Robot implements
         driveBase = new TrcDriveBase(leftFrontWheel, leftRearWheel, rightFrontWheel, rightRearWheel, gyro);
         driveBase.setXPositionScale(RobotInfo.ENCODER_X_INCHES_PER_COUNT);
         driveBase.setYPositionScale(RobotInfo.ENCODER_Y_INCHES_PER_COUNT);
+
+        if (USE_POSE_ESTIMATOR)
+        {
+            //
+            // The pose estimator replaces the X encoder jump detection and fuses the range sensors into X.
+            // The left range sensor reading increases as the robot moves right, the right one decreases.
+            //
+            poseEstimator = new TrcPoseEstimator("poseEstimator", driveBase, gyro, tracer);
+            poseEstimator.setEncoderNoise(RobotInfo.POSE_ENCODER_VARIANCE);
+            poseEstimator.setHeadingNoise(RobotInfo.POSE_HEADING_PROCESS_VARIANCE, RobotInfo.POSE_HEADING_VARIANCE);
+            poseEstimator.setEncoderGlitchThreshold(RobotInfo.POSE_ENCODER_GLITCH_THRESHOLD);
+            if (USE_MRRANGE_SENSOR)
+            {
+                poseEstimator.addDistanceSensor(
+                        "leftRange", leftRangeSensor, 0, FtcMRRangeSensor.DataType.DISTANCE_INCH,
+                        TrcPoseEstimator.Axis.X, false, RobotInfo.POSE_RANGE_VARIANCE,
+                        RobotInfo.POSE_RANGE_MIN_VALID, RobotInfo.POSE_RANGE_MAX_VALID);
+                poseEstimator.addDistanceSensor(
+                        "rightRange", rightRangeSensor, 0, FtcMRRangeSensor.DataType.DISTANCE_INCH,
+                        TrcPoseEstimator.Axis.X, true, RobotInfo.POSE_RANGE_VARIANCE,
+                        RobotInfo.POSE_RANGE_MIN_VALID, RobotInfo.POSE_RANGE_MAX_VALID);
+            }
+        }
         //
         // Initialize PID drive.
         //
@@ -425,12 +451,21 @@ public class Robot implements
         // Reset all X, Y and heading values.
         //
         driveBase.resetPosition();
+        if (poseEstimator != null)
+        {
+            poseEstimator.setEnabled(true);
+        }
         targetHeading = 0.0;
         glyphGrabber.setPosition(RobotInfo.GLYPH_GRABBER_OPEN);
     }   //startMode
 
     void stopMode(TrcRobot.RunMode runMode)
     {
+        if (poseEstimator != null)
+        {
+            poseEstimator.setEnabled(false);
+        }
+
         if (gripVision != null)
         {
             gripVision.setEnabled(false);
@@ -541,7 +576,15 @@ public class Robot implements
         final String funcName = "getInput";
         double input = 0.0;
 
-        if (pidCtrl == encoderXPidCtrl)
+        if (pidCtrl == encoderXPidCtrl && poseEstimator != null)
+        {
+            input = poseEstimator.getXPosition();
+        }
+        else if (pidCtrl == encoderYPidCtrl && poseEstimator != null)
+        {
+            input = poseEstimator.getYPosition();
+        }
+        else if (pidCtrl == encoderXPidCtrl)
         {
             input = driveBase.getXPosition();
             if (prevXDistance != null && Math.abs(input - prevXDistance) >= 5.0)
@@ -66,6 +66,17 @@ class RobotInfo
 
     static final double PIDDRIVE_STALL_TIMEOUT          = 0.25;     //in msec.
 
+    //
+    // Pose estimator.
+    //
+    static final double POSE_ENCODER_VARIANCE           = 0.01;     // inches^2 per inch travelled.
+    static final double POSE_ENCODER_GLITCH_THRESHOLD   = 5.0;      // encoder should not jump 5 inches in one loop.
+    static final double POSE_HEADING_PROCESS_VARIANCE   = 1.0;      // degrees^2 per second.
+    static final double POSE_HEADING_VARIANCE           = 0.25;     // degrees^2.
+    static final double POSE_RANGE_VARIANCE             = 0.5;      // inches^2.
+    static final double POSE_RANGE_MIN_VALID            = 2.0;      // in inches.
+    static final double POSE_RANGE_MAX_VALID            = 60.0;     // in inches.
+
     /**
      * @author TRC Programming Team, Elaine Z., Victor D.
      *